@@ -0,0 +1,317 @@
+/**
+ * @author john.shiffler (600139252)
+ */
+package com.penske.apps.smccore.component;
+
+import static com.penske.apps.smccore.component.domain.enums.Visibility.EDITABLE;
+import static com.penske.apps.smccore.component.domain.enums.Visibility.NOT_VISIBLE;
+import static com.penske.apps.smccore.component.domain.enums.Visibility.REQUIRED;
+import static com.penske.apps.smccore.component.domain.enums.Visibility.VISIBLE;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.penske.apps.smccore.CoreTestUtil;
+import com.penske.apps.smccore.component.domain.ComponentMaster;
+import com.penske.apps.smccore.component.domain.ComponentValue;
+import com.penske.apps.smccore.component.domain.Rule;
+import com.penske.apps.smccore.component.domain.RuleBuilder;
+import com.penske.apps.smccore.component.domain.RuleOutcome;
+import com.penske.apps.smccore.component.domain.enums.ComponentRuleOperator;
+import com.penske.apps.smccore.component.domain.enums.ComponentType;
+import com.penske.apps.smccore.component.domain.enums.RuleType;
+import com.penske.apps.smccore.component.domain.enums.Visibility;
+import com.penske.apps.smccore.component.engine.ConflictResolver;
+import com.penske.apps.smccore.component.engine.NestedComponentMap;
+
+/**
+ * Generates component data, rules, outcomes, and conflict resolutions of a configurable size and shape, for benchmarking the rules engine.
+ * 	The same settings and seed always generate exactly the same data, so results from different runs (and different versions of the engine) can be compared.
+ *
+ * Components are split into layers. Rules only target components in layers 1 and up, and only read components from lower layers,
+ * 	so the rules never have circular dependencies, and a chain of rules can be up to {@code depth} rules long.
+ * Components are spread across the unit masters so that some component IDs appear on more than one of them, which gives conflicts to resolve.
+ */
+public class SyntheticComponentData
+{
+	/** Text values are picked from this list, so that criteria comparing text for equality are satisfied often enough to matter. */
+	private static final String[] TEXT_VALUES = {"A", "B", "C", "D"};
+	/** The visibilities outcomes can set. */
+	private static final Visibility[] OUTCOME_VISIBILITIES = {REQUIRED, EDITABLE, VISIBLE, NOT_VISIBLE};
+	private static final int FIRST_MASTER_ID = 1001;
+	private static final int FIRST_COMPONENT_ID = 100000001;
+	private static final int FIRST_RULE_ID = 5001;
+
+	private final List<Integer> masterIds = new ArrayList<Integer>();
+	private final NestedComponentMap<ComponentMaster> masters = NestedComponentMap.newInstance();
+	private final NestedComponentMap<ComponentValue> componentValues = NestedComponentMap.newInstance();
+	private final NestedComponentMap<String> defaultComponentValues = NestedComponentMap.newInstance();
+	private final NestedComponentMap<String> userValues = NestedComponentMap.newInstance();
+	private final List<Rule> rules = new ArrayList<Rule>();
+	private final Map<Integer, List<RuleOutcome>> outcomes = new HashMap<Integer, List<RuleOutcome>>();
+	private final TestConflictResolver resolver = new TestConflictResolver();
+
+	/**
+	 * Generates a new set of component data.
+	 * @param masterCount The number of unit masters (i.e. templates on the unit).
+	 * @param componentCount The number of distinct component IDs across all the unit masters.
+	 * @param ruleCount The number of rules on each unit master's template.
+	 * @param groupsPerRule The number of criteria groups in each rule.
+	 * @param criteriaPerGroup The number of criteria in each criteria group (i.e. how many components each group reads).
+	 * @param depth The number of layers of components that rules can target. Chains of rules, where one rule reads a component another rule sets the visibility of, can be this long.
+	 * @param seed The seed for the random number generator. The same seed and settings always give the same data.
+	 */
+	public SyntheticComponentData(int masterCount, int componentCount, int ruleCount, int groupsPerRule, int criteriaPerGroup, int depth, long seed)
+	{
+		if(masterCount < 1 || componentCount < depth + 1 || ruleCount < 0 || groupsPerRule < 1 || criteriaPerGroup < 1 || depth < 1)
+			throw new IllegalArgumentException("Can not generate component data with " + masterCount + " masters, " + componentCount + " components, " + ruleCount + " rules, "
+				+ groupsPerRule + " groups of " + criteriaPerGroup + " criteria, and a depth of " + depth);
+
+		Random random = new Random(seed);
+		for(int i = 0; i < masterCount; i++)
+			masterIds.add(FIRST_MASTER_ID + i);
+
+		//Component IDs on each unit master, by layer. Every component is on at least one master, and about a third are on more than one.
+		Map<Integer, List<List<ComponentMaster>>> mastersByLayer = new HashMap<Integer, List<List<ComponentMaster>>>();
+		for(int masterId : masterIds)
+		{
+			List<List<ComponentMaster>> layers = new ArrayList<List<ComponentMaster>>();
+			for(int layer = 0; layer <= depth; layer++)
+				layers.add(new ArrayList<ComponentMaster>());
+			mastersByLayer.put(masterId, layers);
+		}
+
+		for(int i = 0; i < componentCount; i++)
+		{
+			int componentId = FIRST_COMPONENT_ID + i;
+			int layer = (int) ((long) i * (depth + 1) / componentCount);
+			ComponentType componentType = i % 4 == 0 ? ComponentType.NUMERIC : ComponentType.TEXT;
+			boolean ignoredInConflicts = random.nextInt(5) == 0;
+
+			List<Integer> mastersWithComponent = new ArrayList<Integer>();
+			for(int m = 0; m < masterCount; m++)
+			{
+				if(m == i % masterCount || random.nextInt(6) == 0)
+					mastersWithComponent.add(masterIds.get(m));
+			}
+
+			for(int masterId : mastersWithComponent)
+			{
+				//Components that rules can target mostly start out hidden, so the rules have something to do
+				Visibility baseVisibility = layer == 0 ? OUTCOME_VISIBILITIES[random.nextInt(3)] : (random.nextInt(3) == 0 ? EDITABLE : NOT_VISIBLE);
+				ComponentMaster master = new TestComponentMaster(componentId, masterId, "G", "SG", "Synthetic " + i, componentType, baseVisibility, ignoredInConflicts);
+				masters.put(masterId, componentId, master);
+				mastersByLayer.get(masterId).get(layer).add(master);
+
+				//Most components have an existing value, some only have a default value, and some have been changed by the user
+				int valueSource = random.nextInt(10);
+				if(valueSource < 7)
+					componentValues.put(masterId, componentId, new ComponentValue(master, randomValue(random, componentType)));
+				else if(valueSource < 9)
+					defaultComponentValues.put(masterId, componentId, randomValue(random, componentType));
+				if(random.nextInt(10) == 0)
+					userValues.put(masterId, componentId, randomValue(random, componentType));
+			}
+
+			//Some of the components that are on more than one master have a resolution for the conflict
+			if(mastersWithComponent.size() > 1)
+			{
+				int resolution = random.nextInt(10);
+				int resolvedMasterId = mastersWithComponent.get(random.nextInt(mastersWithComponent.size()));
+				if(resolution < 3)
+					resolver.addGlobalResolution(componentId, resolvedMasterId);
+				else if(resolution < 5)
+					resolver.addIndividualResolution(componentId, resolvedMasterId);
+			}
+		}
+
+		//Each unit master is on its own template, with its own rules
+		int ruleId = FIRST_RULE_ID;
+		for(int m = 0; m < masterCount; m++)
+		{
+			int masterId = masterIds.get(m);
+			int templateId = m + 1;
+			List<List<ComponentMaster>> layers = mastersByLayer.get(masterId);
+			List<RuleOutcome> outcomesForMaster = new ArrayList<RuleOutcome>();
+			Map<Integer, Integer> nextPriorities = new HashMap<Integer, Integer>();
+
+			for(int r = 0; r < ruleCount; r++, ruleId++)
+			{
+				//Rules read the layer right below the one they target, so that chains of rules reach all the way up
+				int targetLayer = 1 + random.nextInt(depth);
+				List<ComponentMaster> targets = layers.get(targetLayer);
+				List<ComponentMaster> sources = layers.get(targetLayer - 1);
+				if(targets.isEmpty() || sources.isEmpty())
+					continue;
+
+				RuleBuilder builder = new RuleBuilder(ruleId, templateId, "Synthetic Rule " + ruleId, RuleType.LOADSHEET);
+				for(int group = 1; group <= groupsPerRule; group++)
+				{
+					for(int c = 0; c < criteriaPerGroup; c++)
+					{
+						//Most criteria read the layer right below, but some reach further down
+						List<ComponentMaster> criteriaLayer = random.nextInt(4) == 0 ? layers.get(random.nextInt(targetLayer)) : sources;
+						if(criteriaLayer.isEmpty())
+							criteriaLayer = sources;
+						ComponentMaster source = criteriaLayer.get(random.nextInt(criteriaLayer.size()));
+						if(source.getComponentType() == ComponentType.NUMERIC)
+						{
+							ComponentRuleOperator operator = random.nextBoolean() ? ComponentRuleOperator.LESS_THAN : ComponentRuleOperator.GREATER_THAN_OR_EQUAL_TO;
+							builder.addCriteria(group, source.getComponentId(), operator, Integer.toString(random.nextInt(100)));
+						}
+						else
+							builder.addCriteria(group, source.getComponentId(), ComponentRuleOperator.EQUAL, TEXT_VALUES[random.nextInt(TEXT_VALUES.length)]);
+					}
+				}
+				rules.add(builder.build());
+
+				//Each rule sets the visibility of one or two components. Every outcome for a component gets its own priority.
+				int outcomeCount = 1 + random.nextInt(2);
+				for(int o = 0; o < outcomeCount; o++)
+				{
+					ComponentMaster target = targets.get(random.nextInt(targets.size()));
+					int componentId = target.getComponentId();
+					int priority = nextPriorities.getOrDefault(componentId, 1);
+					nextPriorities.put(componentId, priority + 1);
+					Visibility visibility = OUTCOME_VISIBILITIES[random.nextInt(OUTCOME_VISIBILITIES.length)];
+					outcomesForMaster.add(CoreTestUtil.createRuleOutcome(ruleId, componentId, templateId, priority, visibility));
+				}
+			}
+
+			outcomes.put(masterId, outcomesForMaster);
+		}
+	}
+
+	/**
+	 * Generates one of the standard sizes of component data.
+	 * @param size The size of data to generate.
+	 * @param seed The seed for the random number generator.
+	 * @return The generated data.
+	 */
+	public static SyntheticComponentData generate(Size size, long seed)
+	{
+		return new SyntheticComponentData(size.getMasterCount(), size.getComponentCount(), size.getRuleCount(), size.getGroupsPerRule(), size.getCriteriaPerGroup(), size.getDepth(), seed);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString()
+	{
+		int outcomeCount = 0;
+		for(List<RuleOutcome> outcomesForMaster : outcomes.values())
+			outcomeCount += outcomesForMaster.size();
+		return "{SyntheticComponentData: " + masterIds.size() + " masters, " + masters.size() + " components, " + rules.size() + " rules, " + outcomeCount + " outcomes}";
+	}
+
+	//***** HELPER METHODS *****//
+	private static String randomValue(Random random, ComponentType componentType)
+	{
+		if(componentType == ComponentType.NUMERIC)
+			return Integer.toString(random.nextInt(100));
+		return TEXT_VALUES[random.nextInt(TEXT_VALUES.length)];
+	}
+
+	//***** DEFAULT ACCESSORS *****//
+	public List<Integer> getMasterIds()
+	{
+		return masterIds;
+	}
+
+	public NestedComponentMap<ComponentMaster> getMasters()
+	{
+		return masters;
+	}
+
+	public NestedComponentMap<ComponentValue> getComponentValues()
+	{
+		return componentValues;
+	}
+
+	public NestedComponentMap<String> getDefaultComponentValues()
+	{
+		return defaultComponentValues;
+	}
+
+	public NestedComponentMap<String> getUserValues()
+	{
+		return userValues;
+	}
+
+	public List<Rule> getRules()
+	{
+		return rules;
+	}
+
+	public Map<Integer, List<RuleOutcome>> getOutcomes()
+	{
+		return outcomes;
+	}
+
+	public ConflictResolver getConflictResolver()
+	{
+		return resolver;
+	}
+
+	//***** HELPER CLASSES *****//
+	/**
+	 * Standard sizes of component data, from a single small template up to a unit with many large templates.
+	 */
+	public static enum Size
+	{
+		//		Masters	Components	Rules	Groups	Criteria	Depth
+		SMALL(	1,		60,			20,		1,		2,			2),
+		MEDIUM(	3,		400,		150,	2,		3,			4),
+		FLEET(	8,		1500,		800,	3,		4,			6),
+		;
+
+		private final int masterCount;
+		private final int componentCount;
+		private final int ruleCount;
+		private final int groupsPerRule;
+		private final int criteriaPerGroup;
+		private final int depth;
+
+		private Size(int masterCount, int componentCount, int ruleCount, int groupsPerRule, int criteriaPerGroup, int depth)
+		{
+			this.masterCount = masterCount;
+			this.componentCount = componentCount;
+			this.ruleCount = ruleCount;
+			this.groupsPerRule = groupsPerRule;
+			this.criteriaPerGroup = criteriaPerGroup;
+			this.depth = depth;
+		}
+
+		public int getMasterCount()
+		{
+			return masterCount;
+		}
+
+		public int getComponentCount()
+		{
+			return componentCount;
+		}
+
+		public int getRuleCount()
+		{
+			return ruleCount;
+		}
+
+		public int getGroupsPerRule()
+		{
+			return groupsPerRule;
+		}
+
+		public int getCriteriaPerGroup()
+		{
+			return criteriaPerGroup;
+		}
+
+		public int getDepth()
+		{
+			return depth;
+		}
+	}
+}
@@ -0,0 +1,112 @@
+/**
+ * @author john.shiffler (600139252)
+ */
+package com.penske.apps.smccore.component.engine;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.penske.apps.smccore.component.SyntheticComponentData;
+import com.penske.apps.smccore.component.domain.enums.NotVisibleBehavior;
+import com.penske.apps.smccore.component.domain.enums.RuleEvaluationMode;
+
+/**
+ * Benchmarks the main steps of the rules engine against synthetic templates of different sizes.
+ * 	Run these with the {@code jmh} profile (ex: {@code mvn -P jmh test-compile exec:exec}), which also turns on the GC profiler to report allocation rates.
+ * 	Arguments for JMH itself can be passed in the {@code jmh.args} property (ex: {@code -Djmh.args="ComponentVisibilityFilterBenchmark.runRules -p size=FLEET -prof gc"}).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ComponentVisibilityFilterBenchmark
+{
+	/** The seed for the synthetic data, so that every run benchmarks exactly the same templates. */
+	private static final long SEED = 20240117L;
+
+	@Benchmark
+	public ComponentVisibilityFilterData mergeComponentValues(TemplateState template)
+	{
+		SyntheticComponentData data = template.data;
+		return template.filter.mergeComponentValues(1, data.getMasters(), data.getComponentValues(), data.getDefaultComponentValues(), data.getUserValues(), template.notVisibleBehavior);
+	}
+
+	@Benchmark
+	public ComponentVisibilityFilterData runRules(TemplateState template, EngineState engine)
+	{
+		return engine.filter.runRules(template.mergedComponents, template.data.getRules(), template.data.getOutcomes());
+	}
+
+	@Benchmark
+	public ComponentVisibilityFilterData resolveConflicts(TemplateState template)
+	{
+		return template.filter.resolveConflicts(template.ruleResults, template.data.getConflictResolver());
+	}
+
+	//***** HELPER CLASSES *****//
+	/**
+	 * A synthetic template, along with its components at each step of the rules engine, so that each step can be benchmarked on its own.
+	 */
+	@State(Scope.Benchmark)
+	public static class TemplateState
+	{
+		@Param({"SMALL", "MEDIUM", "FLEET"})
+		public SyntheticComponentData.Size size;
+
+		@Param({"REMOVE", "REMOVE_IF_USER_INFLUENCED"})
+		public NotVisibleBehavior notVisibleBehavior;
+
+		final ComponentVisibilityFilter filter = new ComponentVisibilityFilter().withExplanations(false);
+		SyntheticComponentData data;
+		ComponentVisibilityFilterData mergedComponents;
+		ComponentVisibilityFilterData ruleResults;
+
+		@Setup(Level.Trial)
+		public void setUp()
+		{
+			data = SyntheticComponentData.generate(size, SEED);
+			mergedComponents = filter.mergeComponentValues(1, data.getMasters(), data.getComponentValues(), data.getDefaultComponentValues(), data.getUserValues(), notVisibleBehavior);
+			ruleResults = filter.runRules(mergedComponents, data.getRules(), data.getOutcomes());
+		}
+	}
+
+	/**
+	 * The settings the rules are run with.
+	 */
+	@State(Scope.Benchmark)
+	public static class EngineState
+	{
+		@Param({"FULL", "INCREMENTAL", "TOPOLOGICAL"})
+		public RuleEvaluationMode evaluationMode;
+
+		@Param({"false"})
+		public boolean explanations;
+
+		@Param({"false", "true"})
+		public boolean columnar;
+
+		@Param({"false", "true"})
+		public boolean generated;
+
+		ComponentVisibilityFilter filter;
+
+		@Setup(Level.Trial)
+		public void setUp()
+		{
+			filter = new ComponentVisibilityFilter().withEvaluationMode(evaluationMode).withExplanations(explanations).withColumnarEvaluation(columnar).withGeneratedCode(generated);
+		}
+	}
+}
@@ -11,6 +11,33 @@ public enum CoreTimingType implements TimingType
 	/** Logs all query invocations */
 	SMC_CORE_QUERY("Queries"),
 	GROUP_UNIT_RANGE("Group Unit Ranges"),
+	/** Logs rules runs that were answered from a {@link com.penske.apps.smccore.component.engine.RuleRunCache} */
+	RULE_RUN_CACHE_HIT("Rule Run Cache Hits"),
+	/** Logs rules runs that were not in a {@link com.penske.apps.smccore.component.engine.RuleRunCache}, and had to actually run the rules */
+	RULE_RUN_CACHE_MISS("Rule Run Cache Misses"),
+	
+	//Rules engine metrics. These are only logged if the ComponentVisibilityFilter was given a timing bean, and each one is logged once per call to the rules engine.
+	// Times are in microseconds, since most phases take well under a millisecond. For counters, the "elapsed time" is the count for that call.
+	/** Time to merge component values before running the rules, in microseconds */
+	RULES_MERGE("Rules Engine: Merge Component Values (microseconds)"),
+	/** Total time to run the rules until component visibilities stopped changing, in microseconds */
+	RULES_RUN("Rules Engine: Run Rules (microseconds)"),
+	/** Time spent evaluating rules, in microseconds. Part of {@link #RULES_RUN}. */
+	RULES_EVALUATE("Rules Engine: Evaluate Rules (microseconds)"),
+	/** Time spent applying rule outcomes to components, in microseconds. Part of {@link #RULES_RUN}. */
+	RULES_APPLY("Rules Engine: Apply Outcomes (microseconds)"),
+	/** Time to resolve conflicts after running the rules, in microseconds */
+	RULES_RESOLVE_CONFLICTS("Rules Engine: Resolve Conflicts (microseconds)"),
+	/** Number of times the rules were run before component visibilities stopped changing */
+	RULES_ITERATIONS("Rules Engine: Iterations (count)"),
+	/** Number of times a rule was actually evaluated, across all iterations */
+	RULES_EVALUATED("Rules Engine: Rules Evaluated (count)"),
+	/** Number of times a rule with an outcome wasn't evaluated, either because a higher-priority outcome already applied, or because its result from an earlier iteration was still good */
+	RULES_SKIPPED("Rules Engine: Rules Skipped (count)"),
+	/** Number of component IDs with more than one required component */
+	RULES_CONFLICTS("Rules Engine: Conflicts (count)"),
+	/** Number of conflicts that had an individual or global resolution */
+	RULES_CONFLICTS_RESOLVED("Rules Engine: Conflicts Resolved (count)"),
 	;
 	
 	private final String description;
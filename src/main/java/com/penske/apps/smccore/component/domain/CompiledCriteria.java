@@ -0,0 +1,228 @@
+/**
+ * @author john.shiffler (600139252)
+ */
+package com.penske.apps.smccore.component.domain;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import com.penske.apps.smccore.base.util.DateUtil;
+import com.penske.apps.smccore.component.domain.enums.ComponentRuleOperator;
+import com.penske.apps.smccore.component.domain.enums.ComponentType;
+import com.penske.apps.smccore.component.engine.ComponentModel;
+
+/**
+ * A rule criteria's operator and static comparison value, pre-parsed once into the numeric, date, and text forms the operator needs.
+ * {@link ComponentRuleOperator#evaluate(ComponentModel, String)} re-parses the criteria value every time a criteria is evaluated,
+ * 	which adds up quickly when the rules engine evaluates every rule against every unit for several iterations.
+ *
+ * The semantics are identical to the operator's. Any case that can not be answered from the pre-parsed value
+ * 	(ex: an operator that doesn't apply to the component's type, or a criteria value that isn't of the right type)
+ * 	is handed back to the operator, so that the same exception is thrown with the same message.
+ */
+public final class CompiledCriteria
+{
+	/** The comparison operator to use when evaluating the criteria. */
+	private final ComponentRuleOperator operator;
+	/** The original, unparsed criteria value. Used for text comparisons, and for delegating back to the operator. */
+	private final String operand;
+	/** True if the criteria value is null or blank. */
+	private final boolean blank;
+	/** The criteria value as a number, or null if it is blank or is not a number. */
+	private final BigDecimal numericOperand;
+	/** The criteria value as a date, or null if it is blank or is not a date. */
+	private final Date dateOperand;
+	/** The day the criteria value falls on, as worked out by {@link ComponentValue#toLocalDay(Date)}. Only meaningful if {@link #dateOperand} is not null. */
+	private final long dateOperandDay;
+
+	private CompiledCriteria(ComponentRuleOperator operator, String operand)
+	{
+		this.operator = operator;
+		this.operand = operand;
+		this.blank = StringUtils.isBlank(operand);
+		this.numericOperand = blank ? null : parseNumber(operand);
+		this.dateOperand = blank ? null : DateUtil.parseDate(operand);
+		this.dateOperandDay = dateOperand == null ? 0 : ComponentValue.toLocalDay(dateOperand);
+	}
+
+	/**
+	 * Pre-parses a criteria value for use with the given operator.
+	 * @param operator The comparison operator to use when evaluating the criteria.
+	 * @param operand The static value that will be compared to the component's value.
+	 * @return The compiled form of the criteria.
+	 */
+	public static CompiledCriteria compile(ComponentRuleOperator operator, String operand)
+	{
+		if(operator == null)
+			throw new IllegalArgumentException("Operator is required to compile a rule criteria");
+		return new CompiledCriteria(operator, operand);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString()
+	{
+		return "{Compiled Criteria: " + operator.getOperator() + " " + operand + "}";
+	}
+
+	//***** MODIFIED ACCESSORS *****//
+	/**
+	 * Determines if the expression [component value] [operator] [criteria value] is true or not.
+	 * Equivalent to {@link ComponentRuleOperator#evaluate(ComponentModel, String)}, but without re-parsing the criteria value.
+	 * @param component The component model whose value should be tested against the criteria value
+	 * @return True if the expression is true. False otherwise.
+	 */
+	public boolean evaluate(ComponentModel component)
+	{
+		ComponentType componentType = component.getComponentMaster().getComponentType();
+
+		switch(operator)
+		{
+		case EQUAL:
+			return evaluateEqual(component, componentType);
+		case LESS_THAN:
+		case LESS_THAN_OR_EQUAL_TO:
+		case GREATER_THAN_OR_EQUAL_TO:
+		case GREATER_THAN:
+			return evaluateRelational(component, componentType);
+		default:
+			return operator.evaluate(component, operand);
+		}
+	}
+
+	/**
+	 * Checks whether the criteria value can ever be compared to a component of the given type with this criteria's operator.
+	 * This lets type mismatches be found when rules are loaded, rather than only when a unit happens to have a value for the component.
+	 * @param componentType The type of the component the criteria is attached to.
+	 * @return True if the operator applies to the component type, and the criteria value is of the right type for the comparison.
+	 */
+	public boolean isApplicableTo(ComponentType componentType)
+	{
+		if(componentType == null)
+			return false;
+
+		switch(operator)
+		{
+		case EQUAL:
+			switch(componentType)
+			{
+			case TEXT:
+			case COMMENT:
+				return true;
+			case DATE:
+				return blank || dateOperand != null;
+			case NUMERIC:
+			case YEAR:
+				return blank || numericOperand != null;
+			default:
+				return false;
+			}
+		case LESS_THAN:
+		case LESS_THAN_OR_EQUAL_TO:
+		case GREATER_THAN_OR_EQUAL_TO:
+		case GREATER_THAN:
+			return (componentType == ComponentType.NUMERIC || componentType == ComponentType.YEAR) && (blank || numericOperand != null);
+		default:
+			return true;
+		}
+	}
+
+	//***** HELPER METHODS *****//
+	private boolean evaluateEqual(ComponentModel component, ComponentType componentType)
+	{
+		switch(componentType)
+		{
+		case TEXT:
+		case COMMENT:
+			return StringUtils.equals(component.getComponentValueAsString(), operand);
+		case DATE:
+			Date componentValueDate = component.getcomponentValueAsDate();
+			//If both are null (or blank), that's ok.
+			if(blank)
+				return componentValueDate == null;
+			//If only one is null, then they aren't equal
+			if(componentValueDate == null)
+				return false;
+			if(dateOperand == null)
+				return operator.evaluate(component, operand);
+			//Two dates match if they are the same day
+			return component.getComponentValue().isDateValueOnDay(dateOperandDay);
+		case NUMERIC:
+		case YEAR:
+			BigDecimal componentValue = component.getComponentValueAsNumber();
+			//If both are null (or blank), that's ok.
+			if(blank)
+				return componentValue == null;
+			//If only one is null, then they aren't equal
+			if(componentValue == null)
+				return false;
+			if(numericOperand == null)
+				return operator.evaluate(component, operand);
+			return componentValue.compareTo(numericOperand) == 0;
+		default:
+			return operator.evaluate(component, operand);
+		}
+	}
+
+	private boolean evaluateRelational(ComponentModel component, ComponentType componentType)
+	{
+		if(componentType != ComponentType.NUMERIC && componentType != ComponentType.YEAR)
+			return operator.evaluate(component, operand);
+
+		BigDecimal componentValue = component.getComponentValueAsNumber();
+		//Null is not less than or greater than anything
+		if(blank || componentValue == null)
+			return false;
+		if(numericOperand == null)
+			return operator.evaluate(component, operand);
+
+		int comparison = componentValue.compareTo(numericOperand);
+		switch(operator)
+		{
+		case LESS_THAN:					return comparison < 0;
+		case LESS_THAN_OR_EQUAL_TO:		return comparison <= 0;
+		case GREATER_THAN_OR_EQUAL_TO:	return comparison >= 0;
+		case GREATER_THAN:				return comparison > 0;
+		default:						return operator.evaluate(component, operand);
+		}
+	}
+
+	/**
+	 * Parses a number the same way the operators do: it has to pass {@link NumberUtils#isNumber(String)}, and then be readable by {@link BigDecimal}.
+	 * @return The parsed number, or null if the operators would not be able to compare against it.
+	 */
+	private static BigDecimal parseNumber(String value)
+	{
+		if(!NumberUtils.isNumber(value))
+			return null;
+		try {
+			return new BigDecimal(value);
+		} catch(NumberFormatException ex) {
+			return null;
+		}
+	}
+
+	//***** DEFAULT ACCESSORS *****//
+	public ComponentRuleOperator getOperator()
+	{
+		return operator;
+	}
+
+	public String getOperand()
+	{
+		return operand;
+	}
+
+	public BigDecimal getNumericOperand()
+	{
+		return numericOperand;
+	}
+
+	public Date getDateOperand()
+	{
+		return dateOperand;
+	}
+}
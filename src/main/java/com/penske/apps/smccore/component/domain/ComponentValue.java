@@ -5,9 +5,10 @@ package com.penske.apps.smccore.component.domain;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
-import java.text.DecimalFormat;
 import java.text.ParseException;
 import java.util.Date;
+import java.util.Objects;
+import java.util.TimeZone;
 
 import org.apache.commons.lang3.StringUtils;
 
@@ -21,6 +22,18 @@ import com.penske.apps.smccore.component.domain.unittemplate.OptionalComponentVa
  */
 public class ComponentValue implements OptionalComponentValue
 {
+	private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+	/** The number of slots in {@link #FOLDED_TEXT_CACHE}. Must be a power of two. */
+	private static final int FOLDED_TEXT_CACHE_SIZE = 1024;
+	/** The longest text value that gets shared through {@link #FOLDED_TEXT_CACHE}. Text values made by the constructor are always shorter, so this only leaves out long text loaded some other way. */
+	private static final int MAX_CACHED_TEXT_LENGTH = 32;
+	/**
+	 * Recently seen case-folded text values, so that the same short text value on many components shares one string. Each value can only go in one slot, picked by its hash,
+	 * 	and a new value just replaces whatever was there, so this never holds more than a fixed number of strings. Unlike {@link String#intern()}, it doesn't grow with free text.
+	 * 	Threads may see each other's writes late or not at all, but since strings are immutable, the worst that can happen is a missed chance to share one.
+	 */
+	private static final String[] FOLDED_TEXT_CACHE = new String[FOLDED_TEXT_CACHE_SIZE];
+	
 	/** The 9-digit ID for the component. This is what identifies the component within Penske's systems. */
 	private int componentId;
 	/** The type of data contained in this component (text, number, date, year). */
@@ -32,6 +45,14 @@ public class ComponentValue implements OptionalComponentValue
 	/** If the component type is a date, this contains the value. */
 	private Date dateValue = null;
 	
+	/**
+	 * The value in the form used to check if it is empty or equal to another value, so that isn't worked out again on every check.
+	 * 	Built by the constructor, or the first time it is needed if MyBatis filled in the value, and cleared whenever the value changes.
+	 */
+	private volatile CanonicalValue canonicalValue;
+	/** The value the last time it was rendered as a string by {@link #getValueAsString(ComponentType, Integer)}. */
+	private volatile RenderedValue renderedValue;
+	
 	/** Null constructor - MyBatis only */
 	protected ComponentValue() {}
 	
@@ -78,8 +99,7 @@ public class ComponentValue implements OptionalComponentValue
 			{
 				Integer decimalPositions = master.getDecimalPositions();
 			    try {
-                    Number uservalue = DecimalFormat.getNumberInstance(java.util.Locale.US).parse(value);
-                    BigDecimal numericValue = new BigDecimal(uservalue.toString());
+                    BigDecimal numericValue = ComponentValueParser.parseNumber(value);
                     if(decimalPositions != null)
                     	numericValue = numericValue.setScale(decimalPositions, RoundingMode.FLOOR);
                     this.numericValue = numericValue;
@@ -95,7 +115,7 @@ public class ComponentValue implements OptionalComponentValue
 				this.dateValue = null;
 			else
 			{
-				Date theDate = DateUtil.parseDate(value);
+				Date theDate = ComponentValueParser.parseDate(value);
 				if(theDate == null)
 					throw new IllegalArgumentException("Unable to set a non-date value in a date component (component ID " + this.componentId + ", value '" + value + "')");
 				
@@ -107,6 +127,8 @@ public class ComponentValue implements OptionalComponentValue
 			}
 			break;
 		}
+		
+		this.canonicalValue = new CanonicalValue(this);
 	}
 
 	/**
@@ -120,6 +142,8 @@ public class ComponentValue implements OptionalComponentValue
 		this.textValue = source.textValue;
 		this.numericValue = source.numericValue;
 		this.dateValue = source.dateValue;
+		this.canonicalValue = source.canonicalValue;
+		this.renderedValue = source.renderedValue;
 	}
 	
     @Override
@@ -139,7 +163,7 @@ public class ComponentValue implements OptionalComponentValue
     @Override
     public boolean isValueEmpty()
 	{
-		return componentType.isValueEmpty(textValue, numericValue, dateValue);
+		return getCanonicalValue().empty;
 	}
 	
 	/**
@@ -157,7 +181,39 @@ public class ComponentValue implements OptionalComponentValue
 		if(other.getComponentType() != componentType)
 			return false;
 		
-		return componentType.areValuesEqual(textValue, numericValue, dateValue, other.getTextValue(), other.getNumericValue(), other.getDateValue());
+		return getCanonicalValue().isEqualTo(other.getCanonicalValue());
+	}
+	
+	/**
+	 * Renders the value of this component as a string, the same as {@link ComponentType#getComponentValueAsString(String, BigDecimal, Date, Integer, boolean)} does when nulls are not allowed.
+	 * 	The result is kept, so rendering the same value the same way again doesn't format it again.
+	 * @param type The component type to render the value as. This is normally the component type of this value.
+	 * @param decimalPositions The number of decimal places to render a numeric value with, or null to leave it as it is.
+	 * @return The component's value, rendered as a string.
+	 */
+	public String getValueAsString(ComponentType type, Integer decimalPositions)
+	{
+		if(type != componentType)
+			return type.getComponentValueAsString(textValue, numericValue, dateValue, decimalPositions, false);
+		
+		RenderedValue rendered = renderedValue;
+		if(rendered == null || !Objects.equals(rendered.decimalPositions, decimalPositions))
+		{
+			rendered = new RenderedValue(decimalPositions, type.getComponentValueAsString(textValue, numericValue, dateValue, decimalPositions, false));
+			renderedValue = rendered;
+		}
+		return rendered.text;
+	}
+	
+	/**
+	 * Checks if this component's date falls on a given day, the same way {@link org.apache.commons.lang3.time.DateUtils#isSameDay(Date, Date)} would.
+	 * @param day The day to check, as worked out by {@link #toLocalDay(Date)}.
+	 * @return True if this component has a date, and it is on that day. False otherwise.
+	 */
+	public boolean isDateValueOnDay(long day)
+	{
+		CanonicalValue canonical = getCanonicalValue();
+		return canonical.hasDay && canonical.day == day;
 	}
 	
 	/**
@@ -198,6 +254,171 @@ public class ComponentValue implements OptionalComponentValue
 		}
 		
 		this.componentType = componentType;
+		this.canonicalValue = null;
+		this.renderedValue = null;
+	}
+	
+	//***** HELPER METHODS *****//
+	private CanonicalValue getCanonicalValue()
+	{
+		CanonicalValue canonical = canonicalValue;
+		if(canonical == null)
+		{
+			canonical = new CanonicalValue(this);
+			canonicalValue = canonical;
+		}
+		return canonical;
+	}
+	
+	/**
+	 * Gets the day a date falls on in the default time zone, counted from 1970-01-01. Two dates are on the same day by this count exactly when
+	 * 	{@link org.apache.commons.lang3.time.DateUtils#isSameDay(Date, Date)} says they are, since the calendar it uses works out the day from the same offset.
+	 * @param date The date to get the day of. Must not be null.
+	 * @return The day number.
+	 */
+	public static long toLocalDay(Date date)
+	{
+		long time = date.getTime();
+		return Math.floorDiv(time + TimeZone.getDefault().getOffset(time), MILLIS_PER_DAY);
+	}
+	
+	/**
+	 * Folds the case of text the same way {@link String#equalsIgnoreCase(String)} compares it, one character at a time,
+	 * 	so that two strings are equal ignoring case exactly when their folded forms are equal.
+	 */
+	private static String foldCase(String text)
+	{
+		if(text == null)
+			return null;
+		char[] folded = new char[text.length()];
+		for(int i = 0; i < folded.length; i++)
+			folded[i] = Character.toLowerCase(Character.toUpperCase(text.charAt(i)));
+		return new String(folded);
+	}
+	
+	/**
+	 * Gets a shared copy of a short case-folded text value from {@link #FOLDED_TEXT_CACHE}, if one is there, or puts this one there for the next time.
+	 * @param foldedText The case-folded text. May be null.
+	 * @return An equal string, which is the same object as for other recent components with the same text, if the text is short enough to be shared.
+	 */
+	private static String shareFoldedText(String foldedText)
+	{
+		if(foldedText == null || foldedText.length() > MAX_CACHED_TEXT_LENGTH)
+			return foldedText;
+		
+		int slot = foldedText.hashCode() & (FOLDED_TEXT_CACHE_SIZE - 1);
+		String cached = FOLDED_TEXT_CACHE[slot];
+		if(foldedText.equals(cached))
+			return cached;
+		FOLDED_TEXT_CACHE[slot] = foldedText;
+		return foldedText;
+	}
+	
+	//***** HELPER CLASSES *****//
+	/**
+	 * A component value in a form that can be checked for emptiness and equality without any conversion,
+	 * 	giving exactly the same answers as {@link ComponentType#isValueEmpty(String, BigDecimal, Date)} and {@link ComponentType#areValuesEqual(String, BigDecimal, Date, String, BigDecimal, Date)}.
+	 * 	Text is case-folded, numbers have their trailing zeros stripped (so 2.50 and 2.5 are the same), and dates are reduced to the day they fall on.
+	 */
+	private static final class CanonicalValue
+	{
+		private final ComponentType componentType;
+		private final boolean empty;
+		/** For text and comment components, the case-folded text. Short text component values are often repeated, so these are shared through {@link ComponentValue#FOLDED_TEXT_CACHE}. */
+		private final String foldedText;
+		/** For numeric and year components, the unscaled value of the number with its trailing zeros stripped, if that fits in a long. */
+		private final long unscaledNumber;
+		/** For numeric and year components, the scale of the number with its trailing zeros stripped, if its unscaled value fits in a long. */
+		private final int numberScale;
+		/** For numeric and year components, the number with its trailing zeros stripped, if its unscaled value is too big for a long. */
+		private final BigDecimal largeNumber;
+		/** True if there is a date value, even if it is the AS400 default date. */
+		private final boolean hasDay;
+		/** The day the date value falls on, as worked out by {@link ComponentValue#toLocalDay(Date)}. */
+		private final long day;
+		
+		private CanonicalValue(ComponentValue value)
+		{
+			this.componentType = value.componentType;
+			
+			String foldedText = null;
+			long unscaledNumber = 0;
+			int numberScale = 0;
+			BigDecimal largeNumber = null;
+			switch(componentType)
+			{
+			case TEXT:
+				foldedText = shareFoldedText(foldCase(value.textValue));
+				break;
+			case COMMENT:
+				foldedText = foldCase(value.textValue);
+				break;
+			case NUMERIC:
+			case YEAR:
+				if(value.numericValue != null && value.numericValue.signum() != 0)
+				{
+					BigDecimal stripped = value.numericValue.stripTrailingZeros();
+					if(stripped.unscaledValue().bitLength() < Long.SIZE)
+					{
+						unscaledNumber = stripped.unscaledValue().longValue();
+						numberScale = stripped.scale();
+					}
+					else
+						largeNumber = stripped;
+				}
+				break;
+			case DATE:
+				break;
+			default:
+				throw new IllegalStateException("Unrecognized component type: " + componentType);
+			}
+			
+			this.empty = componentType.isValueEmpty(value.textValue, value.numericValue, value.dateValue);
+			this.foldedText = foldedText;
+			this.unscaledNumber = unscaledNumber;
+			this.numberScale = numberScale;
+			this.largeNumber = largeNumber;
+			this.hasDay = value.dateValue != null;
+			this.day = hasDay ? toLocalDay(value.dateValue) : 0;
+		}
+		
+		/**
+		 * Checks if two values are equal, the same way {@link ComponentType#areValuesEqual(String, BigDecimal, Date, String, BigDecimal, Date)} would for this value's component type.
+		 */
+		private boolean isEqualTo(CanonicalValue other)
+		{
+			switch(componentType)
+			{
+			case TEXT:
+			case COMMENT:
+				return Objects.equals(foldedText, other.foldedText);
+			case NUMERIC:
+			case YEAR:
+				if(empty || other.empty)
+					return empty == other.empty;
+				return unscaledNumber == other.unscaledNumber && numberScale == other.numberScale && Objects.equals(largeNumber, other.largeNumber);
+			case DATE:
+				//Empty includes 0001-01-01, which is treated as though it is null
+				if(empty || other.empty)
+					return empty == other.empty;
+				return day == other.day;
+			default:
+				throw new IllegalStateException("Unrecognized component type: " + componentType);
+			}
+		}
+	}
+	
+	/** A component value rendered as a string, along with the number of decimal places it was rendered with. */
+	private static final class RenderedValue
+	{
+		private final Integer decimalPositions;
+		private final String text;
+		
+		private RenderedValue(Integer decimalPositions, String text)
+		{
+			this.decimalPositions = decimalPositions;
+			this.text = text;
+		}
 	}
 	
 	//***** DEFAULT ACCESSORS *****//
@@ -0,0 +1,199 @@
+/**
+ * @author john.shiffler (600139252)
+ */
+package com.penske.apps.smccore.component.domain;
+
+import java.math.BigDecimal;
+import java.text.DecimalFormat;
+import java.text.ParseException;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import com.penske.apps.smccore.base.util.DateUtil;
+
+/**
+ * Parses the values of numeric and date components, the way {@link ComponentValue} always has, but without creating a new number formatter or set of date parsers for every value.
+ * 	The values that come out of the database are almost always in one simple form (ex: "1234.5", "1,234", "2018-03-15", "03/15/2018"), so those are parsed by hand.
+ * 	Anything else is handed to the original parsers, so the results are always exactly the same as they were, including any odd cases those parsers accept.
+ */
+final class ComponentValueParser
+{
+	/** Longer numbers than this could overflow a double, so they are left to the original parser. */
+	private static final int MAX_FAST_NUMBER_LENGTH = 300;
+
+	private ComponentValueParser() {}
+
+	/**
+	 * Parses a number the same way as {@link #parseNumberWithFormat(String)}.
+	 * @param value The text to parse. Must not be blank.
+	 * @return The number.
+	 * @throws ParseException If the value doesn't start with a number.
+	 */
+	static BigDecimal parseNumber(String value) throws ParseException
+	{
+		BigDecimal result = parseSimpleNumber(value);
+		return result != null ? result : parseNumberWithFormat(value);
+	}
+
+	/**
+	 * Parses a date the same way as {@link DateUtil#parseDate(String)}.
+	 * @param value The text to parse. Must not be blank.
+	 * @return The date, or null if the value is not a date.
+	 */
+	static Date parseDate(String value)
+	{
+		Date result = parseSimpleDate(value);
+		return result != null ? result : DateUtil.parseDate(value);
+	}
+
+	/**
+	 * Parses a number with a US number format. This is how numbers have always been parsed, and is what {@link #parseNumber(String)} does for any value it can't parse by hand.
+	 * 	Note that the format parses as much of the value as it can, so ex: "12ABC" is 12, and it gives back a whole number (ex: "2.0" is 2, not 2.0) if it can.
+	 * @param value The text to parse.
+	 * @return The number.
+	 * @throws ParseException If the value doesn't start with a number.
+	 */
+	static BigDecimal parseNumberWithFormat(String value) throws ParseException
+	{
+		Number number = DecimalFormat.getNumberInstance(Locale.US).parse(value);
+		return new BigDecimal(number.toString());
+	}
+
+	/**
+	 * Parses a plain number: an optional minus sign, digits with single commas between them, and an optional decimal point followed by more digits (ex: "-1,234.50").
+	 * 	Like the number format, a number with no fraction (or a fraction of all zeros) that fits in a long is a whole number, and any other number is a double.
+	 * @param value The text to parse.
+	 * @return The number, or null if the value isn't a plain number, or is a plain number the number format treats specially (negative zero, or a whole number too big for a long).
+	 */
+	static BigDecimal parseSimpleNumber(String value)
+	{
+		int length = value.length();
+		if(length == 0 || length > MAX_FAST_NUMBER_LENGTH)
+			return null;
+
+		int position = 0;
+		boolean negative = value.charAt(0) == '-';
+		if(negative)
+			position++;
+		int integerStart = position;
+
+		//Accumulated as a negative number, since that has room for Long.MIN_VALUE
+		long wholeValue = 0;
+		boolean overflow = false;
+		boolean hasGrouping = false;
+		for(; position < length; position++)
+		{
+			char ch = value.charAt(position);
+			if(isDigit(ch))
+			{
+				int digit = ch - '0';
+				if(wholeValue < (Long.MIN_VALUE + digit) / 10)
+					overflow = true;
+				else
+					wholeValue = wholeValue * 10 - digit;
+			}
+			else if(ch == ',')
+			{
+				//A comma has to sit between two digits. Anything else is left to the number format.
+				if(position == integerStart || position + 1 >= length || !isDigit(value.charAt(position + 1)))
+					return null;
+				hasGrouping = true;
+			}
+			else
+				break;
+		}
+		if(position == integerStart)
+			return null;
+
+		boolean hasFraction = false;
+		if(position < length)
+		{
+			if(value.charAt(position) != '.' || position + 1 == length)
+				return null;
+			for(position++; position < length; position++)
+			{
+				char ch = value.charAt(position);
+				if(!isDigit(ch))
+					return null;
+				hasFraction |= ch != '0';
+			}
+		}
+
+		if(hasFraction)
+		{
+			String digits = hasGrouping ? value.replace(",", "") : value;
+			return BigDecimal.valueOf(Double.parseDouble(digits));
+		}
+
+		if(overflow || (!negative && wholeValue == Long.MIN_VALUE) || (negative && wholeValue == 0))
+			return null;
+		return BigDecimal.valueOf(negative ? wholeValue : -wholeValue);
+	}
+
+	/**
+	 * Parses a date in exactly the ISO (ex: "2018-03-15") or US (ex: "03/15/2018") form, with a 4-digit year.
+	 * 	The date is built with a lenient calendar, exactly as the original parsers do, so ex: "2018-02-30" is March 2nd, just as it always was.
+	 * @param value The text to parse.
+	 * @return The date, or null if the value isn't in one of those forms, or has a US year below 100, which the original parsers treat as a 2-digit year.
+	 */
+	static Date parseSimpleDate(String value)
+	{
+		if(value.length() != 10)
+			return null;
+
+		int year;
+		int month;
+		int day;
+		if(value.charAt(4) == '-' && value.charAt(7) == '-')
+		{
+			year = parseDigits(value, 0, 4);
+			month = parseDigits(value, 5, 7);
+			day = parseDigits(value, 8, 10);
+		}
+		else if(value.charAt(2) == '/' && value.charAt(5) == '/')
+		{
+			month = parseDigits(value, 0, 2);
+			day = parseDigits(value, 3, 5);
+			year = parseDigits(value, 6, 10);
+			if(year < 100)
+				return null;
+		}
+		else
+			return null;
+
+		if(year < 0 || month < 0 || day < 0)
+			return null;
+
+		Calendar calendar = Calendar.getInstance(TimeZone.getDefault(), Locale.getDefault());
+		calendar.clear();
+		calendar.setLenient(true);
+		calendar.set(Calendar.YEAR, year);
+		calendar.set(Calendar.MONTH, month - 1);
+		calendar.set(Calendar.DAY_OF_MONTH, day);
+		return calendar.getTime();
+	}
+
+	//***** HELPER METHODS *****//
+	private static boolean isDigit(char ch)
+	{
+		return ch >= '0' && ch <= '9';
+	}
+
+	/**
+	 * @return The number made of the digits from {@code start} (inclusive) to {@code end} (exclusive), or -1 if any of them isn't a digit.
+	 */
+	private static int parseDigits(String value, int start, int end)
+	{
+		int result = 0;
+		for(int i = start; i < end; i++)
+		{
+			char ch = value.charAt(i);
+			if(!isDigit(ch))
+				return -1;
+			result = result * 10 + (ch - '0');
+		}
+		return result;
+	}
+}
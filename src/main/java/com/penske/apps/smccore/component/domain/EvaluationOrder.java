@@ -0,0 +1,322 @@
+/**
+ * @author john.shiffler (600139252)
+ */
+package com.penske.apps.smccore.component.domain;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.penske.apps.smccore.component.engine.ComponentVisibilityFilterData;
+
+/**
+ * Decides what order to check the criteria in each group, and the groups in each rule, based on how they have turned out so far, and evaluates rules in that order.
+ * 	Rules are written in whatever order makes sense to the business, but both ANDs and ORs stop at the first part that decides the answer,
+ * 	so checking the cheap parts that usually decide it first saves evaluating the rest.
+ * The order only ever changes how quickly an answer is found, never what the answer is, or which exception is thrown.
+ * 	Criteria whose operator doesn't apply to the component's type can throw an exception, so if one of those is reached, evaluation falls back to the written order.
+ *
+ * The statistics the order is worked out from are kept in this object, not on the rules, since rules are shared by the whole application (ex: through the template rule cache),
+ * 	and evaluated on many threads at once. Each run of the rules gets its own instance, so the order rules are checked in only depends on what happened earlier in that same run.
+ * 	This is not thread-safe.
+ * This class is intended primarily for use inside the rules engine.
+ */
+public final class EvaluationOrder
+{
+	/** How many times a group or rule is evaluated between checks of whether its parts should be put in a different order. Low enough that a single run of the rules gets some use out of it. */
+	static final int REORDER_INTERVAL = 16;
+	/** The most results to keep statistics on before halving them, so that recent results count for more than old ones. */
+	static final int MAX_SAMPLES = 1 << 16;
+
+	/** The statistics for each rule evaluated so far, keyed by rule ID. */
+	private final Map<Integer, RuleStats> statsByRuleId = new HashMap<Integer, RuleStats>();
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString()
+	{
+		return "{EvaluationOrder: " + statsByRuleId.size() + " rules}";
+	}
+
+	//***** MODIFIED ACCESSORS *****//
+	/**
+	 * Tests whether a rule is satisfied, checking first the groups and criteria that have been cheapest and most likely to decide the answer so far in this run.
+	 * 	This gives the same answer as {@link Rule#isSatisfied(ComponentVisibilityFilterData, int)}, and throws the same exceptions.
+	 * 	Each group and criteria that gets checked is counted exactly once, no matter how many ways it takes to get the answer.
+	 * @param rule The rule to evaluate.
+	 * @param componentData The set of all relevant component values, from which the rule will pull the requisite components and compare the values.
+	 * @param masterId The unit master or loadsheet containing the set of components the rule is being evaluated against
+	 * @return True if at least one criteria group in the rule is satisfied. False otherwise.
+	 */
+	public boolean isSatisfied(Rule rule, ComponentVisibilityFilterData componentData, int masterId)
+	{
+		List<RuleCriteriaGroup> groups = rule.getCriteriaGroups();
+		RuleStats stats = statsByRuleId.get(rule.getRuleId());
+		if(stats == null)
+		{
+			stats = new RuleStats(groups);
+			statsByRuleId.put(rule.getRuleId(), stats);
+		}
+
+		int[] order = stats.nextOrder(groups);
+		if(order == null)
+		{
+			for(int i = 0; i < groups.size(); i++)
+			{
+				if(isSatisfied(groups.get(i), stats.groups[i], componentData, masterId))
+					return true;
+			}
+			return false;
+		}
+
+		Boolean satisfied = isSatisfiedInOrder(groups, stats, order, componentData, masterId);
+		if(satisfied != null)
+			return satisfied;
+
+		//Checking the groups in the order they were written always gives the right answer, and throws the right exception, if there is one.
+		// The groups checked above have already been counted, so they aren't counted again here.
+		for(RuleCriteriaGroup group : groups)
+		{
+			if(group.isSatisfied(componentData, masterId))
+				return true;
+		}
+		return false;
+	}
+
+	//***** HELPER METHODS *****//
+	/**
+	 * Checks the criteria groups in the given order, stopping at the first one that is satisfied.
+	 * @param order The positions of the groups in the rule, in the order to check them.
+	 * @return Whether the rule is satisfied, or null if that can't be known without risking an exception.
+	 * 	Checking the groups in the order they were written would stop at an exception from an earlier group before getting to a later one that is satisfied,
+	 * 	so the rule can only be true this way if none of the groups written before the one that made it true could have thrown an exception.
+	 */
+	private Boolean isSatisfiedInOrder(List<RuleCriteriaGroup> groups, RuleStats stats, int[] order, ComponentVisibilityFilterData componentData, int masterId)
+	{
+		for(int i = 0; i < order.length; i++)
+		{
+			int position = order[i];
+			Boolean satisfied = isSatisfiedIfApplicable(groups.get(position), stats.groups[position], componentData, masterId);
+			if(satisfied == null)
+				return null;
+
+			if(satisfied)
+			{
+				for(int j = i + 1; j < order.length; j++)
+				{
+					if(order[j] < position && groups.get(order[j]).mightThrow(componentData, masterId))
+						return null;
+				}
+				return Boolean.TRUE;
+			}
+		}
+		return Boolean.FALSE;
+	}
+
+	/**
+	 * Tests whether a criteria group is satisfied, checking its criteria in the best order found so far, and falling back to the written order if that might throw an exception.
+	 */
+	private boolean isSatisfied(RuleCriteriaGroup group, GroupStats stats, ComponentVisibilityFilterData componentData, int masterId)
+	{
+		Boolean satisfied = isSatisfiedIfApplicable(group, stats, componentData, masterId);
+		if(satisfied != null)
+			return satisfied;
+
+		//The criteria checked so far have already been counted, so the group is checked again in the written order without counting anything.
+		boolean result = group.isSatisfied(componentData, masterId);
+		stats.recordResult(result);
+		return result;
+	}
+
+	/**
+	 * Tests whether a criteria group is satisfied, checking its criteria in the best order found so far, but only if doing so can not possibly throw an exception.
+	 * @return Whether the group is satisfied, or null if that can't be known without risking an exception.
+	 * 	Checking the criteria in the order they were written would stop at an exception from an earlier criteria before getting to a later one that isn't satisfied,
+	 * 	so the group can only be false this way if none of the criteria written before the one that made it false could have thrown an exception.
+	 */
+	private Boolean isSatisfiedIfApplicable(RuleCriteriaGroup group, GroupStats stats, ComponentVisibilityFilterData componentData, int masterId)
+	{
+		List<RuleCriteria> criteriaList = group.getCriteria();
+		int[] order = stats.nextOrder(criteriaList);
+		int count = criteriaList.size();
+		for(int i = 0; i < count; i++)
+		{
+			int position = order == null ? i : order[i];
+			Boolean satisfied = criteriaList.get(position).isSatisfiedIfApplicable(componentData, masterId);
+			if(satisfied == null)
+				return null;
+			stats.recordCriteriaResult(position, satisfied);
+
+			if(!satisfied)
+			{
+				for(int j = i + 1; order != null && j < count; j++)
+				{
+					if(order[j] < position && criteriaList.get(order[j]).mightThrow(componentData, masterId))
+						return null;
+				}
+				stats.recordResult(false);
+				return Boolean.FALSE;
+			}
+		}
+		stats.recordResult(true);
+		return Boolean.TRUE;
+	}
+
+	/**
+	 * Sorts positions by cost, keeping positions with the same cost in their original order.
+	 * @param costs The expected cost of checking each part first, by its original position. Lower is better.
+	 * @return The original positions, in the order they should be checked, or null if they should just be checked in their original order.
+	 */
+	static int[] sortByCost(final double[] costs)
+	{
+		Integer[] positions = new Integer[costs.length];
+		for(int i = 0; i < positions.length; i++)
+			positions[i] = i;
+
+		Arrays.sort(positions, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer o1, Integer o2)
+			{
+				return Double.compare(costs[o1], costs[o2]);
+			}
+		});
+
+		int[] result = new int[positions.length];
+		boolean inOriginalOrder = true;
+		for(int i = 0; i < positions.length; i++)
+		{
+			result[i] = positions[i];
+			inOriginalOrder = inOriginalOrder && result[i] == i;
+		}
+		return inOriginalOrder ? null : result;
+	}
+
+	/**
+	 * @return The order the groups of the given rule are currently checked in, or null if they are checked in the order they were written. Only for testing.
+	 */
+	int[] getGroupOrder(int ruleId)
+	{
+		RuleStats stats = statsByRuleId.get(ruleId);
+		return stats == null ? null : stats.order;
+	}
+
+	/**
+	 * @return The order the criteria in the given group of the given rule are currently checked in, or null if they are checked in the order they were written. Only for testing.
+	 */
+	int[] getCriteriaOrder(int ruleId, int groupPosition)
+	{
+		RuleStats stats = statsByRuleId.get(ruleId);
+		return stats == null ? null : stats.groups[groupPosition].order;
+	}
+
+	//***** HELPER CLASSES *****//
+	/** The order to check a rule's groups in, and the statistics for each of its groups. */
+	private static final class RuleStats
+	{
+		private final GroupStats[] groups;
+		private int evaluationsSinceReorder;
+		/** Positions of the groups, in the order to check them, or null to check them in the order they were written. */
+		private int[] order;
+
+		private RuleStats(List<RuleCriteriaGroup> groupList)
+		{
+			this.groups = new GroupStats[groupList.size()];
+			for(int i = 0; i < groups.length; i++)
+				groups[i] = new GroupStats(groupList.get(i).getCriteria().size());
+		}
+
+		/**
+		 * Gets the order to check the groups in, working it out again from the groups' statistics every {@link EvaluationOrder#REORDER_INTERVAL} evaluations.
+		 * 	This is called exactly once each time the rule is evaluated.
+		 */
+		private int[] nextOrder(List<RuleCriteriaGroup> groupList)
+		{
+			if(groups.length < 2)
+				return null;
+
+			if(++evaluationsSinceReorder >= REORDER_INTERVAL)
+			{
+				evaluationsSinceReorder = 0;
+				double[] costs = new double[groups.length];
+				for(int i = 0; i < costs.length; i++)
+				{
+					//Groups that haven't been evaluated yet are assumed to be satisfied half the time.
+					GroupStats group = groups[i];
+					double satisfiedRate = (group.satisfiedCount + 1.0) / (group.evaluationCount + 2.0);
+					costs[i] = groupList.get(i).getCost() / satisfiedRate;
+				}
+				order = sortByCost(costs);
+			}
+			return order;
+		}
+	}
+
+	/** The order to check a group's criteria in, and how often the group and each of its criteria have been satisfied. */
+	private static final class GroupStats
+	{
+		private final int[] criteriaEvaluations;
+		private final int[] criteriaUnsatisfied;
+		private int evaluationsSinceReorder;
+		private int evaluationCount;
+		private int satisfiedCount;
+		/** Positions of the criteria, in the order to check them, or null to check them in the order they were written. */
+		private int[] order;
+
+		private GroupStats(int criteriaCount)
+		{
+			this.criteriaEvaluations = new int[criteriaCount];
+			this.criteriaUnsatisfied = new int[criteriaCount];
+		}
+
+		/**
+		 * Gets the order to check the criteria in, working it out again from the criteria's statistics every {@link EvaluationOrder#REORDER_INTERVAL} evaluations.
+		 * 	This is called exactly once each time the group is evaluated.
+		 */
+		private int[] nextOrder(List<RuleCriteria> criteriaList)
+		{
+			if(criteriaEvaluations.length < 2)
+				return null;
+
+			if(++evaluationsSinceReorder >= REORDER_INTERVAL)
+			{
+				evaluationsSinceReorder = 0;
+				double[] costs = new double[criteriaEvaluations.length];
+				for(int i = 0; i < costs.length; i++)
+				{
+					//Criteria that haven't been evaluated yet are assumed to be unsatisfied half the time.
+					double unsatisfiedRate = (criteriaUnsatisfied[i] + 1.0) / (criteriaEvaluations[i] + 2.0);
+					costs[i] = criteriaList.get(i).getCost() / unsatisfiedRate;
+				}
+				order = sortByCost(costs);
+			}
+			return order;
+		}
+
+		private void recordResult(boolean satisfied)
+		{
+			//Halve the counts every so often, so they don't overflow, and so that recent results count for more than old ones.
+			if(evaluationCount >= MAX_SAMPLES)
+			{
+				evaluationCount /= 2;
+				satisfiedCount /= 2;
+			}
+			evaluationCount++;
+			if(satisfied)
+				satisfiedCount++;
+		}
+
+		private void recordCriteriaResult(int position, boolean satisfied)
+		{
+			if(criteriaEvaluations[position] >= MAX_SAMPLES)
+			{
+				criteriaEvaluations[position] /= 2;
+				criteriaUnsatisfied[position] /= 2;
+			}
+			criteriaEvaluations[position]++;
+			if(!satisfied)
+				criteriaUnsatisfied[position]++;
+		}
+	}
+}
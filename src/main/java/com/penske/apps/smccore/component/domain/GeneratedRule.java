@@ -0,0 +1,155 @@
+/**
+ * @author john.shiffler (600139252)
+ */
+package com.penske.apps.smccore.component.domain;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.List;
+
+import com.penske.apps.smccore.component.domain.enums.ComponentRuleOperator;
+import com.penske.apps.smccore.component.engine.ComponentModel;
+import com.penske.apps.smccore.component.engine.ComponentVisibilityFilterData;
+
+/**
+ * A rule, generated into a single method handle that evaluates all its criteria groups and criteria in a straight line.
+ * 	Each criteria's component ID and pre-parsed value are bound into the handle as constants, and the ANDs and ORs between them become plain branches,
+ * 	so evaluating the rule doesn't have to walk the lists of groups and criteria, or dispatch through them, each time.
+ * 	The JVM compiles method handles like these into bytecode of their own once they get used enough.
+ *
+ * The answers are exactly the same as {@link Rule#isSatisfied(ComponentVisibilityFilterData, int)}, including any exceptions,
+ * 	since the groups and criteria are always checked in the order they were written, and each criteria is evaluated by its {@link CompiledCriteria}.
+ */
+public final class GeneratedRule
+{
+	/** The type of every handle this builds: (components, master ID) -> satisfied. */
+	private static final MethodType RULE_TYPE = MethodType.methodType(boolean.class, ComponentVisibilityFilterData.class, int.class);
+
+	private static final MethodHandle EVALUATE_CRITERIA;
+	private static final MethodHandle EXISTS_ON_PO;
+	private static final MethodHandle ALWAYS_TRUE;
+	private static final MethodHandle ALWAYS_FALSE;
+	static {
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			EVALUATE_CRITERIA = lookup.findStatic(GeneratedRule.class, "evaluateCriteria", MethodType.methodType(boolean.class, int.class, CompiledCriteria.class, ComponentVisibilityFilterData.class, int.class));
+			EXISTS_ON_PO = lookup.findStatic(GeneratedRule.class, "existsOnPo", MethodType.methodType(boolean.class, int.class, ComponentVisibilityFilterData.class, int.class));
+			ALWAYS_TRUE = MethodHandles.dropArguments(MethodHandles.constant(boolean.class, true), 0, RULE_TYPE.parameterList());
+			ALWAYS_FALSE = MethodHandles.dropArguments(MethodHandles.constant(boolean.class, false), 0, RULE_TYPE.parameterList());
+		} catch(ReflectiveOperationException ex) {
+			throw new ExceptionInInitializerError(ex);
+		}
+	}
+
+	/** The ID of the rule this was generated from. */
+	private final int ruleId;
+	/** The whole rule, with type {@link #RULE_TYPE}. */
+	private final MethodHandle handle;
+
+	private GeneratedRule(int ruleId, MethodHandle handle)
+	{
+		this.ruleId = ruleId;
+		this.handle = handle;
+	}
+
+	/**
+	 * Generates the code for a rule.
+	 * @param rule The rule to generate code for.
+	 * @return The generated rule.
+	 * @throws IllegalStateException If code could not be generated for the rule. The rule can still be evaluated normally if this happens.
+	 */
+	public static GeneratedRule generate(Rule rule)
+	{
+		if(rule == null)
+			throw new IllegalArgumentException("Rule is required to generate code");
+
+		try {
+			//Criteria groups are OR'ed together, so each group only gets checked if the ones before it are false. A rule with no groups is never satisfied.
+			MethodHandle result = ALWAYS_FALSE;
+			List<RuleCriteriaGroup> groups = rule.getCriteriaGroups();
+			for(int i = groups.size() - 1; i >= 0; i--)
+				result = MethodHandles.guardWithTest(generateGroup(groups.get(i)), ALWAYS_TRUE, result);
+			return new GeneratedRule(rule.getRuleId(), result);
+		} catch(RuntimeException ex) {
+			throw new IllegalStateException("Could not generate code for rule " + rule.getRuleId() + ": " + ex.getMessage(), ex);
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString()
+	{
+		return "{Generated Rule " + ruleId + "}";
+	}
+
+	//***** MODIFIED ACCESSORS *****//
+	/**
+	 * Tests whether the rule is satisfied. Equivalent to {@link Rule#isSatisfied(ComponentVisibilityFilterData, int)}.
+	 * @param componentData The set of all relevant component values, from which the rule will pull the requisite components and compare the values.
+	 * @param masterId The unit master or loadsheet containing the set of components this rule is being evaluated against
+	 * @return True if at least one criteria group in the rule is satisfied. False otherwise.
+	 */
+	public boolean isSatisfied(ComponentVisibilityFilterData componentData, int masterId)
+	{
+		try {
+			return (boolean) handle.invokeExact(componentData, masterId);
+		} catch(RuntimeException | Error ex) {
+			throw ex;
+		} catch(Throwable ex) {
+			//None of the methods the handle calls throw checked exceptions, so this should never happen.
+			throw new IllegalStateException("Unexpected exception evaluating generated rule " + ruleId, ex);
+		}
+	}
+
+	//***** HELPER METHODS *****//
+	/**
+	 * Criteria in a group are AND'ed together, so each one only gets checked if the ones before it are true. A group with no criteria is always satisfied.
+	 */
+	private static MethodHandle generateGroup(RuleCriteriaGroup group)
+	{
+		MethodHandle result = ALWAYS_TRUE;
+		List<RuleCriteria> criteriaList = group.getCriteria();
+		for(int i = criteriaList.size() - 1; i >= 0; i--)
+			result = MethodHandles.guardWithTest(generateCriteria(criteriaList.get(i)), result, ALWAYS_FALSE);
+		return result;
+	}
+
+	private static MethodHandle generateCriteria(RuleCriteria criteria)
+	{
+		CompiledCriteria compiled = criteria.getCompiledCriteria();
+		if(compiled.getOperator() == ComponentRuleOperator.EXISTS_ON_PO)
+			return MethodHandles.insertArguments(EXISTS_ON_PO, 0, criteria.getComponentId());
+		return MethodHandles.insertArguments(EVALUATE_CRITERIA, 0, criteria.getComponentId(), compiled);
+	}
+
+	/**
+	 * The same as {@link RuleCriteria#isSatisfied(ComponentVisibilityFilterData, int)}, with the criteria's parts passed in.
+	 */
+	private static boolean evaluateCriteria(int componentId, CompiledCriteria compiled, ComponentVisibilityFilterData componentData, int masterId)
+	{
+		ComponentModel component = componentData.getSingleComponentForRules(componentId, masterId);
+		if(component == null)
+			return false;
+		return compiled.evaluate(component);
+	}
+
+	/**
+	 * The same as {@link RuleCriteria#isSatisfied(ComponentVisibilityFilterData, int)} for a criteria with the {@link ComponentRuleOperator#EXISTS_ON_PO} operator,
+	 * 	which doesn't need to look at the component's type.
+	 */
+	private static boolean existsOnPo(int componentId, ComponentVisibilityFilterData componentData, int masterId)
+	{
+		ComponentModel component = componentData.getSingleComponentForRules(componentId, masterId);
+		if(component == null)
+			return false;
+		ComponentValue componentValue = component.getComponentValue();
+		return componentValue != null && !componentValue.isValueEmpty();
+	}
+
+	//***** DEFAULT ACCESSORS *****//
+	public int getRuleId()
+	{
+		return ruleId;
+	}
+}
@@ -36,11 +36,15 @@ public class Rule
 	private RuleType ruleType;
 	/** The criteria groups that are evaluated as part of evaluating this rule. */
 	private List<RuleCriteriaGroup> criteriaGroupList = new ArrayList<RuleCriteriaGroup>();
+	/** This rule, generated into straight-line code. Built lazily, the first time it is asked for, since MyBatis populates this object by reflection rather than through a constructor. */
+	private transient volatile GeneratedRule generatedRule;
+	/** True if code could not be generated for this rule, so that it isn't tried again every time the rule is evaluated. */
+	private transient volatile boolean generationFailed;
 
 	/** Null constructor - MyBatis only */
 	protected Rule() {}
 
-	/** Package-private constructor - only for use with the {@link RuleBuilder}. */
+	/** Package-private constructor - only for use with the {@link RuleBuilder} and {@link RuleSnapshotCodec}. */
 	Rule(int ruleId, int templateId, String name, String description, RuleType ruleType, List<RuleCriteriaGroup> criteriaGroupList)
 	{
 		if(StringUtils.isBlank(name))
@@ -98,6 +102,45 @@ public class Rule
 		return new RuleResult(this, true, satisfied, null, groupResults);
 	}
 	
+	/**
+	 * Tests whether this rule is satisfied, without recording how each criteria group and criteria was evaluated.
+	 * 	This gives the same answer as {@link #evaluate(ComponentVisibilityFilterData, int)}, and throws the same exceptions, but doesn't build any result objects.
+	 * 	Groups and criteria are always checked in the order they were written. To check the ones that have been cheapest and most likely to decide the answer first,
+	 * 	use {@link EvaluationOrder#isSatisfied(Rule, ComponentVisibilityFilterData, int)} instead.
+	 * @param componentData The set of all relevant component values, from which this rule will pull the requisite components and compare the values.
+	 * @param masterId The unit master or loadsheet containing the set of components this rule is being evaluated against
+	 * @return True if at least one criteria group in this rule is satisfied. False otherwise.
+	 */
+	public boolean isSatisfied(ComponentVisibilityFilterData componentData, int masterId)
+	{
+		for(RuleCriteriaGroup group : criteriaGroupList)
+		{
+			if(group.isSatisfied(componentData, masterId))
+				return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Gets this rule as generated code, generating it the first time it is needed.
+	 * Generating is idempotent, so two threads racing to build it will just produce equivalent objects.
+	 * @return The generated form of this rule, or null if code could not be generated for it, in which case the rule should just be evaluated normally.
+	 */
+	public GeneratedRule getGeneratedRule()
+	{
+		GeneratedRule result = generatedRule;
+		if(result == null && !generationFailed)
+		{
+			try {
+				result = GeneratedRule.generate(this);
+				generatedRule = result;
+			} catch(IllegalStateException ex) {
+				generationFailed = true;
+			}
+		}
+		return result;
+	}
+	
 	/**
 	 * @return the criteriaGroups
 	 */
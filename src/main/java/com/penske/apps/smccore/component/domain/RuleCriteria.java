@@ -4,6 +4,7 @@
 package com.penske.apps.smccore.component.domain;
 
 import com.penske.apps.smccore.component.domain.enums.ComponentRuleOperator;
+import com.penske.apps.smccore.component.domain.enums.ComponentType;
 import com.penske.apps.smccore.component.engine.ComponentModel;
 import com.penske.apps.smccore.component.engine.ComponentVisibilityFilterData;
 import com.penske.apps.smccore.component.engine.RuleResult;
@@ -28,21 +29,34 @@ public class RuleCriteria
 	private ComponentRuleOperator operator;
 	/** The static value that will be compared to the component's value when evaluating this criteria. */
 	private String componentValue;
+	/** The type of the component this criteria reads, as saved with the criteria, or null if it isn't known (ex: the criteria was made with a {@link RuleBuilder}). Kept in snapshots as well. */
+	private ComponentType componentType;
+	/** The operator and component value, pre-parsed for fast evaluation. Built lazily, since MyBatis populates this object by reflection rather than through a constructor. */
+	private transient volatile CompiledCriteria compiledCriteria;
 	
 	/** Null constructor - MyBatis only */
 	protected RuleCriteria() {}
 	
 	/** Package-private constructor - only for use with the {@link RuleBuilder}. */
 	RuleCriteria(int ruleId, int criteriaGroup, int componentId, ComponentRuleOperator operator, String componentValue)
+	{
+		this(null, ruleId, criteriaGroup, componentId, null, operator, componentValue);
+	}
+	
+	/** Package-private constructor - only for use with the {@link RuleSnapshotCodec}, to recreate a criteria exactly as it was loaded. */
+	RuleCriteria(Integer ruleDefId, int ruleId, int criteriaGroup, int componentId, ComponentType componentType, ComponentRuleOperator operator, String componentValue)
 	{
 		if(operator == null)
 			throw new IllegalArgumentException("Operator is required to make a rule criteria (component ID " + componentId + ", rule ID " + ruleId + ")");
 		
+		this.ruleDefId = ruleDefId;
 		this.ruleId = ruleId;
 		this.criteriaGroup = criteriaGroup;
 		this.componentId = componentId;
+		this.componentType = componentType;
 		this.operator = operator;
 		this.componentValue = componentValue;
+		this.compiledCriteria = CompiledCriteria.compile(operator, componentValue);
 	}
 
 	/** {@inheritDoc} */
@@ -75,10 +89,103 @@ public class RuleCriteria
 				return new RuleCriteriaResult(this, componentForDisplay, true, false, RuleResult.COMPONENT_NOT_VISIBLE);
 		}
 		
-		boolean satisfied = operator.evaluate(component, componentValue);
+		boolean satisfied = getCompiledCriteria().evaluate(component);
 		return new RuleCriteriaResult(this, component, true, satisfied, null);
 	}
 	
+	/**
+	 * Tests whether this criteria is satisfied or not, without building a result object to explain why.
+	 * 	This gives the same answer as {@link #evaluate(ComponentVisibilityFilterData, int)}.
+	 * @param componentData The set of all relevant component values, from which this criteria will pull the requisite component and compare the value.
+	 * @param masterId The unit master or loadsheet containing the set of components this rule is being evaluated against
+	 * @return True if the criteria is satisfied. False if it is not, or if its component is missing or hidden from the rules.
+	 */
+	public boolean isSatisfied(ComponentVisibilityFilterData componentData, int masterId)
+	{
+		ComponentModel component = componentData.getSingleComponentForRules(componentId, masterId);
+		if(component == null)
+			return false;
+		return getCompiledCriteria().evaluate(component);
+	}
+	
+	/**
+	 * Tests whether this criteria is satisfied, but only if doing so can not possibly throw an exception.
+	 * 	Criteria whose operator doesn't apply to the component's type (or whose value isn't the right type) may throw an exception when evaluated,
+	 * 	so they have to be evaluated in the order the rule was written, to get the same exception (or not) that evaluating them in that order would.
+	 * @param componentData The set of all relevant component values, from which this criteria will pull the requisite component and compare the value.
+	 * @param masterId The unit master or loadsheet containing the set of components this rule is being evaluated against
+	 * @return The same thing {@link #isSatisfied(ComponentVisibilityFilterData, int)} would return, or null if evaluating the criteria might throw an exception.
+	 */
+	Boolean isSatisfiedIfApplicable(ComponentVisibilityFilterData componentData, int masterId)
+	{
+		ComponentModel component = componentData.getSingleComponentForRules(componentId, masterId);
+		if(component == null)
+			return Boolean.FALSE;
+		
+		CompiledCriteria compiled = getCompiledCriteria();
+		if(!compiled.isApplicableTo(component.getComponentMaster().getComponentType()))
+			return null;
+		return compiled.evaluate(component);
+	}
+	
+	/**
+	 * Checks whether evaluating this criteria might throw an exception, without actually evaluating it.
+	 * @param componentData The set of all relevant component values.
+	 * @param masterId The unit master or loadsheet containing the set of components this rule is being evaluated against
+	 * @return True if {@link #isSatisfied(ComponentVisibilityFilterData, int)} might throw an exception for these components.
+	 */
+	boolean mightThrow(ComponentVisibilityFilterData componentData, int masterId)
+	{
+		ComponentModel component = componentData.getSingleComponentForRules(componentId, masterId);
+		return component != null && !getCompiledCriteria().isApplicableTo(component.getComponentMaster().getComponentType());
+	}
+	
+	/**
+	 * Gets a rough measure of how expensive this criteria is to evaluate: checking if a value exists is cheap, comparing text costs more,
+	 * 	and comparing numbers or dates costs the most, since the component's value has to be converted first.
+	 * @return The relative cost of evaluating this criteria.
+	 */
+	int getCost()
+	{
+		CompiledCriteria compiled = getCompiledCriteria();
+		switch(compiled.getOperator())
+		{
+		case EXISTS_ON_PO:
+			return 1;
+		case EQUAL:
+			return compiled.getNumericOperand() == null && compiled.getDateOperand() == null ? 2 : 4;
+		default:
+			return 4;
+		}
+	}
+	
+	/**
+	 * Checks whether this criteria's operator and value can be compared to the type of component it was saved with, so that mismatches can be found when rules are loaded.
+	 * 	A criteria that fails this check will throw an exception when it is evaluated against a component with a value.
+	 * @return True if the operator and value apply to the component's type, or if the component's type isn't known.
+	 * @see CompiledCriteria#isApplicableTo(ComponentType)
+	 */
+	public boolean isApplicableToComponentType()
+	{
+		return componentType == null || getCompiledCriteria().isApplicableTo(componentType);
+	}
+	
+	/**
+	 * Gets the pre-parsed form of this criteria's operator and value, compiling it the first time it is needed.
+	 * Compiling is idempotent, so two threads racing to build it will just produce equivalent objects.
+	 * @return The compiled form of this criteria.
+	 */
+	public CompiledCriteria getCompiledCriteria()
+	{
+		CompiledCriteria result = compiledCriteria;
+		if(result == null)
+		{
+			result = CompiledCriteria.compile(operator, componentValue);
+			compiledCriteria = result;
+		}
+		return result;
+	}
+	
 	//***** DEFAULT ACCESSORS *****//
 	/**
 	 * @return the ruleDefId
@@ -127,4 +234,12 @@ public class RuleCriteria
 	{
 		return criteriaGroup;
 	}
+
+	/**
+	 * @return the componentType
+	 */
+	public ComponentType getComponentType()
+	{
+		return componentType;
+	}
 }
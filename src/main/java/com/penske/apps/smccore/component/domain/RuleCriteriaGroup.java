@@ -32,7 +32,7 @@ public class RuleCriteriaGroup
 	/** Null constructor - MyBatis only */
 	protected RuleCriteriaGroup() {}
 
-	/** Package-private constructor - only for use with the {@link RuleBuilder}. */
+	/** Package-private constructor - only for use with the {@link RuleBuilder} and {@link RuleSnapshotCodec}. */
 	RuleCriteriaGroup(int ruleId, int criteriaGroup, List<RuleCriteria> criteriaList)
 	{
 		if(criteriaList == null)
@@ -92,6 +92,51 @@ public class RuleCriteriaGroup
 		return new RuleCriteriaGroupResult(this, true, satisfied, null, criteriaResults);
 	}
 	
+	/**
+	 * Tests whether this criteria group is satisfied, without recording how each criteria was evaluated.
+	 * 	This gives the same answer as {@link #evaluate(ComponentVisibilityFilterData, int)}, and throws the same exceptions, but doesn't build any result objects.
+	 * @param componentData The set of all relevant component values, from which this criteria group will pull the requisite components and compare the values.
+	 * @param masterId The unit master or loadsheet containing the set of components this rule is being evaluated against
+	 * @return True if all criteria in this group are satisfied. False otherwise.
+	 */
+	public boolean isSatisfied(ComponentVisibilityFilterData componentData, int masterId)
+	{
+		for(RuleCriteria criteria : criteriaList)
+		{
+			if(!criteria.isSatisfied(componentData, masterId))
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Checks whether evaluating this criteria group might throw an exception, without actually evaluating it.
+	 * @param componentData The set of all relevant component values.
+	 * @param masterId The unit master or loadsheet containing the set of components this rule is being evaluated against
+	 * @return True if {@link #isSatisfied(ComponentVisibilityFilterData, int)} might throw an exception for these components.
+	 */
+	boolean mightThrow(ComponentVisibilityFilterData componentData, int masterId)
+	{
+		for(RuleCriteria criteria : criteriaList)
+		{
+			if(criteria.mightThrow(componentData, masterId))
+				return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Gets a rough measure of how expensive this criteria group is to evaluate, if all its criteria have to be checked.
+	 * @return The relative cost of evaluating this group.
+	 */
+	int getCost()
+	{
+		int cost = 0;
+		for(RuleCriteria criteria : criteriaList)
+			cost += criteria.getCost();
+		return cost;
+	}
+	
 	/**
 	 * @return the criteria
 	 */
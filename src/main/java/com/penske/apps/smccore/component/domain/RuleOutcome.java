@@ -56,6 +56,20 @@ public class RuleOutcome
 		this.visibility = visibility;
 	}
 
+	/** Package-private constructor - only for use with the {@link RuleSnapshotCodec}, to recreate an outcome exactly as it was loaded. */
+	RuleOutcome(Integer cmpRulesId, int templateId, int ruleId, int componentId, int priority, Visibility visibility)
+	{
+		if(visibility == null)
+			throw new IllegalArgumentException("Visibility is required for RuleOutcome (Rule ID " + ruleId + ", Component ID " + componentId + ", Template ID " + templateId + ")");
+		
+		this.cmpRulesId = cmpRulesId;
+		this.templateId = templateId;
+		this.ruleId = ruleId;
+		this.componentId = componentId;
+		this.priority = priority;
+		this.visibility = visibility;
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public String toString()
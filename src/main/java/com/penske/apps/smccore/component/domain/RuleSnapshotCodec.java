@@ -0,0 +1,254 @@
+/**
+ * @author john.shiffler (600139252)
+ */
+package com.penske.apps.smccore.component.domain;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.penske.apps.smccore.component.domain.enums.ComponentRuleOperator;
+import com.penske.apps.smccore.component.domain.enums.ComponentType;
+import com.penske.apps.smccore.component.domain.enums.RuleType;
+import com.penske.apps.smccore.component.domain.enums.Visibility;
+
+/**
+ * Writes rules and rule outcomes to a compact binary form, and reads them back, so that they can be saved somewhere local and reloaded without going to the database.
+ * 	Everything that was loaded from the database is written, including the database IDs, and rules read back have their criteria compiled right away,
+ * 	so they are ready to run as soon as they are read. The statistics rules keep about how their criteria turn out are not written, and start over.
+ * 	Enum values are written by name, so that reordering an enum doesn't change what gets read back.
+ * 	Each rule and outcome is checked before any of it is written, so one that can't be read back (ex: missing its operator, or with a string too long to write) is rejected with a description of what is wrong,
+ * 	instead of failing partway through.
+ * This only handles single objects. The layout of the file they go in, and how to tell if it is out of date, is up to the caller.
+ */
+public final class RuleSnapshotCodec
+{
+	/** The most bytes {@link DataOutput#writeUTF(String)} can write for a single string. */
+	private static final int MAX_UTF_LENGTH = 0xFFFF;
+	/** The most bytes {@link DataOutput#writeUTF(String)} uses for a single character. Strings with no more characters than this divides into {@link #MAX_UTF_LENGTH} always fit. */
+	private static final int MAX_UTF_BYTES_PER_CHAR = 3;
+
+	private RuleSnapshotCodec() {}
+
+	/**
+	 * Writes a rule, with all its criteria groups and criteria.
+	 * @param out The output to write to.
+	 * @param rule The rule to write.
+	 * @throws IOException If the rule could not be written, or could not be read back once written. Nothing is written in the second case.
+	 */
+	public static void writeRule(DataOutput out, Rule rule) throws IOException
+	{
+		checkRule(rule);
+
+		out.writeInt(rule.getRuleId());
+		out.writeInt(rule.getTemplateId());
+		writeString(out, rule.getName());
+		writeString(out, rule.getDescription());
+		writeString(out, rule.getRuleType().name());
+
+		List<RuleCriteriaGroup> groups = rule.getCriteriaGroups();
+		out.writeInt(groups.size());
+		for(RuleCriteriaGroup group : groups)
+		{
+			out.writeInt(group.getCriteriaGroup());
+			List<RuleCriteria> criteriaList = group.getCriteria();
+			out.writeInt(criteriaList.size());
+			for(RuleCriteria criteria : criteriaList)
+			{
+				writeInteger(out, criteria.getRuleDefId());
+				out.writeInt(criteria.getComponentId());
+				writeString(out, criteria.getComponentType() == null ? null : criteria.getComponentType().name());
+				writeString(out, criteria.getOperator().name());
+				writeString(out, criteria.getComponentValue());
+			}
+		}
+	}
+
+	/**
+	 * Reads a rule written by {@link #writeRule(DataOutput, Rule)}.
+	 * @param in The input to read from.
+	 * @return The rule, with its criteria compiled.
+	 * @throws IOException If the rule could not be read, or what was read is not a valid rule.
+	 */
+	public static Rule readRule(DataInput in) throws IOException
+	{
+		int ruleId = in.readInt();
+		int templateId = in.readInt();
+		String name = readString(in);
+		String description = readString(in);
+		RuleType ruleType = readEnum(in, RuleType.class);
+
+		int groupCount = readCount(in);
+		List<RuleCriteriaGroup> groups = new ArrayList<RuleCriteriaGroup>(groupCount);
+		for(int i = 0; i < groupCount; i++)
+		{
+			int criteriaGroup = in.readInt();
+			int criteriaCount = readCount(in);
+			List<RuleCriteria> criteriaList = new ArrayList<RuleCriteria>(criteriaCount);
+			for(int j = 0; j < criteriaCount; j++)
+			{
+				Integer ruleDefId = readInteger(in);
+				int componentId = in.readInt();
+				ComponentType componentType = readOptionalEnum(in, ComponentType.class);
+				ComponentRuleOperator operator = readEnum(in, ComponentRuleOperator.class);
+				String componentValue = readString(in);
+				criteriaList.add(new RuleCriteria(ruleDefId, ruleId, criteriaGroup, componentId, componentType, operator, componentValue));
+			}
+			groups.add(new RuleCriteriaGroup(ruleId, criteriaGroup, criteriaList));
+		}
+
+		try {
+			return new Rule(ruleId, templateId, name, description, ruleType, groups);
+		} catch(IllegalArgumentException ex) {
+			throw new IOException("Invalid rule " + ruleId + " in snapshot: " + ex.getMessage(), ex);
+		}
+	}
+
+	/**
+	 * Writes a rule outcome.
+	 * @param out The output to write to.
+	 * @param outcome The outcome to write.
+	 * @throws IOException If the outcome could not be written, or could not be read back once written. Nothing is written in the second case.
+	 */
+	public static void writeOutcome(DataOutput out, RuleOutcome outcome) throws IOException
+	{
+		if(outcome.getVisibility() == null)
+			throw new IOException("Can not write outcome for rule " + outcome.getRuleId() + " and component " + outcome.getComponentId() + " to snapshot. It has no visibility.");
+
+		writeInteger(out, outcome.getCmpRulesId());
+		out.writeInt(outcome.getTemplateId());
+		out.writeInt(outcome.getRuleId());
+		out.writeInt(outcome.getComponentId());
+		out.writeInt(outcome.getPriority());
+		writeString(out, outcome.getVisibility().name());
+	}
+
+	/**
+	 * Reads a rule outcome written by {@link #writeOutcome(DataOutput, RuleOutcome)}.
+	 * @param in The input to read from.
+	 * @return The outcome.
+	 * @throws IOException If the outcome could not be read, or what was read is not a valid outcome.
+	 */
+	public static RuleOutcome readOutcome(DataInput in) throws IOException
+	{
+		Integer cmpRulesId = readInteger(in);
+		int templateId = in.readInt();
+		int ruleId = in.readInt();
+		int componentId = in.readInt();
+		int priority = in.readInt();
+		Visibility visibility = readEnum(in, Visibility.class);
+		return new RuleOutcome(cmpRulesId, templateId, ruleId, componentId, priority, visibility);
+	}
+
+	//***** HELPER METHODS *****//
+	/**
+	 * Checks that everything about a rule can be written and read back, before any of it is written.
+	 * @throws IOException If the rule is missing a value that has to be written, or has a string too long to write.
+	 */
+	private static void checkRule(Rule rule) throws IOException
+	{
+		int ruleId = rule.getRuleId();
+		if(rule.getRuleType() == null)
+			throw new IOException("Can not write rule " + ruleId + " to snapshot. It has no rule type.");
+		checkStringLength(rule.getName(), "name", ruleId);
+		checkStringLength(rule.getDescription(), "description", ruleId);
+
+		for(RuleCriteriaGroup group : rule.getCriteriaGroups())
+		{
+			for(RuleCriteria criteria : group.getCriteria())
+			{
+				if(criteria.getOperator() == null)
+					throw new IOException("Can not write rule " + ruleId + " to snapshot. Its criteria on component " + criteria.getComponentId() + " has no operator.");
+				checkStringLength(criteria.getComponentValue(), "criteria value", ruleId);
+			}
+		}
+	}
+
+	/**
+	 * Checks that a string is short enough for {@link DataOutput#writeUTF(String)}, which can only write up to {@link #MAX_UTF_LENGTH} bytes of modified UTF-8.
+	 * @param value The string to check. May be null.
+	 * @param field What the string is, for the error message.
+	 * @param ruleId The rule the string belongs to, for the error message.
+	 * @throws IOException If the string is too long.
+	 */
+	private static void checkStringLength(String value, String field, int ruleId) throws IOException
+	{
+		if(value == null || value.length() <= MAX_UTF_LENGTH / MAX_UTF_BYTES_PER_CHAR)
+			return;
+
+		//Counted the same way writeUTF counts it: nulls and characters above 0x7F take more than one byte
+		long length = 0;
+		for(int i = 0; i < value.length(); i++)
+		{
+			char c = value.charAt(i);
+			if(c >= 0x0001 && c <= 0x007F)
+				length++;
+			else if(c <= 0x07FF)
+				length += 2;
+			else
+				length += 3;
+		}
+		if(length > MAX_UTF_LENGTH)
+			throw new IOException("Can not write rule " + ruleId + " to snapshot. Its " + field + " is " + length + " bytes long, but at most " + MAX_UTF_LENGTH + " bytes can be written.");
+	}
+
+	/**
+	 * Writes a string that may be null. {@link DataOutput#writeUTF(String)} can't write null, so a flag is written ahead of it.
+	 */
+	private static void writeString(DataOutput out, String value) throws IOException
+	{
+		out.writeBoolean(value != null);
+		if(value != null)
+			out.writeUTF(value);
+	}
+
+	private static String readString(DataInput in) throws IOException
+	{
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	private static void writeInteger(DataOutput out, Integer value) throws IOException
+	{
+		out.writeBoolean(value != null);
+		if(value != null)
+			out.writeInt(value);
+	}
+
+	private static Integer readInteger(DataInput in) throws IOException
+	{
+		return in.readBoolean() ? in.readInt() : null;
+	}
+
+	/**
+	 * Reads the number of items in a list, checking that it makes sense, so that a damaged snapshot can't make this try to allocate a huge list.
+	 */
+	private static int readCount(DataInput in) throws IOException
+	{
+		int count = in.readInt();
+		if(count < 0 || count > Short.MAX_VALUE)
+			throw new IOException("Invalid item count in snapshot: " + count);
+		return count;
+	}
+
+	private static <E extends Enum<E>> E readEnum(DataInput in, Class<E> enumClass) throws IOException
+	{
+		E value = readOptionalEnum(in, enumClass);
+		if(value == null)
+			throw new IOException("Missing " + enumClass.getSimpleName() + " value in snapshot");
+		return value;
+	}
+
+	private static <E extends Enum<E>> E readOptionalEnum(DataInput in, Class<E> enumClass) throws IOException
+	{
+		String name = readString(in);
+		if(name == null)
+			return null;
+		try {
+			return Enum.valueOf(enumClass, name);
+		} catch(IllegalArgumentException ex) {
+			throw new IOException("Unknown " + enumClass.getSimpleName() + " value in snapshot: " + name, ex);
+		}
+	}
+}
@@ -0,0 +1,34 @@
+/**
+ * @author john.shiffler (600139252)
+ */
+package com.penske.apps.smccore.component.domain.enums;
+
+/**
+ * A strategy enum describing how the rules engine should re-run rules on each iteration, while it is waiting for component visibilities to settle.
+ * {@link #FULL} and {@link #INCREMENTAL} produce the same components, rule results, and iteration count. They differ only in how much work is repeated from one iteration to the next.
+ * 	The one exception is {@link NotVisibleBehavior#REMOVE_IF_USER_INFLUENCED}, where {@link #INCREMENTAL} re-runs the rules with the user's changes starting from where they settled without them,
+ * 	so it produces the same components and rule results, but its iteration count only covers what the user's changes affected.
+ * {@link #TOPOLOGICAL} produces the same components and rule results for any rules without circular dependencies, but usually in fewer iterations.
+ */
+public enum RuleEvaluationMode
+{
+	/** Evaluate every reachable rule from scratch on every iteration. */
+	FULL,
+	/**
+	 * Evaluate every reachable rule on the first iteration, and on later iterations re-evaluate only the rules whose criteria reference a component
+	 * 	whose visibility changed on the previous iteration. Results for all other rules are carried over, since nothing they depend on has changed.
+	 * With {@link NotVisibleBehavior#REMOVE_IF_USER_INFLUENCED}, the run with the user's changes also starts from the settled run without them,
+	 * 	and only re-evaluates the rules whose criteria reference a component the user actually changed the value of.
+	 * 	If a component the user changed can affect a cycle in the rules, the run with the user's changes starts from scratch instead, the same as {@link #FULL}.
+	 */
+	INCREMENTAL,
+	/**
+	 * Work out ahead of time which components' visibilities depend on which other components, and settle each component's visibility once,
+	 * 	after everything it depends on has been settled. Only components that depend on each other in a cycle are re-run until they stop changing,
+	 * 	and if one of those cycles doesn't settle, the rules that make it up are reported right away, instead of after re-running every rule.
+	 * Rules without any cycles finish in one iteration. For cycles that could settle on more than one result, the result may differ from the other modes,
+	 * 	since the components outside the cycle have already settled by the time the cycle is run.
+	 */
+	TOPOLOGICAL,
+	;
+}
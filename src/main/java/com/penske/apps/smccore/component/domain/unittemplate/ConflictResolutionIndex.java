@@ -0,0 +1,94 @@
+/**
+ * @author john.shiffler (600139252)
+ */
+package com.penske.apps.smccore.component.domain.unittemplate;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.penske.apps.smccore.component.domain.GlobalConflictResolution;
+
+/**
+ * The global conflict resolutions for one unit signature, indexed by the component ID they resolve conflicts for.
+ * 	Every unit with the same unit signature has the same global resolutions, so one of these can be built once and shared by all of them,
+ * 	rather than indexing the same resolutions again for each unit.
+ * 	Each component ID maps to the vendor ID of the PO the component should be required on. Vendor IDs are used instead of master IDs,
+ * 	since units with the same signature have POs to the same vendors, but not the same master IDs.
+ * This object is immutable, so it is safe to share between threads.
+ */
+public final class ConflictResolutionIndex
+{
+	/** The unit signature all the resolutions in this index are for. */
+	private final String unitSignature;
+	/** The vendor ID of the PO the component should be required on, keyed by the component ID the conflict is being resolved for. */
+	private final Map<Integer, Integer> providerVendorIdsByComponentId;
+
+	private ConflictResolutionIndex(String unitSignature, Map<Integer, Integer> providerVendorIdsByComponentId)
+	{
+		this.unitSignature = unitSignature;
+		this.providerVendorIdsByComponentId = Collections.unmodifiableMap(providerVendorIdsByComponentId);
+	}
+
+	/**
+	 * Indexes the global conflict resolutions for a unit signature.
+	 * @param unitSignature The unit signature the resolutions are for.
+	 * @param globalResolutions Optional. All the global conflict resolution rules for this unit signature.
+	 * 	If there is more than one for the same component ID, the last one wins.
+	 * @return The index of the given resolutions.
+	 * @throws IllegalArgumentException If any of the resolutions are for a different unit signature.
+	 */
+	public static ConflictResolutionIndex build(String unitSignature, Collection<GlobalConflictResolution> globalResolutions)
+	{
+		if(StringUtils.isBlank(unitSignature))
+			throw new IllegalArgumentException("Unit signature is required to index global conflict resolutions.");
+		if(globalResolutions == null)
+			globalResolutions = Collections.emptyList();
+
+		Map<Integer, Integer> providerVendorIdsByComponentId = new HashMap<Integer, Integer>();
+		for(GlobalConflictResolution resolution : globalResolutions)
+		{
+			String resolutionSignature = resolution.getUnitSignature();
+			if(!unitSignature.equals(resolutionSignature))
+				throw new IllegalArgumentException("Global conflict resolutions with signature " + resolutionSignature + " are not applicable for global conflict resolver with signature " + unitSignature);
+
+			providerVendorIdsByComponentId.put(resolution.getComponentId(), resolution.getProviderVendorId());
+		}
+		return new ConflictResolutionIndex(unitSignature, providerVendorIdsByComponentId);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString()
+	{
+		return "{ConflictResolutionIndex (signature " + unitSignature + "): " + providerVendorIdsByComponentId.size() + " resolutions}";
+	}
+
+	//***** MODIFIED ACCESSORS *****//
+	/**
+	 * Gets the vendor whose PO a component should be required on, if a global resolution exists for it.
+	 * @param componentId The ID of the component in conflict.
+	 * @return The vendor ID of the PO the component should be required on, or null if there is no global resolution for the component.
+	 */
+	public Integer getProviderVendorId(int componentId)
+	{
+		return providerVendorIdsByComponentId.get(componentId);
+	}
+
+	/**
+	 * @return The number of component IDs with a global resolution.
+	 */
+	public int size()
+	{
+		return providerVendorIdsByComponentId.size();
+	}
+
+	//***** DEFAULT ACCESSORS *****//
+	public String getUnitSignature()
+	{
+		return unitSignature;
+	}
+}
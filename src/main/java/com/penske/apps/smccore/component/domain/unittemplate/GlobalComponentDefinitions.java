@@ -0,0 +1,98 @@
+/**
+ * @author john.shiffler (600139252)
+ */
+package com.penske.apps.smccore.component.domain.unittemplate;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps one shared definition for each version of each global component, so that global components loaded from the database more than once
+ * 	(ex: by separate calls to load a batch of units) all end up sharing the same definition, instead of each load keeping its own.
+ * A "version" of a component is just its details: if a component's details change in the database, the new details get a definition of their own.
+ * 	Old versions are never used again once nothing loads them, and are few enough that they are not worth removing.
+ * This is safe to use from more than one thread at a time.
+ */
+public final class GlobalComponentDefinitions
+{
+	/** The most definitions to keep. Past this, definitions are no longer shared, which is only ever a loss of sharing, never a wrong answer. */
+	private final int maxDefinitions;
+	private final ConcurrentMap<DefinitionKey, GlobalComponentMaster> definitions = new ConcurrentHashMap<DefinitionKey, GlobalComponentMaster>();
+
+	/**
+	 * Creates an empty set of definitions.
+	 * @param maxDefinitions The most definitions to keep.
+	 */
+	public GlobalComponentDefinitions(int maxDefinitions)
+	{
+		if(maxDefinitions < 1)
+			throw new IllegalArgumentException("Must be able to keep at least one global component definition");
+		this.maxDefinitions = maxDefinitions;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString()
+	{
+		return "{Global Component Definitions: " + definitions.size() + " of " + maxDefinitions + "}";
+	}
+
+	//***** MODIFIED ACCESSORS *****//
+	/**
+	 * Gets the shared definition for a global component.
+	 * @param component The global component, as loaded from the database.
+	 * @return The definition already kept for a component with the same details, if there is one. Otherwise, the component's own definition, which is kept for next time.
+	 */
+	public GlobalComponentMaster getDefinition(GlobalComponentMaster component)
+	{
+		GlobalComponentMaster definition = component.getDefinition();
+		DefinitionKey key = new DefinitionKey(definition);
+
+		GlobalComponentMaster existing = definitions.get(key);
+		if(existing != null)
+			return existing;
+		if(definitions.size() >= maxDefinitions)
+			return definition;
+
+		existing = definitions.putIfAbsent(key, definition);
+		return existing == null ? definition : existing;
+	}
+
+	public int size()
+	{
+		return definitions.size();
+	}
+
+	//***** HELPER CLASSES *****//
+	/** Compares global component definitions by their details, rather than by identity. */
+	private static final class DefinitionKey
+	{
+		private final GlobalComponentMaster definition;
+		private final int hashCode;
+
+		private DefinitionKey(GlobalComponentMaster definition)
+		{
+			this.definition = definition;
+			this.hashCode = definition.definitionHashCode();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public int hashCode()
+		{
+			return hashCode;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public boolean equals(Object obj)
+		{
+			if(this == obj)
+				return true;
+			if(!(obj instanceof DefinitionKey))
+				return false;
+			DefinitionKey other = (DefinitionKey) obj;
+			return hashCode == other.hashCode && definition.hasEqualDefinition(other.definition);
+		}
+	}
+}
@@ -3,17 +3,170 @@
  */
 package com.penske.apps.smccore.component.domain.unittemplate;
 
+import java.util.Objects;
+
+import com.penske.apps.smccore.component.domain.enums.ComponentType;
+import com.penske.apps.smccore.component.domain.enums.ConflictStatus;
+import com.penske.apps.smccore.component.domain.enums.Visibility;
+
 /**
- * 
+ * A component that gets added to every unit template, whether the template has it or not (ex: the vehicle-level components).
+ * Global components are loaded from the database once, without a master ID. That loaded object is the component's definition.
+ * 	Each template gets a lightweight copy of it made with {@link #GlobalComponentMaster(GlobalComponentMaster, int)}, which only holds its own master ID,
+ * 	and reads everything else from the definition, so that loading many units doesn't copy the same definition over and over.
  */
-//FIXME: document
 public class GlobalComponentMaster extends UnitComponentMaster
 {
+	/** The definition this is a copy of, or null if this is a definition itself. */
+	private final GlobalComponentMaster definition;
+
 	/** Null constructor - MyBatis only */
-	protected GlobalComponentMaster() {}
-	
+	protected GlobalComponentMaster()
+	{
+		this.definition = null;
+	}
+
+	/**
+	 * Makes a copy of a global component for a particular unit template.
+	 * @param source The global component to copy. If this is itself a copy, the copy shares its definition.
+	 * @param masterId The ID of the unit template the copy belongs to.
+	 */
 	public GlobalComponentMaster(GlobalComponentMaster source, int masterId)
 	{
-		super(source, masterId);
+		super(masterId);
+		this.definition = source.getDefinition();
+	}
+
+	//***** MODIFIED ACCESSORS *****//
+	/**
+	 * @return The definition that this global component reads its details from. This is the object that was loaded from the database, and is shared by every copy of it.
+	 */
+	public GlobalComponentMaster getDefinition()
+	{
+		return definition == null ? this : definition;
+	}
+
+	/**
+	 * Checks if another global component has the same definition as this one. This is much cheaper than comparing all the details,
+	 * 	but only works for components that came from the same definition, such as the ones handed out by {@link GlobalComponentDefinitions#getDefinition(GlobalComponentMaster)}.
+	 * @param other The other global component.
+	 * @return True if both components read their details from the same definition.
+	 */
+	public boolean hasSameDefinition(GlobalComponentMaster other)
+	{
+		return other != null && getDefinition() == other.getDefinition();
+	}
+
+	/**
+	 * Checks if this component's definition has the same details as another one, whether or not they are the same object.
+	 * The master ID and previously-saved values are not part of the definition, so they are not compared.
+	 * @param other The other global component.
+	 * @return True if both components have the same details.
+	 */
+	boolean hasEqualDefinition(GlobalComponentMaster other)
+	{
+		return getComponentId() == other.getComponentId()
+			&& Objects.equals(getFullComponentName(), other.getFullComponentName())
+			&& getComponentType() == other.getComponentType()
+			&& getVisibility() == other.getVisibility()
+			&& Objects.equals(getDecimalPositions(), other.getDecimalPositions())
+			&& Objects.equals(getFieldLength(), other.getFieldLength())
+			&& isAvailableOnOtherPO() == other.isAvailableOnOtherPO()
+			&& isExportToExcel() == other.isExportToExcel()
+			&& isVehicleComponent() == other.isVehicleComponent();
+	}
+
+	/**
+	 * @return A hash code that agrees with {@link #hasEqualDefinition(GlobalComponentMaster)}.
+	 */
+	int definitionHashCode()
+	{
+		return Objects.hash(getComponentId(), getFullComponentName(), getComponentType(), getVisibility(), getDecimalPositions(), getFieldLength(),
+			isAvailableOnOtherPO(), isExportToExcel(), isVehicleComponent());
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String getFullComponentName()
+	{
+		return definition == null ? super.getFullComponentName() : definition.getFullComponentName();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean isIgnoredInConflicts()
+	{
+		return definition == null ? super.isIgnoredInConflicts() : definition.isIgnoredInConflicts();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int getComponentId()
+	{
+		return definition == null ? super.getComponentId() : definition.getComponentId();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String getComponentGroup()
+	{
+		return definition == null ? super.getComponentGroup() : definition.getComponentGroup();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public ComponentType getComponentType()
+	{
+		return definition == null ? super.getComponentType() : definition.getComponentType();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Visibility getVisibility()
+	{
+		return definition == null ? super.getVisibility() : definition.getVisibility();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Integer getDecimalPositions()
+	{
+		return definition == null ? super.getDecimalPositions() : definition.getDecimalPositions();
+	}
+
+	@Override
+	public boolean isAvailableOnOtherPO()
+	{
+		return definition == null ? super.isAvailableOnOtherPO() : definition.isAvailableOnOtherPO();
+	}
+
+	@Override
+	public boolean isExportToExcel()
+	{
+		return definition == null ? super.isExportToExcel() : definition.isExportToExcel();
+	}
+
+	@Override
+	public ConflictStatus getPreviousConflictStatus()
+	{
+		return definition == null ? super.getPreviousConflictStatus() : definition.getPreviousConflictStatus();
+	}
+
+	@Override
+	public boolean isVehicleComponent()
+	{
+		return definition == null ? super.isVehicleComponent() : definition.isVehicleComponent();
+	}
+
+	@Override
+	public Integer getFieldLength()
+	{
+		return definition == null ? super.getFieldLength() : definition.getFieldLength();
+	}
+
+	@Override
+	public UnitComponent getPreviousValues()
+	{
+		return definition == null ? super.getPreviousValues() : definition.getPreviousValues();
 	}
 }
@@ -67,11 +67,20 @@ public class UnitComponentMaster implements ComponentMaster
 		this.masterId = newMasterId;
 	}
 	
+	/**
+	 * Creates a component master that only knows its master ID. Only for subclasses that get everything else from somewhere else, by overriding the accessors.
+	 * @param masterId The ID of the unit template that this component belongs to.
+	 */
+	protected UnitComponentMaster(int masterId)
+	{
+		this.masterId = masterId;
+	}
+	
 	/** {@inheritDoc} */
 	@Override
 	public String toString()
 	{
-		return "{" + getFullComponentName() + " (" + masterId + ", " + componentId + "), " + componentType + ", " + visibility + ", Conf: " + getPreviousConflictStatus() + "}";
+		return "{" + getFullComponentName() + " (" + getMasterId() + ", " + getComponentId() + "), " + getComponentType() + ", " + getVisibility() + ", Conf: " + getPreviousConflictStatus() + "}";
 	}
 	
     //***** MODIFIED ACCESSORS *****//
@@ -28,8 +28,8 @@ public class UnitConflictResolver implements ConflictResolver
 	private final String unitSignature;
 	/** All the template IDs in the current unit, keyed by vendor ID. Used to map a global resolution to the component that should be required. */
 	private final Map<Integer, Integer> masterIdsByVendorId = new HashMap<Integer, Integer>();
-	/** The set of global resolutions for this unit signature, keyed by the component ID that they resolve conflicts for. */
-	private final Map<Integer, GlobalConflictResolution> globalResolutions = new HashMap<Integer, GlobalConflictResolution>();
+	/** The set of global resolutions for this unit signature. Shared with every other unit that has the same unit signature. */
+	private final ConflictResolutionIndex globalResolutions;
 	/** If the current unit has individual resolutions, this map contains the template ID on which the component should be required, keyed by the component ID the conflict is being resolved for. */
 	private final Map<Integer, Integer> individualResolutions = new HashMap<Integer, Integer>();
 	
@@ -41,34 +41,40 @@ public class UnitConflictResolver implements ConflictResolver
 	 */
 	public UnitConflictResolver(Collection<UnitMasterInfo> unitMasterInfo, NestedComponentMap<UnitComponentMaster> componentMasters, Collection<GlobalConflictResolution> globalResolutions)
 	{
-		if(globalResolutions == null)
-			globalResolutions = Collections.emptyList();
+		this(unitMasterInfo, componentMasters, ConflictResolutionIndex.build(getUnitSignature(unitMasterInfo), globalResolutions));
+	}
+	
+	/**
+	 * Create a resolver that can operate on unit template components, using global resolutions that have already been indexed.
+	 * 	Every unit with the same unit signature can share the same index, so it only has to be built once for a whole batch of units.
+	 * @param unitMasterInfo Some summary information about each unit master involved in this unit. Used for determining the mapping between vendor IDs and template IDs.
+	 * @param componentMasters Objects containing information about individual conflict resolutions (i.e. ones specific to that PO, as opposed to global conflict resolution rules).
+	 * @param globalResolutions Optional. The global conflict resolution rules for this unit signature. If null, no global resolutions apply.
+	 */
+	public UnitConflictResolver(Collection<UnitMasterInfo> unitMasterInfo, NestedComponentMap<UnitComponentMaster> componentMasters, ConflictResolutionIndex globalResolutions)
+	{
 		if(unitMasterInfo == null)
 			unitMasterInfo = Collections.emptyList();
 		if(componentMasters == null)
 			componentMasters = NestedComponentMap.emptyMap();
 		
-		String unitSignature = null;
+		String unitSignature = getUnitSignature(unitMasterInfo);
+		if(globalResolutions == null)
+			globalResolutions = ConflictResolutionIndex.build(unitSignature, null);
+		else if(!unitSignature.equals(globalResolutions.getUnitSignature()))
+			throw new IllegalArgumentException("Global conflict resolutions with signature " + globalResolutions.getUnitSignature() + " are not applicable for global conflict resolver with signature " + unitSignature);
+		
+		this.unitSignature = unitSignature;
+		this.globalResolutions = globalResolutions;
+		
 		for(UnitMasterInfo unitMaster : unitMasterInfo)
 		{
-			if(unitSignature == null)
-				unitSignature = unitMaster.getCalculatedUnitSignature();
-			else if(!unitSignature.equals(unitMaster.getCalculatedUnitSignature()))
-				throw new IllegalArgumentException("Global conflict resolver only applicable for a single unit signature: " + unitSignature + " vs. " + unitMaster.getCalculatedUnitSignature());
-			
-			unitSignature = unitMaster.getCalculatedUnitSignature();
-			
 			//It is technically possible to have more than one unit master for the same vendor ID (ex: multiple DECAL POs to the same vendor on the same unit)
 			//so the global conflict resolver will arbitrarily pick one of them to use when resolving conflicts.
 			// In theory, if this happens, it doesn't matter which PO the component gets marked required on because they are all from the same vendor.
 			masterIdsByVendorId.put(unitMaster.getVendorId(), unitMaster.getMasterId());
 		}
 		
-		if(StringUtils.isBlank(unitSignature))
-			throw new IllegalArgumentException("Global conflict resolver requires at lest one unit master with a unit signature.");
-		
-		this.unitSignature = unitSignature;
-		
 		//NOTE: this is a "last-one-wins" scenario. If more than one unit component is marked required
 		//	for an individual conflict, the last one in the collection will actually end up being required.
 		for(int masterId : componentMasters.getAllMasterIds())
@@ -82,17 +88,6 @@ public class UnitConflictResolver implements ConflictResolver
 					this.individualResolutions.put(componentId, masterId);
 			}
 		}
-		
-		for(GlobalConflictResolution resolution : globalResolutions)
-		{
-			String resolutionSignature = resolution.getUnitSignature();
-			if(!this.unitSignature.equals(resolutionSignature))
-				throw new IllegalArgumentException("Global conflict resolutions with signature " + resolutionSignature + " are not applicable for global conflict resolver with signature " + this.unitSignature);
-			
-			int componentId = resolution.getComponentId();
-			
-			this.globalResolutions.put(componentId, resolution);
-		}
 	}
 	
 	/** {@inheritDoc} */
@@ -123,17 +118,43 @@ public class UnitConflictResolver implements ConflictResolver
 		Integer componentId = conflictData.getLeft();
 		Map<Integer, ComponentModel> componentsByMasterId = conflictData.getRight();
 		
-		GlobalConflictResolution resolution = this.globalResolutions.get(componentId);
-		if(resolution == null)
+		Integer providerVendorId = this.globalResolutions.getProviderVendorId(componentId);
+		if(providerVendorId == null)
 			return null;
 		
 		//Look up which component should be responsible for providing the information based on the vendor ID.
-		Integer masterId = masterIdsByVendorId.get(resolution.getProviderVendorId());
+		Integer masterId = masterIdsByVendorId.get(providerVendorId);
 		ComponentModel requiredComponent = componentsByMasterId.get(masterId);
 		
 		return requiredComponent;
 	}
 	
+	/**
+	 * Gets the one unit signature shared by all the unit masters in a unit.
+	 * @param unitMasterInfo Some summary information about each unit master involved in the unit.
+	 * @return The unit signature of the unit.
+	 * @throws IllegalArgumentException If the unit masters have different unit signatures, or none of them have one.
+	 */
+	public static String getUnitSignature(Collection<UnitMasterInfo> unitMasterInfo)
+	{
+		String unitSignature = null;
+		if(unitMasterInfo != null)
+		{
+			for(UnitMasterInfo unitMaster : unitMasterInfo)
+			{
+				if(unitSignature == null)
+					unitSignature = unitMaster.getCalculatedUnitSignature();
+				else if(!unitSignature.equals(unitMaster.getCalculatedUnitSignature()))
+					throw new IllegalArgumentException("Global conflict resolver only applicable for a single unit signature: " + unitSignature + " vs. " + unitMaster.getCalculatedUnitSignature());
+			}
+		}
+		
+		if(StringUtils.isBlank(unitSignature))
+			throw new IllegalArgumentException("Global conflict resolver requires at lest one unit master with a unit signature.");
+		
+		return unitSignature;
+	}
+	
 	private Pair<Integer, Map<Integer, ComponentModel>> getConflictData(Collection<ComponentModel> componentsInConflict)
 	{
 		Integer componentId = null;
@@ -61,6 +61,12 @@ public class UnitMasterInfo implements VehicleIdentifier
 	private String previousTemplateHash;
 	/** The up-to-date template hash from the current template master. */
 	private String masterTemplateHash;
+	/**
+	 * The hash of the template as it is in the template master right now, no matter how the unit master was loaded.
+	 * 	Unlike {@link #masterTemplateHash}, this is never filled in from the hash stored on the unit master, so it is safe to use to tell which version of the template's rules apply.
+	 * 	Null if the template master could not be found.
+	 */
+	private String currentTemplateHash;
 	/** The last date the rules engine was run and allowed to update data in SMC_UNIT_COMPONENT for this unit master ID */
 	private Date lastTemplateRefresh;
 	
@@ -216,6 +222,11 @@ public class UnitMasterInfo implements VehicleIdentifier
 		return masterTemplateHash;
 	}
 
+	public String getCurrentTemplateHash()
+	{
+		return currentTemplateHash;
+	}
+
 	public Date getLastTemplateRefresh()
 	{
 		return lastTemplateRefresh;
@@ -0,0 +1,536 @@
+/**
+ * @author john.shiffler (600139252)
+ */
+package com.penske.apps.smccore.component.engine;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.penske.apps.smccore.component.domain.CompiledCriteria;
+import com.penske.apps.smccore.component.domain.Rule;
+import com.penske.apps.smccore.component.domain.RuleCriteria;
+import com.penske.apps.smccore.component.domain.RuleCriteriaGroup;
+import com.penske.apps.smccore.component.domain.enums.ComponentType;
+
+/**
+ * Evaluates rules for every master ID in a set of components at once, instead of one master ID at a time.
+ * 	The values of each component ID the rules read are laid out once across all master IDs as primitive columns:
+ * 	numbers as {@code long}s scaled to a common number of decimal places, dates as epoch days, and text as IDs from a dictionary of the text values seen so far.
+ * 	Each criteria then produces a bitset over master IDs, and those are combined with bitwise AND within a criteria group and bitwise OR across the groups of a rule.
+ * 	This way, a unit with dozens of POs evaluates each rule in a few tight loops, rather than looking up each component and building objects for each master ID.
+ *
+ * The answers are the same as {@link Rule#isSatisfied(ComponentVisibilityFilterData, int)} for each master ID.
+ * 	Any value that can't be compared in its primitive form (ex: a number with too many decimal places, or an operator that doesn't apply to the component type)
+ * 	is handed to the criteria's {@link CompiledCriteria} for just that master ID. If that throws an exception, it is thrown again when that master ID's result is asked for,
+ * 	so a bad criteria only fails for the master IDs it would have failed for anyway. Criteria are still skipped for master IDs whose group or rule has already been decided.
+ *
+ * The columns are built from a single snapshot of the components. When the components change (ex: on the next iteration of the rules), {@link #update(ComponentVisibilityFilterData)}
+ * 	moves the evaluator on to the new snapshot, throwing away only the columns whose components were replaced, and the results of the rules that read them.
+ * 	Columns and rule results are only built the first time they are needed. This is not thread-safe.
+ * This class is intended primarily for use inside the rules engine.
+ */
+class ColumnarRuleEvaluator
+{
+	/** The most decimal places a column of numbers is scaled to. Numbers with more than this are compared one at a time instead. */
+	private static final int MAX_SCALE = 18;
+	/** The text ID for a null string. */
+	private static final int NULL_TEXT = -1;
+	/** The text ID for a criteria value that no component has. */
+	private static final int UNKNOWN_TEXT = -2;
+	/** The first year of the Gregorian calendar everywhere. Epoch days only line up with {@link java.util.Calendar} days from here on. */
+	private static final int FIRST_GREGORIAN_YEAR = 1583;
+
+	/** How a value is laid out in a column. */
+	private static final byte KIND_MISSING = 0;
+	private static final byte KIND_TEXT = 1;
+	private static final byte KIND_NUMBER = 2;
+	private static final byte KIND_DATE = 3;
+	/** The value can't be compared in primitive form, so it's handed to the compiled criteria. */
+	private static final byte KIND_OTHER = 4;
+
+	/** The components the rules are being evaluated against. */
+	private ComponentVisibilityFilterData componentData;
+	/** The master IDs of the components, in order. A master ID's position in here is its bit in every bitset. */
+	private final int[] masterIds;
+	/** The position of each master ID in {@link #masterIds}. */
+	private final Map<Integer, Integer> masterIndexes = new HashMap<Integer, Integer>();
+	/** The number of {@code long}s in each bitset. */
+	private final int wordCount;
+	/** IDs for every text value in any column, so text can be compared as ints. */
+	private final Map<String, Integer> textIds = new HashMap<String, Integer>();
+	/** The values of each component ID the rules have read, keyed by component ID. */
+	private final Map<Integer, Column> columns = new HashMap<Integer, Column>();
+	/** The results of each rule evaluated so far, keyed by rule ID. */
+	private final Map<Integer, RuleBits> ruleResults = new HashMap<Integer, RuleBits>();
+
+	ColumnarRuleEvaluator(ComponentVisibilityFilterData componentData)
+	{
+		if(componentData == null)
+			throw new IllegalArgumentException("Components are required to evaluate rules");
+
+		this.componentData = componentData;
+		this.masterIds = componentData.getAllMasterIds().stream().mapToInt(Integer::intValue).sorted().toArray();
+		for(int i = 0; i < masterIds.length; i++)
+			masterIndexes.put(masterIds[i], i);
+		this.wordCount = (masterIds.length + Long.SIZE - 1) / Long.SIZE;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString()
+	{
+		return "{ColumnarRuleEvaluator: " + masterIds.length + " masters, " + columns.size() + " columns, " + ruleResults.size() + " rules}";
+	}
+
+	//***** MODIFIED ACCESSORS *****//
+	/**
+	 * Tests whether a rule is satisfied for a single master ID. The first time a rule is asked about, it is evaluated for every master ID at once.
+	 * @param rule The rule to test.
+	 * @param masterId The unit master or loadsheet containing the set of components the rule is being evaluated against.
+	 * @return The same thing {@link Rule#isSatisfied(ComponentVisibilityFilterData, int)} would return.
+	 */
+	boolean isSatisfied(Rule rule, int masterId)
+	{
+		Integer index = masterIndexes.get(masterId);
+		if(index == null)
+			return rule.isSatisfied(componentData, masterId);
+
+		RuleBits result = ruleResults.get(rule.getRuleId());
+		if(result == null)
+		{
+			result = evaluate(rule);
+			ruleResults.put(rule.getRuleId(), result);
+		}
+
+		if(result.errors != null && isSet(result.failed, index))
+			throw result.errors.get(index);
+		return isSet(result.satisfied, index);
+	}
+
+	/**
+	 * Moves this evaluator on to a new snapshot of the same components, ex: after the outcomes of an iteration of the rules have been applied.
+	 * 	Only the columns for component IDs whose components were replaced get laid out again, the next time they are needed,
+	 * 	and only the rules that read one of those columns get evaluated again. Everything else is kept from the last snapshot.
+	 * @param newData The components as they are now. These must be for the same master IDs as the components this evaluator was created with.
+	 */
+	void update(ComponentVisibilityFilterData newData)
+	{
+		if(newData == null)
+			throw new IllegalArgumentException("Components are required to evaluate rules");
+		if(newData == componentData)
+			return;
+		if(!masterIndexes.keySet().equals(newData.getAllMasterIds()))
+			throw new IllegalArgumentException("Can not update columnar rule evaluator. The new components are for different master IDs than the old ones.");
+
+		Iterator<Entry<Integer, Column>> it = columns.entrySet().iterator();
+		while(it.hasNext())
+		{
+			Entry<Integer, Column> entry = it.next();
+			if(newData.isSameComponentsForRules(componentData, entry.getKey()))
+				continue;
+			ruleResults.keySet().removeAll(entry.getValue().ruleIds);
+			it.remove();
+		}
+		componentData = newData;
+	}
+
+	//***** HELPER METHODS *****//
+	/**
+	 * Evaluates a rule for every master ID. A rule is satisfied if any of its criteria groups are, so each group only has to be evaluated for the master IDs that no earlier group satisfied.
+	 */
+	private RuleBits evaluate(Rule rule)
+	{
+		RuleBits result = new RuleBits(wordCount);
+		long[] remaining = allMasters();
+		for(RuleCriteriaGroup group : rule.getCriteriaGroups())
+		{
+			if(isEmpty(remaining))
+				break;
+
+			//A group is satisfied if all its criteria are, so each criteria only has to be evaluated for the master IDs that passed every criteria before it.
+			long[] groupBits = remaining.clone();
+			for(RuleCriteria criteria : group.getCriteria())
+			{
+				if(isEmpty(groupBits))
+					break;
+				evaluate(rule, criteria, groupBits, result);
+			}
+
+			for(int word = 0; word < wordCount; word++)
+			{
+				result.satisfied[word] |= groupBits[word];
+				remaining[word] &= ~(groupBits[word] | result.failed[word]);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Evaluates a single criteria for the given master IDs.
+	 * @param rule The rule the criteria belongs to. The column the criteria reads remembers this, so the rule's result can be thrown away if the column changes.
+	 * @param criteria The criteria to evaluate.
+	 * @param candidates The master IDs to evaluate it for. The bits for master IDs that don't satisfy the criteria are cleared.
+	 * @param result The results of the rule so far. Any exceptions thrown while evaluating the criteria are recorded here.
+	 */
+	private void evaluate(Rule rule, RuleCriteria criteria, long[] candidates, RuleBits result)
+	{
+		Column column = getColumn(criteria.getComponentId());
+		column.ruleIds.add(rule.getRuleId());
+		CompiledCriteria compiled = criteria.getCompiledCriteria();
+		Operand operand = new Operand(compiled, column.scale);
+
+		for(int word = 0; word < wordCount; word++)
+		{
+			//Master IDs without the component (or where the rules can't see it) never satisfy a criteria
+			long bits = candidates[word] & column.present[word];
+			long remainingBits = bits;
+			while(remainingBits != 0)
+			{
+				int bit = Long.numberOfTrailingZeros(remainingBits);
+				remainingBits &= remainingBits - 1;
+				int index = word * Long.SIZE + bit;
+
+				boolean satisfied;
+				try {
+					satisfied = matches(column, index, operand);
+				} catch(RuntimeException ex) {
+					result.fail(index, ex);
+					satisfied = false;
+				}
+				if(!satisfied)
+					bits &= ~(1L << bit);
+			}
+			candidates[word] = bits;
+		}
+	}
+
+	/**
+	 * Compares a single value in a column to a criteria's value. Anything that can't be answered from the primitive values is handed to the compiled criteria.
+	 */
+	private boolean matches(Column column, int index, Operand operand)
+	{
+		CompiledCriteria compiled = operand.compiled;
+		byte kind = column.kinds[index];
+		long value = column.values[index];
+		boolean hasValue = column.hasValue[index];
+
+		switch(compiled.getOperator())
+		{
+		case EQUAL:
+			switch(kind)
+			{
+			case KIND_TEXT:
+				return value == operand.textId;
+			case KIND_NUMBER:
+				//If both are null (or blank), that's ok. If only one is null, then they aren't equal.
+				if(operand.blank)
+					return !hasValue;
+				if(!hasValue)
+					return false;
+				if(!operand.numberScaled)
+					break;
+				return value == operand.scaledNumber;
+			case KIND_DATE:
+				if(operand.blank)
+					return !hasValue;
+				if(!hasValue)
+					return false;
+				if(!operand.dateInDays)
+					break;
+				return value == operand.epochDay;
+			default:
+				break;
+			}
+			break;
+		case LESS_THAN:
+		case LESS_THAN_OR_EQUAL_TO:
+		case GREATER_THAN_OR_EQUAL_TO:
+		case GREATER_THAN:
+			if(kind != KIND_NUMBER)
+				break;
+			//Null is not less than or greater than anything
+			if(operand.blank || !hasValue)
+				return false;
+			if(!operand.numberScaled)
+				break;
+			switch(compiled.getOperator())
+			{
+			case LESS_THAN:					return value < operand.scaledNumber;
+			case LESS_THAN_OR_EQUAL_TO:		return value <= operand.scaledNumber;
+			case GREATER_THAN_OR_EQUAL_TO:	return value >= operand.scaledNumber;
+			default:						return value > operand.scaledNumber;
+			}
+		case EXISTS_ON_PO:
+			return isSet(column.existing, index);
+		default:
+			break;
+		}
+
+		return compiled.evaluate(column.components[index]);
+	}
+
+	/**
+	 * Gets the values of a component ID for every master ID, laying them out the first time they are needed.
+	 */
+	private Column getColumn(int componentId)
+	{
+		Column column = columns.get(componentId);
+		if(column == null)
+		{
+			column = buildColumn(componentId);
+			columns.put(componentId, column);
+		}
+		return column;
+	}
+
+	private Column buildColumn(int componentId)
+	{
+		Column column = new Column(masterIds.length, wordCount);
+		BigDecimal[] numbersByIndex = new BigDecimal[masterIds.length];
+		for(int i = 0; i < masterIds.length; i++)
+		{
+			ComponentModel component = componentData.getSingleComponentForRules(componentId, masterIds[i]);
+			column.components[i] = component;
+			if(component == null)
+				continue;
+
+			setBit(column.present, i);
+			if(component.getComponentValue() != null && !component.getComponentValue().isValueEmpty())
+				setBit(column.existing, i);
+
+			ComponentType componentType = component.getComponentMaster().getComponentType();
+			if(componentType == null)
+			{
+				column.kinds[i] = KIND_OTHER;
+				continue;
+			}
+
+			switch(componentType)
+			{
+			case TEXT:
+			case COMMENT:
+				column.kinds[i] = KIND_TEXT;
+				column.values[i] = internText(component.getComponentValueAsString());
+				break;
+			case NUMERIC:
+			case YEAR:
+				BigDecimal number = component.getComponentValueAsNumber();
+				column.kinds[i] = KIND_NUMBER;
+				column.hasValue[i] = number != null;
+				numbersByIndex[i] = number;
+				break;
+			case DATE:
+				Date date = component.getcomponentValueAsDate();
+				column.kinds[i] = KIND_DATE;
+				column.hasValue[i] = date != null;
+				if(date != null)
+				{
+					LocalDate day = toLocalDate(date);
+					if(day.getYear() < FIRST_GREGORIAN_YEAR)
+						column.kinds[i] = KIND_OTHER;
+					else
+						column.values[i] = day.toEpochDay();
+				}
+				break;
+			default:
+				column.kinds[i] = KIND_OTHER;
+				break;
+			}
+		}
+
+		//All the numbers in a column get the same number of decimal places, so they can be compared as longs. Any that don't fit are compared one at a time.
+		int scale = 0;
+		for(BigDecimal number : numbersByIndex)
+		{
+			if(number != null)
+				scale = Math.max(scale, number.scale());
+		}
+		column.scale = Math.min(scale, MAX_SCALE);
+		for(int i = 0; i < masterIds.length; i++)
+		{
+			if(numbersByIndex[i] == null)
+				continue;
+			Long scaled = toScaledLong(numbersByIndex[i], column.scale);
+			if(scaled == null)
+				column.kinds[i] = KIND_OTHER;
+			else
+				column.values[i] = scaled;
+		}
+
+		return column;
+	}
+
+	private int internText(String text)
+	{
+		if(text == null)
+			return NULL_TEXT;
+		Integer id = textIds.get(text);
+		if(id == null)
+		{
+			id = textIds.size();
+			textIds.put(text, id);
+		}
+		return id;
+	}
+
+	/**
+	 * Gets the local day a date falls on, the same way {@link org.apache.commons.lang3.time.DateUtils#isSameDay(Date, Date)} sees it.
+	 */
+	private static LocalDate toLocalDate(Date date)
+	{
+		return Instant.ofEpochMilli(date.getTime()).atZone(ZoneId.systemDefault()).toLocalDate();
+	}
+
+	/**
+	 * Scales a number to the given number of decimal places, and gets it as a long.
+	 * @return The scaled number, or null if it has more decimal places than that, or doesn't fit in a long once it's scaled.
+	 */
+	private static Long toScaledLong(BigDecimal number, int scale)
+	{
+		if(number.scale() > scale)
+			return null;
+		BigInteger unscaled = number.setScale(scale).unscaledValue();
+		if(unscaled.bitLength() >= Long.SIZE)
+			return null;
+		return unscaled.longValue();
+	}
+
+	private long[] allMasters()
+	{
+		long[] result = new long[wordCount];
+		Arrays.fill(result, -1L);
+		int extraBits = wordCount * Long.SIZE - masterIds.length;
+		if(extraBits > 0)
+			result[wordCount - 1] >>>= extraBits;
+		return result;
+	}
+
+	private static boolean isEmpty(long[] bits)
+	{
+		for(long word : bits)
+		{
+			if(word != 0)
+				return false;
+		}
+		return true;
+	}
+
+	private static boolean isSet(long[] bits, int index)
+	{
+		return (bits[index / Long.SIZE] & (1L << index)) != 0;
+	}
+
+	private static void setBit(long[] bits, int index)
+	{
+		bits[index / Long.SIZE] |= 1L << index;
+	}
+
+	//***** HELPER CLASSES *****//
+	/**
+	 * The values of one component ID for every master ID, by the master ID's position in {@link ColumnarRuleEvaluator#masterIds}.
+	 */
+	private static class Column
+	{
+		/** The master IDs that have the component, and where the rules can see it. */
+		private final long[] present;
+		/** The master IDs where the component has a non-empty value. */
+		private final long[] existing;
+		/** How each value is laid out. */
+		private final byte[] kinds;
+		/** True if the number or date for each master ID is not null. */
+		private final boolean[] hasValue;
+		/** The text ID, scaled number, or epoch day for each master ID, depending on its kind. */
+		private final long[] values;
+		/** The components themselves, for values that can't be compared in primitive form. */
+		private final ComponentModel[] components;
+		/** The rule IDs of the rules that have read this column. */
+		private final Set<Integer> ruleIds = new HashSet<Integer>();
+		/** The number of decimal places all the numbers in this column are scaled to. */
+		private int scale;
+
+		private Column(int size, int wordCount)
+		{
+			this.present = new long[wordCount];
+			this.existing = new long[wordCount];
+			this.kinds = new byte[size];
+			this.hasValue = new boolean[size];
+			this.values = new long[size];
+			this.components = new ComponentModel[size];
+		}
+	}
+
+	/**
+	 * A criteria's value, in the same primitive forms as the column it is being compared to.
+	 */
+	private class Operand
+	{
+		private final CompiledCriteria compiled;
+		/** True if the criteria value is null or blank. */
+		private final boolean blank;
+		/** The text ID of the criteria value. */
+		private final int textId;
+		/** True if the criteria value is a number that could be scaled to the column's number of decimal places. */
+		private final boolean numberScaled;
+		private final long scaledNumber;
+		/** True if the criteria value is a date that can be compared as an epoch day. */
+		private final boolean dateInDays;
+		private final long epochDay;
+
+		private Operand(CompiledCriteria compiled, int scale)
+		{
+			this.compiled = compiled;
+			this.blank = StringUtils.isBlank(compiled.getOperand());
+
+			Integer id = compiled.getOperand() == null ? Integer.valueOf(NULL_TEXT) : textIds.get(compiled.getOperand());
+			this.textId = id == null ? UNKNOWN_TEXT : id;
+
+			Long scaled = compiled.getNumericOperand() == null ? null : toScaledLong(compiled.getNumericOperand(), scale);
+			this.numberScaled = scaled != null;
+			this.scaledNumber = scaled == null ? 0 : scaled;
+
+			LocalDate day = compiled.getDateOperand() == null ? null : toLocalDate(compiled.getDateOperand());
+			this.dateInDays = day != null && day.getYear() >= FIRST_GREGORIAN_YEAR;
+			this.epochDay = dateInDays ? day.toEpochDay() : 0;
+		}
+	}
+
+	/**
+	 * The results of a rule for every master ID.
+	 */
+	private static class RuleBits
+	{
+		/** The master IDs the rule is satisfied for. */
+		private final long[] satisfied;
+		/** The master IDs where evaluating the rule threw an exception. */
+		private final long[] failed;
+		/** The exception for each master ID in {@link #failed}, by the master ID's position. Null until the first one. */
+		private Map<Integer, RuntimeException> errors;
+
+		private RuleBits(int wordCount)
+		{
+			this.satisfied = new long[wordCount];
+			this.failed = new long[wordCount];
+		}
+
+		private void fail(int index, RuntimeException ex)
+		{
+			setBit(failed, index);
+			if(errors == null)
+				errors = new HashMap<Integer, RuntimeException>();
+			errors.put(index, ex);
+		}
+	}
+}
@@ -119,7 +119,7 @@ public class ComponentModel implements OptionalComponentValue, NestableComponent
 		if(componentValue == null)
 			return "";
 		
-		return type.getComponentValueAsString(componentValue.getTextValue(), componentValue.getNumericValue(), componentValue.getDateValue(), componentMaster.getDecimalPositions(), false);
+		return componentValue.getValueAsString(type, componentMaster.getDecimalPositions());
 	}
 	
 	/**
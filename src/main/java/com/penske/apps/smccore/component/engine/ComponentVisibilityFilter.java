@@ -4,6 +4,7 @@
 package com.penske.apps.smccore.component.engine;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -17,12 +18,16 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
 
 import com.penske.apps.smccore.base.exception.ComponentRuleException;
+import com.penske.apps.smccore.base.plugins.TimingBean;
 import com.penske.apps.smccore.component.domain.ComponentMaster;
 import com.penske.apps.smccore.component.domain.ComponentValue;
+import com.penske.apps.smccore.component.domain.EvaluationOrder;
+import com.penske.apps.smccore.component.domain.GeneratedRule;
 import com.penske.apps.smccore.component.domain.Rule;
 import com.penske.apps.smccore.component.domain.RuleOutcome;
 import com.penske.apps.smccore.component.domain.enums.ConflictStatus;
 import com.penske.apps.smccore.component.domain.enums.NotVisibleBehavior;
+import com.penske.apps.smccore.component.domain.enums.RuleEvaluationMode;
 import com.penske.apps.smccore.component.domain.enums.Visibility;
 import com.penske.apps.smccore.component.engine.EvaluationResult.ApplicableOutcome;
 
@@ -40,21 +45,145 @@ public class ComponentVisibilityFilter
 	private final String debugLineSeparator;
 	private final Set<Integer> debugComponentIds;
 	private final Set<Integer> debugRuleIds;
+	/** How much work to repeat on each iteration of the rules. Defaults to {@link RuleEvaluationMode#FULL}. */
+	private final RuleEvaluationMode evaluationMode;
+	/**
+	 * True if the rules engine should record how each rule, criteria group, and criteria was evaluated, so that the results can be explained afterwards.
+	 * 	If false, only whether each evaluated rule was satisfied is recorded. Always treated as true when debugging is enabled. Defaults to true.
+	 */
+	private final boolean explanationsEnabled;
+	/**
+	 * True if rules should be evaluated for all master IDs at once with a {@link ColumnarRuleEvaluator}, rather than one master ID at a time.
+	 * 	Only used when explanations are not being recorded, since the columnar evaluator only works out whether each rule is satisfied. Defaults to false.
+	 */
+	private final boolean columnarEvaluationEnabled;
+	/**
+	 * True if rules should be evaluated with code generated for each rule (see {@link Rule#getGeneratedRule()}), rather than by walking the rule's criteria groups and criteria.
+	 * 	Only used when explanations are not being recorded, and columnar evaluation is not being used. Defaults to false.
+	 */
+	private final boolean generatedCodeEnabled;
+	/** Optional. If present, counters and phase timings for each call to the rules engine are logged to this. If null, nothing is recorded. */
+	private final TimingBean timingBean;
+	/** Optional. If present, each thing the rules engine does is pushed to this as it happens. If null, no trace events are created at all. */
+	private final RuleTraceSink traceSink;
+	/** Optional. If present, and turned on, each rule evaluation is counted and timed in this, by rule ID. If null, nothing is recorded per rule. */
+	private final RuleStatistics ruleStatistics;
 	
 	public ComponentVisibilityFilter()
 	{
-		this.debugEnabled = false;
-		this.debugLineSeparator = null;
-		this.debugComponentIds = Collections.emptySet();
-		this.debugRuleIds = Collections.emptySet();
+		this(false, Collections.<Integer>emptySet(), Collections.<Integer>emptySet(), null, RuleEvaluationMode.FULL, true, false, false, null, null, null);
 	}
 	
 	public ComponentVisibilityFilter(Set<Integer> debugComponentIds, Set<Integer> debugRuleIds, String debugLineSeparator)
 	{
-		this.debugEnabled = true;
+		this(true, debugComponentIds, debugRuleIds, debugLineSeparator, RuleEvaluationMode.FULL, true, false, false, null, null, null);
+	}
+	
+	private ComponentVisibilityFilter(boolean debugEnabled, Set<Integer> debugComponentIds, Set<Integer> debugRuleIds, String debugLineSeparator, RuleEvaluationMode evaluationMode, boolean explanationsEnabled,
+		boolean columnarEvaluationEnabled, boolean generatedCodeEnabled, TimingBean timingBean, RuleTraceSink traceSink, RuleStatistics ruleStatistics)
+	{
+		if(evaluationMode == null)
+			throw new IllegalArgumentException("Rule evaluation mode is required");
+		
+		this.debugEnabled = debugEnabled;
 		this.debugLineSeparator = debugLineSeparator;
 		this.debugComponentIds = debugComponentIds;
 		this.debugRuleIds = debugRuleIds;
+		this.evaluationMode = evaluationMode;
+		this.explanationsEnabled = explanationsEnabled;
+		this.columnarEvaluationEnabled = columnarEvaluationEnabled;
+		this.generatedCodeEnabled = generatedCodeEnabled;
+		this.timingBean = timingBean;
+		this.traceSink = traceSink;
+		this.ruleStatistics = ruleStatistics;
+	}
+	
+	/**
+	 * Creates a copy of this filter that re-runs rules on each iteration according to the given mode. All other settings (ex: debug settings) are kept.
+	 * @param evaluationMode How much work to repeat on each iteration of the rules.
+	 * @return A new filter using the given evaluation mode.
+	 */
+	public ComponentVisibilityFilter withEvaluationMode(RuleEvaluationMode evaluationMode)
+	{
+		return new ComponentVisibilityFilter(debugEnabled, debugComponentIds, debugRuleIds, debugLineSeparator, evaluationMode, explanationsEnabled, columnarEvaluationEnabled, generatedCodeEnabled, timingBean, traceSink, ruleStatistics);
+	}
+	
+	/**
+	 * Creates a copy of this filter that does or does not record an explanation of how each rule was evaluated. All other settings are kept.
+	 * 	Without explanations, the {@link EvaluationResult} of a rules run only has a result for each rule that was actually evaluated, and those results have no criteria group results.
+	 * 	Rules that were skipped have no result at all. Component visibilities, applicable outcomes, and iteration counts are the same either way.
+	 * 	Callers that only need the final visibilities (ex: batch processes that just save the components) should turn explanations off.
+	 * 	Debugging output needs the explanations, so they are always recorded if this filter was created with debugging enabled.
+	 * @param explanationsEnabled True to record the full result of evaluating each rule, criteria group, and criteria. False to record only whether each rule was satisfied.
+	 * @return A new filter that records explanations or not.
+	 */
+	public ComponentVisibilityFilter withExplanations(boolean explanationsEnabled)
+	{
+		return new ComponentVisibilityFilter(debugEnabled, debugComponentIds, debugRuleIds, debugLineSeparator, evaluationMode, explanationsEnabled, columnarEvaluationEnabled, generatedCodeEnabled, timingBean, traceSink, ruleStatistics);
+	}
+	
+	/**
+	 * Creates a copy of this filter that does or does not evaluate each rule for all master IDs at once. All other settings are kept.
+	 * 	With columnar evaluation, the values of each component the rules read are laid out once across all master IDs, and each rule is evaluated for all of them with bitwise operations.
+	 * 	This pays off for units with many POs (bodies, chassis, upfits), where the same criteria would otherwise be looked up and compared once per PO.
+	 * 	The results are exactly the same either way. Columnar evaluation is only used when explanations are turned off (see {@link #withExplanations(boolean)}) and debugging is not enabled.
+	 * @param columnarEvaluationEnabled True to evaluate each rule for all master IDs at once. False to evaluate it for one master ID at a time.
+	 * @return A new filter that evaluates rules in columns or not.
+	 */
+	public ComponentVisibilityFilter withColumnarEvaluation(boolean columnarEvaluationEnabled)
+	{
+		return new ComponentVisibilityFilter(debugEnabled, debugComponentIds, debugRuleIds, debugLineSeparator, evaluationMode, explanationsEnabled, columnarEvaluationEnabled, generatedCodeEnabled, timingBean, traceSink, ruleStatistics);
+	}
+	
+	/**
+	 * Creates a copy of this filter that does or does not evaluate rules with code generated for each rule. All other settings are kept.
+	 * 	Generated code checks each rule's criteria in a straight line, with the criteria values bound in as constants, instead of walking the rule's criteria groups and criteria each time.
+	 * 	If code can't be generated for a rule, that rule is just evaluated normally. The results are exactly the same either way.
+	 * 	Generated code is only used when explanations are turned off (see {@link #withExplanations(boolean)}), debugging is not enabled, and columnar evaluation is not being used.
+	 * @param generatedCodeEnabled True to evaluate rules with generated code. False to evaluate them normally.
+	 * @return A new filter that uses generated code or not.
+	 */
+	public ComponentVisibilityFilter withGeneratedCode(boolean generatedCodeEnabled)
+	{
+		return new ComponentVisibilityFilter(debugEnabled, debugComponentIds, debugRuleIds, debugLineSeparator, evaluationMode, explanationsEnabled, columnarEvaluationEnabled, generatedCodeEnabled, timingBean, traceSink, ruleStatistics);
+	}
+	
+	/**
+	 * Creates a copy of this filter that logs what the rules engine did on each call to the given timing bean. All other settings are kept.
+	 * 	This covers how long it took to merge component values, evaluate rules, apply outcomes, and resolve conflicts,
+	 * 	as well as how many iterations were needed, how many rules were evaluated or skipped, and how many conflicts were found and resolved.
+	 * 	See the {@code RULES_*} values of {@link com.penske.apps.smccore.base.plugins.CoreTimingType} for exactly what gets logged.
+	 * @param timingBean Optional. The bean to log to. If this is null, nothing is recorded, which is the default.
+	 * @return A new filter that logs to the given timing bean.
+	 */
+	public ComponentVisibilityFilter withMetrics(TimingBean timingBean)
+	{
+		return new ComponentVisibilityFilter(debugEnabled, debugComponentIds, debugRuleIds, debugLineSeparator, evaluationMode, explanationsEnabled, columnarEvaluationEnabled, generatedCodeEnabled, timingBean, traceSink, ruleStatistics);
+	}
+	
+	/**
+	 * Creates a copy of this filter that pushes each thing the rules engine does to the given sink as it happens. All other settings are kept.
+	 * 	This covers the start of each iteration, each rule that gets evaluated, each outcome applied to a component, and each conflict found between components.
+	 * 	Unlike debugging, tracing works with explanations turned off, and nothing is held in memory by the rules engine for it, so it can be turned on for a single unit under production load.
+	 * 	With {@link RuleEvaluationMode#TOPOLOGICAL}, iterations are counted separately for each stage of the rules.
+	 * @param traceSink Optional. The sink to push events to, such as a {@link RingBufferTraceSink} or {@link LineWriterTraceSink}. If this is null, nothing is traced, which is the default.
+	 * @return A new filter that traces to the given sink.
+	 */
+	public ComponentVisibilityFilter withTraceSink(RuleTraceSink traceSink)
+	{
+		return new ComponentVisibilityFilter(debugEnabled, debugComponentIds, debugRuleIds, debugLineSeparator, evaluationMode, explanationsEnabled, columnarEvaluationEnabled, generatedCodeEnabled, timingBean, traceSink, ruleStatistics);
+	}
+	
+	/**
+	 * Creates a copy of this filter that counts and times each rule it evaluates in the given statistics. All other settings are kept.
+	 * 	Nothing is recorded while the statistics are turned off (see {@link RuleStatistics#setEnabled(boolean)}), so the same statistics can be attached to every filter up front, and only turned on while looking for slow rules.
+	 * 	With columnar evaluation, a rule is evaluated for every master ID at once, the first time it is needed, so all of that time is counted against the first master ID. The total for each rule is still right.
+	 * @param ruleStatistics Optional. The statistics to record to. If this is null, nothing is recorded per rule, which is the default.
+	 * @return A new filter that records to the given statistics.
+	 */
+	public ComponentVisibilityFilter withRuleStatistics(RuleStatistics ruleStatistics)
+	{
+		return new ComponentVisibilityFilter(debugEnabled, debugComponentIds, debugRuleIds, debugLineSeparator, evaluationMode, explanationsEnabled, columnarEvaluationEnabled, generatedCodeEnabled, timingBean, traceSink, ruleStatistics);
 	}
 
 	/**
@@ -79,6 +208,23 @@ public class ComponentVisibilityFilter
 			NestedComponentMap<String> defaultComponentValues,
 			NestedComponentMap<String> userValues,
 			NotVisibleBehavior notVisibleBehavior)
+	{
+		long startNanos = timingBean == null ? 0 : System.nanoTime();
+		ComponentVisibilityFilterData result = mergeComponentValuesInternal(markerId, componentMasters, existingComponentValues, defaultComponentValues, userValues, notVisibleBehavior);
+		if(timingBean != null)
+			new RuleEngineMetrics(timingBean, null).logMerge(startNanos);
+		return result;
+	}
+	
+	/**
+	 * Does the work of {@link #mergeComponentValues(Integer, NestedComponentMap, NestedComponentMap, NestedComponentMap, NestedComponentMap, NotVisibleBehavior)}.
+	 */
+	private ComponentVisibilityFilterData mergeComponentValuesInternal(Integer markerId,
+			NestedComponentMap<? extends ComponentMaster> componentMasters,
+			NestedComponentMap<? extends ComponentValue> existingComponentValues,
+			NestedComponentMap<String> defaultComponentValues,
+			NestedComponentMap<String> userValues,
+			NotVisibleBehavior notVisibleBehavior)
 	{
     	if(componentMasters == null || componentMasters.isEmpty())
     		return ComponentVisibilityFilterData.emptyInstance(markerId);
@@ -157,70 +303,148 @@ public class ComponentVisibilityFilter
 	 */
 	public ComponentVisibilityFilterData runRules(ComponentVisibilityFilterData componentData, List<Rule> rules, Map<Integer, List<RuleOutcome>> outcomesByMasterId) throws ComponentRuleException
 	{
-		Map<RuleOutcomeKey, TreeMap<Integer, RuleOutcome>> outcomesByComponentId = new HashMap<>();
+		RuleEngineMetrics metrics = createMetrics();
+		long startNanos = metrics == null ? 0 : System.nanoTime();
 		Map<Integer, Rule> rulesById = new HashMap<>();
 		
 		if(componentData == null)
 			componentData = ComponentVisibilityFilterData.emptyInstance(null);
 		if(rules == null)
 			rules = Collections.emptyList();
-		if(outcomesByMasterId == null)
-			outcomesByMasterId = Collections.emptyMap();
 		
 		//Index the rules and outcomes for quicker access, and check that all outcomes have a corresponding rule that can actually trigger them.
 		for(Rule rule : rules)
 			rulesById.put(rule.getRuleId(), rule);
-		
-		for(Entry<Integer, List<RuleOutcome>> entry : outcomesByMasterId.entrySet())
-		{
-			int masterId = entry.getKey();
-			if(entry.getValue() == null)
-				continue;
-			for(RuleOutcome outcome : entry.getValue())
-			{
-				int ruleId = outcome.getRuleId();
-				int componentId = outcome.getComponentId();
-				RuleOutcomeKey outcomeKey = new RuleOutcomeKey(masterId, componentId);
-				
-				if(rulesById.get(ruleId) == null)
-					throw new IllegalStateException("Could not run component rules. Found an outcome for rule ID " + ruleId + " (outcome ID " + outcome.getCmpRulesId() + "), but did not find the corresponding rule.");
-				
-				if(outcomesByComponentId.get(outcomeKey) == null)
-					outcomesByComponentId.put(outcomeKey, new TreeMap<Integer, RuleOutcome>());
-				outcomesByComponentId.get(outcomeKey).put(outcome.getPriority(), outcome);
-			}
-		}
+		Map<RuleOutcomeKey, PrioritizedOutcomes> outcomesByComponentId = indexOutcomes(rulesById, outcomesByMasterId);
 		
 		//If rules should care about whether components are influenced by the user's changes, then compute the component IDs and master IDs that are so influenced now.
-		if(componentData.getNotVisibleComponentBehavior() == NotVisibleBehavior.REMOVE_IF_USER_INFLUENCED)
+		if(componentData.getNotVisibleComponentBehavior() == NotVisibleBehavior.REMOVE_IF_USER_INFLUENCED && evaluationMode == RuleEvaluationMode.INCREMENTAL)
+			componentData = runAndApplyRulesWithUserChanges(componentData, rulesById, outcomesByComponentId, new RuleResultCache(new RuleDependencyIndex(rulesById.values())), metrics);
+		else if(componentData.getNotVisibleComponentBehavior() == NotVisibleBehavior.REMOVE_IF_USER_INFLUENCED)
 		{
 			//We also need to run the rules on the component values without changes by the user, to determine if components should be ignored or not
 			ComponentVisibilityFilterData componentDataWithoutUserChanges = ComponentVisibilityFilterData.withoutUserChanges(componentData);
-			componentDataWithoutUserChanges = runAndApplyRules(componentDataWithoutUserChanges, rulesById, outcomesByComponentId);
+			componentDataWithoutUserChanges = runAndApplyRules(componentDataWithoutUserChanges, rulesById, outcomesByComponentId, metrics);
 			componentData = ComponentVisibilityFilterData.reintegrateUserUnchangedComponentsAfterRules(componentData, componentDataWithoutUserChanges);
+			componentData = runAndApplyRules(componentData, rulesById, outcomesByComponentId, metrics);
 		}
+		else
+			componentData = runAndApplyRules(componentData, rulesById, outcomesByComponentId, metrics);
 		
-		componentData = runAndApplyRules(componentData, rulesById, outcomesByComponentId);
+		if(metrics != null)
+			metrics.logRulesRun(startNanos);
 		
 		return componentData;
 	}
 	
+	/**
+	 * Finds the rules that depend on each other in a cycle: each rule reads a component that another rule in the cycle has an outcome on.
+	 * 	Rules like these are the only ones that can keep the rules from settling, so this can be used to check a set of rules when they are loaded, before running them.
+	 * @param rules The rules that can possibly be evaluated.
+	 * @param outcomesByMasterId The possible visibility overrides that can be applied, based on whether a rule is true or not, keyed by master ID.
+	 * @return The IDs of the rules in each cycle. If there are no cycles, this will be empty.
+	 */
+	public List<Set<Integer>> findCircularRules(List<Rule> rules, Map<Integer, List<RuleOutcome>> outcomesByMasterId)
+	{
+		Map<Integer, Rule> rulesById = new HashMap<>();
+		if(rules != null)
+		{
+			for(Rule rule : rules)
+				rulesById.put(rule.getRuleId(), rule);
+		}
+		
+		return new RuleGraph(rulesById, indexOutcomes(rulesById, outcomesByMasterId)).getCircularRuleIds();
+	}
+	
 	//FIXME: test
 	public ComponentVisibilityFilterData resolveConflicts(ComponentVisibilityFilterData componentData, ConflictResolver resolver)
 	{
 		if(componentData == null)
 			return ComponentVisibilityFilterData.emptyInstance(null);
 		
-		Map<Integer, List<ComponentModel>> resultComponents = new HashMap<Integer, List<ComponentModel>>();
-		for(Integer componentId : componentData.getAllComponentIds())
+		return ComponentVisibilityFilterData.withComponents(componentData, resolveConflicts(componentData, componentData.getAllComponentIds(), resolver));
+	}
+	
+	/**
+	 * Runs the rules and resolves conflicts, the same as calling {@link #runRules(ComponentVisibilityFilterData, List, Map)} and then {@link #resolveConflicts(ComponentVisibilityFilterData, ConflictResolver)},
+	 * 	but reuses the results of an earlier run from the given cache if one had exactly the same inputs.
+	 * 	The cache is only used when this filter has explanations and debugging turned off, and the components use a not-visible behavior other than {@link NotVisibleBehavior#REMOVE_IF_USER_INFLUENCED},
+	 * 	since otherwise the results depend on more than just the final visibilities. In any of those cases, the rules are just run normally.
+	 * @param componentData The components with their initial visibilities set.
+	 * @param rules The rules that can possibly be evaluated.
+	 * @param outcomesByMasterId The possible visibility overrides that can be applied, based on whether a rule is true or not, keyed by master ID.
+	 * @param resolver An object capable of resolving component conflicts.
+	 * @param cache Optional. The results of earlier runs. If this is null, the rules are just run normally.
+	 * @param cacheContext Optional. Everything besides the components themselves that the rules, outcomes, and conflict resolver depend on, in a canonical form.
+	 * 	Two runs with the same context must have the same rules and outcomes (relative to the positions of their master IDs in {@code masterIds}), and must resolve conflicts the same way.
+	 * 	If this is null, the rules are just run normally.
+	 * @param masterIds Optional. All the master IDs in {@code componentData}, in a canonical order, so that results can be reused for components with different master IDs.
+	 * 	If this is null, the rules are just run normally.
+	 * @return An object that contains information about all the operations done during the process of running the rules, as well as the new set of components.
+	 * @throws ComponentRuleException If attempting to run the rules results in more than the maximum number of allowed iterations.
+	 */
+	public ComponentVisibilityFilterData runRulesAndResolveConflicts(ComponentVisibilityFilterData componentData, List<Rule> rules, Map<Integer, List<RuleOutcome>> outcomesByMasterId, ConflictResolver resolver,
+		RuleRunCache cache, String cacheContext, List<Integer> masterIds) throws ComponentRuleException
+	{
+		boolean cacheable = cache != null && cacheContext != null && masterIds != null && componentData != null
+			&& !explanationsEnabled && !debugEnabled && componentData.getNotVisibleComponentBehavior() != NotVisibleBehavior.REMOVE_IF_USER_INFLUENCED;
+		if(!cacheable)
+			return resolveConflicts(runRules(componentData, rules, outcomesByMasterId), resolver);
+		
+		long startTime = System.currentTimeMillis();
+		String fingerprint = RuleRunCache.fingerprint(cacheContext, masterIds, componentData, rules == null ? Collections.<Rule>emptyList() : rules);
+		RuleRunCache.CachedRun cachedRun = fingerprint == null ? null : cache.get(fingerprint);
+		if(cachedRun != null)
 		{
-			//Check each component ID to see if it has conflicts or not.
-			List<ComponentModel> components = componentData.getComponentsForComponentId(componentId);
-			components = resolveConflictInternal(components, resolver);
-			resultComponents.put(componentId, components);
+			ComponentVisibilityFilterData result = cachedRun.applyTo(componentData, masterIds);
+			cache.recordHit(System.currentTimeMillis() - startTime);
+			return result;
 		}
+		
+		ComponentVisibilityFilterData result = resolveConflicts(runRules(componentData, rules, outcomesByMasterId), resolver);
+		if(fingerprint != null)
+			cache.put(fingerprint, RuleRunCache.CachedRun.of(result, masterIds));
+		cache.recordMiss(System.currentTimeMillis() - startTime);
+		return result;
+	}
 	
-		return ComponentVisibilityFilterData.withComponents(componentData, resultComponents);
+	/**
+	 * Runs the rules and resolves conflicts, the same as calling {@link #runRules(ComponentVisibilityFilterData, List, Map)} and then {@link #resolveConflicts(ComponentVisibilityFilterData, ConflictResolver)},
+	 * 	and keeps what is needed to quickly work out the effects of the user editing one value at a time afterwards. See {@link RuleSession} for how edits are applied.
+	 * 	The rules are always run incrementally, the same as with {@link RuleEvaluationMode#INCREMENTAL}, since the results of every rule have to be kept for the edits anyway.
+	 * @param componentData The components with their initial visibilities set.
+	 * @param rules The rules that can possibly be evaluated.
+	 * @param outcomesByMasterId The possible visibility overrides that can be applied, based on whether a rule is true or not, keyed by master ID.
+	 * @param resolver An object capable of resolving component conflicts.
+	 * @return A session holding the results of running the rules and resolving conflicts, which edits can then be applied to.
+	 * @throws ComponentRuleException If attempting to run the rules results in more than the maximum number of allowed iterations.
+	 */
+	public RuleSession startSession(ComponentVisibilityFilterData componentData, List<Rule> rules, Map<Integer, List<RuleOutcome>> outcomesByMasterId, ConflictResolver resolver) throws ComponentRuleException
+	{
+		if(resolver == null)
+			throw new IllegalArgumentException("Conflict resolver is required to start a rule session");
+		if(componentData == null)
+			componentData = ComponentVisibilityFilterData.emptyInstance(null);
+		if(rules == null)
+			rules = Collections.emptyList();
+		
+		Map<Integer, Rule> rulesById = new HashMap<>();
+		for(Rule rule : rules)
+			rulesById.put(rule.getRuleId(), rule);
+		Map<RuleOutcomeKey, PrioritizedOutcomes> outcomesByComponentId = indexOutcomes(rulesById, outcomesByMasterId);
+		RuleResultCache resultCache = new RuleResultCache(new RuleDependencyIndex(rulesById.values()));
+		
+		RuleEngineMetrics metrics = createMetrics();
+		long startNanos = metrics == null ? 0 : System.nanoTime();
+		ComponentVisibilityFilterData ruleData;
+		if(componentData.getNotVisibleComponentBehavior() == NotVisibleBehavior.REMOVE_IF_USER_INFLUENCED)
+			ruleData = runAndApplyRulesWithUserChanges(componentData, rulesById, outcomesByComponentId, resultCache, metrics);
+		else
+			ruleData = runAndApplyRules(componentData, rulesById, outcomesByComponentId, resultCache, metrics);
+		if(metrics != null)
+			metrics.logRulesRun(startNanos);
+		
+		return new RuleSession(this, rulesById, outcomesByComponentId, new RuleGraph(rulesById, outcomesByComponentId), resultCache, resolver, ruleData, resolveConflicts(ruleData, resolver));
 	}
 	
 	/*
@@ -244,9 +468,150 @@ public class ComponentVisibilityFilter
 	 */
 	
 	//***** HELPER METHODS *****//
-	private ComponentVisibilityFilterData runAndApplyRules(ComponentVisibilityFilterData componentData, Map<Integer, Rule> rulesById, Map<RuleOutcomeKey, TreeMap<Integer, RuleOutcome>> outcomesByComponentId)
+	/**
+	 * Gets an object to count what a single call to the rules engine does, if this filter is set up to record that anywhere.
+	 * @return The metrics for the call, or null if there is no timing bean, and no per-rule statistics that are turned on.
+	 */
+	private RuleEngineMetrics createMetrics()
+	{
+		RuleStatistics statistics = ruleStatistics != null && ruleStatistics.isEnabled() ? ruleStatistics : null;
+		if(timingBean == null && statistics == null)
+			return null;
+		return new RuleEngineMetrics(timingBean, statistics);
+	}
+	
+	/**
+	 * Runs the rules again for a {@link RuleSession}, after some of its components have changed.
+	 * 	Only the rules that read a changed component are evaluated again at first, starting from the visibilities the last run settled on.
+	 * 	If the changes can reach a cycle in the rules, though, every component goes back to its base visibility and every rule is evaluated again,
+	 * 	since a cycle can settle differently depending on where it starts, and the result has to be the same as running the rules from scratch.
+	 * @param componentData The components as they were after the last run, with the changes applied.
+	 * @param rulesById The rules that can possibly be evaluated, keyed by rule ID.
+	 * @param outcomesByComponentId The possible outcomes, keyed by (master ID, component ID), and sorted by priority.
+	 * @param ruleGraph The dependencies between components created by {@code rulesById} and {@code outcomesByComponentId}.
+	 * @param resultCache The results of the last run. The results that depend on the changed components are dropped from this before running the rules.
+	 * 	Only rules without a result in here get evaluated.
+	 * @param changedComponents The (master ID, component ID) of the components that changed since the last run.
+	 * @return The components with the rule outcomes applied, and the results of the rules.
+	 * @throws ComponentRuleException If the rules don't settle within the maximum number of allowed iterations.
+	 */
+	ComponentVisibilityFilterData rerunRules(ComponentVisibilityFilterData componentData, Map<Integer, Rule> rulesById, Map<RuleOutcomeKey, PrioritizedOutcomes> outcomesByComponentId,
+		RuleGraph ruleGraph, RuleResultCache resultCache, Collection<RuleOutcomeKey> changedComponents)
+	{
+		RuleEngineMetrics metrics = createMetrics();
+		long startNanos = metrics == null ? 0 : System.nanoTime();
+		if(ruleGraph.isCycleAffectedBy(changedComponents))
+		{
+			componentData = applyRuleOutcomes(componentData, Collections.<RuleOutcomeKey, ApplicableOutcome>emptyMap(), null).getRight();
+			resultCache.clear();
+		}
+		else
+			resultCache.invalidate(changedComponents);
+		
+		ComponentVisibilityFilterData result = runAndApplyRules(componentData, rulesById, outcomesByComponentId, resultCache, metrics);
+		if(metrics != null)
+			metrics.logRulesRun(startNanos);
+		return result;
+	}
+	
+	/**
+	 * Resolves conflicts for only some of the component IDs.
+	 * @param componentData The components to resolve conflicts for.
+	 * @param componentIds The component IDs to check for conflicts.
+	 * @param resolver An object capable of resolving component conflicts.
+	 * @return New lists of components for only the component IDs whose conflict statuses or final visibilities changed, keyed by component ID.
+	 */
+	Map<Integer, List<ComponentModel>> resolveConflicts(ComponentVisibilityFilterData componentData, Collection<Integer> componentIds, ConflictResolver resolver)
+	{
+		RuleEngineMetrics metrics = createMetrics();
+		long startNanos = metrics == null ? 0 : System.nanoTime();
+		Map<Integer, List<ComponentModel>> changedComponents = new HashMap<Integer, List<ComponentModel>>();
+		for(Integer componentId : componentIds)
+		{
+			//Check each component ID to see if it has conflicts or not. Only the component IDs whose conflict status actually changed get a new list.
+			List<ComponentModel> components = componentData.getComponentsForComponentId(componentId);
+			List<ComponentModel> resolvedComponents = resolveConflictInternal(components, resolver, metrics);
+			if(resolvedComponents != components)
+				changedComponents.put(componentId, resolvedComponents);
+		}
+		
+		if(metrics != null)
+			metrics.logConflictResolution(startNanos);
+		return changedComponents;
+	}
+	
+	/**
+	 * Organizes outcomes by the component they apply to, and checks that all outcomes have a corresponding rule that can actually trigger them.
+	 * @param rulesById The rules that can possibly be evaluated, keyed by rule ID.
+	 * @param outcomesByMasterId Optional. The outcomes, keyed by master ID.
+	 * @return The outcomes, keyed by (master ID, component ID), and sorted by priority.
+	 */
+	private Map<RuleOutcomeKey, PrioritizedOutcomes> indexOutcomes(Map<Integer, Rule> rulesById, Map<Integer, List<RuleOutcome>> outcomesByMasterId)
+	{
+		Map<RuleOutcomeKey, PrioritizedOutcomes> outcomesByComponentId = new HashMap<>();
+		if(outcomesByMasterId == null)
+			return outcomesByComponentId;
+		
+		Map<RuleOutcomeKey, List<RuleOutcome>> unsortedOutcomes = new HashMap<>();		
+		for(Entry<Integer, List<RuleOutcome>> entry : outcomesByMasterId.entrySet())
+		{
+			int masterId = entry.getKey();
+			if(entry.getValue() == null)
+				continue;
+			for(RuleOutcome outcome : entry.getValue())
+			{
+				int ruleId = outcome.getRuleId();
+				int componentId = outcome.getComponentId();
+				RuleOutcomeKey outcomeKey = new RuleOutcomeKey(masterId, componentId);
+				
+				if(rulesById.get(ruleId) == null)
+					throw new IllegalStateException("Could not run component rules. Found an outcome for rule ID " + ruleId + " (outcome ID " + outcome.getCmpRulesId() + "), but did not find the corresponding rule.");
+				
+				if(unsortedOutcomes.get(outcomeKey) == null)
+					unsortedOutcomes.put(outcomeKey, new ArrayList<RuleOutcome>());
+				unsortedOutcomes.get(outcomeKey).add(outcome);
+			}
+		}
+		
+		//Sort each component's outcomes once here, so that each iteration only has to scan them in order.
+		for(Entry<RuleOutcomeKey, List<RuleOutcome>> entry : unsortedOutcomes.entrySet())
+			outcomesByComponentId.put(entry.getKey(), new PrioritizedOutcomes(entry.getValue()));
+		return outcomesByComponentId;
+	}
+	
+	private ComponentVisibilityFilterData runAndApplyRules(ComponentVisibilityFilterData componentData, Map<Integer, Rule> rulesById, Map<RuleOutcomeKey, PrioritizedOutcomes> outcomesByComponentId,
+		RuleEngineMetrics metrics)
+	{
+		if(evaluationMode == RuleEvaluationMode.TOPOLOGICAL)
+			return runAndApplyRulesInOrder(componentData, rulesById, outcomesByComponentId, metrics);
+		
+		//In incremental mode, rule results are carried from one iteration to the next, and only the ones whose components changed get thrown away.
+		RuleResultCache resultCache = null;
+		if(evaluationMode == RuleEvaluationMode.INCREMENTAL)
+			resultCache = new RuleResultCache(new RuleDependencyIndex(rulesById.values()));
+		
+		return runAndApplyRules(componentData, rulesById, outcomesByComponentId, resultCache, metrics);
+	}
+	
+	/**
+	 * Iteratively runs the rules until component visibilities stop changing.
+	 * @param componentData The components with their initial visibilities set.
+	 * @param rulesById The rules that can possibly be evaluated, keyed by rule ID.
+	 * @param outcomesByComponentId The possible outcomes, keyed by (master ID, component ID), and sorted by priority.
+	 * @param resultCache Optional. Results that are still valid for {@code componentData}. If this is present, only rules whose results aren't in it get evaluated,
+	 * 	and results are carried from one iteration to the next. If this is null, every reachable rule is evaluated on every iteration.
+	 * @param metrics Optional. If present, what was done is counted in this.
+	 * @return The components with the rule outcomes applied, and the results of the rules.
+	 * @throws ComponentRuleException If the rules don't settle within the maximum number of allowed iterations.
+	 */
+	private ComponentVisibilityFilterData runAndApplyRules(ComponentVisibilityFilterData componentData, Map<Integer, Rule> rulesById, Map<RuleOutcomeKey, PrioritizedOutcomes> outcomesByComponentId,
+		RuleResultCache resultCache, RuleEngineMetrics metrics)
 	{
+		boolean explain = explanationsEnabled || debugEnabled;
 		List<String> debugInfo = new ArrayList<String>();
+		Set<RuleOutcomeKey> changedComponents = resultCache == null ? null : new HashSet<RuleOutcomeKey>();
+		EvaluationOrder evaluationOrder = new EvaluationOrder();
+		ColumnarRuleEvaluator columnarEvaluator = null;
 		
 		int iteration = 1;
 		boolean runAgain = true;
@@ -260,11 +625,28 @@ public class ComponentVisibilityFilter
 				throw new ComponentRuleException(errorMessage, resultContainer, true);
 			}
 			
-			evalResult = evaluateRules(componentData, rulesById, outcomesByComponentId);
+			if(traceSink != null)
+				traceSink.trace(RuleTraceEvent.iterationStarted(iteration));
+			long evaluateStart = metrics == null ? 0 : System.nanoTime();
+			columnarEvaluator = getColumnarEvaluator(columnarEvaluator, componentData, explain);
+			evalResult = evaluateRules(componentData, rulesById, outcomesByComponentId, resultCache, columnarEvaluator, evaluationOrder, metrics);
+			long applyStart = metrics == null ? 0 : System.nanoTime();
 			
-			Pair<Boolean, ComponentVisibilityFilterData> ruleApplicationResults = applyRuleOutcomes(componentData, evalResult.getApplicableOutcomes());
+			Pair<Boolean, ComponentVisibilityFilterData> ruleApplicationResults = applyRuleOutcomes(componentData, evalResult.getApplicableOutcomes(), changedComponents);
 			componentData = ruleApplicationResults.getRight();
 			runAgain = ruleApplicationResults.getLeft();
+			if(metrics != null)
+			{
+				metrics.addEvaluateTime(evaluateStart, applyStart);
+				metrics.addApplyTime(applyStart);
+				metrics.addIterations(1);
+			}
+			
+			if(resultCache != null)
+			{
+				resultCache.invalidate(changedComponents);
+				changedComponents.clear();
+			}
 			
 			if(debugEnabled)
 				debugInfo.add(evalResult.getDebugString(iteration, debugComponentIds, debugRuleIds, componentData, debugLineSeparator));
@@ -275,58 +657,355 @@ public class ComponentVisibilityFilter
 		return ComponentVisibilityFilterData.withFinalRuleResults(componentData, evalResult, iteration-1, debugInfo);
 	}
 	
+	/**
+	 * Runs the rules on the components without the user's changes, and then again with them, for {@link NotVisibleBehavior#REMOVE_IF_USER_INFLUENCED}.
+	 * 	The second run starts from the visibilities and rule results the first one settled on, rather than from scratch, since the user usually only changes a few values.
+	 * 	Only the rules that read a component whose value the user changed are evaluated again at first, and after that, only the ones reading a component whose visibility changed.
+	 * 	Components the second run doesn't touch stay the same objects as in the first run.
+	 * 	If the user's changes can reach a cycle in the rules, the second run starts from scratch instead, since a cycle can settle differently depending on where it starts.
+	 * @param componentData The components with their initial visibilities set, and the user's changes applied.
+	 * @param rulesById The rules that can possibly be evaluated, keyed by rule ID.
+	 * @param outcomesByComponentId The possible outcomes, keyed by (master ID, component ID), and sorted by priority.
+	 * @param resultCache An empty cache for the rule results. When this returns, it holds the results of the rules for the components that were returned.
+	 * @param metrics Optional. If present, what was done in both runs is counted in this.
+	 * @return The components with the user's changes and the rule outcomes applied, and the results of the rules.
+	 * @throws ComponentRuleException If the rules don't settle within the maximum number of allowed iterations.
+	 */
+	private ComponentVisibilityFilterData runAndApplyRulesWithUserChanges(ComponentVisibilityFilterData componentData, Map<Integer, Rule> rulesById, Map<RuleOutcomeKey, PrioritizedOutcomes> outcomesByComponentId,
+		RuleResultCache resultCache, RuleEngineMetrics metrics)
+	{
+		ComponentVisibilityFilterData componentDataWithoutUserChanges = runAndApplyRules(ComponentVisibilityFilterData.withoutUserChanges(componentData), rulesById, outcomesByComponentId, resultCache, metrics);
+		
+		Set<RuleOutcomeKey> changedValues = new HashSet<RuleOutcomeKey>();
+		Map<Integer, List<ComponentModel>> componentsWithUserValues = getComponentsWithUserValues(componentData, componentDataWithoutUserChanges, changedValues);
+		
+		//If the two sets of components don't line up after all, then fall back to running the rules with the user's changes from scratch.
+		// Do the same if the user's changes reach a cycle, since starting the cycle from where it settled without them could settle it differently than running from scratch would.
+		if(componentsWithUserValues == null || (!changedValues.isEmpty() && new RuleGraph(rulesById, outcomesByComponentId).isCycleAffectedBy(changedValues)))
+		{
+			componentData = ComponentVisibilityFilterData.reintegrateUserUnchangedComponentsAfterRules(componentData, componentDataWithoutUserChanges);
+			resultCache.clear();
+			return runAndApplyRules(componentData, rulesById, outcomesByComponentId, resultCache, metrics);
+		}
+		
+		//Every rule result from the first run is still good, except for the rules that read one of the values the user changed.
+		ComponentVisibilityFilterData startingData = ComponentVisibilityFilterData.withComponents(componentDataWithoutUserChanges, componentsWithUserValues);
+		startingData = ComponentVisibilityFilterData.reintegrateUserUnchangedComponentsAfterRules(startingData, componentDataWithoutUserChanges);
+		resultCache.invalidate(changedValues);
+		
+		return runAndApplyRules(startingData, rulesById, outcomesByComponentId, resultCache, metrics);
+	}
+	
+	/**
+	 * Puts the user's values into the components after the rules have settled without them, keeping the visibilities the rules settled on.
+	 * @param componentData The components with the user's changes applied.
+	 * @param componentDataWithoutUserChanges The components without the user's changes, after running the rules. These have to come from the same merge as {@code componentData}.
+	 * @param changedValues The (master ID, component ID) of every component whose value the user actually changed will be added to this set.
+	 * @return The components with a value from the user, keyed by component ID, for only the component IDs that have one.
+	 * 	Returns null if the two sets of components don't have the same components in the same order.
+	 */
+	private Map<Integer, List<ComponentModel>> getComponentsWithUserValues(ComponentVisibilityFilterData componentData, ComponentVisibilityFilterData componentDataWithoutUserChanges, Set<RuleOutcomeKey> changedValues)
+	{
+		if(!componentData.getAllComponentIds().equals(componentDataWithoutUserChanges.getAllComponentIds()))
+			return null;
+		
+		Map<Integer, List<ComponentModel>> result = new HashMap<Integer, List<ComponentModel>>();
+		for(Integer componentId : componentData.getAllComponentIds())
+		{
+			List<ComponentModel> userComponents = componentData.getComponentsForComponentId(componentId);
+			List<ComponentModel> settledComponents = componentDataWithoutUserChanges.getComponentsForComponentId(componentId);
+			if(userComponents.size() != settledComponents.size())
+				return null;
+			
+			List<ComponentModel> componentsForId = null;
+			for(int i = 0; i < userComponents.size(); i++)
+			{
+				ComponentModel userComponent = userComponents.get(i);
+				ComponentModel settledComponent = settledComponents.get(i);
+				if(userComponent.getMasterId() != settledComponent.getMasterId())
+					return null;
+				if(userComponent.getComponentValue() == settledComponent.getComponentValue())
+					continue;
+				
+				if(!isSameValue(userComponent.getComponentValue(), settledComponent.getComponentValue()))
+					changedValues.add(new RuleOutcomeKey(userComponent.getMasterId(), componentId));
+				if(componentsForId == null)
+					componentsForId = new ArrayList<ComponentModel>(settledComponents);
+				componentsForId.set(i, new ComponentModel(settledComponent.getComponentMaster(), userComponent.getComponentValue(), settledComponent.getRuleVisibility()));
+			}
+			
+			if(componentsForId != null)
+				result.put(componentId, componentsForId);
+		}
+		return result;
+	}
+	
+	/**
+	 * Checks if two component values would look the same to any rule criteria.
+	 */
+	boolean isSameValue(ComponentValue value, ComponentValue otherValue)
+	{
+		if(value == null || otherValue == null)
+			return value == otherValue;
+		return value.isValueEqual(otherValue) && StringUtils.equals(value.getTextValue(), otherValue.getTextValue());
+	}
+	
+	/**
+	 * Runs the rules one stage of a {@link RuleGraph} at a time, so that each component's visibility is only settled once all the components its rules read have been settled.
+	 * 	Components that aren't part of a cycle are evaluated exactly once. Components in a cycle are run together until their visibilities stop changing,
+	 * 	and if they never do, the rules in that cycle are reported right away, instead of after running every rule {@link #MAX_ITERATIONS} times.
+	 * @param componentData The components with their initial visibilities set.
+	 * @param rulesById The rules that can possibly be evaluated, keyed by rule ID.
+	 * @param outcomesByComponentId The possible outcomes, keyed by (master ID, component ID), and sorted by priority.
+	 * @param metrics Optional. If present, what was done is counted in this.
+	 * @return The components with the rule outcomes applied, and the results of the rules.
+	 * @throws ComponentRuleException If the components in a cycle don't settle within the maximum number of allowed iterations.
+	 */
+	private ComponentVisibilityFilterData runAndApplyRulesInOrder(ComponentVisibilityFilterData componentData, Map<Integer, Rule> rulesById, Map<RuleOutcomeKey, PrioritizedOutcomes> outcomesByComponentId,
+		RuleEngineMetrics metrics)
+	{
+		boolean explain = explanationsEnabled || debugEnabled;
+		List<String> debugInfo = new ArrayList<String>();
+		RuleGraph graph = new RuleGraph(rulesById, outcomesByComponentId);
+		EvaluationOrder evaluationOrder = new EvaluationOrder();
+		ColumnarRuleEvaluator columnarEvaluator = null;
+		
+		//Components without outcomes always end up with their base visibility, so start everything out there. Each stage then only has to touch its own components.
+		componentData = applyRuleOutcomes(componentData, Collections.<RuleOutcomeKey, ApplicableOutcome>emptyMap(), null).getRight();
+		
+		Map<Integer, Map<Integer, RuleResult>> ruleResults = new HashMap<Integer, Map<Integer, RuleResult>>();
+		Map<RuleOutcomeKey, RuleOutcome> outcomesToApply = new HashMap<RuleOutcomeKey, RuleOutcome>();
+		int maxIterations = 1;
+		for(RuleGraph.Stage stage : graph.getStages())
+		{
+			int iteration = 1;
+			boolean runAgain = true;
+			while(runAgain)
+			{
+				if(iteration > MAX_ITERATIONS)
+				{
+					String errorMessage = "Could not resolve component visibility rules after " + MAX_ITERATIONS + " iterations. Rules " + stage.getCircularRuleIds() + " have a circular dependency on each other.";
+					EvaluationResult evalResult = new EvaluationResult(ruleResults, outcomesToApply, explain ? outcomesByComponentId : null);
+					ComponentVisibilityFilterData resultContainer = ComponentVisibilityFilterData.withFinalRuleResults(componentData, evalResult, MAX_ITERATIONS, debugInfo);
+					throw new ComponentRuleException(errorMessage, resultContainer, true);
+				}
+				
+				//Rules behind a cycle have to be evaluated again each time around, since the components they read may have changed.
+				// Rules behind any other stage only read components from earlier stages, so a result from an earlier stage is still good.
+				if(stage.isCyclic())
+					clearRuleResults(ruleResults, outcomesByComponentId, stage.getTargets());
+				
+				if(traceSink != null)
+					traceSink.trace(RuleTraceEvent.iterationStarted(iteration));
+				long evaluateStart = metrics == null ? 0 : System.nanoTime();
+				columnarEvaluator = getColumnarEvaluator(columnarEvaluator, componentData, explain);
+				Map<RuleOutcomeKey, RuleOutcome> stageOutcomes = new HashMap<RuleOutcomeKey, RuleOutcome>();
+				for(RuleOutcomeKey target : stage.getTargets())
+				{
+					RuleOutcome outcome = evaluateOutcomesForComponent(componentData, target, outcomesByComponentId.get(target), rulesById, ruleResults, null, explain, columnarEvaluator, evaluationOrder, metrics);
+					if(outcome == null)
+						outcomesToApply.remove(target);
+					else
+					{
+						outcomesToApply.put(target, outcome);
+						stageOutcomes.put(target, outcome);
+					}
+				}
+				
+				long applyStart = metrics == null ? 0 : System.nanoTime();
+				
+				Pair<Boolean, ComponentVisibilityFilterData> ruleApplicationResults = applyRuleOutcomes(componentData, stageOutcomes, stage.getTargets());
+				componentData = ruleApplicationResults.getRight();
+				runAgain = stage.isCyclic() && ruleApplicationResults.getLeft();
+				if(metrics != null)
+				{
+					metrics.addEvaluateTime(evaluateStart, applyStart);
+					metrics.addApplyTime(applyStart);
+				}
+				iteration++;
+			}
+			maxIterations = Math.max(maxIterations, iteration - 1);
+		}
+		if(metrics != null)
+			metrics.addIterations(maxIterations);
+		
+		if(explain)
+			addSkippedRuleResults(componentData, rulesById, ruleResults, null);
+		EvaluationResult evalResult = new EvaluationResult(ruleResults, outcomesToApply, explain ? outcomesByComponentId : null);
+		if(debugEnabled)
+			debugInfo.add(evalResult.getDebugString(maxIterations, debugComponentIds, debugRuleIds, componentData, debugLineSeparator));
+		
+		return ComponentVisibilityFilterData.withFinalRuleResults(componentData, evalResult, maxIterations, debugInfo);
+	}
+	
+	/**
+	 * Removes the results of every rule with an outcome on one of the given components, so they get evaluated again.
+	 */
+	private void clearRuleResults(Map<Integer, Map<Integer, RuleResult>> ruleResults, Map<RuleOutcomeKey, PrioritizedOutcomes> outcomesByComponentId, List<RuleOutcomeKey> targets)
+	{
+		for(RuleOutcomeKey target : targets)
+		{
+			Map<Integer, RuleResult> resultsForMaster = ruleResults.get(target.getMasterId());
+			if(resultsForMaster == null)
+				continue;
+			PrioritizedOutcomes outcomes = outcomesByComponentId.get(target);
+			for(int i = 0; i < outcomes.size(); i++)
+				resultsForMaster.remove(outcomes.get(i).getRuleId());
+		}
+	}
+	
 	/**
 	 * Runs all the rules once for a given set of components, and records the results, but does not apply the outcomes yet.
 	 * 	It is possible that not all rules may get run. If a rule is not attached to any outcome, it will not be run.
 	 * 	If all the outcomes a rule is attached to would not possibly get applied (ex: becuase they are are lower priority than other outcomes that actually do get applied), then that rule won't be run.
 	 * @param componentData The components to get values from when evaluating each rule.
 	 * @param rules The rules to evaluate.
-	 * @param outcomes The possible outcomes that could be applied to the set of components based on the rules. The outer map is keyed by (master ID, component ID), and the inner map is keyed (and ordered) by priority.
+	 * @param outcomes The possible outcomes that could be applied to the set of components based on the rules, keyed by (master ID, component ID), and sorted by priority.
+	 * @param resultCache Optional. Results from previous iterations that are still valid. If this is present, rules with a cached result are not evaluated again,
+	 * 	and any new results are added to it. If this is null, all rules are evaluated.
+	 * @param columnarEvaluator Optional. If present, rules are evaluated with this for all master IDs at once. It must already be up to date with {@code componentData}.
+	 * @param evaluationOrder The order to check groups and criteria in, for the run of the rules this is part of.
+	 * @param metrics Optional. If present, the rules that were evaluated or skipped are counted in this.
 	 * @return The results of evaluating the rules. The visibility of components is not changed by this method.
 	 */
-	private EvaluationResult evaluateRules(ComponentVisibilityFilterData componentData, Map<Integer, Rule> rules, Map<RuleOutcomeKey, TreeMap<Integer, RuleOutcome>> outcomes)
+	private EvaluationResult evaluateRules(ComponentVisibilityFilterData componentData, Map<Integer, Rule> rules, Map<RuleOutcomeKey, PrioritizedOutcomes> outcomes, RuleResultCache resultCache,
+		ColumnarRuleEvaluator columnarEvaluator, EvaluationOrder evaluationOrder, RuleEngineMetrics metrics)
 	{
+		boolean explain = explanationsEnabled || debugEnabled;
 		Map<Integer, Map<Integer, RuleResult>> ruleResults = new HashMap<Integer, Map<Integer, RuleResult>>();
 		Map<RuleOutcomeKey, RuleOutcome> outcomesToApply = new HashMap<RuleOutcomeKey, RuleOutcome>();
 		for(RuleOutcomeKey outcomeKey : outcomes.keySet())
 		{
-			TreeMap<Integer, RuleOutcome> outcomesForComponent = outcomes.get(outcomeKey);
-			for(RuleOutcome outcome : outcomesForComponent.values())
+			RuleOutcome outcome = evaluateOutcomesForComponent(componentData, outcomeKey, outcomes.get(outcomeKey), rules, ruleResults, resultCache, explain, columnarEvaluator, evaluationOrder, metrics);
+			if(outcome != null)
+				outcomesToApply.put(outcomeKey, outcome);
+		}
+		
+		//If there are any rules that didn't get evaluated at all (because they were lower-priority, perhaps),
+		// then mark them as having been skipped now. That is only needed to explain the results, though.
+		if(!explain)
+			return new EvaluationResult(ruleResults, outcomesToApply, null);
+		
+		addSkippedRuleResults(componentData, rules, ruleResults, resultCache);
+		return new EvaluationResult(ruleResults, outcomesToApply, outcomes);
+	}
+	
+	/**
+	 * Finds the highest-priority outcome for a single component whose rule is satisfied, evaluating rules in priority order until one is satisfied.
+	 * @param componentData The components to get values from when evaluating each rule.
+	 * @param outcomeKey The (master ID, component ID) of the component the outcomes are for.
+	 * @param outcomesForComponent The outcomes for the component, sorted by priority.
+	 * @param rules The rules that can be evaluated, keyed by rule ID.
+	 * @param ruleResults The results of rules already evaluated against {@code componentData}, keyed by master ID, then by rule ID.
+	 * 	Rules in here aren't evaluated again, and any rules that do get evaluated are added to it.
+	 * @param resultCache Optional. Results from previous iterations that are still valid.
+	 * @param explain True to record the full result of evaluating each rule. False to record only whether it was satisfied.
+	 * @param columnarEvaluator Optional. If present, rules are evaluated with this instead of one master ID at a time. Only used if {@code explain} is false.
+	 * @param evaluationOrder The order to check groups and criteria in, when rules are evaluated one master ID at a time without generated code. Only used if {@code explain} is false.
+	 * @param metrics Optional. If present, each rule that gets evaluated, and each one that doesn't need to be, is counted in this.
+	 * @return The outcome that should be applied to the component, or null if none of the rules are satisfied.
+	 */
+	private RuleOutcome evaluateOutcomesForComponent(ComponentVisibilityFilterData componentData, RuleOutcomeKey outcomeKey, PrioritizedOutcomes outcomesForComponent, Map<Integer, Rule> rules,
+		Map<Integer, Map<Integer, RuleResult>> ruleResults, RuleResultCache resultCache, boolean explain, ColumnarRuleEvaluator columnarEvaluator, EvaluationOrder evaluationOrder,
+		RuleEngineMetrics metrics)
+	{
+		int masterId = outcomeKey.getMasterId();
+		int outcomeCount = outcomesForComponent.size();
+		for(int i = 0; i < outcomeCount; i++)
+		{
+			RuleOutcome outcome = outcomesForComponent.get(i);
+			int ruleId = outcome.getRuleId();
+			Map<Integer, RuleResult> resultsForMaster = ruleResults.get(masterId);
+			RuleResult ruleResult = resultsForMaster == null ? null : resultsForMaster.get(ruleId);
+			
+			//If the rule hasn't been evaluated yet, evaluate it now, unless a previous iteration already evaluated it and none of its components have changed since.
+			if(ruleResult == null)
 			{
-				int ruleId = outcome.getRuleId();
-				int masterId = outcomeKey.getMasterId();
-				Map<Integer, RuleResult> resultsForMaster = ruleResults.get(masterId);
-				RuleResult ruleResult = resultsForMaster == null ? null : resultsForMaster.get(ruleId);
+				Rule rule = rules.get(ruleId);
+				if(rule == null)
+					throw new IllegalStateException("Rule " + ruleId + " is referred to by outcome " + outcome.getCmpRulesId() + ", but the rule was not loaded.");
 				
-				//If the rule hasn't been evaluated yet, evaluate it now.
+				ruleResult = resultCache == null ? null : resultCache.getEvaluatedResult(masterId, ruleId);
 				if(ruleResult == null)
 				{
-					Rule rule = rules.get(ruleId);
-					if(rule == null)
-						throw new IllegalStateException("Rule " + ruleId + " is referred to by outcome " + outcome.getCmpRulesId() + ", but the rule was not loaded.");
-					
+					long ruleStartNanos = metrics != null && metrics.isRecordingRules() ? System.nanoTime() : 0;
 					//Rules that evaluate true for one unit master might not be true for another master, since some components can have different values for different masters
-					ruleResult = rule.evaluate(componentData, masterId);
-					
-					if(!ruleResults.containsKey(masterId))
-						ruleResults.put(masterId, new TreeMap<Integer, RuleResult>());
-					
-					ruleResults.get(masterId).put(ruleId, ruleResult);
+					if(explain)
+						ruleResult = rule.evaluate(componentData, masterId);
+					else if(columnarEvaluator != null)
+						ruleResult = RuleResult.createWithoutDetail(rule, columnarEvaluator.isSatisfied(rule, masterId));
+					else
+						ruleResult = RuleResult.createWithoutDetail(rule, isSatisfied(rule, componentData, masterId, evaluationOrder));
+					if(resultCache != null)
+						resultCache.putEvaluatedResult(masterId, ruleId, ruleResult);
+					if(metrics != null)
+						metrics.ruleEvaluated(rule, masterId, ruleResult.isSatisfied(), ruleStartNanos);
+					if(traceSink != null)
+						traceSink.trace(RuleTraceEvent.ruleEvaluated(masterId, ruleId, ruleResult.isSatisfied()));
 				}
+				else if(metrics != null)
+					metrics.addRulesSkipped(1);
 				
-				//Stop at the first rule that is satisfied.
-				// Don't go on to evaluate other rules of lower priority if this one is satisfied,
-				// since this one will trump any lower-priority rules for this component.
-				if(ruleResult.isSatisfied())
-				{
-					outcomesToApply.put(outcomeKey, outcome);
-					break;
-				}
+				if(!ruleResults.containsKey(masterId))
+					ruleResults.put(masterId, new TreeMap<Integer, RuleResult>());
+				
+				ruleResults.get(masterId).put(ruleId, ruleResult);
+			}
+			
+			//Stop at the first rule that is satisfied.
+			// Don't go on to evaluate other rules of lower priority if this one is satisfied,
+			// since this one will trump any lower-priority rules for this component.
+			if(ruleResult.isSatisfied())
+			{
+				if(metrics != null)
+					metrics.addRulesSkipped(outcomeCount - i - 1);
+				return outcome;
 			}
 		}
 		
-		//If there are any rules that didn't get evaluated at all (because they were lower-priority, perhaps),
-		// then mark them as having been skipped now.
+		return null;
+	}
+	
+	/**
+	 * Tests whether a rule is satisfied for a single master ID, using the rule's generated code if this filter is set up to do that and code could be generated for the rule.
+	 * 	Otherwise, the rule's groups and criteria are checked in the order that has worked best so far in this run of the rules.
+	 */
+	private boolean isSatisfied(Rule rule, ComponentVisibilityFilterData componentData, int masterId, EvaluationOrder evaluationOrder)
+	{
+		GeneratedRule generatedRule = generatedCodeEnabled ? rule.getGeneratedRule() : null;
+		if(generatedRule == null)
+			return evaluationOrder.isSatisfied(rule, componentData, masterId);
+		return generatedRule.isSatisfied(componentData, masterId);
+	}
+	
+	/**
+	 * Gets an object to evaluate rules against the given components for all master IDs at once, if this filter is set up to do that.
+	 * 	One evaluator is kept for a whole run of the rules. Each iteration moves it on to the components as they are now,
+	 * 	so only the columns for the component IDs whose components changed since the last iteration have to be laid out again.
+	 * @param previous Optional. The evaluator from the last iteration of this run of the rules, or null if this is the first one.
+	 * @param componentData The components the rules are about to be evaluated against.
+	 * @param explain True if the full result of evaluating each rule is being recorded, which the columnar evaluator can't do.
+	 * @return The evaluator, or null if rules should be evaluated one master ID at a time.
+	 */
+	private ColumnarRuleEvaluator getColumnarEvaluator(ColumnarRuleEvaluator previous, ComponentVisibilityFilterData componentData, boolean explain)
+	{
+		if(!columnarEvaluationEnabled || explain)
+			return null;
+		if(previous == null)
+			return new ColumnarRuleEvaluator(componentData);
+		previous.update(componentData);
+		return previous;
+	}
+	
+	/**
+	 * Marks every rule that wasn't evaluated for a master ID as having been skipped.
+	 * @param componentData The components the rules were evaluated against.
+	 * @param rules All the rules that could have been evaluated, keyed by rule ID.
+	 * @param ruleResults The results of the rules that were evaluated, keyed by master ID, then by rule ID. Skipped results are added to this.
+	 * @param resultCache Optional. Results from previous iterations that are still valid.
+	 */
+	private void addSkippedRuleResults(ComponentVisibilityFilterData componentData, Map<Integer, Rule> rules, Map<Integer, Map<Integer, RuleResult>> ruleResults, RuleResultCache resultCache)
+	{
 		for(Entry<Integer, Rule> ruleEntry : rules.entrySet())
 		{
 			int ruleId = ruleEntry.getKey();
@@ -337,65 +1016,163 @@ public class ComponentVisibilityFilter
 				Map<Integer, RuleResult> resultsForMaster = ruleResultEntry.getValue();
 				if(!resultsForMaster.containsKey(ruleId))
 				{
-					RuleResult ruleResult = RuleResult.createSkippedRuleInstance(rule, componentData, masterId);
+					RuleResult ruleResult = resultCache == null ? null : resultCache.getSkippedResult(masterId, ruleId);
+					if(ruleResult == null)
+					{
+						ruleResult = RuleResult.createSkippedRuleInstance(rule, componentData, masterId);
+						if(resultCache != null)
+							resultCache.putSkippedResult(masterId, ruleId, ruleResult);
+					}
 					resultsForMaster.put(ruleId, ruleResult);
 				}
 			}
 		}
-
-		return new EvaluationResult(ruleResults, outcomesToApply, outcomes);
 	}
 
 	/**
 	 * Applies the results of running the rules, and returns a new set of components with visibility updated appropriately.
 	 * Components that don't have an applicable outcome will revert back to their base visibility (from the ComponentMaster object).
-	 * The components passed into this method are not changed.
+	 * The components passed into this method are not changed. Components whose visibility stays the same are reused as-is,
+	 * 	and only the component IDs with at least one changed component get a new list, so unchanged data is shared from one iteration to the next.
 	 * @param componentData The current set of components with their visibilities before applying the rule outcomes.
 	 * @param applicableOutcomes The visibility changes that should be applied to components as a result of running the rules, keyed by (master ID, component ID).
+	 * @param changedComponents Optional. If present, the (master ID, component ID) of every component whose visibility changed will be added to this set.
 	 * @return The left side of the result pair indicates whether any component visibilities actually changed as a result of applying the rule outcomes.
 	 * 	The right side is a new map of components, with the correct visibilities applied.
 	 */
-	private Pair<Boolean, ComponentVisibilityFilterData> applyRuleOutcomes(ComponentVisibilityFilterData componentData, Map<RuleOutcomeKey, ApplicableOutcome> applicableOutcomes)
+	private Pair<Boolean, ComponentVisibilityFilterData> applyRuleOutcomes(ComponentVisibilityFilterData componentData, Map<RuleOutcomeKey, ApplicableOutcome> applicableOutcomes, Set<RuleOutcomeKey> changedComponents)
 	{
 		boolean visibilityChanged = false;
 		Map<Integer, List<ComponentModel>> components = new HashMap<Integer, List<ComponentModel>>();
 		
 		for(Integer componentId : componentData.getAllComponentIds())
 		{
-			List<ComponentModel> componentsForId = new ArrayList<ComponentModel>();
+			List<ComponentModel> oldComponentsForId = componentData.getComponentsForComponentId(componentId);
+			//Only allocated once a component for this ID actually needs replacing
+			List<ComponentModel> componentsForId = null;
 			
-			for(ComponentModel component : componentData.getComponentsForComponentId(componentId))
+			for(int i = 0; i < oldComponentsForId.size(); i++)
 			{
+				ComponentModel component = oldComponentsForId.get(i);
 				int masterId = component.getMasterId();
 				RuleOutcomeKey outcomeKey = new RuleOutcomeKey(masterId, componentId);
 				ApplicableOutcome applicableOutcome = applicableOutcomes.get(outcomeKey);
 
-				//If there is an applied outcome, the visibility comes from that. Otherwise, revert back to the component's base visibility
-				Visibility newVisibility = applicableOutcome == null ? null : applicableOutcome.getOutcome().getVisibility();
+				ComponentModel newComponent = applyRuleOutcome(component, applicableOutcome == null ? null : applicableOutcome.getOutcome());
+				if(traceSink != null)
+					traceOutcome(component, newComponent, applicableOutcome == null ? null : applicableOutcome.getOutcome());
 
-				ComponentModel newComponent = new ComponentModel(component.getComponentMaster(), component.getComponentValue(), newVisibility);
 				//If any component visibility changed from what it was last run, then we need to run another iteration of the rules.
 				if(newComponent.getRuleVisibility() != component.getRuleVisibility())
+				{
 					visibilityChanged = true;
-
-				componentsForId.add(newComponent);
+					if(changedComponents != null)
+						changedComponents.add(outcomeKey);
+				}
+				
+				if(newComponent != component && componentsForId == null)
+					componentsForId = new ArrayList<ComponentModel>(oldComponentsForId.subList(0, i));
+				if(componentsForId != null)
+					componentsForId.add(newComponent);
+			}
+			
+			if(componentsForId != null)
+				components.put(componentId, componentsForId);
+		}
+		
+		ComponentVisibilityFilterData result = ComponentVisibilityFilterData.withComponents(componentData, components);
+		
+		return Pair.of(visibilityChanged, result);
+	}
+	
+	/**
+	 * Applies the results of running the rules to only some of the components, and returns a new set of components with their visibility updated appropriately.
+	 * 	All other components are left exactly as they are.
+	 * @param componentData The current set of components with their visibilities before applying the rule outcomes.
+	 * @param outcomesToApply The outcomes that should be applied to the given components, keyed by (master ID, component ID).
+	 * 	Any of the given components without an outcome here will revert back to their base visibility.
+	 * @param targets The (master ID, component ID) of the components to apply outcomes to.
+	 * @return The left side of the result pair indicates whether any component visibilities actually changed as a result of applying the rule outcomes.
+	 * 	The right side is a new map of components, with the correct visibilities applied.
+	 */
+	private Pair<Boolean, ComponentVisibilityFilterData> applyRuleOutcomes(ComponentVisibilityFilterData componentData, Map<RuleOutcomeKey, RuleOutcome> outcomesToApply, Collection<RuleOutcomeKey> targets)
+	{
+		Map<Integer, Set<Integer>> masterIdsByComponentId = new HashMap<Integer, Set<Integer>>();
+		for(RuleOutcomeKey target : targets)
+			masterIdsByComponentId.computeIfAbsent(target.getComponentId(), x -> new HashSet<Integer>()).add(target.getMasterId());
+		
+		boolean visibilityChanged = false;
+		Map<Integer, List<ComponentModel>> components = new HashMap<Integer, List<ComponentModel>>();
+		for(Entry<Integer, Set<Integer>> entry : masterIdsByComponentId.entrySet())
+		{
+			int componentId = entry.getKey();
+			List<ComponentModel> componentsForId = new ArrayList<ComponentModel>(componentData.getComponentsForComponentId(componentId));
+			boolean componentsChanged = false;
+			for(int i = 0; i < componentsForId.size(); i++)
+			{
+				ComponentModel component = componentsForId.get(i);
+				if(!entry.getValue().contains(component.getMasterId()))
+					continue;
+				
+				RuleOutcome outcome = outcomesToApply.get(new RuleOutcomeKey(component.getMasterId(), componentId));
+				ComponentModel newComponent = applyRuleOutcome(component, outcome);
+				if(traceSink != null)
+					traceOutcome(component, newComponent, outcome);
+				if(newComponent.getRuleVisibility() != component.getRuleVisibility())
+					visibilityChanged = true;
+				if(newComponent != component)
+				{
+					componentsForId.set(i, newComponent);
+					componentsChanged = true;
+				}
 			}
 			
-			components.put(componentId, componentsForId);
+			if(componentsChanged)
+				components.put(componentId, componentsForId);
 		}
 		
 		ComponentVisibilityFilterData result = ComponentVisibilityFilterData.withComponents(componentData, components);
 		
 		return Pair.of(visibilityChanged, result);
 	}
+	
+	/**
+	 * Gets a single component with a rule outcome applied.
+	 * @param component The component before applying the outcome.
+	 * @param outcome Optional. The outcome to apply. If this is null, or doesn't set a visibility, the component reverts to its base visibility.
+	 * @return The component with the new visibility, and with its conflict status cleared. If none of that is different from {@code component}, then {@code component} itself is returned.
+	 */
+	private ComponentModel applyRuleOutcome(ComponentModel component, RuleOutcome outcome)
+	{
+		//If there is an applied outcome, the visibility comes from that. Otherwise, revert back to the component's base visibility
+		Visibility newVisibility = outcome == null ? null : outcome.getVisibility();
+		if(newVisibility == null)
+			newVisibility = component.getComponentMaster().getVisibility();
+		
+		if(newVisibility != component.getRuleVisibility() || component.getFinalVisibility() != newVisibility || component.getConflictStatus() != null)
+			return new ComponentModel(component.getComponentMaster(), component.getComponentValue(), newVisibility);
+		return component;
+	}
 
+	/**
+	 * Traces a component getting its visibility from a rule outcome, or going back to its base visibility because no outcome applies to it any more.
+	 * 	A component without an outcome whose visibility didn't change isn't traced, since nothing happened to it.
+	 */
+	private void traceOutcome(ComponentModel component, ComponentModel newComponent, RuleOutcome outcome)
+	{
+		if(outcome == null && newComponent.getRuleVisibility() == component.getRuleVisibility())
+			return;
+		traceSink.trace(RuleTraceEvent.outcomeApplied(component.getMasterId(), component.getComponentId(), outcome == null ? null : outcome.getRuleId(), component.getRuleVisibility(), newComponent.getRuleVisibility()));
+	}
+	
 	/**
 	 * Given a list of components, determines if there is a conflict, and returns a new list with conflict statuses and final visibilities set correctly.
 	 * @param components The components to test for a conflict. It is assumed these are all for the same component ID.
 	 * @param resolver An object capable of resolving component conflicts.
+	 * @param metrics Optional. If present, any conflict found is counted in this.
 	 * @return A list containing the same component IDs and values as the original, but with visibility and conflict status set appropriately.
 	 */
-	private List<ComponentModel> resolveConflictInternal(List<ComponentModel> components, ConflictResolver resolver)
+	private List<ComponentModel> resolveConflictInternal(List<ComponentModel> components, ConflictResolver resolver, RuleEngineMetrics metrics)
 	{
 		//Can't possibly have a conflict without at least two components having the same ID
 		if(components.size() < 2)
@@ -434,6 +1211,10 @@ public class ComponentVisibilityFilter
 				otherResolution = ConflictStatus.GLOBAL_RESOLUTION;
 			}	
 		}
+		if(metrics != null)
+			metrics.conflict(requiredComponent != null);
+		if(traceSink != null)
+			traceSink.trace(RuleTraceEvent.conflictResolved(components.get(0).getComponentId(), componentsInConflict.size(), mainResolution, requiredComponent == null ? null : requiredComponent.getMasterId()));
 		
 		Visibility mainVisibility = null;
 		Visibility otherVisibility = null;
@@ -443,17 +1224,36 @@ public class ComponentVisibilityFilter
 			otherVisibility = Visibility.VISIBLE;
 		}
 		
+		//Components that already have the resolved visibility and conflict status are kept, and if none of them changed, neither does the list.
 		List<ComponentModel> result = new ArrayList<ComponentModel>(components.size());
+		boolean changed = false;
 		for(ComponentModel component : components)
 		{
+			ComponentModel resolvedComponent = component;
 			if(requiredComponent == component)
-				result.add(new ComponentModel(component.getComponentMaster(), component.getComponentValue(), component.getRuleVisibility(), mainVisibility, mainResolution));
+				resolvedComponent = withConflictStatus(component, mainVisibility, mainResolution);
 			else if(componentsInConflict.contains(component))
-				result.add(new ComponentModel(component.getComponentMaster(), component.getComponentValue(), component.getRuleVisibility(), otherVisibility, otherResolution));
-			else
-				result.add(component);
+				resolvedComponent = withConflictStatus(component, otherVisibility, otherResolution);
+			
+			changed |= resolvedComponent != component;
+			result.add(resolvedComponent);
 		}
 		
-		return result;
+		return changed ? result : components;
+	}
+	
+	/**
+	 * Gets a component with the given final visibility and conflict status, reusing the given component if it already has them.
+	 * @param component The component to base the result on.
+	 * @param finalVisibility Optional. The visibility of the component after resolving conflicts. If null, the rule visibility will be used.
+	 * @param conflictStatus The conflict status of the component.
+	 * @return A component with the same master, value and rule visibility as {@code component}, but with the given final visibility and conflict status.
+	 */
+	private ComponentModel withConflictStatus(ComponentModel component, Visibility finalVisibility, ConflictStatus conflictStatus)
+	{
+		Visibility newFinalVisibility = finalVisibility == null ? component.getRuleVisibility() : finalVisibility;
+		if(component.getFinalVisibility() == newFinalVisibility && component.getConflictStatus() == conflictStatus)
+			return component;
+		return new ComponentModel(component.getComponentMaster(), component.getComponentValue(), component.getRuleVisibility(), finalVisibility, conflictStatus);
 	}
 }
\ No newline at end of file
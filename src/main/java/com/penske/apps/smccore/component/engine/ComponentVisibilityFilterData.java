@@ -9,9 +9,9 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 
 import com.penske.apps.smccore.component.domain.ComponentValue;
@@ -24,12 +24,21 @@ import com.penske.apps.smccore.component.domain.enums.Visibility;
  */
 public class ComponentVisibilityFilterData
 {
+	/**
+	 * Once the component IDs changed in layers over {@link #componentsById} add up to this fraction of all its component IDs, the layers get flattened back into a new base,
+	 * 	so that lookups don't have to go through layers that have replaced most of the base anyway.
+	 */
+	private static final int FLATTEN_DIVISOR = 2;
+	
 	/**
 	 * An integer that can be used to identify the results of this run of the rules, or null if no such ID is desired.
 	 * 	For example, when running loadsheet rules, this might be the ID of the loadsheet the components belong to, to allow for caching rule runs within a single request.
 	 */
 	private final Integer markerId;
-	/** The components to be operated on by the rules engine, keyed by their component ID. */
+	/**
+	 * The components to be operated on by the rules engine, keyed by their component ID.
+	 * 	For component IDs that have been replaced in {@link #changes}, this holds the old list, which is shared with the object the changes were made to.
+	 */
 	private final Map<Integer, List<ComponentModel>> componentsById;
 	/** How the rules engine should handle components whose visibilities are not visible during evaluation of the rules */
 	private final NotVisibleBehavior notVisibleBehavior;
@@ -49,6 +58,16 @@ public class ComponentVisibilityFilterData
 	/** The original set of component values from before the rules engine was run. */
 	private final NestedComponentMap<? extends ComponentValue> originalValues;
 	
+	/** The same components as {@link #componentsById}, indexed by master ID and component ID, for constant-time lookups by the rules engine. */
+	private final NestedComponentMap<ComponentModel> componentIndex;
+	/** The same components as {@link #componentsWithoutUserChanges}, indexed by master ID and component ID. */
+	private final NestedComponentMap<ComponentModel> componentsWithoutUserChangesIndex;
+	/**
+	 * The component lists that have replaced the ones in {@link #componentsById} since it was built, newest first, or null if none have.
+	 * 	The layers only ever replace lists that cover the same master IDs, so the component IDs and master IDs in this object are always the same as in {@link #componentsById}.
+	 */
+	private final ComponentLayer changes;
+	
 	/**
 	 * Creates the data object for use by the component visibility rules engine.
 	 * 	This constructor has package-private visibility since only the rules engine should be creating instances of it.
@@ -56,9 +75,14 @@ public class ComponentVisibilityFilterData
 	 * 	So, the constructor being package-private means only the rules engine can create instances of this object, so the map will not be reused. 
 	 * @param componentsById The components the rules engine will operate on, keyed by their component ID.
 	 * 	There may be more than one component for a given component ID, which would be the case where a component appears on multiple component templates.
+	 * @param componentIndex Optional. The components in {@code componentsById}, already indexed by master ID and component ID. If null, the index will be built.
+	 * 	Factory methods that keep the same component collection as an existing object pass that object's index along, so it doesn't get built again.
+	 * @param componentsWithoutUserChangesIndex Optional. The components in {@code componentsWithoutUserChanges}, already indexed. If null, the index will be built.
+	 * @param changes Optional. The component lists that replace some of the ones in {@code componentsById}, or null if none do.
 	 */
 	private ComponentVisibilityFilterData(Integer markerId, NestedComponentMap<? extends ComponentValue> originalValues, Map<Integer, List<ComponentModel>> componentsById, NotVisibleBehavior notVisibleComponentBehavior,
-		Map<Integer, List<ComponentModel>> componentsWithoutUserChanges, EvaluationResult evaluationResult, int ruleIterations, List<String> debugInfo)
+		Map<Integer, List<ComponentModel>> componentsWithoutUserChanges, EvaluationResult evaluationResult, int ruleIterations, List<String> debugInfo,
+		NestedComponentMap<ComponentModel> componentIndex, NestedComponentMap<ComponentModel> componentsWithoutUserChangesIndex, ComponentLayer changes)
 	{
 		if(originalValues == null)
 			originalValues = NestedComponentMap.emptyMap();
@@ -78,6 +102,10 @@ public class ComponentVisibilityFilterData
 		this.evaluationResult = evaluationResult;
 		this.ruleIterations = ruleIterations;
 		this.debugInfo = debugInfo == null ? Collections.<String>emptyList() : Collections.unmodifiableList(debugInfo);
+		
+		this.componentIndex = componentIndex == null ? indexComponents(componentsById) : componentIndex;
+		this.componentsWithoutUserChangesIndex = componentsWithoutUserChangesIndex == null ? indexComponents(componentsWithoutUserChanges) : componentsWithoutUserChangesIndex;
+		this.changes = changes;
 	}
 	
 	/**
@@ -87,7 +115,7 @@ public class ComponentVisibilityFilterData
 	 */
 	static ComponentVisibilityFilterData emptyInstance(Integer markerId)
 	{
-		return new ComponentVisibilityFilterData(markerId, null, null, NotVisibleBehavior.KEEP, null, null, 0, null);
+		return new ComponentVisibilityFilterData(markerId, null, null, NotVisibleBehavior.KEEP, null, null, 0, null, null, null, null);
 	}
 
 	/**
@@ -104,7 +132,7 @@ public class ComponentVisibilityFilterData
 	static ComponentVisibilityFilterData newInstance(Integer markerId, NestedComponentMap<? extends ComponentValue> originalValues, Map<Integer, List<ComponentModel>> componentsById, 
 		NotVisibleBehavior notVisibleBehavior, Map<Integer, List<ComponentModel>> componentsWithoutUserChanges)
 	{
-		return new ComponentVisibilityFilterData(markerId, originalValues, componentsById, notVisibleBehavior, componentsWithoutUserChanges, null, 0, null);
+		return new ComponentVisibilityFilterData(markerId, originalValues, componentsById, notVisibleBehavior, componentsWithoutUserChanges, null, 0, null, null, null, null);
 	}
 
 	/**
@@ -115,7 +143,8 @@ public class ComponentVisibilityFilterData
 	 */
 	static ComponentVisibilityFilterData withoutUserChanges(ComponentVisibilityFilterData sourceData)
 	{
-		return new ComponentVisibilityFilterData(sourceData.markerId, sourceData.originalValues, sourceData.componentsWithoutUserChanges, sourceData.notVisibleBehavior, null, null, 0, null);
+		return new ComponentVisibilityFilterData(sourceData.markerId, sourceData.originalValues, sourceData.componentsWithoutUserChanges, sourceData.notVisibleBehavior, null, null, 0, null,
+			sourceData.componentsWithoutUserChangesIndex, null, null);
 	}
 	
 	/**
@@ -128,20 +157,60 @@ public class ComponentVisibilityFilterData
 	 */
 	static ComponentVisibilityFilterData reintegrateUserUnchangedComponentsAfterRules(ComponentVisibilityFilterData sourceData, ComponentVisibilityFilterData dataWithoutUserChanges)
 	{
+		//The components without user changes are only ever looked up by master ID and component ID, so any layers of changes on them are flattened once here.
+		Map<Integer, List<ComponentModel>> componentsWithoutUserChanges = dataWithoutUserChanges.componentsById;
+		NestedComponentMap<ComponentModel> componentsWithoutUserChangesIndex = dataWithoutUserChanges.componentIndex;
+		if(dataWithoutUserChanges.changes != null)
+		{
+			componentsWithoutUserChanges = dataWithoutUserChanges.flattenComponents(Collections.<Integer, List<ComponentModel>>emptyMap());
+			componentsWithoutUserChangesIndex = indexComponents(componentsWithoutUserChanges);
+		}
+		
 		return new ComponentVisibilityFilterData(sourceData.markerId, sourceData.originalValues, sourceData.componentsById, sourceData.notVisibleBehavior,
-			dataWithoutUserChanges.componentsById, null, 0, null);
+			componentsWithoutUserChanges, null, 0, null, sourceData.componentIndex, componentsWithoutUserChangesIndex, sourceData.changes);
 	}
 	
 	/**
-	 * Creates a new component data object that has a new set of component values and visibilities, presumably after some of them have changed while rules were being run or conflicts were being resolved.
+	 * Creates a new component data object that has some of its component values and visibilities replaced, presumably after they have changed while rules were being run or conflicts were being resolved.
+	 * 	The new object shares all of {@code sourceData}'s components, and only adds a layer with the changed lists over them, so this takes time proportional to the number of changed components,
+	 * 	not to the total number of components. Small layers get merged into the ones below them as they build up, so lookups only ever go through a few layers,
+	 * 	and once the layers have replaced a large part of the components, they get flattened into a new set of components altogether.
+	 * 	If a changed list doesn't cover exactly the same master IDs as the one it replaces, the components are flattened straight away instead.
+	 * 	If nothing changed, {@code sourceData} itself is returned.
 	 * @param sourceData The component data to base the new one off of. All fields are preserved except the component collection itself.
-	 * @param components The new component values and visibilities.
+	 * @param changedComponents The new component values and visibilities, for only the component IDs that have changed, keyed by component ID.
+	 * 	Each list replaces the list in {@code sourceData} for the same component ID. These lists must not be modified afterwards, since they are not copied.
 	 * @return The component data
 	 */
-	static ComponentVisibilityFilterData withComponents(ComponentVisibilityFilterData sourceData, Map<Integer, List<ComponentModel>> components)
+	static ComponentVisibilityFilterData withComponents(ComponentVisibilityFilterData sourceData, Map<Integer, List<ComponentModel>> changedComponents)
 	{
+		if(changedComponents == null || changedComponents.isEmpty())
+			return sourceData;
+		
+		boolean sameMasters = true;
+		for(Entry<Integer, List<ComponentModel>> entry : changedComponents.entrySet())
+			sameMasters = sameMasters && isSameMasters(sourceData.getComponentList(entry.getKey()), entry.getValue());
+		
+		Map<Integer, List<ComponentModel>> components = sourceData.componentsById;
+		NestedComponentMap<ComponentModel> componentIndex = sourceData.componentIndex;
+		ComponentLayer layer = null;
+		if(sameMasters)
+		{
+			layer = new ComponentLayer(sourceData.changes, new HashMap<Integer, List<ComponentModel>>(changedComponents));
+			while(layer.parent != null && layer.parent.size() <= 2 * layer.size())
+				layer = layer.mergeIntoParent();
+		}
+		
+		if(layer == null || layer.size() * FLATTEN_DIVISOR >= components.size())
+		{
+			components = sourceData.flattenComponents(changedComponents);
+			componentIndex = indexComponents(components);
+			layer = null;
+		}
+		
 		return new ComponentVisibilityFilterData(sourceData.markerId, sourceData.originalValues, components,
-			sourceData.notVisibleBehavior, sourceData.componentsWithoutUserChanges, sourceData.evaluationResult, sourceData.ruleIterations, sourceData.debugInfo);
+			sourceData.notVisibleBehavior, sourceData.componentsWithoutUserChanges, sourceData.evaluationResult, sourceData.ruleIterations, sourceData.debugInfo,
+			componentIndex, sourceData.componentsWithoutUserChangesIndex, layer);
 	}
 	
 	/**
@@ -155,7 +224,8 @@ public class ComponentVisibilityFilterData
 	static ComponentVisibilityFilterData withFinalRuleResults(ComponentVisibilityFilterData sourceData, EvaluationResult evaluationResult, int ruleIterations, List<String> debugInfo)
 	{
 		return new ComponentVisibilityFilterData(sourceData.markerId, sourceData.originalValues, sourceData.componentsById,
-			sourceData.notVisibleBehavior, sourceData.componentsWithoutUserChanges, evaluationResult, ruleIterations, debugInfo);
+			sourceData.notVisibleBehavior, sourceData.componentsWithoutUserChanges, evaluationResult, ruleIterations, debugInfo,
+			sourceData.componentIndex, sourceData.componentsWithoutUserChangesIndex, sourceData.changes);
 	}
 	
 	/**
@@ -191,7 +261,7 @@ public class ComponentVisibilityFilterData
 		Map<Integer, List<ComponentModel>> componentsWithoutUserChangesMap = componentsWithoutUserChanges.stream()
 			.collect(groupingBy(ComponentModel::getComponentId));
 		
-		return new ComponentVisibilityFilterData(markerId, originalValues, componentsMap, notVisibleBehavior, componentsWithoutUserChangesMap, null, 0, null);
+		return new ComponentVisibilityFilterData(markerId, originalValues, componentsMap, notVisibleBehavior, componentsWithoutUserChangesMap, null, 0, null, null, null, null);
 	}
 	
 	//***** MODIFIED ACCESSORS *****//
@@ -203,17 +273,12 @@ public class ComponentVisibilityFilterData
 		return Collections.unmodifiableSet(componentsById.keySet());
 	}
 
-	//FIXME: document
+	/**
+	 * @return An unmodifiable view of the master IDs of all components stored in this object.
+	 */
 	public Set<Integer> getAllMasterIds()
 	{
-		Set<Integer> result = new HashSet<Integer>();
-		for(List<ComponentModel> components : componentsById.values())
-		{
-			for(ComponentModel component : components)
-				result.add(component.getMasterId());
-		}
-		
-		return result;
+		return componentIndex.getAllMasterIds();
 	}
 	
 	/**
@@ -223,12 +288,11 @@ public class ComponentVisibilityFilterData
 	public NestedComponentMap<ComponentModel> getAllComponents()
 	{
 		NestedComponentMap<ComponentModel> result = NestedComponentMap.newInstance();
-		for(List<ComponentModel> components : componentsById.values())
+		for(Integer componentId : componentsById.keySet())
 		{
-			for(ComponentModel component : components)
+			for(ComponentModel component : getComponentList(componentId))
 			{
 				int masterId = component.getMasterId();
-				int componentId = component.getComponentMaster().getComponentId();
 				
 				result.put(masterId, componentId, component);
 			}
@@ -244,8 +308,8 @@ public class ComponentVisibilityFilterData
 	public List<ComponentModel> getAllComponentsAsList()
 	{
 		List<ComponentModel> result = new ArrayList<ComponentModel>();
-		for(List<ComponentModel> components : componentsById.values())
-			result.addAll(components);
+		for(Integer componentId : componentsById.keySet())
+			result.addAll(getComponentList(componentId));
 		
 		return result;
 	}
@@ -253,22 +317,18 @@ public class ComponentVisibilityFilterData
 	/**
 	 * Gets only the components for a given unit master or loadsheet sequence.
 	 * @param masterId The ID of the unit master or loadsheet for which to get components.
-	 * @return Only the components for the given unit master, keyed by component ID.
+	 * @return An unmodifiable view of only the components for the given unit master, keyed by component ID.
 	 */
 	public Map<Integer, ComponentModel> getComponentsForMasterId(int masterId)
 	{
-		Map<Integer, ComponentModel> result = new HashMap<Integer, ComponentModel>();
-		for(List<ComponentModel> components : componentsById.values())
-		{
-			for(ComponentModel component : components)
-			{
-				int componentId = component.getComponentMaster().getComponentId();
-				if(component.getMasterId() == masterId)
-					result.put(componentId, component);
-			}
-		}
+		Map<Integer, ComponentModel> baseComponents = componentIndex.getComponentsForMasterId(masterId);
+		if(changes == null)
+			return baseComponents;
 		
-		return result;
+		Map<Integer, ComponentModel> result = new HashMap<Integer, ComponentModel>(baseComponents.size() * 2);
+		for(Integer componentId : baseComponents.keySet())
+			result.put(componentId, getSingleComponent(componentId, masterId));
+		return Collections.unmodifiableMap(result);
 	}
 	
 	/**
@@ -279,7 +339,7 @@ public class ComponentVisibilityFilterData
 	 */
 	public List<ComponentModel> getComponentsForComponentId(int componentId)
 	{
-		List<ComponentModel> results = componentsById.get(componentId);
+		List<ComponentModel> results = getComponentList(componentId);
 		return results == null ? Collections.<ComponentModel>emptyList() : Collections.unmodifiableList(results);
 	}
 
@@ -291,16 +351,12 @@ public class ComponentVisibilityFilterData
 	 */
 	public ComponentModel getSingleComponent(int componentId, int masterId)
 	{
-		List<ComponentModel> components = getComponentsForComponentId(componentId);
-		if(components == null)
-			return null;
-		for(ComponentModel component : components)
+		for(ComponentLayer layer = changes; layer != null; layer = layer.parent)
 		{
-			if(component.getMasterId() == masterId)
-				return component;
+			if(layer.componentsById.containsKey(componentId))
+				return layer.componentIndex.get(masterId, componentId);
 		}
-		
-		return null;
+		return componentIndex.get(masterId, componentId);
 	}
 	
 	/**
@@ -357,16 +413,14 @@ public class ComponentVisibilityFilterData
 	 */
 	public boolean isComponentVisibilityChanged(int masterId, int componentId)
 	{
-		ComponentModel compWithoutUserChanges = componentsWithoutUserChanges.getOrDefault(componentId, Collections.emptyList()).stream()
-			.filter(comp -> comp.getMasterId() == masterId)
-			.findAny()
-			.orElse(null);
+		ComponentModel compWithoutUserChanges = componentsWithoutUserChangesIndex.get(masterId, componentId);
 		
 		if(compWithoutUserChanges == null)
 			return false;
 		
+		//Components the rules didn't touch after the user's changes were applied are shared with the components without user changes
 		ComponentModel compWithUserChanges = getSingleComponent(componentId, masterId);
-		if(compWithUserChanges == null)
+		if(compWithUserChanges == null || compWithUserChanges == compWithoutUserChanges)
 			return false;
 		
 		//Treat both not visible statuses as the same
@@ -376,6 +430,142 @@ public class ComponentVisibilityFilterData
 		return withoutUserChanges != withUserChanges;
 	}
 	
+	/**
+	 * Checks, without looking at the components themselves, if the rules would see exactly the same components for a component ID here as in another component data object.
+	 * 	This is the case when one object was made from the other with {@link #withComponents(ComponentVisibilityFilterData, Map)}, and the list for that component ID wasn't replaced.
+	 * 	A list replaced with an identical one counts as different, so this can say two sets of components are different when they aren't, but never the other way around.
+	 * @param other The other component data.
+	 * @param componentId The component ID to check.
+	 * @return True if both objects share the same list of components for the component ID, and would show it to the rules the same way.
+	 */
+	boolean isSameComponentsForRules(ComponentVisibilityFilterData other, int componentId)
+	{
+		return notVisibleBehavior == other.notVisibleBehavior && originalValues == other.originalValues && componentsWithoutUserChangesIndex == other.componentsWithoutUserChangesIndex
+			&& getComponentList(componentId) == other.getComponentList(componentId);
+	}
+	
+	//***** HELPER METHODS *****//
+	/**
+	 * Gets the current list of components for a component ID, from the newest layer of changes that has one, or from the base components if none do.
+	 * @return The list of components, or null if there are none with the given component ID.
+	 */
+	private List<ComponentModel> getComponentList(int componentId)
+	{
+		for(ComponentLayer layer = changes; layer != null; layer = layer.parent)
+		{
+			List<ComponentModel> components = layer.componentsById.get(componentId);
+			if(components != null)
+				return components;
+		}
+		return componentsById.get(componentId);
+	}
+	
+	/**
+	 * Builds a single map with the current list of components for each component ID, with no layers.
+	 * @param extraChanges Component lists to put in the result on top of the current ones, keyed by component ID.
+	 * @return The new map of components, keyed by component ID.
+	 */
+	private Map<Integer, List<ComponentModel>> flattenComponents(Map<Integer, List<ComponentModel>> extraChanges)
+	{
+		Map<Integer, List<ComponentModel>> result = new HashMap<Integer, List<ComponentModel>>(componentsById);
+		//Apply the oldest layer first, so newer layers overwrite it
+		List<ComponentLayer> layers = new ArrayList<ComponentLayer>();
+		for(ComponentLayer layer = changes; layer != null; layer = layer.parent)
+			layers.add(0, layer);
+		for(ComponentLayer layer : layers)
+			result.putAll(layer.componentsById);
+		result.putAll(extraChanges);
+		return result;
+	}
+	
+	/**
+	 * Checks if a new list of components for a component ID has the same master IDs, in the same positions, as the list it replaces, so that both get indexed under the same keys.
+	 * @param oldComponents The list being replaced, or null if there was none.
+	 * @param newComponents The list replacing it.
+	 * @return True if both lists have the same master IDs in the same positions.
+	 */
+	private static boolean isSameMasters(List<ComponentModel> oldComponents, List<ComponentModel> newComponents)
+	{
+		if(oldComponents == null || newComponents == null || oldComponents.size() != newComponents.size())
+			return false;
+		for(int i = 0; i < oldComponents.size(); i++)
+		{
+			if(oldComponents.get(i).getMasterId() != newComponents.get(i).getMasterId())
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Indexes a set of components by master ID and component ID.
+	 * If more than one component has the same master ID and component ID, the first one in its list is the one that gets indexed.
+	 * @param componentsById The components to index, keyed by component ID.
+	 * @return The index of the components.
+	 */
+	private static NestedComponentMap<ComponentModel> indexComponents(Map<Integer, List<ComponentModel>> componentsById)
+	{
+		NestedComponentMap<ComponentModel> result = NestedComponentMap.newInstance();
+		for(List<ComponentModel> components : componentsById.values())
+			addToIndex(result, components);
+		return result;
+	}
+	
+	/**
+	 * Adds a list of components to an index, keeping whichever component is already indexed if there is more than one with the same master ID and component ID.
+	 * @param index The index to add to.
+	 * @param components The components to add.
+	 */
+	private static void addToIndex(NestedComponentMap<ComponentModel> index, List<ComponentModel> components)
+	{
+		for(ComponentModel component : components)
+		{
+			int masterId = component.getMasterId();
+			int componentId = component.getComponentId();
+			if(!index.containsKey(masterId, componentId))
+				index.put(masterId, componentId, component);
+		}
+	}
+	
+	//***** HELPER CLASSES *****//
+	/**
+	 * A set of component lists that replace the ones for the same component IDs in the layers below it, and in the base components under all the layers.
+	 * 	Each layer is immutable once built, so layers are shared between data objects the same way the base components are.
+	 */
+	private static final class ComponentLayer
+	{
+		/** The next older layer, or null if this layer is directly on top of the base components. */
+		private final ComponentLayer parent;
+		/** The replacement component lists, keyed by component ID. */
+		private final Map<Integer, List<ComponentModel>> componentsById;
+		/** The components in {@link #componentsById}, indexed by master ID and component ID. */
+		private final NestedComponentMap<ComponentModel> componentIndex;
+		
+		private ComponentLayer(ComponentLayer parent, Map<Integer, List<ComponentModel>> componentsById)
+		{
+			this.parent = parent;
+			this.componentsById = componentsById;
+			this.componentIndex = indexComponents(componentsById);
+		}
+		
+		/** @return The number of component IDs replaced in this layer. */
+		private int size()
+		{
+			return componentsById.size();
+		}
+		
+		/**
+		 * Merges this layer with the one below it. Doing this whenever the layer below is not much bigger than this one keeps the number of layers logarithmic,
+		 * 	while each component list only gets copied into a merged layer a logarithmic number of times.
+		 * @return The merged layer, which takes the place of both this layer and its parent.
+		 */
+		private ComponentLayer mergeIntoParent()
+		{
+			Map<Integer, List<ComponentModel>> merged = new HashMap<Integer, List<ComponentModel>>(parent.componentsById);
+			merged.putAll(componentsById);
+			return new ComponentLayer(parent.parent, merged);
+		}
+	}
+	
 	//***** DEFAULT ACCESSORS *****//
 	public Integer getMarkerId()
 	{
@@ -0,0 +1,27 @@
+/**
+ * @author john.shiffler (600139252)
+ */
+package com.penske.apps.smccore.component.engine;
+
+/**
+ * A trace sink that ignores every event. Useful as a placeholder when tracing can be switched on and off, but is currently off.
+ * 	Leaving the trace sink off a {@link ComponentVisibilityFilter} entirely is cheaper still, since then no events get created at all.
+ */
+public final class DiscardingTraceSink implements RuleTraceSink
+{
+	/** The only instance of this class that is needed. */
+	public static final DiscardingTraceSink INSTANCE = new DiscardingTraceSink();
+
+	private DiscardingTraceSink() {}
+
+	/** {@inheritDoc} */
+	@Override
+	public void trace(RuleTraceEvent event) {}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString()
+	{
+		return "{DiscardingTraceSink}";
+	}
+}
@@ -44,7 +44,7 @@ public class EvaluationResult
 	 * @param outcomesToApply The changes to any components that need to be made as a result of running the rules, keyed by (master ID, component ID).
 	 * @param allOutcomes A map of all possible rule outcomes. Only needed for detailed debug information.
 	 */
-	EvaluationResult(Map<Integer, Map<Integer, RuleResult>> ruleResults, Map<RuleOutcomeKey, RuleOutcome> outcomesToApply, Map<RuleOutcomeKey, ? extends Map<Integer, RuleOutcome>> allOutcomes)
+	EvaluationResult(Map<Integer, Map<Integer, RuleResult>> ruleResults, Map<RuleOutcomeKey, RuleOutcome> outcomesToApply, Map<RuleOutcomeKey, PrioritizedOutcomes> allOutcomes)
 	{
 		if(outcomesToApply == null)
 			outcomesToApply = Collections.emptyMap();
@@ -72,11 +72,8 @@ public class EvaluationResult
 			this.applicableOutcomes.put(outcomeKey, new ApplicableOutcome(result.getRule(), outcome));
 		}
 		
-		for(Entry<RuleOutcomeKey, ? extends Map<Integer, RuleOutcome>> outcomeEntry : allOutcomes.entrySet())
-		{
-			Map<Integer, RuleOutcome> outcomesForComponent = new TreeMap<Integer, RuleOutcome>(outcomeEntry.getValue());
-			this.allOutcomes.put(outcomeEntry.getKey(), outcomesForComponent);
-		}
+		for(Entry<RuleOutcomeKey, PrioritizedOutcomes> outcomeEntry : allOutcomes.entrySet())
+			this.allOutcomes.put(outcomeEntry.getKey(), outcomeEntry.getValue().toMap());
 	}
 	
 	/**
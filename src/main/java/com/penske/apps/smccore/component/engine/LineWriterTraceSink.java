@@ -0,0 +1,66 @@
+/**
+ * @author john.shiffler (600139252)
+ */
+package com.penske.apps.smccore.component.engine;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A trace sink that writes each event as a single compact line (see {@link RuleTraceEvent#toLine()}) as soon as it arrives, so nothing builds up in memory.
+ * 	Tracing should never break the rules, so if writing fails, this stops writing, and keeps the exception to be checked afterwards.
+ * 	The writer is not flushed or closed by this sink. That is up to whoever created the writer.
+ * This class is thread-safe, as long as nothing else writes to the same writer at the same time.
+ */
+public final class LineWriterTraceSink implements RuleTraceSink
+{
+	private final Writer writer;
+	private final String lineSeparator;
+	/** The exception from the first write that failed, or null if nothing has failed. Once this is set, nothing else gets written. */
+	private IOException failure;
+
+	/**
+	 * Creates a sink that writes to the given writer.
+	 * @param writer The writer to send each line to.
+	 * @param lineSeparator A string used to separate lines in the output.
+	 */
+	public LineWriterTraceSink(Writer writer, String lineSeparator)
+	{
+		if(writer == null)
+			throw new IllegalArgumentException("Writer is required to write trace events");
+		if(lineSeparator == null)
+			throw new IllegalArgumentException("Line separator is required to write trace events");
+		this.writer = writer;
+		this.lineSeparator = lineSeparator;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public synchronized void trace(RuleTraceEvent event)
+	{
+		if(event == null || failure != null)
+			return;
+		try {
+			writer.write(event.toLine());
+			writer.write(lineSeparator);
+		} catch(IOException ex) {
+			failure = ex;
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString()
+	{
+		return "{LineWriterTraceSink" + (getFailure() == null ? "" : ": failed - " + getFailure().getMessage()) + "}";
+	}
+
+	//***** MODIFIED ACCESSORS *****//
+	/**
+	 * @return The exception that stopped this sink from writing, or null if every event so far has been written.
+	 */
+	public synchronized IOException getFailure()
+	{
+		return failure;
+	}
+}
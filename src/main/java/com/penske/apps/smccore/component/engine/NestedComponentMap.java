@@ -3,54 +3,81 @@
  */
 package com.penske.apps.smccore.component.engine;
 
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 /**
  * A container that indexes component information first by master ID and then by component ID.
  * This object is primarily intended for use by the component visibility rules engine, as it represents a structure
  * 	commonly seen throughout the engine and associated service: Map<Integer, Map<Integer, E>>.
+ *
+ * Internally, this is a single open-addressing hash table keyed by the master ID and component ID packed into one long,
+ * 	so that lookups and inserts don't box either ID or allocate a separate map per master ID.
+ * 	The per-master views returned by {@link #getComponentsForMasterId(int)} and {@link #getAllMasterIds()} are still live views,
+ * 	but iterating them relies on a grouping of component IDs by master ID that is rebuilt lazily after the map changes.
+ * 	Callers that just need to visit every entry should use {@link #forEach(ComponentEntryConsumer)} instead, which does no boxing at all.
  * @param <T> The type of data contained in this map. This does not necessarily have to implement {@link NestableComponentData}, but some
  * 	of the methods on this class work better if it does.
  */
-//FIXME: test
 public class NestedComponentMap<T>
 {
-	//We use Collections.emptyMap() to force the internal map to be unmodifiable.
-	private static final NestedComponentMap<?> EMPTY_INSTANCE = new NestedComponentMap<Object>(Collections.<Integer, Map<Integer, Object>>emptyMap());
+	/** The smallest capacity the hash table will be created with. Must be a power of two. */
+	private static final int MIN_CAPACITY = 16;
+
+	//The empty instance is marked as unmodifiable, so nobody can put anything in it.
+	private static final NestedComponentMap<?> EMPTY_INSTANCE = new NestedComponentMap<Object>(MIN_CAPACITY, false);
+
+	/** The packed (master ID, component ID) key for each slot in the table. Only meaningful where the corresponding value is not null. */
+	private long[] keys;
+	/** The value for each slot in the table. A null value marks an empty slot, which is why this map does not allow nulls. */
+	private Object[] values;
+	/** The number of entries in the map. */
+	private int size;
+	/** Incremented every time the map's contents change, so cached groupings can tell when they are out of date. */
+	private int modCount;
+	/** False for the shared empty instance, which may not be changed. */
+	private final boolean modifiable;
+	/** The component IDs in this map grouped by master ID, or null if it hasn't been built since the map last changed. */
+	private volatile MasterGrouping masterGrouping;
 
-	private final Map<Integer, Map<Integer, T>> components;
-	
 	@SuppressWarnings("unchecked")	//This is safe because the internal map will never contain anything, so we won't ever get a cast exception trying to coerce things in and out of it.
 	public static <T> NestedComponentMap<T> emptyMap()
 	{
 		return (NestedComponentMap<T>) EMPTY_INSTANCE;
 	}
-	
+
 	/** Empty constructor - creates an empty nested map */
 	private NestedComponentMap()
 	{
-		this.components = new HashMap<Integer, Map<Integer, T>>();
+		this(MIN_CAPACITY, true);
 	}
-	
-	/** Creates a nested map using the given underlying map directly. Do not use this publicly because of exposing leaked references to class internals. */
-	private NestedComponentMap(Map<Integer, Map<Integer, T>> components)
+
+	/** Creates an empty nested map with room for at least the given number of entries before it has to grow. */
+	private NestedComponentMap(int expectedSize, boolean modifiable)
 	{
-		if(components == null)
-			components = new HashMap<Integer, Map<Integer, T>>();
-		
-		this.components = components;
+		int capacity = MIN_CAPACITY;
+		while(capacity * 3 / 4 < expectedSize)
+			capacity <<= 1;
+
+		this.keys = new long[capacity];
+		this.values = new Object[capacity];
+		this.modifiable = modifiable;
 	}
-	
+
 	public static <T> NestedComponentMap<T> newInstance()
 	{
 		return new NestedComponentMap<T>();
 	}
-	
+
 	/**
 	 * Creates a map of component information keyed by master ID and then by component ID, with data already in it.
 	 * @param components A collection of component information that the map should contain.
@@ -61,15 +88,15 @@ public class NestedComponentMap<T>
 	{
 		if(components == null)
 			return new NestedComponentMap<N>();
-		
-		NestedComponentMap<N> result = new NestedComponentMap<N>();
+
+		NestedComponentMap<N> result = new NestedComponentMap<N>(components.size(), true);
 		for(N component : components)
 		{
 			int masterId = component.getMasterId();
 			int componentId = component.getComponentId();
 			result.put(masterId, componentId, component);
 		}
-		
+
 		return result;
 	}
 
@@ -82,16 +109,14 @@ public class NestedComponentMap<T>
 	{
 		if(source == null)
 			return new NestedComponentMap<T>();
-		
-		NestedComponentMap<T> result = new NestedComponentMap<T>();
-		for(Entry<Integer, Map<Integer, T>> entry : source.components.entrySet())
-		{
-			Map<Integer, T> componentsForMasterId = new HashMap<Integer, T>(entry.getValue());
-			result.components.put(entry.getKey(), componentsForMasterId);
-		}
+
+		NestedComponentMap<T> result = new NestedComponentMap<T>(MIN_CAPACITY, true);
+		result.keys = Arrays.copyOf(source.keys, source.keys.length);
+		result.values = Arrays.copyOf(source.values, source.values.length);
+		result.size = source.size;
 		return result;
 	}
-	
+
 	/**
 	 * Creates a map of component information keyed by master ID and then by component ID, with data already in it.
 	 * 	NOTE: this method does not make use of the keys in the given map, but instead re-indexes the collection of component data by their IDs.
@@ -103,44 +128,73 @@ public class NestedComponentMap<T>
 	{
 		if(components == null)
 			return new NestedComponentMap<T>();
-		
+
 		NestedComponentMap<T> result = new NestedComponentMap<T>();
 		for(Entry<Integer, Map<Integer, T>> componentsForMasterIdEntry : components.entrySet())
 		{
 			if(componentsForMasterIdEntry == null)
 				continue;
-			
+
 			int masterId = componentsForMasterIdEntry.getKey();
 			Map<Integer, T> componentsForMasterId = componentsForMasterIdEntry.getValue();
 			if(componentsForMasterId == null)
 				continue;
-			
+
 			for(Entry<Integer, T> componentEntry : componentsForMasterId.entrySet())
 				result.put(masterId, componentEntry.getKey(), componentEntry.getValue());
 		}
-		
+
 		return result;
 	}
-	
+
 	/**
-	 * Package-private factory method to directly set the component data in this map.
-	 * 	This method is not public because it results in a leaked reference to the internal map, but it is faster.
-	 * 	Thus, this method is intended only for use within the rules engine itself, where leaked references can be properly managed
-	 * @param components A map of component information that this map should contain, indexed by master ID and then by component ID. 
+	 * Package-private factory method to build a map from component data that is already nested by master ID and component ID.
+	 * 	Since this map no longer stores one map per master ID, the entries are copied into the new map, so later changes to the
+	 * 	source map are not reflected in this one.
+	 * 	This method is intended only for use within the rules engine itself.
+	 * @param components A map of component information that this map should contain, indexed by master ID and then by component ID.
 	 * @return The newly-created map.
 	 */
 	static <T> NestedComponentMap<T> newInstanceInternal(Map<Integer, Map<Integer, T>> components)
 	{
-		return new NestedComponentMap<T>(components);
+		return of(components);
 	}
-	
+
 	/** {@inheritDoc} */
 	@Override
 	public String toString()
 	{
-		return components.toString();
+		StringBuilder sb = new StringBuilder("{");
+		for(int masterId : getAllMasterIds())
+		{
+			if(sb.length() > 1)
+				sb.append(", ");
+			sb.append(masterId).append("=").append(getComponentsForMasterId(masterId));
+		}
+		return sb.append("}").toString();
+	}
+
+	//***** CALLBACK INTERFACES *****//
+	/**
+	 * Receives each entry in a {@link NestedComponentMap}, without boxing either ID.
+	 * @param <T> The type of data contained in the map.
+	 */
+	@FunctionalInterface
+	public interface ComponentEntryConsumer<T>
+	{
+		public void accept(int masterId, int componentId, T component);
 	}
-	
+
+	/**
+	 * Receives each entry for a single master ID in a {@link NestedComponentMap}, without boxing the component ID.
+	 * @param <T> The type of data contained in the map.
+	 */
+	@FunctionalInterface
+	public interface ComponentConsumer<T>
+	{
+		public void accept(int componentId, T component);
+	}
+
 	//***** COLLECTION MANIPULATION METHODS *****//
 	/**
 	 * Adds a piece of component information to the map.
@@ -151,17 +205,27 @@ public class NestedComponentMap<T>
 	{
 		if(component == null)
 			throw new NullPointerException("NestedComponentMap does not allow nulls");
-		
-		Map<Integer, T> componentsForMasterId = components.get(masterId);
-		if(componentsForMasterId == null)
+		if(!modifiable)
+			throw new UnsupportedOperationException("This NestedComponentMap can not be modified");
+
+		long key = packKey(masterId, componentId);
+		int slot = findSlot(key);
+		if(values[slot] != null)
 		{
-			componentsForMasterId = new HashMap<Integer, T>();
-			components.put(masterId, componentsForMasterId);
+			values[slot] = component;
+			return;
 		}
-		
-		componentsForMasterId.put(componentId, component);
+
+		keys[slot] = key;
+		values[slot] = component;
+		size++;
+		modCount++;
+		masterGrouping = null;
+
+		if(size > keys.length * 3 / 4)
+			resize(keys.length << 1);
 	}
-	
+
 	/**
 	 * Removes an entry from the map, based on its master ID and component ID.
 	 * @param component A NestableComponentData with the same master ID and component ID as the one to be removed. Does not have to be identically the same object,
@@ -173,10 +237,10 @@ public class NestedComponentMap<T>
 	{
 		if(component == null)
 			return null;
-		
+
 		return remove(component.getMasterId(), component.getComponentId());
 	}
-	
+
 	/**
 	 * Removes an entry from the map, based on its master ID and component ID.
 	 * @param masterId The master ID of the component information to remove.
@@ -185,54 +249,75 @@ public class NestedComponentMap<T>
 	 */
 	public T remove(int masterId, int componentId)
 	{
-		Map<Integer, T> componentsForMasterId = components.get(masterId);
-		if(componentsForMasterId == null)
+		int slot = findSlot(packKey(masterId, componentId));
+		T valueRemoved = valueAt(slot);
+		if(valueRemoved == null)
 			return null;
-		
-		T valueRemoved = componentsForMasterId.remove(componentId);
-		
-		//Have to clean up empty maps after removing the last element for a master ID.
-		if(componentsForMasterId.isEmpty())
-			components.remove(masterId);
-		
+
+		//Shift any later entries in the same probe sequence back, so lookups never hit a gap before reaching them.
+		int mask = keys.length - 1;
+		int gap = slot;
+		int next = (gap + 1) & mask;
+		while(values[next] != null)
+		{
+			int home = hash(keys[next]) & mask;
+			//Only move the entry if its home slot is not between the gap and its current position (cyclically)
+			if(((next - home) & mask) >= ((next - gap) & mask))
+			{
+				keys[gap] = keys[next];
+				values[gap] = values[next];
+				gap = next;
+			}
+			next = (next + 1) & mask;
+		}
+		values[gap] = null;
+
+		size--;
+		modCount++;
+		masterGrouping = null;
 		return valueRemoved;
 	}
 
 	public boolean isEmpty()
 	{
-		return components.isEmpty();
+		return size == 0;
 	}
 
 	//***** COLLECTION INQURY METHODS *****//
 	public T get(int masterId, int componentId)
 	{
-		Map<Integer, T> componentsForMasterId = components.get(masterId);
-		if(componentsForMasterId == null)
-			return null;
-		return componentsForMasterId.get(componentId);
+		return valueAt(findSlot(packKey(masterId, componentId)));
 	}
-	
+
 	public boolean containsKey(int masterId, int componentId)
 	{
-		return components.containsKey(masterId) && components.get(masterId).containsKey(componentId);
+		return values[findSlot(packKey(masterId, componentId))] != null;
 	}
-	
+
 	public <N extends NestableComponentData> boolean containsKey(N component)
 	{
 		if(component == null)
 			return false;
 		return this.containsKey(component.getMasterId(), component.getComponentId());
 	}
-	
+
+	/**
+	 * @return The number of (master ID, component ID) entries in this map.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
 	/**
 	 * Returns an unmodifiable view of the master IDs for which there are components contained in this map.
 	 * @return A view of all the master IDs represented by this map.
 	 */
 	public Set<Integer> getAllMasterIds()
 	{
-		return Collections.unmodifiableSet(components.keySet());
+		return new MasterIdView();
 	}
-	
+
 	/**
 	 * Gets a map of all the component information that belongs to a particular master ID.
 	 * @param masterId The master ID to look up.
@@ -241,23 +326,240 @@ public class NestedComponentMap<T>
 	 */
 	public Map<Integer, T> getComponentsForMasterId(int masterId)
 	{
-		Map<Integer, T> result = components.get(masterId);
-		return result == null ? Collections.<Integer, T>emptyMap() : Collections.unmodifiableMap(result);
+		return new MasterView(masterId);
 	}
-	
+
 	/**
 	 * Gets a new copy of the data contained in this map. The values are the same objects in this map,
 	 * 	but the resulting maps are not tied to the internal map in this object, so changes to one map do not affect the other.
-	 * @return A copy of the data contained in this map, keyed by master ID and then by component ID. 
+	 * @return A copy of the data contained in this map, keyed by master ID and then by component ID.
 	 */
 	public Map<Integer, Map<Integer, T>> getAllComponents()
 	{
 		Map<Integer, Map<Integer, T>> result = new HashMap<Integer, Map<Integer, T>>();
-		for(Entry<Integer, Map<Integer, T>> entry : components.entrySet())
+		forEach((masterId, componentId, component) -> result.computeIfAbsent(masterId, x -> new HashMap<Integer, T>()).put(componentId, component));
+		return result;
+	}
+
+	/**
+	 * Passes every entry in this map to the given consumer, in no particular order. The map must not be changed while this is running.
+	 * @param consumer The callback to receive each entry.
+	 */
+	public void forEach(ComponentEntryConsumer<? super T> consumer)
+	{
+		long[] keys = this.keys;
+		Object[] values = this.values;
+		for(int slot = 0; slot < values.length; slot++)
 		{
-			Map<Integer, T> componentsForMasterId = new HashMap<Integer, T>(entry.getValue());
-			result.put(entry.getKey(), componentsForMasterId);
+			if(values[slot] != null)
+				consumer.accept(unpackMasterId(keys[slot]), unpackComponentId(keys[slot]), valueAt(slot));
+		}
+	}
+
+	/**
+	 * Passes every entry for a single master ID to the given consumer, in no particular order. The map must not be changed while this is running.
+	 * @param masterId The master ID to get entries for.
+	 * @param consumer The callback to receive each component ID and its value.
+	 */
+	public void forEachInMaster(int masterId, ComponentConsumer<? super T> consumer)
+	{
+		for(int componentId : getMasterGrouping().getComponentIds(masterId))
+		{
+			T component = get(masterId, componentId);
+			if(component != null)
+				consumer.accept(componentId, component);
+		}
+	}
+
+	//***** HELPER METHODS *****//
+	private static long packKey(int masterId, int componentId)
+	{
+		return ((long) masterId << 32) | (componentId & 0xFFFFFFFFL);
+	}
+
+	private static int unpackMasterId(long key)
+	{
+		return (int) (key >>> 32);
+	}
+
+	private static int unpackComponentId(long key)
+	{
+		return (int) key;
+	}
+
+	/** Spreads the bits of a packed key, since master IDs and component IDs are both usually small, sequential-ish numbers. */
+	private static int hash(long key)
+	{
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	/**
+	 * Finds the slot holding the given key, or the empty slot where it would be inserted if it isn't in the map.
+	 * The table is never full, so this always terminates.
+	 */
+	private int findSlot(long key)
+	{
+		int mask = keys.length - 1;
+		int slot = hash(key) & mask;
+		while(values[slot] != null && keys[slot] != key)
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+
+	@SuppressWarnings("unchecked")	//This is safe because only values of type T are ever put into the table.
+	private T valueAt(int slot)
+	{
+		return (T) values[slot];
+	}
+
+	private void resize(int newCapacity)
+	{
+		long[] oldKeys = keys;
+		Object[] oldValues = values;
+		keys = new long[newCapacity];
+		values = new Object[newCapacity];
+
+		for(int oldSlot = 0; oldSlot < oldValues.length; oldSlot++)
+		{
+			if(oldValues[oldSlot] == null)
+				continue;
+			int slot = findSlot(oldKeys[oldSlot]);
+			keys[slot] = oldKeys[oldSlot];
+			values[slot] = oldValues[oldSlot];
+		}
+	}
+
+	/** Gets the component IDs in this map grouped by master ID, building the grouping if the map has changed since it was last built. */
+	private MasterGrouping getMasterGrouping()
+	{
+		MasterGrouping grouping = masterGrouping;
+		if(grouping == null || grouping.modCount != modCount)
+		{
+			grouping = new MasterGrouping(this);
+			masterGrouping = grouping;
+		}
+		return grouping;
+	}
+
+	/**
+	 * A snapshot of the component IDs in the map, grouped by master ID. Immutable once built, so it is safe to share between threads reading the same map.
+	 */
+	private static class MasterGrouping
+	{
+		private static final int[] NO_COMPONENTS = new int[0];
+
+		/** The map's modification count when this grouping was built. */
+		private final int modCount;
+		/** The component IDs for each master ID. */
+		private final Map<Integer, int[]> componentIdsByMasterId;
+
+		private MasterGrouping(NestedComponentMap<?> map)
+		{
+			Map<Integer, int[]> counts = new HashMap<Integer, int[]>();
+			map.forEach((masterId, componentId, component) -> counts.computeIfAbsent(masterId, x -> new int[1])[0]++);
+
+			Map<Integer, int[]> componentIds = new HashMap<Integer, int[]>(counts.size() * 2);
+			for(Entry<Integer, int[]> entry : counts.entrySet())
+			{
+				componentIds.put(entry.getKey(), new int[entry.getValue()[0]]);
+				entry.getValue()[0] = 0;
+			}
+			map.forEach((masterId, componentId, component) -> componentIds.get(masterId)[counts.get(masterId)[0]++] = componentId);
+
+			this.modCount = map.modCount;
+			this.componentIdsByMasterId = Collections.unmodifiableMap(componentIds);
+		}
+
+		private int[] getComponentIds(int masterId)
+		{
+			int[] result = componentIdsByMasterId.get(masterId);
+			return result == null ? NO_COMPONENTS : result;
+		}
+	}
+
+	/** A live, unmodifiable view of the master IDs in the map. */
+	private class MasterIdView extends AbstractSet<Integer>
+	{
+		@Override
+		public Iterator<Integer> iterator()
+		{
+			return Collections.unmodifiableSet(getMasterGrouping().componentIdsByMasterId.keySet()).iterator();
+		}
+
+		@Override
+		public int size()
+		{
+			return getMasterGrouping().componentIdsByMasterId.size();
+		}
+
+		@Override
+		public boolean contains(Object o)
+		{
+			return getMasterGrouping().componentIdsByMasterId.containsKey(o);
+		}
+	}
+
+	/** A live, unmodifiable view of the components for a single master ID, keyed by component ID. */
+	private class MasterView extends AbstractMap<Integer, T>
+	{
+		private final int masterId;
+
+		private MasterView(int masterId)
+		{
+			this.masterId = masterId;
+		}
+
+		@Override
+		public T get(Object key)
+		{
+			return key instanceof Integer ? NestedComponentMap.this.get(masterId, (Integer) key) : null;
+		}
+
+		@Override
+		public boolean containsKey(Object key)
+		{
+			return key instanceof Integer && NestedComponentMap.this.containsKey(masterId, (Integer) key);
+		}
+
+		@Override
+		public int size()
+		{
+			return getMasterGrouping().getComponentIds(masterId).length;
+		}
+
+		@Override
+		public boolean isEmpty()
+		{
+			return size() == 0;
+		}
+
+		@Override
+		public Set<Entry<Integer, T>> entrySet()
+		{
+			return new AbstractSet<Entry<Integer, T>>() {
+				@Override public int size() {
+					return MasterView.this.size();
+				}
+
+				@Override public Iterator<Entry<Integer, T>> iterator() {
+					final int[] componentIds = getMasterGrouping().getComponentIds(masterId);
+					return new Iterator<Entry<Integer, T>>() {
+						private int index = 0;
+
+						@Override public boolean hasNext() {
+							return index < componentIds.length;
+						}
+
+						@Override public Entry<Integer, T> next() {
+							if(!hasNext())
+								throw new NoSuchElementException();
+							int componentId = componentIds[index++];
+							return new SimpleImmutableEntry<Integer, T>(componentId, NestedComponentMap.this.get(masterId, componentId));
+						}
+					};
+				}
+			};
 		}
-		return result;
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,98 @@
+/**
+ * @author john.shiffler (600139252)
+ */
+package com.penske.apps.smccore.component.engine;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.penske.apps.smccore.component.domain.RuleOutcome;
+
+/**
+ * All the outcomes for a single component, sorted by priority once, up front, so that the rules engine can find the one to apply with a simple forward scan.
+ * 	Only one outcome is kept for each priority. If more than one outcome has the same priority, the last one given wins, the same as putting them all into a map keyed by priority.
+ * This object is immutable, and is intended primarily for use inside the rules engine.
+ */
+final class PrioritizedOutcomes
+{
+	private static final Comparator<RuleOutcome> BY_PRIORITY = new Comparator<RuleOutcome>() {
+		@Override
+		public int compare(RuleOutcome o1, RuleOutcome o2)
+		{
+			return Integer.compare(o1.getPriority(), o2.getPriority());
+		}
+	};
+
+	/** The outcomes, with the highest priority (i.e. the lowest priority number) first. */
+	private final RuleOutcome[] outcomes;
+
+	/**
+	 * Sorts a component's outcomes by priority.
+	 * @param outcomes The outcomes for the component, in the order they were loaded.
+	 */
+	PrioritizedOutcomes(List<RuleOutcome> outcomes)
+	{
+		//The sort is stable, so outcomes with the same priority stay in the order they were loaded, and the last of them is the one kept.
+		RuleOutcome[] sorted = outcomes.toArray(new RuleOutcome[outcomes.size()]);
+		Arrays.sort(sorted, BY_PRIORITY);
+
+		int count = 0;
+		for(RuleOutcome outcome : sorted)
+		{
+			if(count > 0 && sorted[count - 1].getPriority() == outcome.getPriority())
+				sorted[count - 1] = outcome;
+			else
+				sorted[count++] = outcome;
+		}
+		this.outcomes = count == sorted.length ? sorted : Arrays.copyOf(sorted, count);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString()
+	{
+		return "{PrioritizedOutcomes: " + Arrays.toString(outcomes) + "}";
+	}
+
+	//***** MODIFIED ACCESSORS *****//
+	/**
+	 * @return The number of outcomes for the component.
+	 */
+	int size()
+	{
+		return outcomes.length;
+	}
+
+	/**
+	 * Gets an outcome by its position in priority order.
+	 * @param index The position of the outcome, where 0 is the highest priority.
+	 * @return The outcome.
+	 */
+	RuleOutcome get(int index)
+	{
+		return outcomes[index];
+	}
+
+	/**
+	 * @return The outcomes, with the highest priority first. This list can not be modified.
+	 */
+	List<RuleOutcome> asList()
+	{
+		return Collections.unmodifiableList(Arrays.asList(outcomes));
+	}
+
+	/**
+	 * @return A new map of the outcomes, keyed (and ordered) by priority.
+	 */
+	Map<Integer, RuleOutcome> toMap()
+	{
+		Map<Integer, RuleOutcome> result = new TreeMap<Integer, RuleOutcome>();
+		for(RuleOutcome outcome : outcomes)
+			result.put(outcome.getPriority(), outcome);
+		return result;
+	}
+}
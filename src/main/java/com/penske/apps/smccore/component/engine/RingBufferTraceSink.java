@@ -0,0 +1,90 @@
+/**
+ * @author john.shiffler (600139252)
+ */
+package com.penske.apps.smccore.component.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A trace sink that keeps only the most recent events, up to a fixed number. Once it is full, each new event replaces the oldest one,
+ * 	so it never uses more memory than it did when it was created, no matter how long the rules run.
+ * This class is thread-safe.
+ */
+public final class RingBufferTraceSink implements RuleTraceSink
+{
+	/** The most recent events. Once this is full, {@link #next} points at the oldest one. */
+	private final RuleTraceEvent[] events;
+	/** The position the next event will be written to. */
+	private int next;
+	/** The total number of events ever received. */
+	private long received;
+
+	/**
+	 * Creates a new, empty buffer.
+	 * @param capacity The most events to keep. Must be at least 1.
+	 */
+	public RingBufferTraceSink(int capacity)
+	{
+		if(capacity < 1)
+			throw new IllegalArgumentException("Trace buffer must be able to hold at least one event, but capacity was " + capacity);
+		this.events = new RuleTraceEvent[capacity];
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public synchronized void trace(RuleTraceEvent event)
+	{
+		if(event == null)
+			return;
+		events[next] = event;
+		next = (next + 1) % events.length;
+		received++;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public synchronized String toString()
+	{
+		return "{RingBufferTraceSink: " + Math.min(received, events.length) + "/" + events.length + " events, " + getDroppedCount() + " dropped}";
+	}
+
+	//***** MODIFIED ACCESSORS *****//
+	/**
+	 * @return A copy of the events currently in the buffer, oldest first.
+	 */
+	public synchronized List<RuleTraceEvent> getEvents()
+	{
+		int size = (int) Math.min(received, events.length);
+		int start = size < events.length ? 0 : next;
+		List<RuleTraceEvent> result = new ArrayList<RuleTraceEvent>(size);
+		for(int i = 0; i < size; i++)
+			result.add(events[(start + i) % events.length]);
+		return result;
+	}
+
+	/**
+	 * @return The number of events that have been pushed out of the buffer by newer ones.
+	 */
+	public synchronized long getDroppedCount()
+	{
+		return Math.max(0, received - events.length);
+	}
+
+	/**
+	 * Empties the buffer, and resets the number of dropped events.
+	 */
+	public synchronized void clear()
+	{
+		for(int i = 0; i < events.length; i++)
+			events[i] = null;
+		next = 0;
+		received = 0;
+	}
+
+	//***** DEFAULT ACCESSORS *****//
+	public int getCapacity()
+	{
+		return events.length;
+	}
+}
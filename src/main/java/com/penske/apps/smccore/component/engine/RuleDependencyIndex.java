@@ -0,0 +1,58 @@
+/**
+ * @author john.shiffler (600139252)
+ */
+package com.penske.apps.smccore.component.engine;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.penske.apps.smccore.component.domain.Rule;
+import com.penske.apps.smccore.component.domain.RuleCriteria;
+import com.penske.apps.smccore.component.domain.RuleCriteriaGroup;
+
+/**
+ * An index of which rules read which components, built from the rules' criteria.
+ * A rule's result for a given master ID can only change if one of the components its criteria reference changes for that same master ID,
+ * 	so this lets the rules engine find the rules that need to be re-evaluated after a set of components change.
+ * This class is intended primarily for use inside the rules engine.
+ */
+class RuleDependencyIndex
+{
+	/** The IDs of the rules whose criteria reference each component, keyed by component ID. */
+	private final Map<Integer, Set<Integer>> ruleIdsByComponentId = new HashMap<Integer, Set<Integer>>();
+
+	/**
+	 * Builds the dependency index for a set of rules.
+	 * @param rules The rules to index.
+	 */
+	RuleDependencyIndex(Collection<Rule> rules)
+	{
+		if(rules == null)
+			rules = Collections.emptyList();
+
+		for(Rule rule : rules)
+		{
+			for(RuleCriteriaGroup group : rule.getCriteriaGroups())
+			{
+				for(RuleCriteria criteria : group.getCriteria())
+					ruleIdsByComponentId.computeIfAbsent(criteria.getComponentId(), x -> new HashSet<Integer>()).add(rule.getRuleId());
+			}
+		}
+	}
+
+	/**
+	 * Gets the rules whose criteria reference the given component.
+	 * @param componentId The component ID to look up.
+	 * @return The IDs of all rules with at least one criteria on the given component. Never null.
+	 */
+	Set<Integer> getRuleIdsReferencingComponent(int componentId)
+	{
+		Set<Integer> result = ruleIdsByComponentId.get(componentId);
+		return result == null ? Collections.<Integer>emptySet() : Collections.unmodifiableSet(result);
+	}
+
+}
@@ -0,0 +1,158 @@
+/**
+ * @author john.shiffler (600139252)
+ */
+package com.penske.apps.smccore.component.engine;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.penske.apps.smccore.base.plugins.CoreTimingType;
+import com.penske.apps.smccore.base.plugins.TimingBean;
+import com.penske.apps.smccore.component.domain.Rule;
+
+/**
+ * Counts what the rules engine did during a single call, and reports it all to a {@link TimingBean} at the end.
+ * 	Counting happens in plain fields, and the timing bean only gets called once per counter at the end of each call,
+ * 	so this adds very little to the cost of running the rules. This is not thread-safe, so each call to the rules engine needs its own.
+ * Each rule evaluation can also be added to a {@link RuleStatistics} as it happens, which is shared by every call.
+ * This class is intended primarily for use inside the rules engine.
+ */
+class RuleEngineMetrics
+{
+	private static final long NANOS_PER_MICRO = 1000L;
+
+	/** Optional. The bean to report to when done. */
+	private final TimingBean timingBean;
+	/** Optional. The per-rule counters to add each rule evaluation to. */
+	private final RuleStatistics ruleStatistics;
+	/** Whether each rule was satisfied the last time it was evaluated during this call, keyed by master ID, then rule ID. Only kept if there are per-rule counters. */
+	private final Map<Integer, Map<Integer, Boolean>> lastRuleResults;
+
+	private long evaluateNanos;
+	private long applyNanos;
+	private int iterations;
+	private int rulesEvaluated;
+	private int rulesSkipped;
+	private int conflicts;
+	private int conflictsResolved;
+
+	RuleEngineMetrics(TimingBean timingBean, RuleStatistics ruleStatistics)
+	{
+		if(timingBean == null && ruleStatistics == null)
+			throw new IllegalArgumentException("Timing bean or rule statistics are required to record rules engine metrics");
+		this.timingBean = timingBean;
+		this.ruleStatistics = ruleStatistics;
+		this.lastRuleResults = ruleStatistics == null ? null : new HashMap<Integer, Map<Integer, Boolean>>();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString()
+	{
+		return "{RuleEngineMetrics: " + iterations + " iterations, " + rulesEvaluated + " rules evaluated, " + rulesSkipped + " skipped, " + conflicts + " conflicts (" + conflictsResolved + " resolved)}";
+	}
+
+	//***** MODIFIED ACCESSORS *****//
+	void addEvaluateTime(long startNanos, long endNanos)
+	{
+		evaluateNanos += endNanos - startNanos;
+	}
+
+	void addApplyTime(long startNanos)
+	{
+		applyNanos += System.nanoTime() - startNanos;
+	}
+
+	void addIterations(int count)
+	{
+		iterations += count;
+	}
+
+	/**
+	 * Records a single evaluation of a rule for a single master ID.
+	 * @param rule The rule that was evaluated.
+	 * @param masterId The master ID the rule was evaluated for.
+	 * @param satisfied True if the rule was satisfied.
+	 * @param startNanos The value of {@link System#nanoTime()} when the rule started being evaluated. Only used if {@link #isRecordingRules()} is true.
+	 */
+	void ruleEvaluated(Rule rule, int masterId, boolean satisfied, long startNanos)
+	{
+		rulesEvaluated++;
+		if(ruleStatistics == null)
+			return;
+		
+		long nanos = System.nanoTime() - startNanos;
+		Boolean lastSatisfied = lastRuleResults.computeIfAbsent(masterId, x -> new HashMap<Integer, Boolean>()).put(rule.getRuleId(), satisfied);
+		ruleStatistics.record(rule, satisfied, nanos, lastSatisfied != null && lastSatisfied.booleanValue() != satisfied);
+	}
+
+	void addRulesSkipped(int count)
+	{
+		rulesSkipped += count;
+	}
+
+	/**
+	 * Records a component ID with more than one required component.
+	 * @param resolved True if the conflict had a resolution.
+	 */
+	void conflict(boolean resolved)
+	{
+		conflicts++;
+		if(resolved)
+			conflictsResolved++;
+	}
+
+	/**
+	 * Reports everything recorded by a run of the rules to the timing bean.
+	 * @param startNanos The value of {@link System#nanoTime()} when the rules started running.
+	 */
+	void logRulesRun(long startNanos)
+	{
+		if(timingBean == null)
+			return;
+		timingBean.logTiming(CoreTimingType.RULES_RUN, toMicros(System.nanoTime() - startNanos));
+		timingBean.logTiming(CoreTimingType.RULES_EVALUATE, toMicros(evaluateNanos));
+		timingBean.logTiming(CoreTimingType.RULES_APPLY, toMicros(applyNanos));
+		timingBean.logTiming(CoreTimingType.RULES_ITERATIONS, iterations);
+		timingBean.logTiming(CoreTimingType.RULES_EVALUATED, rulesEvaluated);
+		timingBean.logTiming(CoreTimingType.RULES_SKIPPED, rulesSkipped);
+	}
+
+	/**
+	 * Reports how long it took to merge component values to the timing bean.
+	 * @param startNanos The value of {@link System#nanoTime()} when the merge started.
+	 */
+	void logMerge(long startNanos)
+	{
+		if(timingBean == null)
+			return;
+		timingBean.logTiming(CoreTimingType.RULES_MERGE, toMicros(System.nanoTime() - startNanos));
+	}
+
+	/**
+	 * Reports everything recorded while resolving conflicts to the timing bean.
+	 * @param startNanos The value of {@link System#nanoTime()} when conflict resolution started.
+	 */
+	void logConflictResolution(long startNanos)
+	{
+		if(timingBean == null)
+			return;
+		timingBean.logTiming(CoreTimingType.RULES_RESOLVE_CONFLICTS, toMicros(System.nanoTime() - startNanos));
+		timingBean.logTiming(CoreTimingType.RULES_CONFLICTS, conflicts);
+		timingBean.logTiming(CoreTimingType.RULES_CONFLICTS_RESOLVED, conflictsResolved);
+	}
+
+	/**
+	 * @return True if each rule evaluation is being added to per-rule counters, so the rules engine needs to time each one.
+	 */
+	boolean isRecordingRules()
+	{
+		return ruleStatistics != null;
+	}
+	
+	//***** HELPER METHODS *****//
+	private static long toMicros(long nanos)
+	{
+		return nanos / NANOS_PER_MICRO;
+	}
+}
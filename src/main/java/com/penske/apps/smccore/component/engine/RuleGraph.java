@@ -0,0 +1,363 @@
+/**
+ * @author john.shiffler (600139252)
+ */
+package com.penske.apps.smccore.component.engine;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import com.penske.apps.smccore.component.domain.Rule;
+import com.penske.apps.smccore.component.domain.RuleCriteria;
+import com.penske.apps.smccore.component.domain.RuleCriteriaGroup;
+import com.penske.apps.smccore.component.domain.RuleOutcome;
+
+/**
+ * The dependencies between components that rules create: a component with outcomes depends on every component read by the criteria of the rules behind those outcomes.
+ * 	Components with outcomes are grouped into strongly connected components (i.e. the sets of components that depend on each other in a cycle),
+ * 	and those groups are then put in order, so that each one only depends on components in the groups before it.
+ *
+ * This lets the rules engine settle each component's visibility once, in order, instead of re-running every rule until nothing changes.
+ * 	Only the groups that actually form a cycle need to be run more than once.
+ * This class is intended primarily for use inside the rules engine.
+ */
+class RuleGraph
+{
+	/** The components with outcomes, grouped so that each stage only depends on components in the stages before it. */
+	private final List<Stage> stages = new ArrayList<Stage>();
+	/** The components with outcomes that depend directly on each component read by a rule, keyed by the (master ID, component ID) of the component read. */
+	private final Map<RuleOutcomeKey, List<RuleOutcomeKey>> dependentsByComponent = new HashMap<RuleOutcomeKey, List<RuleOutcomeKey>>();
+	/** The components that are part of a cycle. */
+	private final Set<RuleOutcomeKey> circularComponents = new HashSet<RuleOutcomeKey>();
+
+	/**
+	 * Builds the dependency graph for a set of rules and outcomes.
+	 * @param rules The rules that can be evaluated, keyed by rule ID.
+	 * @param outcomes The outcomes that can be applied, keyed by (master ID, component ID), and sorted by priority.
+	 */
+	RuleGraph(Map<Integer, Rule> rules, Map<RuleOutcomeKey, PrioritizedOutcomes> outcomes)
+	{
+		//Number each component with outcomes, so the graph can be kept in arrays
+		List<RuleOutcomeKey> nodes = new ArrayList<RuleOutcomeKey>(outcomes.keySet());
+		Map<RuleOutcomeKey, Integer> nodeIndexes = new HashMap<RuleOutcomeKey, Integer>();
+		for(int i = 0; i < nodes.size(); i++)
+			nodeIndexes.put(nodes.get(i), i);
+
+		//An edge goes from each component a rule reads to each component that rule has an outcome on. Components without outcomes never change, so they aren't part of the graph.
+		List<List<Integer>> dependents = new ArrayList<List<Integer>>(nodes.size());
+		for(int i = 0; i < nodes.size(); i++)
+			dependents.add(new ArrayList<Integer>());
+		boolean[] dependsOnItself = new boolean[nodes.size()];
+		for(int target = 0; target < nodes.size(); target++)
+		{
+			RuleOutcomeKey targetKey = nodes.get(target);
+			for(Integer componentId : getCriteriaComponentIds(rules, outcomes.get(targetKey)))
+			{
+				dependentsByComponent.computeIfAbsent(new RuleOutcomeKey(targetKey.getMasterId(), componentId), x -> new ArrayList<RuleOutcomeKey>()).add(targetKey);
+				Integer source = nodeIndexes.get(new RuleOutcomeKey(targetKey.getMasterId(), componentId));
+				if(source == null)
+					continue;
+				dependents.get(source).add(target);
+				if(source == target)
+					dependsOnItself[target] = true;
+			}
+		}
+
+		//Tarjan's algorithm finds groups in reverse order, since a group is only finished once everything that depends on it is.
+		List<List<Integer>> groups = findStronglyConnectedComponents(dependents);
+		Collections.reverse(groups);
+
+		//Each group's level is one more than the level of the last group it depends on. Groups on the same level don't depend on each other, so they can be run together.
+		int[] groupIndexes = new int[nodes.size()];
+		for(int group = 0; group < groups.size(); group++)
+		{
+			for(int node : groups.get(group))
+				groupIndexes[node] = group;
+		}
+		int[] levels = new int[groups.size()];
+		for(int group = 0; group < groups.size(); group++)
+		{
+			for(int node : groups.get(group))
+			{
+				for(int dependent : dependents.get(node))
+				{
+					int dependentGroup = groupIndexes[dependent];
+					if(dependentGroup != group)
+						levels[dependentGroup] = Math.max(levels[dependentGroup], levels[group] + 1);
+				}
+			}
+		}
+
+		//Acyclic components on the same level all go in one stage. Each cycle gets a stage of its own, since it has to be run until it settles.
+		TreeMap<Integer, List<RuleOutcomeKey>> acyclicByLevel = new TreeMap<Integer, List<RuleOutcomeKey>>();
+		TreeMap<Integer, List<Stage>> cyclesByLevel = new TreeMap<Integer, List<Stage>>();
+		for(int group = 0; group < groups.size(); group++)
+		{
+			List<Integer> members = groups.get(group);
+			if(members.size() == 1 && !dependsOnItself[members.get(0)])
+			{
+				acyclicByLevel.computeIfAbsent(levels[group], x -> new ArrayList<RuleOutcomeKey>()).add(nodes.get(members.get(0)));
+				continue;
+			}
+
+			List<RuleOutcomeKey> targets = new ArrayList<RuleOutcomeKey>(members.size());
+			for(int node : members)
+				targets.add(nodes.get(node));
+			circularComponents.addAll(targets);
+			cyclesByLevel.computeIfAbsent(levels[group], x -> new ArrayList<Stage>()).add(new Stage(targets, getCircularRuleIds(rules, outcomes, targets)));
+		}
+
+		Set<Integer> allLevels = new TreeSet<Integer>(acyclicByLevel.keySet());
+		allLevels.addAll(cyclesByLevel.keySet());
+		for(Integer level : allLevels)
+		{
+			if(acyclicByLevel.containsKey(level))
+				stages.add(new Stage(acyclicByLevel.get(level), Collections.<Integer>emptySet()));
+			if(cyclesByLevel.containsKey(level))
+				stages.addAll(cyclesByLevel.get(level));
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString()
+	{
+		return "{RuleGraph: " + stages.size() + " stages, " + getCircularRuleIds().size() + " cycles}";
+	}
+
+	//***** MODIFIED ACCESSORS *****//
+	/**
+	 * Gets the rules that form each cycle in the graph.
+	 * @return The IDs of the rules that make up each cycle. If there are no cycles, this will be empty.
+	 */
+	List<Set<Integer>> getCircularRuleIds()
+	{
+		List<Set<Integer>> result = new ArrayList<Set<Integer>>();
+		for(Stage stage : stages)
+		{
+			if(stage.isCyclic())
+				result.add(stage.getCircularRuleIds());
+		}
+		return result;
+	}
+
+	/**
+	 * Checks if changing some components can change the visibility of a component that is part of a cycle, either directly, or through other components with outcomes.
+	 * 	Rules in a cycle can settle on different visibilities depending on the visibilities they start from, so when this is true, the rules have to be run again from the components'
+	 * 	base visibilities to be sure of settling the same way as running them from scratch would.
+	 * @param changedComponents The (master ID, component ID) of the components that changed.
+	 * @return True if a component in a cycle depends on one of the changed components, or is one of them.
+	 */
+	boolean isCycleAffectedBy(Collection<RuleOutcomeKey> changedComponents)
+	{
+		if(circularComponents.isEmpty())
+			return false;
+
+		Set<RuleOutcomeKey> visited = new HashSet<RuleOutcomeKey>(changedComponents);
+		Deque<RuleOutcomeKey> pending = new ArrayDeque<RuleOutcomeKey>(changedComponents);
+		while(!pending.isEmpty())
+		{
+			RuleOutcomeKey component = pending.pop();
+			if(circularComponents.contains(component))
+				return true;
+
+			List<RuleOutcomeKey> dependents = dependentsByComponent.get(component);
+			if(dependents == null)
+				continue;
+			for(RuleOutcomeKey dependent : dependents)
+			{
+				if(visited.add(dependent))
+					pending.push(dependent);
+			}
+		}
+		return false;
+	}
+
+	//***** HELPER METHODS *****//
+	/**
+	 * Gets every component read by the rules behind a set of outcomes.
+	 */
+	private static Set<Integer> getCriteriaComponentIds(Map<Integer, Rule> rules, PrioritizedOutcomes outcomes)
+	{
+		Set<Integer> result = new TreeSet<Integer>();
+		for(RuleOutcome outcome : outcomes.asList())
+		{
+			Rule rule = rules.get(outcome.getRuleId());
+			if(rule != null)
+				result.addAll(getCriteriaComponentIds(rule));
+		}
+		return result;
+	}
+
+	/**
+	 * Gets every component read by a rule's criteria.
+	 */
+	private static Set<Integer> getCriteriaComponentIds(Rule rule)
+	{
+		Set<Integer> result = new TreeSet<Integer>();
+		for(RuleCriteriaGroup group : rule.getCriteriaGroups())
+		{
+			for(RuleCriteria criteria : group.getCriteria())
+				result.add(criteria.getComponentId());
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the rules that actually make up a cycle: the ones with an outcome on one of the cycle's components, and a criteria that reads another one of them.
+	 */
+	private static Set<Integer> getCircularRuleIds(Map<Integer, Rule> rules, Map<RuleOutcomeKey, PrioritizedOutcomes> outcomes, List<RuleOutcomeKey> targets)
+	{
+		Set<Integer> result = new TreeSet<Integer>();
+		for(RuleOutcomeKey target : targets)
+		{
+			for(RuleOutcome outcome : outcomes.get(target).asList())
+			{
+				Rule rule = rules.get(outcome.getRuleId());
+				if(rule == null)
+					continue;
+				for(Integer componentId : getCriteriaComponentIds(rule))
+				{
+					if(targets.contains(new RuleOutcomeKey(target.getMasterId(), componentId)))
+						result.add(rule.getRuleId());
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Finds the strongly connected components of a graph with Tarjan's algorithm. This is done without recursion, since rule sets can get long enough to overflow the stack.
+	 * @param edges The nodes each node has an edge to, by node index.
+	 * @return The groups of nodes that can all reach each other, in reverse topological order.
+	 */
+	private static List<List<Integer>> findStronglyConnectedComponents(List<List<Integer>> edges)
+	{
+		int nodeCount = edges.size();
+		int[] indexes = new int[nodeCount];
+		int[] lowLinks = new int[nodeCount];
+		boolean[] onStack = new boolean[nodeCount];
+		Arrays.fill(indexes, -1);
+
+		List<List<Integer>> result = new ArrayList<List<Integer>>();
+		int[] stack = new int[nodeCount];
+		int stackSize = 0;
+		int[] callStack = new int[nodeCount];
+		int[] nextEdges = new int[nodeCount];
+		int nextIndex = 0;
+
+		for(int root = 0; root < nodeCount; root++)
+		{
+			if(indexes[root] != -1)
+				continue;
+
+			int callDepth = 0;
+			callStack[callDepth++] = root;
+			indexes[root] = lowLinks[root] = nextIndex++;
+			stack[stackSize++] = root;
+			onStack[root] = true;
+
+			while(callDepth > 0)
+			{
+				int node = callStack[callDepth - 1];
+				List<Integer> nodeEdges = edges.get(node);
+				if(nextEdges[node] < nodeEdges.size())
+				{
+					int next = nodeEdges.get(nextEdges[node]++);
+					if(indexes[next] == -1)
+					{
+						indexes[next] = lowLinks[next] = nextIndex++;
+						stack[stackSize++] = next;
+						onStack[next] = true;
+						callStack[callDepth++] = next;
+					}
+					else if(onStack[next])
+						lowLinks[node] = Math.min(lowLinks[node], indexes[next]);
+					continue;
+				}
+
+				//All of this node's edges have been followed, so it's done. If it's the root of a group, pop the whole group off the stack.
+				callDepth--;
+				if(callDepth > 0)
+				{
+					int parent = callStack[callDepth - 1];
+					lowLinks[parent] = Math.min(lowLinks[parent], lowLinks[node]);
+				}
+
+				if(lowLinks[node] == indexes[node])
+				{
+					List<Integer> group = new ArrayList<Integer>();
+					int member;
+					do {
+						member = stack[--stackSize];
+						onStack[member] = false;
+						group.add(member);
+					} while(member != node);
+					result.add(group);
+				}
+			}
+		}
+
+		return result;
+	}
+
+	//***** DEFAULT ACCESSORS *****//
+	List<Stage> getStages()
+	{
+		return Collections.unmodifiableList(stages);
+	}
+
+	//***** HELPER CLASSES *****//
+	/**
+	 * A set of components whose visibilities can be settled together, because they only depend on components in earlier stages, or on each other.
+	 */
+	static class Stage
+	{
+		/** The components in this stage, as (master ID, component ID). */
+		private final List<RuleOutcomeKey> targets;
+		/** If the components in this stage depend on each other in a cycle, the IDs of the rules that make up that cycle. Otherwise, this is empty. */
+		private final Set<Integer> circularRuleIds;
+
+		private Stage(List<RuleOutcomeKey> targets, Set<Integer> circularRuleIds)
+		{
+			this.targets = Collections.unmodifiableList(targets);
+			this.circularRuleIds = Collections.unmodifiableSet(circularRuleIds);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public String toString()
+		{
+			return "{Stage: " + targets.size() + " components" + (isCyclic() ? ", circular rules " + circularRuleIds : "") + "}";
+		}
+
+		/**
+		 * @return True if the components in this stage depend on each other, so the stage has to be run until its visibilities stop changing.
+		 */
+		boolean isCyclic()
+		{
+			return !circularRuleIds.isEmpty();
+		}
+
+		//***** DEFAULT ACCESSORS *****//
+		List<RuleOutcomeKey> getTargets()
+		{
+			return targets;
+		}
+
+		Set<Integer> getCircularRuleIds()
+		{
+			return circularRuleIds;
+		}
+	}
+}
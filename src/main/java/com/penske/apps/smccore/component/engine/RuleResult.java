@@ -88,6 +88,18 @@ public class RuleResult
 		return new RuleResult(rule, false, false, RuleResult.SKIPPED, groupResults);
 	}
 	
+	/**
+	 * Creates a result object for a rule that was evaluated without keeping track of how each criteria group and criteria came out.
+	 * 	Used when the rules engine is only asked for final visibilities, not for an explanation of them.
+	 * @param rule The rule that was evaluated.
+	 * @param satisfied True if the outcomes of the rule should be applied - false if they should not.
+	 * @return The new result object, with no criteria group results.
+	 */
+	public static RuleResult createWithoutDetail(Rule rule, boolean satisfied)
+	{
+		return new RuleResult(rule, true, satisfied, null, null);
+	}
+	
 	/** {@inheritDoc} */
 	@Override
 	public String toString()
@@ -0,0 +1,107 @@
+/**
+ * @author john.shiffler (600139252)
+ */
+package com.penske.apps.smccore.component.engine;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Holds rule results from previous iterations of the rules engine, so that rules whose inputs have not changed don't need to be evaluated again.
+ * Results are keyed by (master ID, rule ID), and are dropped as soon as any component the rule reads changes for that master ID.
+ * Evaluated and skipped results are kept separately, since whether a rule gets evaluated at all depends on the outcomes around it, not just on the rule's own inputs.
+ * This class is intended primarily for use inside the rules engine, and only lives for a single run of the rules, or for a single {@link RuleSession}.
+ */
+class RuleResultCache
+{
+	/** Tells which rules need to be dropped when a component changes. */
+	private final RuleDependencyIndex dependencyIndex;
+	/** Results of rules that were actually evaluated, keyed by master ID, then by rule ID. */
+	private final Map<Integer, Map<Integer, RuleResult>> evaluatedResults = new HashMap<Integer, Map<Integer, RuleResult>>();
+	/** Placeholder results of rules that were skipped, keyed by master ID, then by rule ID. */
+	private final Map<Integer, Map<Integer, RuleResult>> skippedResults = new HashMap<Integer, Map<Integer, RuleResult>>();
+	/** The number of rule results that have been dropped because one of their inputs changed. */
+	private int invalidatedCount;
+
+	RuleResultCache(RuleDependencyIndex dependencyIndex)
+	{
+		if(dependencyIndex == null)
+			throw new IllegalArgumentException("Dependency index is required to cache rule results");
+		this.dependencyIndex = dependencyIndex;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString()
+	{
+		return "{RuleResultCache: " + evaluatedResults.size() + " masters evaluated, " + invalidatedCount + " results invalidated}";
+	}
+
+	//***** MODIFIED ACCESSORS *****//
+	RuleResult getEvaluatedResult(int masterId, int ruleId)
+	{
+		return get(evaluatedResults, masterId, ruleId);
+	}
+
+	void putEvaluatedResult(int masterId, int ruleId, RuleResult result)
+	{
+		evaluatedResults.computeIfAbsent(masterId, x -> new HashMap<Integer, RuleResult>()).put(ruleId, result);
+	}
+
+	RuleResult getSkippedResult(int masterId, int ruleId)
+	{
+		return get(skippedResults, masterId, ruleId);
+	}
+
+	void putSkippedResult(int masterId, int ruleId, RuleResult result)
+	{
+		skippedResults.computeIfAbsent(masterId, x -> new HashMap<Integer, RuleResult>()).put(ruleId, result);
+	}
+
+	/**
+	 * Drops the cached results of all rules that read any of the given components.
+	 * @param changedComponents The components whose visibility changed, keyed by (master ID, component ID).
+	 */
+	void invalidate(Collection<RuleOutcomeKey> changedComponents)
+	{
+		for(RuleOutcomeKey changedComponent : changedComponents)
+		{
+			int masterId = changedComponent.getMasterId();
+			Map<Integer, RuleResult> evaluatedForMaster = evaluatedResults.get(masterId);
+			Map<Integer, RuleResult> skippedForMaster = skippedResults.get(masterId);
+			if(evaluatedForMaster == null && skippedForMaster == null)
+				continue;
+
+			for(Integer ruleId : dependencyIndex.getRuleIdsReferencingComponent(changedComponent.getComponentId()))
+			{
+				if(evaluatedForMaster != null && evaluatedForMaster.remove(ruleId) != null)
+					invalidatedCount++;
+				if(skippedForMaster != null)
+					skippedForMaster.remove(ruleId);
+			}
+		}
+	}
+
+	/**
+	 * Drops all cached results, such as when the components they were evaluated against are thrown away.
+	 */
+	void clear()
+	{
+		evaluatedResults.clear();
+		skippedResults.clear();
+	}
+
+	//***** HELPER METHODS *****//
+	private static RuleResult get(Map<Integer, Map<Integer, RuleResult>> results, int masterId, int ruleId)
+	{
+		Map<Integer, RuleResult> resultsForMaster = results.get(masterId);
+		return resultsForMaster == null ? null : resultsForMaster.get(ruleId);
+	}
+
+	//***** DEFAULT ACCESSORS *****//
+	int getInvalidatedCount()
+	{
+		return invalidatedCount;
+	}
+}
@@ -0,0 +1,290 @@
+/**
+ * @author john.shiffler (600139252)
+ */
+package com.penske.apps.smccore.component.engine;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.penske.apps.smccore.base.plugins.CoreTimingType;
+import com.penske.apps.smccore.base.plugins.TimingBean;
+import com.penske.apps.smccore.component.domain.ComponentValue;
+import com.penske.apps.smccore.component.domain.Rule;
+import com.penske.apps.smccore.component.domain.RuleCriteria;
+import com.penske.apps.smccore.component.domain.RuleCriteriaGroup;
+import com.penske.apps.smccore.component.domain.RuleOutcome;
+import com.penske.apps.smccore.component.engine.EvaluationResult.ApplicableOutcome;
+
+/**
+ * Remembers the results of running the rules and resolving conflicts, so that other sets of components with exactly the same inputs don't need to run them again.
+ * 	In a large batch, many units share the same templates, the same unit signature, and the same values for every component the rules look at,
+ * 	so they all end up with the same visibilities.
+ *
+ * Results are keyed by a fingerprint of everything the rules and the conflict resolver read: a context string supplied by the caller
+ * 	(ex: template IDs and hashes, the unit signature, and any previous individual resolutions), plus every component's base visibility,
+ * 	and the values of every component referenced by a rule criteria. Master IDs are not part of the fingerprint. Instead, the caller lists
+ * 	the master IDs in a canonical order, and results are stored by position in that list, so they can be applied to a different set of master IDs.
+ *
+ * This class is thread-safe, so a single cache can be shared by units whose rules are being run at the same time.
+ * 	It is not bounded, so it should only live as long as the batch it is used for.
+ */
+public class RuleRunCache
+{
+	/** The results of previous rule runs, keyed by fingerprint. */
+	private final Map<String, CachedRun> runs = new ConcurrentHashMap<String, CachedRun>();
+	/** The number of rule runs that were answered from this cache. */
+	private final AtomicLong hits = new AtomicLong();
+	/** The number of rule runs that had to actually run the rules. */
+	private final AtomicLong misses = new AtomicLong();
+	/** Optional. If present, each hit or miss is logged to this bean, along with how long it took. */
+	private final TimingBean timingBean;
+
+	/**
+	 * Creates an empty cache.
+	 * @param timingBean Optional. A bean to report each hit ({@link CoreTimingType#RULE_RUN_CACHE_HIT}) and miss ({@link CoreTimingType#RULE_RUN_CACHE_MISS}) to.
+	 */
+	public RuleRunCache(TimingBean timingBean)
+	{
+		this.timingBean = timingBean;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString()
+	{
+		return "{RuleRunCache: " + runs.size() + " runs, " + hits.get() + " hits, " + misses.get() + " misses}";
+	}
+
+	//***** MODIFIED ACCESSORS *****//
+	/**
+	 * Builds the fingerprint of a rules run.
+	 * @param context Everything outside of the components that the rules and conflict resolver depend on, in a canonical form.
+	 * @param masterIds All the master IDs in {@code componentData}, in a canonical order.
+	 * @param componentData The components the rules are going to be run against.
+	 * @param rules The rules that are going to be run.
+	 * @return The fingerprint, or null if there is a component whose master ID is not in {@code masterIds}.
+	 */
+	static String fingerprint(String context, List<Integer> masterIds, ComponentVisibilityFilterData componentData, Collection<Rule> rules)
+	{
+		if(!masterIds.containsAll(componentData.getAllMasterIds()))
+			return null;
+
+		Set<Integer> referencedComponentIds = new HashSet<Integer>();
+		for(Rule rule : rules)
+		{
+			for(RuleCriteriaGroup group : rule.getCriteriaGroups())
+			{
+				for(RuleCriteria criteria : group.getCriteria())
+					referencedComponentIds.add(criteria.getComponentId());
+			}
+		}
+
+		StringBuilder sb = new StringBuilder(context.length() + 64 * componentData.getAllComponentIds().size());
+		appendString(sb, context);
+		for(Integer masterId : masterIds)
+		{
+			sb.append('[');
+			for(ComponentModel component : new TreeMap<Integer, ComponentModel>(componentData.getComponentsForMasterId(masterId)).values())
+			{
+				int componentId = component.getComponentId();
+				sb.append(componentId)
+					.append(':').append(component.getComponentMaster().getVisibility())
+					.append(':').append(component.getComponentMaster().getDecimalPositions())
+					.append(':').append(component.getComponentMaster().isIgnoredInConflicts());
+				if(referencedComponentIds.contains(componentId))
+				{
+					appendValue(sb, component.getComponentValue());
+					appendValue(sb, componentData.getOriginalValues().get(masterId, componentId));
+				}
+				sb.append(';');
+			}
+			sb.append(']');
+		}
+		return sb.toString();
+	}
+
+	CachedRun get(String fingerprint)
+	{
+		return runs.get(fingerprint);
+	}
+
+	void put(String fingerprint, CachedRun run)
+	{
+		runs.put(fingerprint, run);
+	}
+
+	void recordHit(long elapsedTime)
+	{
+		hits.incrementAndGet();
+		if(timingBean != null)
+			timingBean.logTiming(CoreTimingType.RULE_RUN_CACHE_HIT, elapsedTime);
+	}
+
+	void recordMiss(long elapsedTime)
+	{
+		misses.incrementAndGet();
+		if(timingBean != null)
+			timingBean.logTiming(CoreTimingType.RULE_RUN_CACHE_MISS, elapsedTime);
+	}
+
+	/**
+	 * @return The number of distinct rule runs held in this cache.
+	 */
+	public int size()
+	{
+		return runs.size();
+	}
+
+	//***** HELPER METHODS *****//
+	/** Appends a string with its length in front of it, so that no two different strings (or nulls) can ever run together into the same fingerprint. */
+	private static void appendString(StringBuilder sb, String value)
+	{
+		if(value == null)
+			sb.append('~');
+		else
+			sb.append(value.length()).append('\'').append(value);
+	}
+
+	/** Appends the raw value of a component. Values that compare equal but aren't stored identically (ex: 25.5 and 25.50) just fingerprint differently. */
+	private static void appendValue(StringBuilder sb, ComponentValue value)
+	{
+		sb.append('=');
+		if(value == null)
+		{
+			sb.append('~');
+			return;
+		}
+
+		appendString(sb, value.getTextValue());
+		sb.append(',').append(value.getNumericValue());
+		sb.append(',').append(value.getDateValue() == null ? null : value.getDateValue().getTime());
+	}
+
+	//***** HELPER CLASSES *****//
+	/**
+	 * The results of running the rules and resolving conflicts on one set of components, stored by each master ID's position in the canonical list of master IDs.
+	 * 	Only results without explanations are cached, since those don't refer to the components themselves.
+	 */
+	static class CachedRun
+	{
+		/** The number of iterations it took for the rules to settle. */
+		private final int ruleIterations;
+		/** The rule visibility, final visibility, and conflict status of each component, by master position, then component ID. */
+		private final List<Map<Integer, ComponentModel>> componentsByPosition;
+		/** The result of each rule that was evaluated, by master position, then rule ID. */
+		private final List<Map<Integer, RuleResult>> ruleResultsByPosition;
+		/** The outcome applied to each component, by master position, then component ID. */
+		private final List<Map<Integer, RuleOutcome>> outcomesByPosition;
+
+		private CachedRun(int ruleIterations, List<Map<Integer, ComponentModel>> componentsByPosition, List<Map<Integer, RuleResult>> ruleResultsByPosition, List<Map<Integer, RuleOutcome>> outcomesByPosition)
+		{
+			this.ruleIterations = ruleIterations;
+			this.componentsByPosition = componentsByPosition;
+			this.ruleResultsByPosition = ruleResultsByPosition;
+			this.outcomesByPosition = outcomesByPosition;
+		}
+
+		/**
+		 * Captures the results of a rules run.
+		 * @param result The component data after running rules and resolving conflicts.
+		 * @param masterIds All the master IDs in {@code result}, in the same canonical order used for its fingerprint.
+		 * @return The cacheable results.
+		 */
+		static CachedRun of(ComponentVisibilityFilterData result, List<Integer> masterIds)
+		{
+			Map<Integer, Integer> positionsByMasterId = new HashMap<Integer, Integer>();
+			List<Map<Integer, ComponentModel>> componentsByPosition = new ArrayList<Map<Integer, ComponentModel>>(masterIds.size());
+			List<Map<Integer, RuleResult>> ruleResultsByPosition = new ArrayList<Map<Integer, RuleResult>>(masterIds.size());
+			List<Map<Integer, RuleOutcome>> outcomesByPosition = new ArrayList<Map<Integer, RuleOutcome>>(masterIds.size());
+			for(Integer masterId : masterIds)
+			{
+				positionsByMasterId.put(masterId, componentsByPosition.size());
+				componentsByPosition.add(new HashMap<Integer, ComponentModel>(result.getComponentsForMasterId(masterId)));
+				outcomesByPosition.add(new HashMap<Integer, RuleOutcome>());
+
+				Map<Integer, RuleResult> ruleResults = null;
+				if(result.getEvaluationResult() != null)
+					ruleResults = result.getEvaluationResult().getRuleResults().get(masterId);
+				ruleResultsByPosition.add(ruleResults == null ? Collections.<Integer, RuleResult>emptyMap() : new TreeMap<Integer, RuleResult>(ruleResults));
+			}
+
+			if(result.getEvaluationResult() != null)
+			{
+				for(Entry<RuleOutcomeKey, ApplicableOutcome> entry : result.getEvaluationResult().getApplicableOutcomes().entrySet())
+				{
+					Integer position = positionsByMasterId.get(entry.getKey().getMasterId());
+					if(position != null)
+						outcomesByPosition.get(position).put(entry.getKey().getComponentId(), entry.getValue().getOutcome());
+				}
+			}
+
+			return new CachedRun(result.getRuleIterations(), componentsByPosition, ruleResultsByPosition, outcomesByPosition);
+		}
+
+		/**
+		 * Applies the cached results to a set of components with the same fingerprint.
+		 * @param componentData The components to apply the results to, before running the rules.
+		 * @param masterIds All the master IDs in {@code componentData}, in the same canonical order used for its fingerprint.
+		 * @return The component data as it would be after running the rules and resolving conflicts.
+		 */
+		ComponentVisibilityFilterData applyTo(ComponentVisibilityFilterData componentData, List<Integer> masterIds)
+		{
+			Map<Integer, Integer> positionsByMasterId = new HashMap<Integer, Integer>();
+			Map<Integer, Map<Integer, RuleResult>> ruleResults = new HashMap<Integer, Map<Integer, RuleResult>>();
+			Map<RuleOutcomeKey, RuleOutcome> outcomesToApply = new HashMap<RuleOutcomeKey, RuleOutcome>();
+			for(int position = 0; position < masterIds.size(); position++)
+			{
+				int masterId = masterIds.get(position);
+				positionsByMasterId.put(masterId, position);
+				if(!ruleResultsByPosition.get(position).isEmpty())
+					ruleResults.put(masterId, ruleResultsByPosition.get(position));
+				for(Entry<Integer, RuleOutcome> entry : outcomesByPosition.get(position).entrySet())
+					outcomesToApply.put(new RuleOutcomeKey(masterId, entry.getKey()), entry.getValue());
+			}
+
+			Map<Integer, List<ComponentModel>> changedComponents = new HashMap<Integer, List<ComponentModel>>();
+			for(Integer componentId : componentData.getAllComponentIds())
+			{
+				List<ComponentModel> components = componentData.getComponentsForComponentId(componentId);
+				List<ComponentModel> newComponents = new ArrayList<ComponentModel>(components.size());
+				boolean changed = false;
+				for(ComponentModel component : components)
+				{
+					ComponentModel cached = componentsByPosition.get(positionsByMasterId.get(component.getMasterId())).get(componentId);
+					ComponentModel newComponent = component;
+					if(cached.getRuleVisibility() != component.getRuleVisibility() || cached.getFinalVisibility() != component.getFinalVisibility() || cached.getConflictStatus() != component.getConflictStatus())
+						newComponent = new ComponentModel(component.getComponentMaster(), component.getComponentValue(), cached.getRuleVisibility(), cached.getFinalVisibility(), cached.getConflictStatus());
+
+					changed |= newComponent != component;
+					newComponents.add(newComponent);
+				}
+				if(changed)
+					changedComponents.put(componentId, newComponents);
+			}
+
+			ComponentVisibilityFilterData result = ComponentVisibilityFilterData.withComponents(componentData, changedComponents);
+			return ComponentVisibilityFilterData.withFinalRuleResults(result, new EvaluationResult(ruleResults, outcomesToApply, null), ruleIterations, null);
+		}
+	}
+
+	//***** DEFAULT ACCESSORS *****//
+	public long getHits()
+	{
+		return hits.get();
+	}
+
+	public long getMisses()
+	{
+		return misses.get();
+	}
+}
@@ -0,0 +1,161 @@
+/**
+ * @author john.shiffler (600139252)
+ */
+package com.penske.apps.smccore.component.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import com.penske.apps.smccore.base.exception.ComponentRuleException;
+import com.penske.apps.smccore.component.domain.ComponentValue;
+import com.penske.apps.smccore.component.domain.Rule;
+
+/**
+ * The results of running the rules and resolving conflicts for one unit, kept around so that the effects of the user editing one value at a time can be worked out quickly
+ * 	(ex: as the user fills in the component screen), without loading everything again and running every rule again for each edit.
+ * Each edit only evaluates the rules that read the edited component, then the rules that read a component whose visibility changed because of that, and so on.
+ * 	Every other rule keeps its result from before the edit, and conflicts are only resolved again for the component IDs that actually changed.
+ * 	The exception is an edit that can affect a cycle in the rules, which runs every rule again from the components' base visibilities,
+ * 	since a cycle could otherwise settle somewhere different than it would when running the rules from scratch.
+ * Sessions are created with {@link ComponentVisibilityFilter#startSession(ComponentVisibilityFilterData, List, Map, ConflictResolver)}.
+ * 	A session belongs to a single user working on a single unit, so it is not safe to use from more than one thread at a time.
+ */
+public class RuleSession
+{
+	/** The rules engine the session was started with. Its settings (ex: explanations, metrics) are used for every edit. */
+	private final ComponentVisibilityFilter filter;
+	/** The rules that can possibly be evaluated, keyed by rule ID. */
+	private final Map<Integer, Rule> rulesById;
+	/** The possible outcomes, keyed by (master ID, component ID), and sorted by priority. */
+	private final Map<RuleOutcomeKey, PrioritizedOutcomes> outcomesByComponentId;
+	/** The dependencies between components created by the rules, used to find the edits that can affect a cycle. */
+	private final RuleGraph ruleGraph;
+	/** The results of the rules for {@link #ruleData}. */
+	private final RuleResultCache resultCache;
+	private final ConflictResolver resolver;
+	/**
+	 * The components after running the rules, but before resolving conflicts.
+	 * 	Each edit runs the rules again starting from these, since rules never see the final visibilities that resolving conflicts gives components.
+	 */
+	private ComponentVisibilityFilterData ruleData;
+	/** The components after running the rules and resolving conflicts. */
+	private ComponentVisibilityFilterData componentData;
+
+	RuleSession(ComponentVisibilityFilter filter, Map<Integer, Rule> rulesById, Map<RuleOutcomeKey, PrioritizedOutcomes> outcomesByComponentId, RuleGraph ruleGraph,
+		RuleResultCache resultCache, ConflictResolver resolver, ComponentVisibilityFilterData ruleData, ComponentVisibilityFilterData componentData)
+	{
+		this.filter = filter;
+		this.rulesById = rulesById;
+		this.outcomesByComponentId = outcomesByComponentId;
+		this.ruleGraph = ruleGraph;
+		this.resultCache = resultCache;
+		this.resolver = resolver;
+		this.ruleData = ruleData;
+		this.componentData = componentData;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString()
+	{
+		return "{RuleSession: " + componentData.getAllComponentIds().size() + " component IDs, " + rulesById.size() + " rules}";
+	}
+
+	//***** MODIFIED ACCESSORS *****//
+	/**
+	 * Changes the value of a single component, and works out what that does to the visibilities and conflict statuses of all the components.
+	 * @param masterId The master ID of the component the user edited.
+	 * @param componentId The component ID of the component the user edited.
+	 * @param newValue The new value of the component, in the same form as a user value passed to
+	 * 	{@link ComponentVisibilityFilter#mergeComponentValues(Integer, NestedComponentMap, NestedComponentMap, NestedComponentMap, NestedComponentMap, com.penske.apps.smccore.component.domain.enums.NotVisibleBehavior)}.
+	 * @return The components whose final visibility or conflict status changed because of the edit, as they are after the edit.
+	 * 	The edited component itself is only in here if its own visibility or conflict status changed. If the new value is the same as the old one, this is empty.
+	 * @throws ComponentRuleException If the rules don't settle after the edit. If this happens, the session is left as it was before the edit.
+	 */
+	public List<ComponentModel> applyEdit(int masterId, int componentId, String newValue) throws ComponentRuleException
+	{
+		List<ComponentModel> componentsForId = ruleData.getComponentsForComponentId(componentId);
+		int index = -1;
+		for(int i = 0; i < componentsForId.size() && index < 0; i++)
+		{
+			if(componentsForId.get(i).getMasterId() == masterId)
+				index = i;
+		}
+		if(index < 0)
+			throw new IllegalArgumentException("Could not apply edit. Component " + componentId + " was not found for master ID " + masterId + ".");
+
+		ComponentModel component = componentsForId.get(index);
+		ComponentValue value = new ComponentValue(component.getComponentMaster(), newValue);
+		if(filter.isSameValue(component.getComponentValue(), value))
+			return Collections.emptyList();
+
+		List<ComponentModel> editedComponents = new ArrayList<ComponentModel>(componentsForId);
+		editedComponents.set(index, new ComponentModel(component.getComponentMaster(), value, component.getRuleVisibility()));
+		ComponentVisibilityFilterData editedData = ComponentVisibilityFilterData.withComponents(ruleData, Collections.singletonMap(componentId, editedComponents));
+
+		ComponentVisibilityFilterData newRuleData;
+		try {
+			newRuleData = filter.rerunRules(editedData, rulesById, outcomesByComponentId, ruleGraph, resultCache, Collections.singleton(new RuleOutcomeKey(masterId, componentId)));
+		} catch(ComponentRuleException ex) {
+			//The cache now has results from partway through the failed run, which don't match the components from before the edit
+			resultCache.clear();
+			throw ex;
+		}
+
+		//The rules only replace the components they actually change, so any component ID whose components are all the same objects as before hasn't changed
+		Map<Integer, List<ComponentModel>> changedComponentsById = new HashMap<Integer, List<ComponentModel>>();
+		for(Integer changedComponentId : newRuleData.getAllComponentIds())
+		{
+			List<ComponentModel> newComponents = newRuleData.getComponentsForComponentId(changedComponentId);
+			if(!isSameComponents(ruleData.getComponentsForComponentId(changedComponentId), newComponents))
+				changedComponentsById.put(changedComponentId, newComponents);
+		}
+		changedComponentsById.putAll(filter.resolveConflicts(newRuleData, changedComponentsById.keySet(), resolver));
+
+		//Each component stays in the same position in its list through running the rules and resolving conflicts, so the old and new lists line up
+		List<ComponentModel> result = new ArrayList<ComponentModel>();
+		for(Entry<Integer, List<ComponentModel>> entry : changedComponentsById.entrySet())
+		{
+			List<ComponentModel> oldComponents = componentData.getComponentsForComponentId(entry.getKey());
+			List<ComponentModel> newComponents = entry.getValue();
+			for(int i = 0; i < newComponents.size(); i++)
+			{
+				ComponentModel oldComponent = oldComponents.get(i);
+				ComponentModel newComponent = newComponents.get(i);
+				if(oldComponent.getFinalVisibility() != newComponent.getFinalVisibility() || oldComponent.getConflictStatus() != newComponent.getConflictStatus())
+					result.add(newComponent);
+			}
+		}
+
+		ComponentVisibilityFilterData newComponentData = ComponentVisibilityFilterData.withComponents(componentData, changedComponentsById);
+		this.componentData = ComponentVisibilityFilterData.withFinalRuleResults(newComponentData, newRuleData.getEvaluationResult(), newRuleData.getRuleIterations(), newRuleData.getDebugInfo());
+		this.ruleData = newRuleData;
+		return result;
+	}
+
+	//***** HELPER METHODS *****//
+	private boolean isSameComponents(List<ComponentModel> components, List<ComponentModel> otherComponents)
+	{
+		if(components.size() != otherComponents.size())
+			return false;
+		for(int i = 0; i < components.size(); i++)
+		{
+			if(components.get(i) != otherComponents.get(i))
+				return false;
+		}
+		return true;
+	}
+
+	//***** DEFAULT ACCESSORS *****//
+	/**
+	 * @return The components as they are after the latest edit, with the rules run and conflicts resolved, the same as {@link ComponentVisibilityFilter#resolveConflicts(ComponentVisibilityFilterData, ConflictResolver)} would return them.
+	 */
+	public ComponentVisibilityFilterData getComponentData()
+	{
+		return componentData;
+	}
+}
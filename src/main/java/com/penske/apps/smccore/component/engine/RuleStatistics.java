@@ -0,0 +1,241 @@
+/**
+ * @author john.shiffler (600139252)
+ */
+package com.penske.apps.smccore.component.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.penske.apps.smccore.component.domain.Rule;
+
+/**
+ * Counts how often each rule is evaluated, how often it is satisfied, how long evaluating it takes, and how often its result flips from one iteration to the next,
+ * 	so that the few rules that slow down whole batches can be found and fixed (see {@link ComponentVisibilityFilter#withRuleStatistics(RuleStatistics)}).
+ * 	Unlike the totals logged to a {@link com.penske.apps.smccore.base.plugins.TimingBean}, these are kept for each rule ID, and across every call to the rules engine.
+ * Each counter is a {@link LongAdder}, which spreads updates from different threads over separate cells, so rules engines running on many threads at once
+ * 	don't have to wait on each other to count. Counters are only added together when a report is asked for.
+ * This class is thread-safe. It is also an MXBean, so it can be registered with an MBean server as-is, under {@link #OBJECT_NAME}.
+ */
+public class RuleStatistics implements RuleStatisticsMXBean
+{
+	/** The name to register the statistics under in an MBean server. */
+	public static final String OBJECT_NAME = "com.penske.apps.smccore:type=RuleStatistics";
+
+	/** Costliest first. Rules that cost the same are ordered by how many times they were evaluated, then by rule ID, so that reports come out the same each time. */
+	private static final Comparator<RuleCost> COSTLIEST_FIRST = Comparator.comparingLong(RuleCost::getTotalNanos).reversed()
+		.thenComparing(Comparator.comparingLong(RuleCost::getEvaluations).reversed())
+		.thenComparingInt(RuleCost::getRuleId);
+
+	/** The counters for each rule, keyed by rule ID. */
+	private final ConcurrentMap<Integer, RuleCounters> countersByRuleId = new ConcurrentHashMap<Integer, RuleCounters>();
+	/** True if rules engines using these statistics should record counters. */
+	private volatile boolean enabled;
+
+	/**
+	 * Creates an empty set of statistics.
+	 * @param enabled True to start recording right away. False to wait until {@link #setEnabled(boolean)} is called.
+	 */
+	public RuleStatistics(boolean enabled)
+	{
+		this.enabled = enabled;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString()
+	{
+		return "{RuleStatistics: " + countersByRuleId.size() + " rules" + (enabled ? "" : ", disabled") + "}";
+	}
+
+	//***** MODIFIED ACCESSORS *****//
+	/**
+	 * Records a single evaluation of a rule for a single master ID.
+	 * @param rule The rule that was evaluated.
+	 * @param satisfied True if the rule was satisfied.
+	 * @param nanos How long evaluating the rule took.
+	 * @param stateChanged True if the rule had already been evaluated for the same master ID earlier in the same run, and came out differently that time.
+	 */
+	void record(Rule rule, boolean satisfied, long nanos, boolean stateChanged)
+	{
+		RuleCounters counters = countersByRuleId.get(rule.getRuleId());
+		if(counters == null)
+		{
+			counters = new RuleCounters(rule);
+			RuleCounters existing = countersByRuleId.putIfAbsent(rule.getRuleId(), counters);
+			if(existing != null)
+				counters = existing;
+		}
+
+		counters.evaluations.increment();
+		if(satisfied)
+			counters.satisfiedCount.increment();
+		counters.totalNanos.add(nanos);
+		if(stateChanged)
+			counters.stateChanges.increment();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public List<RuleCost> getCostliestRules(int count)
+	{
+		if(count < 1)
+			return Collections.emptyList();
+
+		List<RuleCost> costs = new ArrayList<RuleCost>(countersByRuleId.size());
+		for(RuleCounters counters : countersByRuleId.values())
+			costs.add(counters.toCost());
+		costs.sort(COSTLIEST_FIRST);
+		return costs.size() <= count ? costs : new ArrayList<RuleCost>(costs.subList(0, count));
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int getRuleCount()
+	{
+		return countersByRuleId.size();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void reset()
+	{
+		countersByRuleId.clear();
+	}
+
+	//***** HELPER CLASSES *****//
+	/** The counters for a single rule. */
+	private static final class RuleCounters
+	{
+		private final int ruleId;
+		private final int templateId;
+		private final String ruleName;
+		private final LongAdder evaluations = new LongAdder();
+		private final LongAdder satisfiedCount = new LongAdder();
+		private final LongAdder totalNanos = new LongAdder();
+		private final LongAdder stateChanges = new LongAdder();
+
+		private RuleCounters(Rule rule)
+		{
+			this.ruleId = rule.getRuleId();
+			this.templateId = rule.getTemplateId();
+			this.ruleName = rule.getName();
+		}
+
+		private RuleCost toCost()
+		{
+			return new RuleCost(ruleId, templateId, ruleName, evaluations.sum(), satisfiedCount.sum(), totalNanos.sum(), stateChanges.sum());
+		}
+	}
+
+	/**
+	 * What a single rule has cost the rules engine, as of when it was asked for.
+	 * The counters are read one at a time while other threads may still be recording, so they may be off from each other by a few evaluations.
+	 */
+	public static final class RuleCost
+	{
+		private final int ruleId;
+		private final int templateId;
+		private final String ruleName;
+		private final long evaluations;
+		private final long satisfiedCount;
+		private final long totalNanos;
+		private final long stateChanges;
+
+		private RuleCost(int ruleId, int templateId, String ruleName, long evaluations, long satisfiedCount, long totalNanos, long stateChanges)
+		{
+			this.ruleId = ruleId;
+			this.templateId = templateId;
+			this.ruleName = ruleName;
+			this.evaluations = evaluations;
+			this.satisfiedCount = satisfiedCount;
+			this.totalNanos = totalNanos;
+			this.stateChanges = stateChanges;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public String toString()
+		{
+			return "{Rule " + ruleId + " (template " + templateId + ", " + ruleName + "): " + evaluations + " evaluations, " + satisfiedCount + " satisfied, "
+				+ totalNanos + " ns, " + stateChanges + " state changes}";
+		}
+
+		//***** MODIFIED ACCESSORS *****//
+		/**
+		 * @return The average time it took to evaluate the rule once, in nanoseconds, or 0 if the rule was never evaluated.
+		 */
+		public long getAverageNanos()
+		{
+			return evaluations == 0 ? 0 : totalNanos / evaluations;
+		}
+
+		//***** DEFAULT ACCESSORS *****//
+		public int getRuleId()
+		{
+			return ruleId;
+		}
+
+		public int getTemplateId()
+		{
+			return templateId;
+		}
+
+		public String getRuleName()
+		{
+			return ruleName;
+		}
+
+		/**
+		 * @return The number of times the rule was evaluated for a single master ID.
+		 */
+		public long getEvaluations()
+		{
+			return evaluations;
+		}
+
+		/**
+		 * @return The number of evaluations that found the rule satisfied.
+		 */
+		public long getSatisfiedCount()
+		{
+			return satisfiedCount;
+		}
+
+		/**
+		 * @return The total time spent evaluating the rule, in nanoseconds.
+		 */
+		public long getTotalNanos()
+		{
+			return totalNanos;
+		}
+
+		/**
+		 * @return The number of iterations in which the rule came out differently for a master ID than it had in an earlier iteration of the same run.
+		 * 	Rules that keep changing are the ones making the rules take more iterations to settle.
+		 */
+		public long getStateChanges()
+		{
+			return stateChanges;
+		}
+	}
+
+	//***** DEFAULT ACCESSORS *****//
+	/** {@inheritDoc} */
+	@Override
+	public boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void setEnabled(boolean enabled)
+	{
+		this.enabled = enabled;
+	}
+}
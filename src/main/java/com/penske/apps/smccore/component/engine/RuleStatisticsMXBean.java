@@ -0,0 +1,40 @@
+/**
+ * @author john.shiffler (600139252)
+ */
+package com.penske.apps.smccore.component.engine;
+
+import java.util.List;
+
+/**
+ * The management interface of {@link RuleStatistics}, so that the costliest rules can be looked at, and statistics turned on and off, from a JMX console.
+ */
+public interface RuleStatisticsMXBean
+{
+	/**
+	 * @return True if rules engines using these statistics are recording per-rule counters.
+	 */
+	public boolean isEnabled();
+
+	/**
+	 * Turns recording of per-rule counters on or off. Counters already recorded are kept either way.
+	 * @param enabled True to start recording. False to stop.
+	 */
+	public void setEnabled(boolean enabled);
+
+	/**
+	 * @return The number of different rules that have been evaluated since the statistics were last reset.
+	 */
+	public int getRuleCount();
+
+	/**
+	 * Gets the rules that the rules engine has spent the most time evaluating.
+	 * @param count The most rules to return.
+	 * @return The costs of the rules, costliest first.
+	 */
+	public List<RuleStatistics.RuleCost> getCostliestRules(int count);
+
+	/**
+	 * Throws away all the counters recorded so far.
+	 */
+	public void reset();
+}
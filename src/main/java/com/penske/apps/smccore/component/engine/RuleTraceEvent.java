@@ -0,0 +1,161 @@
+/**
+ * @author john.shiffler (600139252)
+ */
+package com.penske.apps.smccore.component.engine;
+
+import com.penske.apps.smccore.component.domain.enums.ConflictStatus;
+import com.penske.apps.smccore.component.domain.enums.Visibility;
+
+/**
+ * A single thing the rules engine did while running rules, as pushed to a {@link RuleTraceSink}.
+ * 	Events only hold IDs and enum values, not the components or rules themselves, so keeping a lot of them around doesn't keep a whole run of the rules in memory.
+ * This object is immutable.
+ */
+public final class RuleTraceEvent
+{
+	/** What kind of thing happened. Which of the other fields are filled in depends on this. */
+	public enum Type
+	{
+		/** The rules engine started another pass over the rules. Has an iteration. */
+		ITERATION_STARTED,
+		/** A rule was evaluated for a single master ID. Has a master ID, rule ID, and whether it was satisfied. */
+		RULE_EVALUATED,
+		/**
+		 * A component got its visibility from a rule outcome, or went back to its base visibility because no outcome applied any more.
+		 * 	Has a master ID, component ID, the visibility before and after, and the rule ID of the outcome, if there was one.
+		 */
+		OUTCOME_APPLIED,
+		/**
+		 * Two or more components with the same component ID were all required, and one of them was picked to stay required, if possible.
+		 * 	Has a component ID, how many components were in conflict, how it was resolved, and the master ID of the component that stayed required, if there was one.
+		 */
+		CONFLICT_RESOLVED;
+	}
+
+	private final Type type;
+	private final int iteration;
+	private final Integer masterId;
+	private final int componentId;
+	private final Integer ruleId;
+	private final boolean satisfied;
+	private final Visibility oldVisibility;
+	private final Visibility newVisibility;
+	private final ConflictStatus conflictStatus;
+	private final int componentCount;
+
+	private RuleTraceEvent(Type type, int iteration, Integer masterId, int componentId, Integer ruleId, boolean satisfied, Visibility oldVisibility, Visibility newVisibility, ConflictStatus conflictStatus, int componentCount)
+	{
+		this.type = type;
+		this.iteration = iteration;
+		this.masterId = masterId;
+		this.componentId = componentId;
+		this.ruleId = ruleId;
+		this.satisfied = satisfied;
+		this.oldVisibility = oldVisibility;
+		this.newVisibility = newVisibility;
+		this.conflictStatus = conflictStatus;
+		this.componentCount = componentCount;
+	}
+
+	static RuleTraceEvent iterationStarted(int iteration)
+	{
+		return new RuleTraceEvent(Type.ITERATION_STARTED, iteration, null, 0, null, false, null, null, null, 0);
+	}
+
+	static RuleTraceEvent ruleEvaluated(int masterId, int ruleId, boolean satisfied)
+	{
+		return new RuleTraceEvent(Type.RULE_EVALUATED, 0, masterId, 0, ruleId, satisfied, null, null, null, 0);
+	}
+
+	static RuleTraceEvent outcomeApplied(int masterId, int componentId, Integer ruleId, Visibility oldVisibility, Visibility newVisibility)
+	{
+		return new RuleTraceEvent(Type.OUTCOME_APPLIED, 0, masterId, componentId, ruleId, false, oldVisibility, newVisibility, null, 0);
+	}
+
+	static RuleTraceEvent conflictResolved(int componentId, int componentCount, ConflictStatus conflictStatus, Integer requiredMasterId)
+	{
+		return new RuleTraceEvent(Type.CONFLICT_RESOLVED, 0, requiredMasterId, componentId, null, false, null, null, conflictStatus, componentCount);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString()
+	{
+		return "{RuleTraceEvent: " + toLine() + "}";
+	}
+
+	//***** MODIFIED ACCESSORS *****//
+	/**
+	 * Gets a compact, single-line description of this event, meant to be easy to grep.
+	 * 	Ex: {@code ITER 2}, {@code RULE m=1234 r=1010 T}, {@code OUTCOME m=1234 c=55 r=1010 VISIBLE>REQUIRED}, {@code CONFLICT c=55 n=2 GLOBAL_RESOLUTION m=1234}.
+	 * 	A dash is used for a rule ID or master ID that isn't there.
+	 * @return The description, without a line separator at the end.
+	 */
+	public String toLine()
+	{
+		switch(type)
+		{
+		case ITERATION_STARTED:
+			return "ITER " + iteration;
+		case RULE_EVALUATED:
+			return "RULE m=" + masterId + " r=" + ruleId + (satisfied ? " T" : " F");
+		case OUTCOME_APPLIED:
+			return "OUTCOME m=" + masterId + " c=" + componentId + " r=" + (ruleId == null ? "-" : ruleId) + " " + oldVisibility + ">" + newVisibility;
+		case CONFLICT_RESOLVED:
+			return "CONFLICT c=" + componentId + " n=" + componentCount + " " + conflictStatus + " m=" + (masterId == null ? "-" : masterId);
+		default:
+			throw new IllegalStateException("Unknown trace event type: " + type);
+		}
+	}
+
+	//***** DEFAULT ACCESSORS *****//
+	public Type getType()
+	{
+		return type;
+	}
+
+	public int getIteration()
+	{
+		return iteration;
+	}
+
+	public Integer getMasterId()
+	{
+		return masterId;
+	}
+
+	public int getComponentId()
+	{
+		return componentId;
+	}
+
+	public Integer getRuleId()
+	{
+		return ruleId;
+	}
+
+	public boolean isSatisfied()
+	{
+		return satisfied;
+	}
+
+	public Visibility getOldVisibility()
+	{
+		return oldVisibility;
+	}
+
+	public Visibility getNewVisibility()
+	{
+		return newVisibility;
+	}
+
+	public ConflictStatus getConflictStatus()
+	{
+		return conflictStatus;
+	}
+
+	public int getComponentCount()
+	{
+		return componentCount;
+	}
+}
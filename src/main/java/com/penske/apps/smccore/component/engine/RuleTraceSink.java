@@ -0,0 +1,20 @@
+/**
+ * @author john.shiffler (600139252)
+ */
+package com.penske.apps.smccore.component.engine;
+
+/**
+ * Receives what the rules engine does, one event at a time, as it happens (see {@link ComponentVisibilityFilter#withTraceSink(RuleTraceSink)}).
+ * 	Unlike the debug output of a {@link ComponentVisibilityFilter} created with debugging turned on, tracing doesn't need the rules engine to record explanations,
+ * 	and doesn't hold on to anything itself, so how much memory it uses is entirely up to the sink.
+ * 	This makes it safe to turn on for a single problem unit under production load.
+ * A single filter may be used by several threads at once, so implementations must be thread-safe.
+ */
+public interface RuleTraceSink
+{
+	/**
+	 * Receives a single event. This is called on the thread running the rules, so it should be quick, and should not throw exceptions.
+	 * @param event The thing the rules engine just did.
+	 */
+	public void trace(RuleTraceEvent event);
+}
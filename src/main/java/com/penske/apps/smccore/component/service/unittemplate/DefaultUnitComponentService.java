@@ -3,24 +3,37 @@
  */
 package com.penske.apps.smccore.component.service.unittemplate;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
 import java.util.concurrent.ThreadPoolExecutor;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.penske.apps.smccore.base.plugins.TimingBean;
 import com.penske.apps.smccore.base.util.BatchRunnable;
 import com.penske.apps.smccore.base.util.Util;
 import com.penske.apps.smccore.component.dao.unittemplate.UnitComponentDAO;
@@ -28,13 +41,18 @@ import com.penske.apps.smccore.component.domain.ComponentValue;
 import com.penske.apps.smccore.component.domain.GlobalConflictResolution;
 import com.penske.apps.smccore.component.domain.Rule;
 import com.penske.apps.smccore.component.domain.RuleBuilder;
+import com.penske.apps.smccore.component.domain.RuleCriteria;
+import com.penske.apps.smccore.component.domain.RuleCriteriaGroup;
 import com.penske.apps.smccore.component.domain.RuleOutcome;
 import com.penske.apps.smccore.component.domain.enums.ComponentRuleOperator;
+import com.penske.apps.smccore.component.domain.enums.ConflictStatus;
 import com.penske.apps.smccore.component.domain.enums.NotVisibleBehavior;
 import com.penske.apps.smccore.component.domain.enums.ProgramComponent;
 import com.penske.apps.smccore.component.domain.enums.RuleType;
 import com.penske.apps.smccore.component.domain.enums.Visibility;
+import com.penske.apps.smccore.component.domain.unittemplate.ConflictResolutionIndex;
 import com.penske.apps.smccore.component.domain.unittemplate.CorpComponentValue;
+import com.penske.apps.smccore.component.domain.unittemplate.GlobalComponentDefinitions;
 import com.penske.apps.smccore.component.domain.unittemplate.GlobalComponentMaster;
 import com.penske.apps.smccore.component.domain.unittemplate.OptionalComponentValue;
 import com.penske.apps.smccore.component.domain.unittemplate.SmcComponentValue;
@@ -46,6 +64,9 @@ import com.penske.apps.smccore.component.engine.ComponentModel;
 import com.penske.apps.smccore.component.engine.ComponentVisibilityFilter;
 import com.penske.apps.smccore.component.engine.ComponentVisibilityFilterData;
 import com.penske.apps.smccore.component.engine.NestedComponentMap;
+import com.penske.apps.smccore.component.engine.RuleRunCache;
+import com.penske.apps.smccore.component.engine.RuleSession;
+import com.penske.apps.smccore.component.engine.RuleStatistics;
 
 /**
  * Implementation of UnitComponentService service.
@@ -57,8 +78,21 @@ public class DefaultUnitComponentService implements UnitComponentService
 	private static final int COMMENT_REQUIRED_RULE_ID = -1;
 	private static final int MAX_UNIT_COMPONENT_SAVE_SIZE = 250;
 	private static final int MAX_UNIT_COMPONENT_DELETE_SIZE = 300;
+	private static final int MAX_CACHED_TEMPLATE_RULE_SETS = 500;
+	private static final int MAX_GLOBAL_COMPONENT_DEFINITIONS = 1000;
+	private static final Logger logger = LogManager.getLogger(DefaultUnitComponentService.class);
+	/** An ordering of a unit's unit masters that doesn't depend on their master IDs, so that the same position means the same thing on different units. */
+	private static final Comparator<UnitMasterInfo> CANONICAL_UNIT_MASTER_ORDER = Comparator.comparingInt(UnitMasterInfo::getTemplateId)
+		.thenComparingInt(UnitMasterInfo::getVendorId)
+		.thenComparingInt(UnitMasterInfo::getPoCategoryAssociationId);
 	
 	private final UnitComponentDAO unitComponentDAO;
+	/** Rules and outcomes for each template, shared by every unit that uses the same version of that template. */
+	private final TemplateRuleSetCache templateRuleSetCache = new TemplateRuleSetCache(MAX_CACHED_TEMPLATE_RULE_SETS);
+	/** One shared definition for each global component, so that every load of the global components, and every template's copy of them, reads from the same object. */
+	private final GlobalComponentDefinitions globalComponentDefinitions = new GlobalComponentDefinitions(MAX_GLOBAL_COMPONENT_DEFINITIONS);
+	/** How often each rule is evaluated, and how long it takes, across every run of the rules. Turned off until someone needs to find slow rules. */
+	private final RuleStatistics ruleStatistics = new RuleStatistics(false);
 	
 	@Autowired
 	public DefaultUnitComponentService(UnitComponentDAO unitComponentDAO)
@@ -204,6 +238,7 @@ public class DefaultUnitComponentService implements UnitComponentService
 				{
 					//Since the global component masters are pulled from the database with an incorrect master ID,
 					//	we have to clone them and make one with the right template ID, or we'll get exceptions when running the rules engine.
+					//	The clone only holds the master ID, and reads everything else from the shared definition.
 					GlobalComponentMaster globalComponentForMasterId = new GlobalComponentMaster(globalComponent, masterId);
 					componentsForUnitNumber.put(masterId, componentId, globalComponentForMasterId);
 				}
@@ -236,7 +271,7 @@ public class DefaultUnitComponentService implements UnitComponentService
 		{
 			List<GlobalComponentMaster> componentsLoaded = unitComponentDAO.getGlobalComponents(componentsToLoad, Visibility.NOT_VISIBLE);
 			for(GlobalComponentMaster component : componentsLoaded)
-				result.put(component.getComponentId(), component);
+				result.put(component.getComponentId(), globalComponentDefinitions.getDefinition(component));
 		}
 		
 		return result;
@@ -344,16 +379,7 @@ public class DefaultUnitComponentService implements UnitComponentService
 		if(unitMasters == null)
 			return Collections.emptyList();
 		
-		Set<Integer> templateIds = new HashSet<Integer>();
-		for(UnitMasterInfo unitMaster : unitMasters)
-			templateIds.add(unitMaster.getTemplateId());
-		
-		List<Rule> rules = unitComponentDAO.getRules(unitMasters, RuleType.UNIT_TEMPLATE);
-
-		//Add rules that should apply to every template
-		rules.addAll(getGlobalRules(templateIds));
-		
-		return rules;
+		return getRulesFromRuleSets(unitMasters, getTemplateRuleSets(unitMasters));
 	}
 
 	/** {@inheritDoc} */
@@ -388,42 +414,7 @@ public class DefaultUnitComponentService implements UnitComponentService
 		if(unitMasters == null || unitMasters.isEmpty())
 			return Collections.emptyMap();
 		
-		Map<Integer, List<Integer>> masterIdsByTemplateId = new HashMap<Integer, List<Integer>>();
-		for(UnitMasterInfo unitMaster : unitMasters)
-		{
-			int templateId = unitMaster.getTemplateId();
-			if(!masterIdsByTemplateId.containsKey(templateId))
-				masterIdsByTemplateId.put(templateId, new ArrayList<Integer>());
-			masterIdsByTemplateId.get(templateId).add(unitMaster.getMasterId());
-		}
-		
-		//Get the list of outcomes for the various unit masters
-		List<RuleOutcome> outcomes = unitComponentDAO.getOutcomes(unitMasters);
-		
-		//Add a global outcome to each template to set comments to visibility R if the comment required rule fires
-		outcomes.addAll(getGlobalOutcomes(masterIdsByTemplateId.keySet()));
-		
-		//Add each outcome to all of the unit masters that it pertains to (i.e. all the unit masters that use its template)
-		Map<Integer, List<RuleOutcome>> result = new HashMap<Integer, List<RuleOutcome>>();
-		for(RuleOutcome outcome : outcomes)
-		{
-			int templateId = outcome.getTemplateId();
-			List<Integer> masterIds = masterIdsByTemplateId.get(templateId);
-			if(masterIds == null)
-				continue;
-			for(Integer masterId : masterIds)
-			{
-				List<RuleOutcome> outcomesForMasterId = result.get(masterId);
-				if(outcomesForMasterId == null)
-				{
-					outcomesForMasterId = new ArrayList<RuleOutcome>();
-					result.put(masterId, outcomesForMasterId);
-				}
-				outcomesForMasterId.add(outcome);
-			}
-		}
-		
-		return result;
+		return getOutcomesFromRuleSets(unitMasters, getTemplateRuleSets(unitMasters));
 	}
 
 	/** {@inheritDoc} */
@@ -612,32 +603,129 @@ public class DefaultUnitComponentService implements UnitComponentService
 	@Override
 	public ComponentVisibilityFilterData runRulesAndResolveConflicts(Collection<UnitMasterInfo> unitMasters, NestedComponentMap<String> userValues)
 	{
-		String unitNumber = null;
-		for(UnitMasterInfo unitMaster : unitMasters)
-		{
-			if(unitNumber == null)
-				unitNumber = unitMaster.getUnitNumber();
-			else if(!unitNumber.equals(unitMaster.getUnitNumber()))
-				throw new IllegalArgumentException("Can not save component data from more than one unit at a time (" + unitNumber + " vs. " + unitMaster.getUnitNumber() + ")");
-		}
+		checkSingleUnit(unitMasters);
 		
 		//Get lots of data out of the DB.
 		NestedComponentMap<UnitComponentMaster> componentMasters = this.getUnitComponents(unitMasters, null);
 		NestedComponentMap<ComponentValue> existingComponents = this.getAllComponentValues(unitMasters);
 		List<Rule> rules = this.getRules(unitMasters);
 		Map<Integer, List<RuleOutcome>> outcomes = this.getOutcomesByMasterId(unitMasters);
-		List<GlobalConflictResolution> globalResolutions = this.getGlobalConflictResolutions(unitMasters);
+		ConflictResolutionIndex globalResolutions = ConflictResolutionIndex.build(UnitConflictResolver.getUnitSignature(unitMasters), this.getGlobalConflictResolutions(unitMasters));
 		
-		//Build a conflict resolver
-		UnitConflictResolver resolver = new UnitConflictResolver(unitMasters, componentMasters, globalResolutions);
+		ComponentVisibilityFilter filter = new ComponentVisibilityFilter().withRuleStatistics(ruleStatistics);
+		return runRulesAndResolveConflictsInternal(filter, unitMasters, componentMasters, existingComponents, rules, outcomes, globalResolutions, userValues, null);
+	}
 	
-		//Actually run the rules and resolve conflicts
-		ComponentVisibilityFilter filter = new ComponentVisibilityFilter();
+	/** {@inheritDoc} */
+	@Override
+	public RuleSession startRuleSession(Collection<UnitMasterInfo> unitMasters, NestedComponentMap<String> userValues)
+	{
+		checkSingleUnit(unitMasters);
+		
+		NestedComponentMap<UnitComponentMaster> componentMasters = this.getUnitComponents(unitMasters, null);
+		NestedComponentMap<ComponentValue> existingComponents = this.getAllComponentValues(unitMasters);
+		List<Rule> rules = this.getRules(unitMasters);
+		Map<Integer, List<RuleOutcome>> outcomes = this.getOutcomesByMasterId(unitMasters);
+		ConflictResolutionIndex globalResolutions = ConflictResolutionIndex.build(UnitConflictResolver.getUnitSignature(unitMasters), this.getGlobalConflictResolutions(unitMasters));
+		UnitConflictResolver resolver = new UnitConflictResolver(unitMasters, componentMasters, globalResolutions);
+		
+		ComponentVisibilityFilter filter = new ComponentVisibilityFilter().withRuleStatistics(ruleStatistics);
 		ComponentVisibilityFilterData componentData = filter.mergeComponentValues(null, componentMasters, existingComponents, null, userValues, NotVisibleBehavior.KEEP);
-		componentData = filter.runRules(componentData, rules, outcomes);
-		componentData = filter.resolveConflicts(componentData, resolver);
+		return filter.startSession(componentData, rules, outcomes, resolver);
+	}
+	
+	/** {@inheritDoc} */
+	@Override
+	public Map<String, ComponentVisibilityFilterData> runRulesAndResolveConflictsForMultipleUnits(Map<String, ? extends Collection<UnitMasterInfo>> unitMasters, Map<String, NestedComponentMap<String>> userValues, Executor executor, TimingBean timingBean)
+	{
+		if(unitMasters == null || unitMasters.isEmpty())
+			return Collections.emptyMap();
+		if(userValues == null)
+			userValues = Collections.emptyMap();
+		if(executor == null)
+			executor = ForkJoinPool.commonPool();
+		
+		List<UnitMasterInfo> allUnitMasters = new ArrayList<UnitMasterInfo>();
+		for(Entry<String, ? extends Collection<UnitMasterInfo>> entry : unitMasters.entrySet())
+		{
+			if(entry.getValue() == null)
+				continue;
+			for(UnitMasterInfo unitMaster : entry.getValue())
+			{
+				if(!StringUtils.equals(entry.getKey(), unitMaster.getUnitNumber()))
+					throw new IllegalArgumentException("Unit master " + unitMaster.getMasterId() + " belongs to unit " + unitMaster.getUnitNumber() + ", but was passed in for unit " + entry.getKey());
+				allUnitMasters.add(unitMaster);
+			}
+		}
+		
+		if(allUnitMasters.isEmpty())
+			return Collections.emptyMap();
 		
-		return componentData;
+		//Get all the data out of the DB for every unit at once, rather than making several trips per unit.
+		Map<String, NestedComponentMap<UnitComponentMaster>> componentMasters = this.getUnitComponentsForMultipleUnits(unitMasters, null);
+		Map<String, NestedComponentMap<ComponentValue>> existingComponents = this.getAllComponentValuesForMultipleUnits(unitMasters);
+		Map<Integer, TemplateRuleSet> ruleSets = this.getTemplateRuleSets(allUnitMasters);
+		Map<String, List<GlobalConflictResolution>> globalResolutionsBySignature = new HashMap<String, List<GlobalConflictResolution>>();
+		for(GlobalConflictResolution resolution : this.getGlobalConflictResolutions(allUnitMasters))
+		{
+			String unitSignature = resolution.getUnitSignature();
+			if(!globalResolutionsBySignature.containsKey(unitSignature))
+				globalResolutionsBySignature.put(unitSignature, new ArrayList<GlobalConflictResolution>());
+			globalResolutionsBySignature.get(unitSignature).add(resolution);
+		}
+		//Every unit with the same signature has the same global resolutions, so index them once per signature and share the index between all those units.
+		Map<String, ConflictResolutionIndex> globalResolutionIndexes = new HashMap<String, ConflictResolutionIndex>();
+		for(Entry<String, List<GlobalConflictResolution>> entry : globalResolutionsBySignature.entrySet())
+		{
+			if(StringUtils.isNotBlank(entry.getKey()))
+				globalResolutionIndexes.put(entry.getKey(), ConflictResolutionIndex.build(entry.getKey(), entry.getValue()));
+		}
+		
+		//The batch only saves the final visibilities, so there's no need to keep an explanation of every rule. The batch is also where rules engine metrics matter most.
+		final ComponentVisibilityFilter filter = new ComponentVisibilityFilter().withExplanations(false).withColumnarEvaluation(true).withMetrics(timingBean).withRuleStatistics(ruleStatistics);
+		//Units in the same batch with the same templates and the same values for the components the rules look at get the same results, so only run the rules once for each of them.
+		final RuleRunCache ruleRunCache = new RuleRunCache(timingBean);
+		
+		//Each unit's rules are independent of every other unit's, so they can all be run at the same time.
+		Map<String, CompletableFuture<ComponentVisibilityFilterData>> futures = new HashMap<String, CompletableFuture<ComponentVisibilityFilterData>>();
+		for(Entry<String, ? extends Collection<UnitMasterInfo>> entry : unitMasters.entrySet())
+		{
+			if(entry.getValue() == null || entry.getValue().isEmpty())
+				continue;
+			
+			//Put the unit masters in the same order for every unit, so that results can be shared between units whose master IDs are different.
+			final List<UnitMasterInfo> unitMastersForUnit = new ArrayList<UnitMasterInfo>(entry.getValue());
+			unitMastersForUnit.sort(CANONICAL_UNIT_MASTER_ORDER);
+			
+			String unitNumber = entry.getKey();
+			String unitSignature = unitMastersForUnit.iterator().next().getCalculatedUnitSignature();
+			final NestedComponentMap<UnitComponentMaster> componentMastersForUnit = componentMasters.get(unitNumber);
+			final NestedComponentMap<ComponentValue> existingComponentsForUnit = existingComponents.get(unitNumber);
+			final List<Rule> rules = getRulesFromRuleSets(unitMastersForUnit, ruleSets);
+			final Map<Integer, List<RuleOutcome>> outcomes = getOutcomesFromRuleSets(unitMastersForUnit, ruleSets);
+			final ConflictResolutionIndex globalResolutions = globalResolutionIndexes.get(unitSignature);
+			final NestedComponentMap<String> userValuesForUnit = userValues.get(unitNumber);
+			
+			futures.put(unitNumber, CompletableFuture.supplyAsync(() -> runRulesAndResolveConflictsInternal(filter, unitMastersForUnit, componentMastersForUnit, existingComponentsForUnit, rules, outcomes, globalResolutions, userValuesForUnit, ruleRunCache), executor));
+		}
+		
+		//Wait for every unit to finish, even if one of them fails, so that nothing is still running after this method returns.
+		Map<String, ComponentVisibilityFilterData> result = new HashMap<String, ComponentVisibilityFilterData>();
+		RuntimeException firstFailure = null;
+		for(Entry<String, CompletableFuture<ComponentVisibilityFilterData>> entry : futures.entrySet())
+		{
+			try {
+				result.put(entry.getKey(), entry.getValue().join());
+			} catch(CompletionException ex) {
+				if(firstFailure == null)
+					firstFailure = ex.getCause() instanceof RuntimeException ? (RuntimeException) ex.getCause() : ex;
+			}
+		}
+		
+		if(firstFailure != null)
+			throw firstFailure;
+		
+		return result;
 	}
 
 	/** {@inheritDoc} */
@@ -664,8 +752,298 @@ public class DefaultUnitComponentService implements UnitComponentService
 		//The parts corresponding to individual unit masters are joined with commas
 		return StringUtils.join(signatureParts, ",");
 	}
+	
+	//***** Snapshot Methods *****//
+	/** {@inheritDoc} */
+	@Override
+	public int writeTemplateRuleSnapshot(OutputStream outputStream) throws IOException
+	{
+		if(outputStream == null)
+			throw new IllegalArgumentException("Output stream is required to write a template rule snapshot");
+		return TemplateRuleSetSnapshot.write(templateRuleSetCache.getAll(), outputStream);
+	}
+	
+	/** {@inheritDoc} */
+	@Override
+	public int loadTemplateRuleSnapshot(InputStream inputStream) throws IOException
+	{
+		if(inputStream == null)
+			throw new IllegalArgumentException("Input stream is required to load a template rule snapshot");
+		return templateRuleSetCache.putAllIfAbsent(TemplateRuleSetSnapshot.read(inputStream));
+	}
+	
+	//***** Statistics Methods *****//
+	/** {@inheritDoc} */
+	@Override
+	public List<RuleStatistics.RuleCost> getCostliestRules(int count)
+	{
+		return ruleStatistics.getCostliestRules(count);
+	}
+	
+	/** {@inheritDoc} */
+	@Override
+	public RuleStatistics getRuleStatistics()
+	{
+		return ruleStatistics;
+	}
 
 	//***** HELPER METHODS *****//
+	/**
+	 * Checks that all the given unit masters belong to the same unit.
+	 * @param unitMasters The unit masters to check.
+	 */
+	private void checkSingleUnit(Collection<UnitMasterInfo> unitMasters)
+	{
+		String unitNumber = null;
+		for(UnitMasterInfo unitMaster : unitMasters)
+		{
+			if(unitNumber == null)
+				unitNumber = unitMaster.getUnitNumber();
+			else if(!unitNumber.equals(unitMaster.getUnitNumber()))
+				throw new IllegalArgumentException("Can not save component data from more than one unit at a time (" + unitNumber + " vs. " + unitMaster.getUnitNumber() + ")");
+		}
+	}
+	
+	/**
+	 * Merges component values, runs the rules, and resolves conflicts for a single unit whose data has already been loaded.
+	 * 	This doesn't touch the database, so it is safe to run for several units at the same time.
+	 * @param filter The rules engine to use.
+	 * @param unitMasters The unit masters on the unit.
+	 * @param componentMasters The component masters for the unit.
+	 * @param existingComponents The component values already on the unit.
+	 * @param rules The rules for the templates on the unit.
+	 * @param outcomes The outcomes for the templates on the unit, keyed by master ID.
+	 * @param globalResolutions Optional. The global conflict resolutions for the unit's signature. If null, the unit doesn't have any.
+	 * @param userValues Optional. The user-submitted values for the components.
+	 * @param ruleRunCache Optional. Results of running the rules for other units, to reuse if this unit has exactly the same inputs.
+	 * 	If this is present, {@code unitMasters} should be in {@link #CANONICAL_UNIT_MASTER_ORDER}.
+	 * @return The results of running the rules engine and resolving conflicts.
+	 */
+	private ComponentVisibilityFilterData runRulesAndResolveConflictsInternal(ComponentVisibilityFilter filter, Collection<UnitMasterInfo> unitMasters,
+		NestedComponentMap<UnitComponentMaster> componentMasters, NestedComponentMap<ComponentValue> existingComponents,
+		List<Rule> rules, Map<Integer, List<RuleOutcome>> outcomes, ConflictResolutionIndex globalResolutions, NestedComponentMap<String> userValues, RuleRunCache ruleRunCache)
+	{
+		//Build a conflict resolver
+		UnitConflictResolver resolver = new UnitConflictResolver(unitMasters, componentMasters, globalResolutions);
+	
+		//Actually run the rules and resolve conflicts
+		ComponentVisibilityFilterData componentData = filter.mergeComponentValues(null, componentMasters, existingComponents, null, userValues, NotVisibleBehavior.KEEP);
+		if(ruleRunCache == null)
+		{
+			componentData = filter.runRules(componentData, rules, outcomes);
+			componentData = filter.resolveConflicts(componentData, resolver);
+			return componentData;
+		}
+		
+		List<Integer> masterIds = new ArrayList<Integer>(unitMasters.size());
+		for(UnitMasterInfo unitMaster : unitMasters)
+			masterIds.add(unitMaster.getMasterId());
+		
+		return filter.runRulesAndResolveConflicts(componentData, rules, outcomes, resolver, ruleRunCache, getRuleRunCacheContext(unitMasters, componentMasters), masterIds);
+	}
+	
+	/**
+	 * Describes everything besides the components themselves that running the rules and resolving conflicts depends on for a unit, for use in a {@link RuleRunCache}.
+	 * 	That is: the unit signature, the template, template hash, and vendor of each unit master, and which unit master each previous individual resolution was made on.
+	 * 	Unit masters are described by their position in {@code unitMasters}, not their master ID, so units with the same templates and vendors get the same context.
+	 * @param unitMasters The unit masters on the unit, in {@link #CANONICAL_UNIT_MASTER_ORDER}.
+	 * @param componentMasters The component masters for the unit.
+	 * @return The context, or null if the results for this unit shouldn't be cached.
+	 * 	(ex: the same component has previous individual resolutions on more than one unit master, so it is up to the conflict resolver which one wins,
+	 * 	or the current hash of one of the templates isn't known, so there is no way to tell one version of its rules from another)
+	 */
+	private String getRuleRunCacheContext(Collection<UnitMasterInfo> unitMasters, NestedComponentMap<UnitComponentMaster> componentMasters)
+	{
+		StringBuilder sb = new StringBuilder(StringUtils.defaultString(unitMasters.iterator().next().getCalculatedUnitSignature()));
+		Set<Integer> individuallyResolvedComponentIds = new TreeSet<Integer>();
+		for(UnitMasterInfo unitMaster : unitMasters)
+		{
+			if(StringUtils.isBlank(unitMaster.getCurrentTemplateHash()))
+				return null;
+			
+			sb.append('|').append(unitMaster.getTemplateId())
+				.append('/').append(unitMaster.getCurrentTemplateHash())
+				.append('/').append(unitMaster.getVendorId())
+				.append('/');
+			
+			Map<Integer, UnitComponentMaster> componentMastersForUnitMaster = new TreeMap<Integer, UnitComponentMaster>(componentMasters.getComponentsForMasterId(unitMaster.getMasterId()));
+			for(UnitComponentMaster componentMaster : componentMastersForUnitMaster.values())
+			{
+				if(componentMaster.getPreviousConflictStatus() != ConflictStatus.INDIVIDUAL_RESOLUTION_REQUIRED)
+					continue;
+				if(!individuallyResolvedComponentIds.add(componentMaster.getComponentId()))
+					return null;
+				sb.append(componentMaster.getComponentId()).append(',');
+			}
+		}
+		
+		return sb.toString();
+	}
+	
+	/**
+	 * Gets the rules and outcomes for each template used by the given unit masters, from the cache where possible.
+	 * 	Templates that aren't cached under their current template hash have their rules and outcomes loaded together, and then added to the cache.
+	 * 	The current hash always comes from the template master, never from the hash stored on the unit master, which is out of date until the unit's template is rebuilt.
+	 * 	Templates whose current hash isn't known are loaded every time, and never cached.
+	 * @param unitMasters The unit masters to get rules for.
+	 * @return The rules and outcomes, keyed and sorted by template ID.
+	 */
+	private Map<Integer, TemplateRuleSet> getTemplateRuleSets(Collection<UnitMasterInfo> unitMasters)
+	{
+		Map<Integer, TemplateRuleSet> result = new TreeMap<Integer, TemplateRuleSet>();
+		Map<Integer, UnitMasterInfo> unitMastersToLoad = new HashMap<Integer, UnitMasterInfo>();
+		for(UnitMasterInfo unitMaster : unitMasters)
+		{
+			int templateId = unitMaster.getTemplateId();
+			if(result.containsKey(templateId) || unitMastersToLoad.containsKey(templateId))
+				continue;
+			
+			TemplateRuleSet ruleSet = templateRuleSetCache.get(templateId, unitMaster.getCurrentTemplateHash());
+			if(ruleSet != null)
+				result.put(templateId, ruleSet);
+			else
+				unitMastersToLoad.put(templateId, unitMaster);
+		}
+		
+		if(unitMastersToLoad.isEmpty())
+			return result;
+		
+		//Only one unit master per template is needed, since rules and outcomes depend only on the template
+		Collection<UnitMasterInfo> templatesToLoad = unitMastersToLoad.values();
+		Map<Integer, Map<Integer, Rule>> rulesByTemplateId = new HashMap<Integer, Map<Integer, Rule>>();
+		Map<Integer, List<RuleOutcome>> outcomesByTemplateId = new HashMap<Integer, List<RuleOutcome>>();
+		for(Integer templateId : unitMastersToLoad.keySet())
+		{
+			rulesByTemplateId.put(templateId, new LinkedHashMap<Integer, Rule>());
+			outcomesByTemplateId.put(templateId, new ArrayList<RuleOutcome>());
+		}
+		
+		Map<Integer, Rule> loadedRulesById = new HashMap<Integer, Rule>();
+		for(Rule rule : unitComponentDAO.getRules(templatesToLoad, RuleType.UNIT_TEMPLATE))
+		{
+			warnIfInapplicableCriteria(rule);
+			rulesByTemplateId.get(rule.getTemplateId()).put(rule.getRuleId(), rule);
+			loadedRulesById.putIfAbsent(rule.getRuleId(), rule);
+		}
+		
+		//A rule can have outcomes on more than one template, but only come back for one of them, so each template gets every rule its own outcomes use
+		for(RuleOutcome outcome : unitComponentDAO.getOutcomes(templatesToLoad))
+		{
+			outcomesByTemplateId.get(outcome.getTemplateId()).add(outcome);
+			Map<Integer, Rule> rulesForTemplate = rulesByTemplateId.get(outcome.getTemplateId());
+			Rule rule = loadedRulesById.get(outcome.getRuleId());
+			if(rule != null && !rulesForTemplate.containsKey(outcome.getRuleId()))
+				rulesForTemplate.put(outcome.getRuleId(), rule);
+		}
+		
+		//Add rules that should apply to every template, along with a global outcome to set comments to visibility R if the comment required rule fires
+		for(Rule rule : getGlobalRules(unitMastersToLoad.keySet()))
+			rulesByTemplateId.get(rule.getTemplateId()).put(rule.getRuleId(), rule);
+		for(RuleOutcome outcome : getGlobalOutcomes(unitMastersToLoad.keySet()))
+			outcomesByTemplateId.get(outcome.getTemplateId()).add(outcome);
+		
+		for(UnitMasterInfo unitMaster : templatesToLoad)
+		{
+			int templateId = unitMaster.getTemplateId();
+			List<Rule> rules = new ArrayList<Rule>(rulesByTemplateId.get(templateId).values());
+			TemplateRuleSet ruleSet = new TemplateRuleSet(templateId, unitMaster.getCurrentTemplateHash(), rules, outcomesByTemplateId.get(templateId));
+			templateRuleSetCache.put(ruleSet);
+			result.put(templateId, ruleSet);
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Logs a warning for each criteria in a rule whose operator or value can't be compared to the type of component it reads.
+	 * 	Criteria like these throw an exception as soon as they are evaluated against a component with a value. Checking them here, as rules are loaded,
+	 * 	reports them once for each version of a template, and before any unit trips over them.
+	 * @param rule The rule to check.
+	 */
+	private void warnIfInapplicableCriteria(Rule rule)
+	{
+		for(RuleCriteriaGroup group : rule.getCriteriaGroups())
+		{
+			for(RuleCriteria criteria : group.getCriteria())
+			{
+				if(!criteria.isApplicableToComponentType())
+					logger.warn("Rule " + rule.getRuleId() + " on template " + rule.getTemplateId() + " has a criteria that can not be evaluated: operator " + criteria.getOperator()
+						+ " with value '" + criteria.getComponentValue() + "' does not apply to component " + criteria.getComponentId() + " of type " + criteria.getComponentType() + ". " + criteria);
+			}
+		}
+	}
+	
+	/**
+	 * Gets the rules for a set of unit masters out of their templates' rule sets.
+	 * @param unitMasters The unit masters to get rules for.
+	 * @param ruleSets The rule sets for the templates the unit masters use, keyed by template ID. Rule sets for templates none of the unit masters use are ignored.
+	 * @return The rules for all the templates the unit masters use, in order by template ID.
+	 */
+	private List<Rule> getRulesFromRuleSets(Collection<UnitMasterInfo> unitMasters, Map<Integer, TemplateRuleSet> ruleSets)
+	{
+		Set<Integer> templateIds = new TreeSet<Integer>();
+		for(UnitMasterInfo unitMaster : unitMasters)
+			templateIds.add(unitMaster.getTemplateId());
+		
+		List<Rule> rules = new ArrayList<Rule>();
+		for(Integer templateId : templateIds)
+		{
+			TemplateRuleSet ruleSet = ruleSets.get(templateId);
+			if(ruleSet != null)
+				rules.addAll(ruleSet.getRules());
+		}
+		return rules;
+	}
+	
+	/**
+	 * Gets the outcomes for a set of unit masters out of their templates' rule sets, and assigns each one to every unit master that uses its template.
+	 * @param unitMasters The unit masters to get outcomes for.
+	 * @param ruleSets The rule sets for the templates the unit masters use, keyed by template ID. Rule sets for templates none of the unit masters use are ignored.
+	 * @return The outcomes that apply to each unit master, keyed by master ID.
+	 */
+	private Map<Integer, List<RuleOutcome>> getOutcomesFromRuleSets(Collection<UnitMasterInfo> unitMasters, Map<Integer, TemplateRuleSet> ruleSets)
+	{
+		Map<Integer, List<Integer>> masterIdsByTemplateId = new HashMap<Integer, List<Integer>>();
+		for(UnitMasterInfo unitMaster : unitMasters)
+		{
+			int templateId = unitMaster.getTemplateId();
+			if(!masterIdsByTemplateId.containsKey(templateId))
+				masterIdsByTemplateId.put(templateId, new ArrayList<Integer>());
+			masterIdsByTemplateId.get(templateId).add(unitMaster.getMasterId());
+		}
+		
+		//Get the list of outcomes for the various unit masters
+		List<RuleOutcome> outcomes = new ArrayList<RuleOutcome>();
+		for(Integer templateId : masterIdsByTemplateId.keySet())
+		{
+			TemplateRuleSet ruleSet = ruleSets.get(templateId);
+			if(ruleSet != null)
+				outcomes.addAll(ruleSet.getOutcomes());
+		}
+		
+		//Add each outcome to all of the unit masters that it pertains to (i.e. all the unit masters that use its template)
+		Map<Integer, List<RuleOutcome>> result = new HashMap<Integer, List<RuleOutcome>>();
+		for(RuleOutcome outcome : outcomes)
+		{
+			int templateId = outcome.getTemplateId();
+			List<Integer> masterIds = masterIdsByTemplateId.get(templateId);
+			if(masterIds == null)
+				continue;
+			for(Integer masterId : masterIds)
+			{
+				List<RuleOutcome> outcomesForMasterId = result.get(masterId);
+				if(outcomesForMasterId == null)
+				{
+					outcomesForMasterId = new ArrayList<RuleOutcome>();
+					result.put(masterId, outcomesForMasterId);
+				}
+				outcomesForMasterId.add(outcome);
+			}
+		}
+		
+		return result;
+	}
+	
 	private List<Rule> getGlobalRules(Collection<Integer> templateIds)
 	{
 		if(templateIds == null)
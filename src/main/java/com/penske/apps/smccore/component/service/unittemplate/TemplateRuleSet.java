@@ -0,0 +1,70 @@
+/**
+ * @author john.shiffler (600139252)
+ */
+package com.penske.apps.smccore.component.service.unittemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.penske.apps.smccore.component.domain.Rule;
+import com.penske.apps.smccore.component.domain.RuleOutcome;
+
+/**
+ * All the rules and rule outcomes that belong to a single unit template, including the ones every template gets (ex: the comment required rule).
+ * Rules and outcomes only change when the template does, so once loaded, these can be shared by every unit that uses the same version of the template.
+ */
+final class TemplateRuleSet
+{
+	/** The ID of the template the rules belong to. */
+	private final int templateId;
+	/** The hash of the template at the time the rules were loaded. Used to tell whether the template has changed since. */
+	private final String templateHash;
+	/** The rules for the template, including the global rules. */
+	private final List<Rule> rules;
+	/** The outcomes for the template, including the global outcomes, in the order they were loaded. */
+	private final List<RuleOutcome> outcomes;
+	
+	/**
+	 * Creates a new rule set for a template.
+	 * @param templateId The ID of the template the rules belong to.
+	 * @param templateHash Optional. The hash of the template at the time the rules were loaded. If this is blank, the rule set can't be cached.
+	 * @param rules The rules for the template. The list is copied.
+	 * @param outcomes The outcomes for the template. The list is copied.
+	 */
+	public TemplateRuleSet(int templateId, String templateHash, List<Rule> rules, List<RuleOutcome> outcomes)
+	{
+		this.templateId = templateId;
+		this.templateHash = templateHash;
+		this.rules = rules == null ? Collections.<Rule>emptyList() : Collections.unmodifiableList(new ArrayList<Rule>(rules));
+		this.outcomes = outcomes == null ? Collections.<RuleOutcome>emptyList() : Collections.unmodifiableList(new ArrayList<RuleOutcome>(outcomes));
+	}
+	
+	/** {@inheritDoc} */
+	@Override
+	public String toString()
+	{
+		return "{Template Rule Set " + templateId + " (hash " + templateHash + ") - " + rules.size() + " rules, " + outcomes.size() + " outcomes}";
+	}
+	
+	//***** DEFAULT ACCESSORS *****//
+	public int getTemplateId()
+	{
+		return templateId;
+	}
+
+	public String getTemplateHash()
+	{
+		return templateHash;
+	}
+
+	public List<Rule> getRules()
+	{
+		return rules;
+	}
+
+	public List<RuleOutcome> getOutcomes()
+	{
+		return outcomes;
+	}
+}
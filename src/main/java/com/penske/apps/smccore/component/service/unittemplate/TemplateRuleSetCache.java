@@ -0,0 +1,157 @@
+/**
+ * @author john.shiffler (600139252)
+ */
+package com.penske.apps.smccore.component.service.unittemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * A bounded, least-recently-used cache of the rules and outcomes for each unit template, keyed by template ID.
+ * Each entry remembers the template hash it was loaded under, and is only handed out to callers that ask for the same hash,
+ * 	so a template that has been changed since its rules were loaded will have them loaded again.
+ * This is thread-safe, so one instance can be shared by the whole application.
+ */
+final class TemplateRuleSetCache
+{
+	/** The most templates to keep rules for. Once this is exceeded, the least recently used template is dropped. */
+	private final int maxSize;
+	/** The cached rule sets, keyed by template ID, in access order. Guarded by {@code this}. */
+	private final Map<Integer, TemplateRuleSet> ruleSetsByTemplateId;
+	
+	private long hits;
+	private long misses;
+	
+	/**
+	 * Creates an empty cache.
+	 * @param maxSize The most templates to keep rules for. Must be at least 1.
+	 */
+	public TemplateRuleSetCache(final int maxSize)
+	{
+		if(maxSize < 1)
+			throw new IllegalArgumentException("Template rule cache must be able to hold at least one template.");
+		
+		this.maxSize = maxSize;
+		this.ruleSetsByTemplateId = new LinkedHashMap<Integer, TemplateRuleSet>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Entry<Integer, TemplateRuleSet> eldest)
+			{
+				return size() > maxSize;
+			}
+		};
+	}
+	
+	/** {@inheritDoc} */
+	@Override
+	public synchronized String toString()
+	{
+		return "{Template Rule Set Cache - " + ruleSetsByTemplateId.size() + " of " + maxSize + " templates, " + hits + " hits, " + misses + " misses}";
+	}
+	
+	//***** MODIFIED ACCESSORS *****//
+	/**
+	 * Looks up the rules for a template, if they have already been loaded for the given version of the template.
+	 * @param templateId The ID of the template to get rules for.
+	 * @param templateHash The current hash of the template. If this is blank, nothing is returned, since there is no way to tell if the cached rules are still current.
+	 * @return The rules for the template, or null if they haven't been loaded, were dropped to make room for other templates, or were loaded for a different template hash.
+	 */
+	public synchronized TemplateRuleSet get(int templateId, String templateHash)
+	{
+		TemplateRuleSet ruleSet = StringUtils.isBlank(templateHash) ? null : ruleSetsByTemplateId.get(templateId);
+		if(ruleSet == null || !StringUtils.equals(ruleSet.getTemplateHash(), templateHash))
+		{
+			misses++;
+			return null;
+		}
+		
+		hits++;
+		return ruleSet;
+	}
+	
+	/**
+	 * Adds the rules for a template to the cache, replacing any rules cached for a different version of the same template.
+	 * Rule sets without a template hash are not cached.
+	 * @param ruleSet The rules to cache.
+	 */
+	public synchronized void put(TemplateRuleSet ruleSet)
+	{
+		if(ruleSet == null || StringUtils.isBlank(ruleSet.getTemplateHash()))
+			return;
+		ruleSetsByTemplateId.put(ruleSet.getTemplateId(), ruleSet);
+	}
+	
+	/**
+	 * Adds rule sets to the cache, but only for templates that don't already have rules cached, so that rules loaded since the application started are never replaced with older ones.
+	 * 	This is meant for filling the cache up front (ex: from a {@link TemplateRuleSetSnapshot}). Rule sets without a template hash are not cached.
+	 * 	If there are more rule sets than the cache can hold, the ones given last are kept.
+	 * @param ruleSets The rules to cache.
+	 * @return The number of rule sets that were added and are still cached afterwards. Rule sets pushed back out by the ones given after them, to stay within the size limit, are not counted.
+	 */
+	public synchronized int putAllIfAbsent(Collection<TemplateRuleSet> ruleSets)
+	{
+		List<Integer> addedTemplateIds = new ArrayList<Integer>();
+		for(TemplateRuleSet ruleSet : ruleSets)
+		{
+			if(ruleSet == null || StringUtils.isBlank(ruleSet.getTemplateHash()) || ruleSetsByTemplateId.containsKey(ruleSet.getTemplateId()))
+				continue;
+			ruleSetsByTemplateId.put(ruleSet.getTemplateId(), ruleSet);
+			addedTemplateIds.add(ruleSet.getTemplateId());
+		}
+		
+		//Checking with containsKey doesn't count as using the rule sets, so this doesn't change which ones get dropped next
+		int added = 0;
+		for(Integer templateId : addedTemplateIds)
+		{
+			if(ruleSetsByTemplateId.containsKey(templateId))
+				added++;
+		}
+		return added;
+	}
+	
+	/**
+	 * @return A copy of all the cached rule sets, from least to most recently used. Getting these doesn't count as using them.
+	 */
+	public synchronized List<TemplateRuleSet> getAll()
+	{
+		return new ArrayList<TemplateRuleSet>(ruleSetsByTemplateId.values());
+	}
+	
+	/**
+	 * Removes all the cached rules, so that they will all be loaded again the next time they are needed.
+	 */
+	public synchronized void clear()
+	{
+		ruleSetsByTemplateId.clear();
+	}
+	
+	/**
+	 * @return The number of templates currently cached.
+	 */
+	public synchronized int size()
+	{
+		return ruleSetsByTemplateId.size();
+	}
+	
+	/**
+	 * @return The number of times rules were found in the cache.
+	 */
+	public synchronized long getHits()
+	{
+		return hits;
+	}
+	
+	/**
+	 * @return The number of times rules were not found in the cache, and had to be loaded.
+	 */
+	public synchronized long getMisses()
+	{
+		return misses;
+	}
+}
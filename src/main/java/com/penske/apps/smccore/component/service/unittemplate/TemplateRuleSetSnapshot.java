@@ -0,0 +1,131 @@
+/**
+ * @author john.shiffler (600139252)
+ */
+package com.penske.apps.smccore.component.service.unittemplate;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.penske.apps.smccore.component.domain.Rule;
+import com.penske.apps.smccore.component.domain.RuleOutcome;
+import com.penske.apps.smccore.component.domain.RuleSnapshotCodec;
+import com.penske.apps.smccore.component.domain.unittemplate.UnitMasterInfo;
+
+/**
+ * Reads and writes a binary snapshot of template rule sets, so that a freshly started application can fill its {@link TemplateRuleSetCache}
+ * 	from a local file, instead of loading the rules and outcomes for every template from the database the first time each one is used.
+ * Each rule set in the snapshot keeps the template hash it was loaded under. The snapshot itself is never checked against the database.
+ * 	Rule sets for a template that has changed since just never get used, since the cache only hands out rule sets for the template's current hash
+ * 	(as read from the template master, see {@link UnitMasterInfo#getCurrentTemplateHash()}),
+ * 	and get replaced the first time the template is loaded again.
+ */
+final class TemplateRuleSetSnapshot
+{
+	/** Written at the start of every snapshot, so that some other file isn't mistaken for one. */
+	private static final int MAGIC = 0x534D4352;
+	/** The version of the snapshot layout. Snapshots written with a different version are rejected, rather than read wrong. */
+	private static final int VERSION = 2;
+
+	private TemplateRuleSetSnapshot() {}
+
+	/**
+	 * Writes rule sets to a snapshot. Rule sets without a template hash are left out, since there would be no way to tell if they were still current.
+	 * @param ruleSets The rule sets to write.
+	 * @param outputStream The stream to write the snapshot to. This is flushed, but not closed.
+	 * @return The number of rule sets written.
+	 * @throws IOException If the snapshot could not be written.
+	 */
+	public static int write(Collection<TemplateRuleSet> ruleSets, OutputStream outputStream) throws IOException
+	{
+		List<TemplateRuleSet> ruleSetsToWrite = new ArrayList<TemplateRuleSet>();
+		for(TemplateRuleSet ruleSet : ruleSets)
+		{
+			if(!StringUtils.isBlank(ruleSet.getTemplateHash()))
+				ruleSetsToWrite.add(ruleSet);
+		}
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(ruleSetsToWrite.size());
+		for(TemplateRuleSet ruleSet : ruleSetsToWrite)
+		{
+			out.writeInt(ruleSet.getTemplateId());
+			out.writeUTF(ruleSet.getTemplateHash());
+			out.writeInt(ruleSet.getRules().size());
+			for(Rule rule : ruleSet.getRules())
+				RuleSnapshotCodec.writeRule(out, rule);
+			out.writeInt(ruleSet.getOutcomes().size());
+			for(RuleOutcome outcome : ruleSet.getOutcomes())
+				RuleSnapshotCodec.writeOutcome(out, outcome);
+		}
+		out.flush();
+		return ruleSetsToWrite.size();
+	}
+
+	/**
+	 * Reads all the rule sets from a snapshot written by {@link #write(Collection, OutputStream)}.
+	 * 	Nothing is returned unless the whole snapshot can be read, so a damaged snapshot never gets partly used.
+	 * @param inputStream The stream to read the snapshot from. This is not closed.
+	 * @return The rule sets in the snapshot, in the order they were written.
+	 * @throws IOException If the snapshot could not be read, is not a snapshot, or was written with a different version of the layout.
+	 */
+	public static List<TemplateRuleSet> read(InputStream inputStream) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(inputStream));
+		try {
+			if(in.readInt() != MAGIC)
+				throw new IOException("Not a template rule snapshot");
+			int version = in.readInt();
+			if(version != VERSION)
+				throw new IOException("Template rule snapshot has version " + version + ", but only version " + VERSION + " can be read");
+
+			int ruleSetCount = readCount(in);
+			List<TemplateRuleSet> result = new ArrayList<TemplateRuleSet>(ruleSetCount);
+			for(int i = 0; i < ruleSetCount; i++)
+			{
+				int templateId = in.readInt();
+				String templateHash = in.readUTF();
+
+				int ruleCount = readCount(in);
+				List<Rule> rules = new ArrayList<Rule>(ruleCount);
+				for(int j = 0; j < ruleCount; j++)
+					rules.add(RuleSnapshotCodec.readRule(in));
+
+				int outcomeCount = readCount(in);
+				List<RuleOutcome> outcomes = new ArrayList<RuleOutcome>(outcomeCount);
+				for(int j = 0; j < outcomeCount; j++)
+					outcomes.add(RuleSnapshotCodec.readOutcome(in));
+
+				result.add(new TemplateRuleSet(templateId, templateHash, rules, outcomes));
+			}
+			return result;
+		} catch(EOFException ex) {
+			throw new IOException("Template rule snapshot ended early", ex);
+		}
+	}
+
+	//***** HELPER METHODS *****//
+	/**
+	 * Reads the number of items in a list, checking that it makes sense, so that a damaged snapshot can't make this try to allocate a huge list.
+	 * 	This is the same limit {@link RuleSnapshotCodec} puts on the lists inside each rule.
+	 */
+	private static int readCount(DataInputStream in) throws IOException
+	{
+		int count = in.readInt();
+		if(count < 0 || count > Short.MAX_VALUE)
+			throw new IOException("Invalid item count in template rule snapshot: " + count);
+		return count;
+	}
+}
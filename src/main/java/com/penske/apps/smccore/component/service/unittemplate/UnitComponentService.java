@@ -3,12 +3,17 @@
  */
 package com.penske.apps.smccore.component.service.unittemplate;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
 import java.util.concurrent.ThreadPoolExecutor;
 
+import com.penske.apps.smccore.base.plugins.TimingBean;
 import com.penske.apps.smccore.component.domain.ComponentValue;
 import com.penske.apps.smccore.component.domain.GlobalConflictResolution;
 import com.penske.apps.smccore.component.domain.Rule;
@@ -19,6 +24,8 @@ import com.penske.apps.smccore.component.domain.unittemplate.UnitComponentMaster
 import com.penske.apps.smccore.component.domain.unittemplate.UnitMasterInfo;
 import com.penske.apps.smccore.component.engine.ComponentVisibilityFilterData;
 import com.penske.apps.smccore.component.engine.NestedComponentMap;
+import com.penske.apps.smccore.component.engine.RuleSession;
+import com.penske.apps.smccore.component.engine.RuleStatistics;
 
 /**
  * A service for performing common operations related to the component rules engine in the unit templates module.
@@ -155,6 +162,32 @@ public interface UnitComponentService
 	 * 	and whose right side is the set of component values the unit originally had in the database before the rules were run.
 	 */
 	public ComponentVisibilityFilterData runRulesAndResolveConflicts(Collection<UnitMasterInfo> unitMasters, NestedComponentMap<String> userValues);
+	
+	/**
+	 * Loads component data for the given unit masters, runs the rules, and resolves conflicts, the same as {@link #runRulesAndResolveConflicts(Collection, NestedComponentMap)},
+	 * 	but keeps the results in a session that the user's edits can then be applied to one value at a time, without loading anything again.
+	 * 	This is meant for screens that show the effects of each change as the user makes it. The session should be thrown away once the user saves or leaves the screen,
+	 * 	since it doesn't see any changes made to the unit's data in the database after it was started.
+	 * This method does not save anything to the database.
+	 * @param unitMasters The units the components belong to.
+	 * @param userValues Optional. The user-submitted values for the components.
+	 * @return A session holding the results of running the rules engine and resolving conflicts.
+	 */
+	public RuleSession startRuleSession(Collection<UnitMasterInfo> unitMasters, NestedComponentMap<String> userValues);
+	
+	/**
+	 * Loads component data for many units at once, runs the rules, and resolves conflicts for each of them.
+	 * All the data is loaded for the whole batch in a handful of queries, and then the rules for each unit are run in parallel on the given executor.
+	 * The results only contain the final visibilities and conflict statuses, not an explanation of how each rule was evaluated.
+	 * This method does not save anything to the database.
+	 * @param unitMasters The unit masters for each unit, keyed by unit number.
+	 * @param userValues Optional. The user-submitted values for the components of each unit, keyed by unit number.
+	 * @param executor Optional. The executor to run the rules on. If this is null, the rules are run on the common fork-join pool.
+	 * @param timingBean Optional. A bean to report how many units were able to reuse the results of another unit with identical templates and rule inputs, instead of running the rules again.
+	 * @return The results of running the rules engine and resolving conflicts, keyed by unit number.
+	 * 	If the rules can not be run for any unit, the exception for that unit is thrown once all the other units have finished.
+	 */
+	public Map<String, ComponentVisibilityFilterData> runRulesAndResolveConflictsForMultipleUnits(Map<String, ? extends Collection<UnitMasterInfo>> unitMasters, Map<String, NestedComponentMap<String>> userValues, Executor executor, TimingBean timingBean);
 
 	
 	/**
@@ -163,4 +196,41 @@ public interface UnitComponentService
 	 * @return The computed unit signature (a combination of PO Category/Subcategory Association ID and Vendor ID)
 	 */
 	public String computeUnitSignature(Collection<UnitMasterInfo> unitMasters);
+	
+	//***** Snapshot Methods *****//
+	/**
+	 * Writes the rules and outcomes currently cached for each template to a compact binary snapshot, keyed by template hash, so that they can be reloaded after a restart
+	 * 	with {@link #loadTemplateRuleSnapshot(InputStream)}, instead of being loaded from the database again the first time each template is used.
+	 * 	This is typically written to a local file shortly before the application shuts down, or every so often while it runs.
+	 * @param outputStream The stream to write the snapshot to. This is flushed, but not closed.
+	 * @return The number of templates written to the snapshot.
+	 * @throws IOException If the snapshot could not be written, or one of the cached rules or outcomes could not be read back once written (ex: it is missing its operator).
+	 */
+	public int writeTemplateRuleSnapshot(OutputStream outputStream) throws IOException;
+	
+	/**
+	 * Fills the cache of rules and outcomes for each template from a snapshot written by {@link #writeTemplateRuleSnapshot(OutputStream)}, typically when the application starts.
+	 * 	Templates that have changed since the snapshot was written are not a problem: their rules are only used for units whose template still has the same hash,
+	 * 	and are replaced with freshly loaded rules the first time the template is used with its new hash. Templates already cached are not replaced.
+	 * @param inputStream The stream to read the snapshot from. This is not closed.
+	 * @return The number of templates added to the cache. If the snapshot has more templates than the cache can hold, only the ones still cached at the end are counted.
+	 * @throws IOException If the snapshot could not be read, or was written by an incompatible version of this library. Nothing is added to the cache if this happens.
+	 */
+	public int loadTemplateRuleSnapshot(InputStream inputStream) throws IOException;
+	
+	//***** Statistics Methods *****//
+	/**
+	 * Gets the rules that this service's rules engine has spent the most time evaluating, across every unit, since the statistics were last reset.
+	 * 	Nothing is recorded unless the statistics from {@link #getRuleStatistics()} have been turned on, so this is empty by default.
+	 * @param count The most rules to return.
+	 * @return What each rule has cost, costliest first.
+	 */
+	public List<RuleStatistics.RuleCost> getCostliestRules(int count);
+	
+	/**
+	 * Gets the per-rule statistics this service's rules engine records to. These start out turned off, and can be turned on with {@link RuleStatistics#setEnabled(boolean)}.
+	 * 	To look at them from a JMX console, register them with an MBean server under {@link RuleStatistics#OBJECT_NAME}.
+	 * @return The statistics. This is the same object every time.
+	 */
+	public RuleStatistics getRuleStatistics();
 }
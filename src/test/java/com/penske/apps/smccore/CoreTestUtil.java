@@ -333,6 +333,7 @@ public final class CoreTestUtil
 		set(result, "templateId", templateId);
 		set(result, "previousTemplateHash", "test hash");
 		set(result, "masterTemplateHash", "test hash");
+		set(result, "currentTemplateHash", "test hash");
 		set(result, "payableStatus", payableStatus);
 		set(result, "actualDeliveryDate", actualDeliveryDate);
 		set(result, "missingInfoCount", missingInfoCount);
@@ -17,13 +17,30 @@ import com.penske.apps.smccore.base.util.DateUtilTest;
 import com.penske.apps.smccore.base.util.UnitNumberUtilTest;
 import com.penske.apps.smccore.base.util.UnitRangeBuilderTest;
 import com.penske.apps.smccore.base.util.UtilTest;
+import com.penske.apps.smccore.component.domain.CompiledCriteriaTest;
+import com.penske.apps.smccore.component.domain.ComponentValueParserTest;
+import com.penske.apps.smccore.component.domain.ComponentValueTest;
+import com.penske.apps.smccore.component.domain.GeneratedRuleTest;
 import com.penske.apps.smccore.component.domain.RuleCriteriaGroupTest;
 import com.penske.apps.smccore.component.domain.RuleCriteriaTest;
 import com.penske.apps.smccore.component.domain.RuleTest;
 import com.penske.apps.smccore.component.domain.UnitDatesTest;
 import com.penske.apps.smccore.component.domain.enums.ComponentRuleOperatorTest;
+import com.penske.apps.smccore.component.domain.unittemplate.GlobalComponentMasterTest;
+import com.penske.apps.smccore.component.domain.unittemplate.UnitConflictResolverTest;
+import com.penske.apps.smccore.component.engine.ColumnarRuleEvaluatorTest;
+import com.penske.apps.smccore.component.engine.ComponentVisibilityFilterDataTest;
 import com.penske.apps.smccore.component.engine.ComponentVisibilityFilterTest;
+import com.penske.apps.smccore.component.engine.NestedComponentMapTest;
+import com.penske.apps.smccore.component.engine.PrioritizedOutcomesTest;
+import com.penske.apps.smccore.component.engine.RingBufferTraceSinkTest;
+import com.penske.apps.smccore.component.engine.RuleRunCacheTest;
+import com.penske.apps.smccore.component.engine.RuleSessionTest;
+import com.penske.apps.smccore.component.engine.RuleStatisticsTest;
 import com.penske.apps.smccore.component.service.CalculatedDataServiceTest;
+import com.penske.apps.smccore.component.service.unittemplate.DefaultUnitComponentServiceTest;
+import com.penske.apps.smccore.component.service.unittemplate.TemplateRuleSetCacheTest;
+import com.penske.apps.smccore.component.service.unittemplate.TemplateRuleSetSnapshotTest;
 
 /**
  * Tests that are relatively simple and don't require a database connection.
@@ -44,13 +61,30 @@ import com.penske.apps.smccore.component.service.CalculatedDataServiceTest;
 	RuleCriteriaGroupTest.class,
 	RuleCriteriaTest.class,
 	ComponentRuleOperatorTest.class,
+	CompiledCriteriaTest.class,
+	ComponentValueParserTest.class,
+	ComponentValueTest.class,
+	GeneratedRuleTest.class,
+	UnitConflictResolverTest.class,
+	GlobalComponentMasterTest.class,
 	ComponentVisibilityFilterTest.class,
+	ComponentVisibilityFilterDataTest.class,
+	ColumnarRuleEvaluatorTest.class,
+	NestedComponentMapTest.class,
+	PrioritizedOutcomesTest.class,
+	RingBufferTraceSinkTest.class,
+	RuleRunCacheTest.class,
+	RuleSessionTest.class,
+	RuleStatisticsTest.class,
 	EmailTemplateTest.class,
 	UserSecurityTest.class,
 	
 	//Service Tests
 	UserServiceTest.class,
 	CalculatedDataServiceTest.class,
+	DefaultUnitComponentServiceTest.class,
+	TemplateRuleSetCacheTest.class,
+	TemplateRuleSetSnapshotTest.class,
 	
 	//Misc Tests
 	LookupManagerTest.class,
@@ -223,6 +223,36 @@ public class TestComponentData
 		return this;
 	}
 
+	public TestComponentData ruleLatchingCycle(int triggerRuleId, int ruleId1, int ruleId2, int triggerComponentId, int componentId1, int componentId2)
+	{
+		ComponentMaster trigger = masterText(triggerComponentId, defaultMasterId, "Trigger Component", EDITABLE, true);
+		ComponentMaster component1 = masterText(componentId1, defaultMasterId, "Component 1", NOT_VISIBLE, true);
+		ComponentMaster component2 = masterText(componentId2, defaultMasterId, "Component 2", NOT_VISIBLE, true);
+		
+		value(trigger, "Y");
+		value(component1, "Y");
+		value(component2, "Y");
+		
+		rule(new RuleBuilder(triggerRuleId, defaultTemplateId, "Trigger Rule", RuleType.LOADSHEET)
+			.addCriteria(1, triggerComponentId, ComponentRuleOperator.EQUAL, "Y")
+			.build());
+		rule(new RuleBuilder(ruleId1, defaultTemplateId, "First Latching Rule", RuleType.LOADSHEET)
+			.addCriteria(1, componentId1, ComponentRuleOperator.EQUAL, "Y")
+			.build());
+		rule(new RuleBuilder(ruleId2, defaultTemplateId, "Second Latching Rule", RuleType.LOADSHEET)
+			.addCriteria(1, componentId2, ComponentRuleOperator.EQUAL, "Y")
+			.build());
+		
+		//The trigger shows component 1, which shows component 2, which keeps component 1 showing.
+		//So, once the trigger has shown them, the two components keep each other visible even after the trigger goes away, as long as rules can read not visible components' values as missing.
+		// Running the rules from scratch without the trigger never shows either of them, though. The cycle settles differently depending on where it starts.
+		outcome(triggerRuleId, componentId1, defaultMasterId, 1, EDITABLE);
+		outcome(ruleId1, componentId2, defaultMasterId, 1, EDITABLE);
+		outcome(ruleId2, componentId1, defaultMasterId, 2, EDITABLE);
+		
+		return this;
+	}
+	
 	public TestComponentData ruleCascadingOutcomes(int primaryRuleId, int secondaryRuleId, int parentComponentId, int intermediateComponentId, int targetComponentId)
 	{
 		masterText(parentComponentId, defaultMasterId, "Parent Component", EDITABLE, true);
@@ -298,6 +328,26 @@ public class TestComponentData
 		return this;
 	}
 	
+	public TestComponentData ruleConflictingOutcome(int ruleId, int requiredMasterId, int ruleMasterId, int targetComponentId, int criteriaComponentId)
+	{
+		unitMaster(requiredMasterId, 1);
+		unitMaster(ruleMasterId, 2);
+		
+		masterText(criteriaComponentId, ruleMasterId, "Criteria Component", EDITABLE, false);
+		masterText(targetComponentId, requiredMasterId, "Required Target Component", REQUIRED, false);
+		masterText(targetComponentId, ruleMasterId, "Optional Target Component", EDITABLE, false);
+		
+		user(criteriaComponentId, ruleMasterId, "N");
+		
+		//Sets up a rule that makes the second template's target component required too, and so puts it in conflict with the first template's, once the criteria is changed to Y
+		rule(new RuleBuilder(ruleId, defaultTemplateId, "Conflicting Outcome Rule", RuleType.LOADSHEET)
+			.addCriteria(1, criteriaComponentId, ComponentRuleOperator.EQUAL, "Y")
+			.build());
+		outcome(ruleId, targetComponentId, ruleMasterId, 1, REQUIRED);
+		
+		return this;
+	}
+	
 	public TestComponentData ruleOnGroundBody(int ruleId, int ruleId2, int onGroundCompId, int bodyInstalledCompId, int bodyMakeCompId)
 	{
 		ComponentMaster onGround = masterText(onGroundCompId, defaultMasterId, "On Ground Unit", EDITABLE, true);
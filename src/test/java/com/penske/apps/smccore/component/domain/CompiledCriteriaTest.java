@@ -0,0 +1,132 @@
+/**
+ * @author john.shiffler (600139252)
+ */
+package com.penske.apps.smccore.component.domain;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import com.penske.apps.smccore.component.TestComponentMaster;
+import com.penske.apps.smccore.component.domain.enums.ComponentRuleOperator;
+import com.penske.apps.smccore.component.domain.enums.ComponentType;
+import com.penske.apps.smccore.component.domain.enums.RuleType;
+import com.penske.apps.smccore.component.domain.enums.Visibility;
+import com.penske.apps.smccore.component.engine.ComponentModel;
+
+/**
+ * Class under test: {@link CompiledCriteria}
+ */
+public class CompiledCriteriaTest
+{
+	private final ComponentMaster textMaster = new TestComponentMaster(1234, 1, "G", "SG", "TEXT COMP", ComponentType.TEXT, Visibility.VISIBLE, false);
+	private final ComponentMaster numberMaster = new TestComponentMaster(4567, 1, "G", "SG", "NUMERIC COMP", ComponentType.NUMERIC, Visibility.VISIBLE, false);
+	private final ComponentMaster yearMaster = new TestComponentMaster(7890, 1, "G", "SG", "YEAR COMP", ComponentType.YEAR, Visibility.VISIBLE, false);
+	private final ComponentMaster dateMaster = new TestComponentMaster(2468, 1, "G", "SG", "DATE COMP", ComponentType.DATE, Visibility.VISIBLE, false);
+
+	private final List<ComponentModel> models = Arrays.asList(
+		new ComponentModel(textMaster, new ComponentValue(textMaster, "FOOBAR"), Visibility.VISIBLE),
+		new ComponentModel(textMaster, new ComponentValue(textMaster, (String) null), Visibility.VISIBLE),
+		new ComponentModel(numberMaster, new ComponentValue(numberMaster, "25.5"), Visibility.VISIBLE),
+		new ComponentModel(numberMaster, new ComponentValue(numberMaster, (String) null), Visibility.VISIBLE),
+		new ComponentModel(yearMaster, new ComponentValue(yearMaster, "2016"), Visibility.VISIBLE),
+		new ComponentModel(yearMaster, new ComponentValue(yearMaster, (String) null), Visibility.VISIBLE),
+		new ComponentModel(dateMaster, new ComponentValue(dateMaster, "2018-03-15"), Visibility.VISIBLE),
+		new ComponentModel(dateMaster, new ComponentValue(dateMaster, (String) null), Visibility.VISIBLE)
+	);
+
+	private final List<String> operands = Arrays.asList(null, "", "  ", "FOOBAR", "BAZ", "25", "25.5", "25.50", "26", "2015", "2016", "2017", "-1", "1e2", "2018-03-15", "03/15/2018", "03/16/2018", "0x1F");
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	@Test
+	public void shouldMatchOperatorForAllCombinations()
+	{
+		for(ComponentRuleOperator operator : ComponentRuleOperator.values())
+		{
+			for(String operand : operands)
+			{
+				CompiledCriteria compiled = CompiledCriteria.compile(operator, operand);
+				for(ComponentModel model : models)
+				{
+					String description = model.getComponentMaster().getComponentType() + " " + model.getComponentValueAsString() + " " + operator + " " + operand + ": ";
+					String expected = outcome(operator, model, operand);
+					String actual;
+					try {
+						actual = String.valueOf(compiled.evaluate(model));
+					} catch(RuntimeException ex) {
+						actual = ex.getClass().getSimpleName() + ": " + ex.getMessage();
+					}
+					assertThat(description, actual, is(expected));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void shouldPreParseOperand()
+	{
+		CompiledCriteria numeric = CompiledCriteria.compile(ComponentRuleOperator.GREATER_THAN, "25.5");
+		assertThat(numeric.getNumericOperand(), is(new BigDecimal("25.5")));
+		assertThat(numeric.getDateOperand(), is(nullValue()));
+
+		CompiledCriteria text = CompiledCriteria.compile(ComponentRuleOperator.EQUAL, "FOOBAR");
+		assertThat(text.getNumericOperand(), is(nullValue()));
+		assertThat(text.getDateOperand(), is(nullValue()));
+		assertThat(text.getOperand(), is("FOOBAR"));
+	}
+
+	@Test
+	public void shouldDetectTypeMismatches()
+	{
+		assertThat(CompiledCriteria.compile(ComponentRuleOperator.LESS_THAN, "25").isApplicableTo(ComponentType.NUMERIC), is(true));
+		assertThat(CompiledCriteria.compile(ComponentRuleOperator.LESS_THAN, "25").isApplicableTo(ComponentType.TEXT), is(false));
+		assertThat(CompiledCriteria.compile(ComponentRuleOperator.LESS_THAN, "25").isApplicableTo(ComponentType.DATE), is(false));
+		assertThat(CompiledCriteria.compile(ComponentRuleOperator.LESS_THAN, "FOOBAR").isApplicableTo(ComponentType.YEAR), is(false));
+		assertThat(CompiledCriteria.compile(ComponentRuleOperator.EQUAL, "FOOBAR").isApplicableTo(ComponentType.TEXT), is(true));
+		assertThat(CompiledCriteria.compile(ComponentRuleOperator.EQUAL, "FOOBAR").isApplicableTo(ComponentType.NUMERIC), is(false));
+		assertThat(CompiledCriteria.compile(ComponentRuleOperator.EQUAL, "FOOBAR").isApplicableTo(ComponentType.DATE), is(false));
+		assertThat(CompiledCriteria.compile(ComponentRuleOperator.EQUAL, "03/15/2018").isApplicableTo(ComponentType.DATE), is(true));
+		assertThat(CompiledCriteria.compile(ComponentRuleOperator.EXISTS_ON_PO, null).isApplicableTo(ComponentType.COMMENT), is(true));
+	}
+
+	@Test
+	public void shouldThrowSameExceptionAsOperator()
+	{
+		ComponentModel textModel = models.get(0);
+		thrown.expect(UnsupportedOperationException.class);
+		CompiledCriteria.compile(ComponentRuleOperator.LESS_THAN, "100").evaluate(textModel);
+	}
+
+	@Test
+	public void shouldCompileWhenBuiltByRuleBuilder()
+	{
+		RuleCriteria criteria = new RuleBuilder(1, 1, "Test Rule", RuleType.LOADSHEET)
+			.addCriteria(1, 4567, ComponentRuleOperator.GREATER_THAN, "25")
+			.build()
+			.getCriteriaGroups().get(0)
+			.getCriteria().get(0);
+
+		assertThat(criteria.getCompiledCriteria().getNumericOperand(), is(new BigDecimal("25")));
+		assertThat(criteria.getCompiledCriteria() == criteria.getCompiledCriteria(), is(true));
+	}
+
+	//***** HELPER METHODS *****//
+	private String outcome(ComponentRuleOperator operator, ComponentModel model, String operand)
+	{
+		try {
+			return String.valueOf(operator.evaluate(model, operand));
+		} catch(RuntimeException ex) {
+			return ex.getClass().getSimpleName() + ": " + ex.getMessage();
+		}
+	}
+}
@@ -0,0 +1,167 @@
+/**
+ * @author john.shiffler (600139252)
+ */
+package com.penske.apps.smccore.component.domain;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.math.BigDecimal;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.penske.apps.smccore.base.util.DateUtil;
+
+/**
+ * Class under test: {@link ComponentValueParser}
+ * These check the hand-written parsing against the original parsers, both on known odd cases and on a large number of randomly generated values.
+ * 	The random values are generated from a fixed seed, so any failure can be repeated.
+ */
+public class ComponentValueParserTest
+{
+	private static final int RANDOM_VALUE_COUNT = 20000;
+	private static final String NUMBER_CHARACTERS = "0123456789,.-+ eEx\u0661";
+	private static final String DATE_CHARACTERS = "0123456789-/ ";
+
+	@Test
+	public void shouldParseSimpleNumbersByHand()
+	{
+		assertThat(ComponentValueParser.parseSimpleNumber("1234"), is(new BigDecimal("1234")));
+		assertThat(ComponentValueParser.parseSimpleNumber("-1,234,567"), is(new BigDecimal("-1234567")));
+		assertThat(ComponentValueParser.parseSimpleNumber("1,234.50"), is(new BigDecimal("1234.5")));
+		assertThat(ComponentValueParser.parseSimpleNumber("2.000"), is(new BigDecimal("2")));
+		assertThat(ComponentValueParser.parseSimpleNumber("-9223372036854775808"), is(BigDecimal.valueOf(Long.MIN_VALUE)));
+
+		//These are all left to the number format
+		for(String value : Arrays.asList("", "-", "-0", "-0.00", "9223372036854775808", "+5", "5.", ".5", "1e5", " 5", "5 ", "12ABC", ",5", "5,", "5,,0", "1.2.3", "\u0661"))
+			assertThat(value, ComponentValueParser.parseSimpleNumber(value), is(nullValue()));
+	}
+
+	@Test
+	public void shouldParseNumbersLikeNumberFormat()
+	{
+		List<String> edgeCases = Arrays.asList("0", "-0", "00", "-0.0", "0.000", "2.0", "2.50", "-2.50", "1,234", "1,2,3", "12,34.5", "1,234.", ",1", "1,", "1,,2",
+			"9223372036854775807", "9223372036854775808", "-9223372036854775808", "-9223372036854775809", "12345678901234567890.5",
+			"0.1", "0.30000000000000004", "123456789.123456789", "+1", "1e3", "1E-3", "--1", "-", ".", ".5", "5.", "1.2.3", " 1", "1 ", "1x", "x1", "\u0661\u0662");
+		for(String value : edgeCases)
+			assertNumberMatches(value);
+
+		Random random = new Random(20180315L);
+		for(int i = 0; i < RANDOM_VALUE_COUNT; i++)
+		{
+			assertNumberMatches(randomString(random, NUMBER_CHARACTERS, 12));
+			assertNumberMatches(randomPlainNumber(random));
+		}
+	}
+
+	@Test
+	public void shouldParseSimpleDatesByHand()
+	{
+		assertThat(ComponentValueParser.parseSimpleDate("2018-03-15"), is(DateUtil.parseDate("2018-03-15")));
+		assertThat(ComponentValueParser.parseSimpleDate("03/15/2018"), is(DateUtil.parseDate("03/15/2018")));
+		assertThat(ComponentValueParser.parseSimpleDate("0001-01-01"), is(DateUtil.parseDate("0001-01-01")));
+		assertThat(DateUtil.isDateIsTheAs400DefaultTime(ComponentValueParser.parseSimpleDate("0001-01-01")), is(true));
+
+		//These are all left to the original parsers
+		for(String value : Arrays.asList("", "3/15/2018", "2018-3-15", "03/15/18", "03/15/0018", "2018/03/15", " 2018-03-15", "2018-03-1x"))
+			assertThat(value, ComponentValueParser.parseSimpleDate(value), is(nullValue()));
+	}
+
+	@Test
+	public void shouldParseDatesLikeOriginalParsers()
+	{
+		List<String> edgeCases = Arrays.asList("2018-03-15", "2018-02-29", "2016-02-29", "2018-02-30", "2018-00-10", "2018-13-01", "2018-01-00", "2018-12-99",
+			"0000-01-01", "0001-01-01", "9999-12-31", "03/15/2018", "00/00/2018", "99/99/9999", "03/15/0099", "03/15/0100", "03/15/18", "3/5/2018", "2018-3-5", "2018/03/15", "03-15-2018");
+		for(String value : edgeCases)
+			assertDateMatches(value);
+
+		Random random = new Random(20180315L);
+		for(int i = 0; i < RANDOM_VALUE_COUNT; i++)
+		{
+			assertDateMatches(randomString(random, DATE_CHARACTERS, 10));
+			assertDateMatches(randomPlainDate(random));
+		}
+	}
+
+	//***** HELPER METHODS *****//
+	/**
+	 * Checks that {@link ComponentValueParser#parseNumber(String)} gives back exactly what the number format does (including the scale), or fails with the same kind of exception.
+	 */
+	private void assertNumberMatches(String value)
+	{
+		String expected;
+		try {
+			expected = ComponentValueParser.parseNumberWithFormat(value).toString();
+		} catch(ParseException | RuntimeException ex) {
+			expected = ex.getClass().getName();
+		}
+
+		String actual;
+		try {
+			actual = ComponentValueParser.parseNumber(value).toString();
+		} catch(ParseException | RuntimeException ex) {
+			actual = ex.getClass().getName();
+		}
+
+		assertThat("'" + value + "'", actual, is(expected));
+	}
+
+	private void assertDateMatches(String value)
+	{
+		Date expected = DateUtil.parseDate(value);
+		Date actual = ComponentValueParser.parseDate(value);
+		assertThat("'" + value + "'", actual, is(expected));
+	}
+
+	private String randomString(Random random, String characters, int maxLength)
+	{
+		int length = random.nextInt(maxLength + 1);
+		StringBuilder sb = new StringBuilder(length);
+		for(int i = 0; i < length; i++)
+			sb.append(characters.charAt(random.nextInt(characters.length())));
+		return sb.toString();
+	}
+
+	/**
+	 * @return A number of the kind that comes out of the database, so that the hand-written parsing gets a good workout.
+	 */
+	private String randomPlainNumber(Random random)
+	{
+		StringBuilder sb = new StringBuilder();
+		if(random.nextInt(4) == 0)
+			sb.append('-');
+
+		int wholeDigits = 1 + random.nextInt(21);
+		boolean grouped = random.nextBoolean();
+		for(int i = 0; i < wholeDigits; i++)
+		{
+			if(grouped && i > 0 && (wholeDigits - i) % 3 == 0)
+				sb.append(',');
+			sb.append((char) ('0' + random.nextInt(i == 0 && random.nextBoolean() ? 2 : 10)));
+		}
+
+		if(random.nextBoolean())
+		{
+			sb.append('.');
+			int fractionDigits = 1 + random.nextInt(18);
+			boolean zeros = random.nextInt(3) == 0;
+			for(int i = 0; i < fractionDigits; i++)
+				sb.append(zeros ? '0' : (char) ('0' + random.nextInt(10)));
+		}
+		return sb.toString();
+	}
+
+	private String randomPlainDate(Random random)
+	{
+		String year = String.format("%04d", random.nextInt(4) == 0 ? random.nextInt(10000) : 1900 + random.nextInt(200));
+		String month = String.format("%02d", random.nextInt(5) == 0 ? random.nextInt(100) : 1 + random.nextInt(12));
+		String day = String.format("%02d", random.nextInt(5) == 0 ? random.nextInt(100) : 1 + random.nextInt(31));
+		return random.nextBoolean() ? year + "-" + month + "-" + day : month + "/" + day + "/" + year;
+	}
+}
@@ -0,0 +1,142 @@
+/**
+ * @author john.shiffler (600139252)
+ */
+package com.penske.apps.smccore.component.domain;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.penske.apps.smccore.CoreTestUtil;
+import com.penske.apps.smccore.component.TestComponentMaster;
+import com.penske.apps.smccore.component.domain.enums.ComponentType;
+import com.penske.apps.smccore.component.domain.enums.Visibility;
+
+/**
+ * Class under test: {@link ComponentValue}
+ */
+public class ComponentValueTest
+{
+	private static final Date AS400_DEFAULT_DATE = CoreTestUtil.dateAt(1, 1, 1);
+
+	@Test
+	public void shouldCheckValuesLikeComponentType()
+	{
+		List<String> texts = Arrays.asList(null, "", "  ", "foo", "FOO", "Foo", "FOO ", "foobar", "\u0131", "I", "\u00DF", "SS");
+		List<BigDecimal> numbers = Arrays.asList(null, BigDecimal.ZERO, new BigDecimal("0.000"), new BigDecimal("-0.0"), new BigDecimal("2"), new BigDecimal("2.50"), new BigDecimal("2.5"),
+			new BigDecimal("25E-1"), new BigDecimal("100"), new BigDecimal("1E+2"), new BigDecimal("-2.5"), new BigDecimal("12345678901234567890123.10"), new BigDecimal("12345678901234567890123.1"));
+		List<Date> dates = Arrays.asList(null, AS400_DEFAULT_DATE, CoreTestUtil.dateAt(2018, 3, 15), CoreTestUtil.dateAt(2018, 3, 15, 23, 59, 59, 999),
+			CoreTestUtil.dateAt(2018, 3, 16), CoreTestUtil.dateAt(1969, 12, 31, 12, 0, 0, 0), CoreTestUtil.dateAt(1500, 6, 1));
+
+		for(ComponentType type : ComponentType.values())
+		{
+			List<ComponentValue> values = new ArrayList<ComponentValue>();
+			for(String text : texts)
+				values.add(loadedValue(type, text, null, null));
+			for(BigDecimal number : numbers)
+				values.add(loadedValue(type, "", number, null));
+			for(Date date : dates)
+				values.add(loadedValue(type, "", null, date));
+
+			for(ComponentValue value : values)
+			{
+				assertThat(value.toString(), value.isValueEmpty(), is(type.isValueEmpty(value.getTextValue(), value.getNumericValue(), value.getDateValue())));
+				for(ComponentValue other : values)
+				{
+					boolean expected = type.areValuesEqual(value.getTextValue(), value.getNumericValue(), value.getDateValue(), other.getTextValue(), other.getNumericValue(), other.getDateValue());
+					assertThat(value + " vs " + other, value.isValueEqual(other), is(expected));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void shouldCheckTextValuesOfAnyLengthAfterSharedTextFillsUp()
+	{
+		//More distinct values than there are slots for shared text, so that values push each other out. Loaded values aren't cut short, so some are too long to be shared at all.
+		List<String> texts = new ArrayList<String>();
+		for(int i = 0; i < 3000; i++)
+			texts.add((i % 2 == 0 ? "VALUE " : "A MUCH LONGER VALUE THAT IS NEVER SHARED BETWEEN COMPONENTS ") + i);
+
+		for(String text : texts)
+		{
+			ComponentValue value = loadedValue(ComponentType.TEXT, text, null, null);
+			assertThat(text, value.isValueEqual(loadedValue(ComponentType.TEXT, text.toLowerCase(), null, null)), is(true));
+			assertThat(text, value.isValueEqual(loadedValue(ComponentType.TEXT, text + "X", null, null)), is(false));
+		}
+	}
+
+	@Test
+	public void shouldNotMatchOtherComponentTypes()
+	{
+		ComponentValue number = new ComponentValue(master(ComponentType.NUMERIC), "2");
+		ComponentValue year = new ComponentValue(master(ComponentType.YEAR), "2");
+
+		assertThat(number.isValueEqual(year), is(false));
+		assertThat(number.isValueEqual(null), is(false));
+		assertThat(number.isValueEqual(new ComponentValue(master(ComponentType.NUMERIC), "2.00")), is(true));
+	}
+
+	@Test
+	public void shouldRecheckAfterValueIsUpdated()
+	{
+		ComponentValue value = new ComponentValue(master(ComponentType.NUMERIC), "");
+		ComponentValue other = new ComponentValue(master(ComponentType.NUMERIC), "2.5");
+		assertThat(value.isValueEmpty(), is(true));
+		assertThat(value.getValueAsString(ComponentType.NUMERIC, 2), is(""));
+
+		value.updateValue(other);
+		assertThat(value.isValueEmpty(), is(false));
+		assertThat(value.isValueEqual(other), is(true));
+		assertThat(value.getValueAsString(ComponentType.NUMERIC, 2), is("2.50"));
+	}
+
+	@Test
+	public void shouldRenderValueAsString()
+	{
+		ComponentValue number = new ComponentValue(master(ComponentType.NUMERIC), "1,234.5678");
+		assertThat(number.getValueAsString(ComponentType.NUMERIC, 2), is("1234.56"));
+		assertThat(number.getValueAsString(ComponentType.NUMERIC, 2), is("1234.56"));
+		assertThat(number.getValueAsString(ComponentType.NUMERIC, null), is("1234.5678"));
+		assertThat(number.getValueAsString(ComponentType.YEAR, 2), is("1234"));
+
+		ComponentValue date = new ComponentValue(master(ComponentType.DATE), "2018-03-15");
+		assertThat(date.getValueAsString(ComponentType.DATE, null), is("03/15/2018"));
+	}
+
+	@Test
+	public void shouldCheckDateValueDay()
+	{
+		ComponentValue date = new ComponentValue(master(ComponentType.DATE), "2018-03-15");
+		assertThat(date.isDateValueOnDay(ComponentValue.toLocalDay(CoreTestUtil.dateAt(2018, 3, 15, 23, 59, 59, 999))), is(true));
+		assertThat(date.isDateValueOnDay(ComponentValue.toLocalDay(CoreTestUtil.dateAt(2018, 3, 16))), is(false));
+		assertThat(new ComponentValue(master(ComponentType.DATE), "").isDateValueOnDay(0), is(false));
+	}
+
+	//***** HELPER METHODS *****//
+	private TestComponentMaster master(ComponentType type)
+	{
+		return new TestComponentMaster(1, 1, "G", "SG", "COMP", type, Visibility.VISIBLE, false);
+	}
+
+	/**
+	 * Builds a component value the way MyBatis does, by setting its fields directly, so that values the constructor would never make can be checked too.
+	 */
+	private ComponentValue loadedValue(ComponentType type, String textValue, BigDecimal numericValue, Date dateValue)
+	{
+		ComponentValue value = CoreTestUtil.newInstance(ComponentValue.class);
+		CoreTestUtil.set(value, "componentId", 1);
+		CoreTestUtil.set(value, "componentType", type);
+		CoreTestUtil.set(value, "textValue", textValue);
+		CoreTestUtil.set(value, "numericValue", numericValue);
+		CoreTestUtil.set(value, "dateValue", dateValue);
+		return value;
+	}
+}
@@ -0,0 +1,122 @@
+/**
+ * @author john.shiffler (600139252)
+ */
+package com.penske.apps.smccore.component.domain;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.penske.apps.smccore.component.TestComponentMaster;
+import com.penske.apps.smccore.component.domain.enums.ComponentRuleOperator;
+import com.penske.apps.smccore.component.domain.enums.ComponentType;
+import com.penske.apps.smccore.component.domain.enums.NotVisibleBehavior;
+import com.penske.apps.smccore.component.domain.enums.RuleType;
+import com.penske.apps.smccore.component.domain.enums.Visibility;
+import com.penske.apps.smccore.component.engine.ComponentModel;
+import com.penske.apps.smccore.component.engine.ComponentVisibilityFilterData;
+
+/**
+ * Class under test: {@link GeneratedRule}
+ */
+public class GeneratedRuleTest
+{
+	private static final int MASTER_ID = 9876;
+
+	@Test
+	public void shouldGenerateEmptyRulesAndGroups()
+	{
+		ComponentVisibilityFilterData components = ComponentVisibilityFilterData.newInstanceForTesting(null, Collections.<ComponentModel>emptyList(), null, NotVisibleBehavior.REMOVE);
+
+		Rule noGroups = new RuleBuilder(1, 1, "Empty Rule", RuleType.LOADSHEET).build();
+		assertThat(GeneratedRule.generate(noGroups).isSatisfied(components, MASTER_ID), is(false));
+		assertThat(noGroups.isSatisfied(components, MASTER_ID), is(false));
+
+		Rule emptyGroup = new Rule(2, 1, "Empty Group", "Empty Group", RuleType.LOADSHEET, Arrays.asList(new RuleCriteriaGroup(2, 1, Collections.<RuleCriteria>emptyList())));
+		assertThat(GeneratedRule.generate(emptyGroup).isSatisfied(components, MASTER_ID), is(emptyGroup.isSatisfied(components, MASTER_ID)));
+	}
+
+	@Test
+	public void shouldOnlyGenerateOnce()
+	{
+		Rule rule = new RuleBuilder(1, 1, "Rule", RuleType.LOADSHEET).addCriteria(1, 10, ComponentRuleOperator.EQUAL, "FOO").build();
+
+		GeneratedRule generated = rule.getGeneratedRule();
+		assertThat(generated, is(notNullValue()));
+		assertThat(generated.getRuleId(), is(1));
+		assertThat(rule.getGeneratedRule(), is(sameInstance(generated)));
+	}
+
+	@Test
+	public void shouldGiveSameAnswerAsRule()
+	{
+		Random random = new Random(57);
+		List<ComponentModel> componentList = new ArrayList<ComponentModel>();
+		List<ComponentType> types = Arrays.asList(ComponentType.TEXT, ComponentType.NUMERIC, ComponentType.DATE);
+		List<List<String>> values = Arrays.asList(Arrays.asList(null, "", "FOO", "25"), Arrays.asList(null, "", "25", "26.5"), Arrays.asList(null, "", "2018-03-15"));
+		int masterCount = 40;
+		for(int id = 1; id <= masterCount; id++)
+		{
+			for(int componentId = 1; componentId <= 3; componentId++)
+			{
+				if(random.nextInt(8) == 0)
+					continue;
+				//Some components have an unexpected type, so some criteria throw exceptions, which the generated code has to throw too
+				ComponentType type = random.nextInt(10) == 0 ? types.get(random.nextInt(types.size())) : types.get(componentId - 1);
+				TestComponentMaster master = new TestComponentMaster(componentId, id, "G", "SG", "COMP " + componentId, type, Visibility.VISIBLE, false);
+				List<String> valuesForType = values.get(types.indexOf(type));
+				componentList.add(new ComponentModel(master, new ComponentValue(master, valuesForType.get(random.nextInt(valuesForType.size()))), Visibility.VISIBLE));
+			}
+		}
+		ComponentVisibilityFilterData components = ComponentVisibilityFilterData.newInstanceForTesting(null, componentList, null, NotVisibleBehavior.REMOVE);
+
+		List<String> operands = Arrays.asList(null, "", "FOO", "25", "26", "03/15/2018");
+		for(int ruleId = 1; ruleId <= 100; ruleId++)
+		{
+			RuleBuilder builder = new RuleBuilder(ruleId, 1, "Random Rule", RuleType.LOADSHEET);
+			int groupCount = 1 + random.nextInt(4);
+			for(int group = 1; group <= groupCount; group++)
+			{
+				int criteriaCount = 1 + random.nextInt(4);
+				for(int criteria = 0; criteria < criteriaCount; criteria++)
+				{
+					ComponentRuleOperator operator = ComponentRuleOperator.values()[random.nextInt(ComponentRuleOperator.values().length)];
+					builder.addCriteria(group, 1 + random.nextInt(3), operator, operands.get(random.nextInt(operands.size())));
+				}
+			}
+			Rule rule = builder.build();
+			GeneratedRule generated = GeneratedRule.generate(rule);
+
+			for(int id = 1; id <= masterCount; id++)
+			{
+				int evaluatedMasterId = id;
+				assertThat(rule.getCriteriaGroups() + " master " + id, outcome(() -> generated.isSatisfied(components, evaluatedMasterId)), is(outcome(() -> rule.evaluate(components, evaluatedMasterId).isSatisfied())));
+			}
+		}
+	}
+
+	//***** HELPER METHODS *****//
+	private String outcome(Evaluation evaluation)
+	{
+		try {
+			return String.valueOf(evaluation.isSatisfied());
+		} catch(RuntimeException ex) {
+			return ex.getClass().getSimpleName() + ": " + ex.getMessage();
+		}
+	}
+
+	//***** HELPER CLASSES *****//
+	private interface Evaluation
+	{
+		public boolean isSatisfied();
+	}
+}
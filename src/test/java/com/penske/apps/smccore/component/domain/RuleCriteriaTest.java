@@ -12,6 +12,7 @@ import java.util.List;
 
 import org.junit.Test;
 
+import com.penske.apps.smccore.CoreTestUtil;
 import com.penske.apps.smccore.component.TestComponentMaster;
 import com.penske.apps.smccore.component.domain.enums.ComponentRuleOperator;
 import com.penske.apps.smccore.component.domain.enums.ComponentType;
@@ -155,4 +156,17 @@ public class RuleCriteriaTest
 		RuleCriteriaResult result = criteria.evaluate(componentData, masterId);
 		assertThat(result.isSatisfied(), is(true));
 	}
+	
+	@Test
+	public void shouldCheckOperatorAgainstSavedComponentType()
+	{
+		//Criteria that weren't loaded from the database don't know their component's type, so there is nothing to check
+		assertThat(criteria.getComponentType(), is(nullValue()));
+		assertThat(criteria.isApplicableToComponentType(), is(true));
+		
+		CoreTestUtil.set(criteria, "componentType", ComponentType.TEXT);
+		assertThat(criteria.isApplicableToComponentType(), is(true));
+		CoreTestUtil.set(criteria, "componentType", ComponentType.NUMERIC);
+		assertThat(criteria.isApplicableToComponentType(), is(false));
+	}
 }
@@ -7,10 +7,21 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
 import org.junit.Test;
 
 import com.penske.apps.smccore.component.TestComponentData;
+import com.penske.apps.smccore.component.TestComponentMaster;
+import com.penske.apps.smccore.component.domain.enums.ComponentRuleOperator;
+import com.penske.apps.smccore.component.domain.enums.ComponentType;
 import com.penske.apps.smccore.component.domain.enums.NotVisibleBehavior;
+import com.penske.apps.smccore.component.domain.enums.RuleType;
+import com.penske.apps.smccore.component.domain.enums.Visibility;
+import com.penske.apps.smccore.component.engine.ComponentModel;
 import com.penske.apps.smccore.component.engine.ComponentVisibilityFilter;
 import com.penske.apps.smccore.component.engine.ComponentVisibilityFilterData;
 import com.penske.apps.smccore.component.engine.RuleResult;
@@ -165,6 +176,98 @@ public class RuleTest
 		assertCriteria(result,	 null,			null,		true,		true,		null);
 	}
 
+	@Test
+	public void shouldCheckCheapDecisiveCriteriaFirst()
+	{
+		TestComponentMaster numberMaster = new TestComponentMaster(1, masterId, "G", "SG", "NUMBER", ComponentType.NUMERIC, Visibility.VISIBLE, false);
+		TestComponentMaster textMaster = new TestComponentMaster(2, masterId, "G", "SG", "TEXT", ComponentType.TEXT, Visibility.VISIBLE, false);
+		ComponentVisibilityFilterData components = ComponentVisibilityFilterData.newInstanceForTesting(null, Arrays.asList(
+			new ComponentModel(numberMaster, new ComponentValue(numberMaster, "25"), Visibility.VISIBLE),
+			new ComponentModel(textMaster, new ComponentValue(textMaster, ""), Visibility.VISIBLE)
+		), null, NotVisibleBehavior.REMOVE);
+
+		//The expensive numeric criteria is always true, and the cheap one after it is always false, so the cheap one should end up being checked first.
+		Rule andRule = new RuleBuilder(1, 1, "Adaptive AND", RuleType.LOADSHEET)
+			.addCriteria(1, 1, ComponentRuleOperator.LESS_THAN, "100")
+			.addCriteria(1, 2, ComponentRuleOperator.EXISTS_ON_PO, null)
+			.build();
+		//Only the last group is ever true, so it should end up being checked first.
+		Rule orRule = new RuleBuilder(2, 1, "Adaptive OR", RuleType.LOADSHEET)
+			.addCriteria(1, 1, ComponentRuleOperator.GREATER_THAN, "100")
+			.addCriteria(2, 2, ComponentRuleOperator.EXISTS_ON_PO, null)
+			.addCriteria(3, 1, ComponentRuleOperator.EQUAL, "25")
+			.build();
+		EvaluationOrder evaluationOrder = new EvaluationOrder();
+		for(int i = 0; i < EvaluationOrder.REORDER_INTERVAL * 2; i++)
+		{
+			assertThat(evaluationOrder.isSatisfied(andRule, components, masterId), is(false));
+			assertThat(evaluationOrder.isSatisfied(orRule, components, masterId), is(true));
+		}
+
+		assertThat(evaluationOrder.getCriteriaOrder(1, 0), is(new int[] {1, 0}));
+		assertThat(evaluationOrder.getGroupOrder(2)[0], is(2));
+		//The order is only kept for the run it was worked out in, so the same rules start out in the order they were written in the next one
+		EvaluationOrder nextRun = new EvaluationOrder();
+		assertThat(nextRun.isSatisfied(andRule, components, masterId), is(false));
+		assertThat(nextRun.getCriteriaOrder(1, 0), is((int[]) null));
+		//Explanations still list everything in the order it was written
+		assertThat(andRule.evaluate(components, masterId).getGroupResults().get(0).getCriteriaResults().get(1).isSatisfied(), is(false));
+	}
+
+	@Test
+	public void shouldGiveSameAnswerAfterReordering()
+	{
+		Random random = new Random(31);
+		List<ComponentModel> componentList = new ArrayList<ComponentModel>();
+		List<ComponentType> types = Arrays.asList(ComponentType.TEXT, ComponentType.NUMERIC, ComponentType.DATE);
+		List<List<String>> values = Arrays.asList(Arrays.asList(null, "", "FOO", "25"), Arrays.asList(null, "", "25", "26.5"), Arrays.asList(null, "", "2018-03-15"));
+		int masterCount = 40;
+		for(int id = 1; id <= masterCount; id++)
+		{
+			for(int componentId = 1; componentId <= 3; componentId++)
+			{
+				if(random.nextInt(8) == 0)
+					continue;
+				//Component types are usually the same for every master, but not always, so some criteria throw exceptions for some masters
+				ComponentType type = random.nextInt(10) == 0 ? types.get(random.nextInt(types.size())) : types.get(componentId - 1);
+				TestComponentMaster master = new TestComponentMaster(componentId, id, "G", "SG", "COMP " + componentId, type, Visibility.VISIBLE, false);
+				List<String> valuesForType = values.get(types.indexOf(type));
+				componentList.add(new ComponentModel(master, new ComponentValue(master, valuesForType.get(random.nextInt(valuesForType.size()))), Visibility.VISIBLE));
+			}
+		}
+		ComponentVisibilityFilterData components = ComponentVisibilityFilterData.newInstanceForTesting(null, componentList, null, NotVisibleBehavior.REMOVE);
+
+		List<String> operands = Arrays.asList(null, "", "FOO", "25", "26", "03/15/2018");
+		for(int ruleId = 1; ruleId <= 100; ruleId++)
+		{
+			RuleBuilder builder = new RuleBuilder(ruleId, 1, "Random Rule", RuleType.LOADSHEET);
+			int groupCount = 1 + random.nextInt(4);
+			for(int group = 1; group <= groupCount; group++)
+			{
+				int criteriaCount = 1 + random.nextInt(4);
+				for(int criteria = 0; criteria < criteriaCount; criteria++)
+				{
+					ComponentRuleOperator operator = ComponentRuleOperator.values()[random.nextInt(ComponentRuleOperator.values().length)];
+					builder.addCriteria(group, 1 + random.nextInt(3), operator, operands.get(random.nextInt(operands.size())));
+				}
+			}
+			Rule rule = builder.build();
+			EvaluationOrder evaluationOrder = new EvaluationOrder();
+
+			//Enough rounds that the criteria and groups get reordered several times
+			for(int round = 0; round < 20; round++)
+			{
+				for(int id = 1; id <= masterCount; id++)
+				{
+					int evaluatedMasterId = id;
+					String expected = outcome(() -> rule.evaluate(components, evaluatedMasterId).isSatisfied());
+					assertThat(rule.getCriteriaGroups() + " master " + id, outcome(() -> evaluationOrder.isSatisfied(rule, components, evaluatedMasterId)), is(expected));
+					assertThat(rule.getCriteriaGroups() + " master " + id + " in written order", outcome(() -> rule.isSatisfied(components, evaluatedMasterId)), is(expected));
+				}
+			}
+		}
+	}
+
 	private RuleResult evaluateRule(int ruleId)
 	{
 		Rule rule = null;
@@ -181,7 +284,18 @@ public class RuleTest
 		ComponentVisibilityFilter filter = new ComponentVisibilityFilter();
 		ComponentVisibilityFilterData components = filter.mergeComponentValues(1, data.getMasters(), data.getComponentValues(), data.getDefaultComponentValues(), data.getUserValues(), NotVisibleBehavior.REMOVE);
 
-		return rule.evaluate(components, masterId);
+		RuleResult result = rule.evaluate(components, masterId);
+		assertThat("Satisfied without detail - Rule", rule.isSatisfied(components, masterId), is(result.isSatisfied()));
+		return result;
+	}
+
+	private String outcome(Evaluation evaluation)
+	{
+		try {
+			return String.valueOf(evaluation.isSatisfied());
+		} catch(RuntimeException ex) {
+			return ex.getClass().getSimpleName() + ": " + ex.getMessage();
+		}
 	}
 
 	private void assertCriteria(RuleResult result, Integer criteriaGroup, Integer criteriaIndex, boolean evaluated, boolean satisfied, String notSatisfiedReason)
@@ -219,4 +333,10 @@ public class RuleTest
 		assertThat("Satisfied Criteria - Group " + criteriaGroup + " Criteria " + criteriaIndex, criteriaResult.isSatisfied(), is(satisfied));
 		assertThat("Not Satisfied Reason - Group " + criteriaGroup + " Criteria " + criteriaIndex, criteriaResult.getNotSatisfiedReason(), is(notSatisfiedReason));
 	}
+
+	//***** HELPER CLASSES *****//
+	private interface Evaluation
+	{
+		public boolean isSatisfied();
+	}
 }
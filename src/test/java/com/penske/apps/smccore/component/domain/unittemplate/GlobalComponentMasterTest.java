@@ -0,0 +1,94 @@
+/**
+ * @author john.shiffler (600139252)
+ */
+package com.penske.apps.smccore.component.domain.unittemplate;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import com.penske.apps.smccore.CoreTestUtil;
+import com.penske.apps.smccore.component.domain.enums.ComponentType;
+import com.penske.apps.smccore.component.domain.enums.Visibility;
+
+/**
+ * Class under test: {@link GlobalComponentMaster}, {@link GlobalComponentDefinitions}
+ */
+public class GlobalComponentMasterTest
+{
+	@Test
+	public void shouldReadCopyDetailsFromDefinition()
+	{
+		GlobalComponentMaster loaded = loadedGlobalComponent(110, "Unit Number", 2);
+		GlobalComponentMaster copy = new GlobalComponentMaster(loaded, 55);
+		GlobalComponentMaster copyOfCopy = new GlobalComponentMaster(copy, 56);
+
+		assertThat(copy.getMasterId(), is(55));
+		assertThat(copy.getComponentId(), is(110));
+		assertThat(copy.getFullComponentName(), is("Unit Number"));
+		assertThat(copy.getComponentGroup(), is("Unit Number"));
+		assertThat(copy.getComponentType(), is(ComponentType.NUMERIC));
+		assertThat(copy.getVisibility(), is(Visibility.NOT_VISIBLE));
+		assertThat(copy.getDecimalPositions(), is(2));
+		assertThat(copy.isVehicleComponent(), is(true));
+		assertThat(copy.isIgnoredInConflicts(), is(true));
+		assertThat(copy.toString(), is("{Unit Number (55, 110), NUMERIC, NOT_VISIBLE, Conf: null}"));
+
+		assertThat(copy.getDefinition(), is(sameInstance(loaded)));
+		assertThat(copyOfCopy.getDefinition(), is(sameInstance(loaded)));
+		assertThat(copyOfCopy.getMasterId(), is(56));
+		assertThat(copy.hasSameDefinition(copyOfCopy), is(true));
+		assertThat(copy.hasSameDefinition(loadedGlobalComponent(110, "Unit Number", 2)), is(false));
+		assertThat(copy.hasSameDefinition(null), is(false));
+	}
+
+	@Test
+	public void shouldShareDefinitionsWithSameDetails()
+	{
+		GlobalComponentDefinitions definitions = new GlobalComponentDefinitions(10);
+		GlobalComponentMaster first = loadedGlobalComponent(110, "Unit Number", 2);
+
+		assertThat(definitions.getDefinition(first), is(sameInstance(first)));
+		assertThat(definitions.getDefinition(loadedGlobalComponent(110, "Unit Number", 2)), is(sameInstance(first)));
+		assertThat(definitions.getDefinition(new GlobalComponentMaster(first, 55)), is(sameInstance(first)));
+
+		//A changed component gets a definition of its own
+		GlobalComponentMaster changed = loadedGlobalComponent(110, "Unit Number", 3);
+		assertThat(definitions.getDefinition(changed), is(sameInstance(changed)));
+		assertThat(definitions.size(), is(2));
+	}
+
+	@Test
+	public void shouldStopSharingWhenFull()
+	{
+		GlobalComponentDefinitions definitions = new GlobalComponentDefinitions(1);
+		GlobalComponentMaster first = loadedGlobalComponent(110, "Unit Number", 2);
+		GlobalComponentMaster second = loadedGlobalComponent(111, "Delivery Date", null);
+
+		definitions.getDefinition(first);
+		assertThat(definitions.getDefinition(second), is(sameInstance(second)));
+		GlobalComponentMaster secondAgain = loadedGlobalComponent(111, "Delivery Date", null);
+		assertThat(definitions.getDefinition(secondAgain), is(sameInstance(secondAgain)));
+		assertThat(definitions.getDefinition(loadedGlobalComponent(110, "Unit Number", 2)), is(sameInstance(first)));
+		assertThat(definitions.size(), is(1));
+	}
+
+	//***** HELPER METHODS *****//
+	/**
+	 * Builds a global component the way MyBatis does, by setting its fields directly.
+	 */
+	private GlobalComponentMaster loadedGlobalComponent(int componentId, String componentName, Integer decimalPositions)
+	{
+		GlobalComponentMaster component = CoreTestUtil.newInstance(GlobalComponentMaster.class);
+		CoreTestUtil.set(component, "componentId", componentId);
+		CoreTestUtil.set(component, "masterId", -1);
+		CoreTestUtil.set(component, "componentName", componentName);
+		CoreTestUtil.set(component, "componentType", ComponentType.NUMERIC);
+		CoreTestUtil.set(component, "visibility", Visibility.NOT_VISIBLE);
+		CoreTestUtil.set(component, "decimalPositions", decimalPositions);
+		CoreTestUtil.set(component, "vehicleComponent", true);
+		return component;
+	}
+}
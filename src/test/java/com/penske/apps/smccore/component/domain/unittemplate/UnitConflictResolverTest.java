@@ -0,0 +1,99 @@
+/**
+ * @author john.shiffler (600139252)
+ */
+package com.penske.apps.smccore.component.domain.unittemplate;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.penske.apps.smccore.CoreTestUtil;
+import com.penske.apps.smccore.component.TestComponentMaster;
+import com.penske.apps.smccore.component.domain.ComponentValue;
+import com.penske.apps.smccore.component.domain.GlobalConflictResolution;
+import com.penske.apps.smccore.component.domain.enums.ComponentType;
+import com.penske.apps.smccore.component.domain.enums.Visibility;
+import com.penske.apps.smccore.component.engine.ComponentModel;
+
+/**
+ * Class under test: {@link UnitConflictResolver}
+ */
+public class UnitConflictResolverTest
+{
+	private static final String SIGNATURE = "1-100|2-200";
+	private static final int COMPONENT_ID = 5;
+
+	//Two units with the same signature, but different master IDs
+	private final UnitMasterInfo chassis1 = CoreTestUtil.createUnitMasterInfo(11, "1", 100, 1, 1, SIGNATURE);
+	private final UnitMasterInfo body1 = CoreTestUtil.createUnitMasterInfo(12, "1", 200, 2, 2, SIGNATURE);
+	private final UnitMasterInfo chassis2 = CoreTestUtil.createUnitMasterInfo(21, "2", 100, 1, 1, SIGNATURE);
+	private final UnitMasterInfo body2 = CoreTestUtil.createUnitMasterInfo(22, "2", 200, 2, 2, SIGNATURE);
+
+	@Test
+	public void shouldShareIndexBetweenUnitsWithSameSignature()
+	{
+		ConflictResolutionIndex index = ConflictResolutionIndex.build(SIGNATURE, Arrays.asList(new GlobalConflictResolution(COMPONENT_ID, body1)));
+		assertThat(index.size(), is(1));
+		assertThat(index.getProviderVendorId(COMPONENT_ID), is(200));
+		assertThat(index.getProviderVendorId(COMPONENT_ID + 1), is(nullValue()));
+
+		UnitConflictResolver resolver1 = new UnitConflictResolver(Arrays.asList(chassis1, body1), null, index);
+		UnitConflictResolver resolver2 = new UnitConflictResolver(Arrays.asList(chassis2, body2), null, index);
+
+		List<ComponentModel> conflict1 = Arrays.asList(component(11), component(12));
+		List<ComponentModel> conflict2 = Arrays.asList(component(21), component(22));
+		assertThat(resolver1.getGlobalResolution(conflict1), is(sameInstance(conflict1.get(1))));
+		assertThat(resolver2.getGlobalResolution(conflict2), is(sameInstance(conflict2.get(1))));
+		assertThat(resolver1.getIndividualResolution(conflict1), is(nullValue()));
+	}
+
+	@Test
+	public void shouldResolveSameWithIndexOrResolutions()
+	{
+		List<GlobalConflictResolution> resolutions = Arrays.asList(new GlobalConflictResolution(COMPONENT_ID, body1), new GlobalConflictResolution(COMPONENT_ID, chassis1));
+		List<ComponentModel> conflict = Arrays.asList(component(11), component(12));
+
+		//Last one wins, either way
+		UnitConflictResolver fromList = new UnitConflictResolver(Arrays.asList(chassis1, body1), null, resolutions);
+		UnitConflictResolver fromIndex = new UnitConflictResolver(Arrays.asList(chassis1, body1), null, ConflictResolutionIndex.build(SIGNATURE, resolutions));
+		assertThat(fromList.getGlobalResolution(conflict), is(sameInstance(conflict.get(0))));
+		assertThat(fromIndex.getGlobalResolution(conflict), is(sameInstance(conflict.get(0))));
+
+		UnitConflictResolver noResolutions = new UnitConflictResolver(Arrays.asList(chassis1, body1), null, (ConflictResolutionIndex) null);
+		assertThat(noResolutions.getGlobalResolution(conflict), is(nullValue()));
+	}
+
+	@Test
+	public void shouldRejectIndexForDifferentSignature()
+	{
+		ConflictResolutionIndex index = ConflictResolutionIndex.build("OTHER", Collections.<GlobalConflictResolution>emptyList());
+		try {
+			new UnitConflictResolver(Arrays.asList(chassis1, body1), null, index);
+			fail("Expected an index for a different signature to be rejected");
+		} catch(IllegalArgumentException ex) {
+			assertThat(ex.getMessage(), is("Global conflict resolutions with signature OTHER are not applicable for global conflict resolver with signature " + SIGNATURE));
+		}
+
+		try {
+			ConflictResolutionIndex.build("OTHER", Arrays.asList(new GlobalConflictResolution(COMPONENT_ID, body1)));
+			fail("Expected a resolution for a different signature to be rejected");
+		} catch(IllegalArgumentException ex) {
+			assertThat(ex.getMessage(), is("Global conflict resolutions with signature " + SIGNATURE + " are not applicable for global conflict resolver with signature OTHER"));
+		}
+	}
+
+	//***** HELPER METHODS *****//
+	private ComponentModel component(int masterId)
+	{
+		TestComponentMaster master = new TestComponentMaster(COMPONENT_ID, masterId, "G", "SG", "COMP", ComponentType.TEXT, Visibility.REQUIRED, false);
+		return new ComponentModel(master, new ComponentValue(master, "FOO"), Visibility.REQUIRED);
+	}
+}
@@ -0,0 +1,244 @@
+/**
+ * @author john.shiffler (600139252)
+ */
+package com.penske.apps.smccore.component.engine;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.penske.apps.smccore.component.TestComponentMaster;
+import com.penske.apps.smccore.component.domain.ComponentMaster;
+import com.penske.apps.smccore.component.domain.ComponentValue;
+import com.penske.apps.smccore.component.domain.Rule;
+import com.penske.apps.smccore.component.domain.RuleBuilder;
+import com.penske.apps.smccore.component.domain.enums.ComponentRuleOperator;
+import com.penske.apps.smccore.component.domain.enums.ComponentType;
+import com.penske.apps.smccore.component.domain.enums.NotVisibleBehavior;
+import com.penske.apps.smccore.component.domain.enums.RuleType;
+import com.penske.apps.smccore.component.domain.enums.Visibility;
+
+/**
+ * Class under test: {@link ColumnarRuleEvaluator}
+ */
+public class ColumnarRuleEvaluatorTest
+{
+	private static final int TEXT_ID = 1;
+	private static final int COMMENT_ID = 2;
+	private static final int NUMERIC_ID = 3;
+	private static final int YEAR_ID = 4;
+	private static final int DATE_ID = 5;
+	private static final int MISSING_ID = 6;
+
+	/** More than 64, so that the bitsets take more than one word */
+	private static final int MASTER_COUNT = 150;
+
+	private final List<ComponentType> types = Arrays.asList(ComponentType.TEXT, ComponentType.COMMENT, ComponentType.NUMERIC, ComponentType.YEAR, ComponentType.DATE);
+	private final List<Integer> componentIds = Arrays.asList(TEXT_ID, COMMENT_ID, NUMERIC_ID, YEAR_ID, DATE_ID, MISSING_ID);
+
+	private final List<String> textValues = Arrays.asList(null, "", "FOOBAR", "BAZ", "25");
+	private final List<String> numericValues = Arrays.asList(null, "", "0", "25", "25.5", "25.50", "-1", "2016", "0.000000000000000000001", "99999999999999999999");
+	private final List<String> dateValues = Arrays.asList(null, "", "2018-03-15", "2018-03-16", "1500-01-01");
+	private final List<String> operands = Arrays.asList(null, "", "  ", "FOOBAR", "BAZ", "25", "25.5", "25.50", "26", "2015", "2016", "2017", "-1", "1e2", "0x1F",
+		"2018-03-15", "03/15/2018", "03/16/2018", "0.000000000000000000001", "99999999999999999999");
+
+	@Test
+	public void shouldMatchRuleForEveryMasterAndOperator()
+	{
+		for(NotVisibleBehavior notVisibleBehavior : Arrays.asList(NotVisibleBehavior.KEEP, NotVisibleBehavior.REMOVE))
+		{
+			ComponentVisibilityFilterData componentData = buildComponents(new Random(17), notVisibleBehavior);
+			List<Rule> rules = new ArrayList<Rule>();
+			int ruleId = 1;
+			for(ComponentRuleOperator operator : ComponentRuleOperator.values())
+			{
+				for(String operand : operands)
+				{
+					for(int componentId : componentIds)
+						rules.add(new RuleBuilder(ruleId++, 1, "Single Criteria", RuleType.LOADSHEET).addCriteria(1, componentId, operator, operand).build());
+				}
+			}
+
+			assertSameResults(componentData, rules);
+		}
+	}
+
+	@Test
+	public void shouldMatchRulesWithMultipleGroupsAndCriteria()
+	{
+		Random random = new Random(42);
+		ComponentVisibilityFilterData componentData = buildComponents(random, NotVisibleBehavior.REMOVE);
+
+		List<Rule> rules = new ArrayList<Rule>();
+		for(int ruleId = 1; ruleId <= 500; ruleId++)
+		{
+			RuleBuilder builder = new RuleBuilder(ruleId, 1, "Random Rule", RuleType.LOADSHEET);
+			int groupCount = 1 + random.nextInt(3);
+			for(int group = 1; group <= groupCount; group++)
+			{
+				int criteriaCount = 1 + random.nextInt(3);
+				for(int criteria = 0; criteria < criteriaCount; criteria++)
+				{
+					ComponentRuleOperator operator = ComponentRuleOperator.values()[random.nextInt(ComponentRuleOperator.values().length)];
+					builder.addCriteria(group, componentIds.get(random.nextInt(componentIds.size())), operator, operands.get(random.nextInt(operands.size())));
+				}
+			}
+			rules.add(builder.build());
+		}
+
+		assertSameResults(componentData, rules);
+	}
+
+	@Test
+	public void shouldThrowSameExceptionOnlyForFailingMasters()
+	{
+		TestComponentMaster numberMaster = new TestComponentMaster(NUMERIC_ID, 1, "G", "SG", "NUMERIC COMP", ComponentType.NUMERIC, Visibility.VISIBLE, false);
+		TestComponentMaster textMaster = new TestComponentMaster(NUMERIC_ID, 2, "G", "SG", "TEXT COMP", ComponentType.TEXT, Visibility.VISIBLE, false);
+		ComponentVisibilityFilterData componentData = ComponentVisibilityFilterData.newInstanceForTesting(null, Arrays.asList(
+			new ComponentModel(numberMaster, new ComponentValue(numberMaster, "25"), Visibility.VISIBLE),
+			new ComponentModel(textMaster, new ComponentValue(textMaster, "FOOBAR"), Visibility.VISIBLE)
+		), null, NotVisibleBehavior.REMOVE);
+		Rule rule = new RuleBuilder(1, 1, "Less Than", RuleType.LOADSHEET).addCriteria(1, NUMERIC_ID, ComponentRuleOperator.LESS_THAN, "100").build();
+
+		ColumnarRuleEvaluator evaluator = new ColumnarRuleEvaluator(componentData);
+		assertThat(evaluator.isSatisfied(rule, 1), is(true));
+
+		RuntimeException expected = null;
+		try {
+			rule.isSatisfied(componentData, 2);
+		} catch(RuntimeException ex) {
+			expected = ex;
+		}
+		try {
+			evaluator.isSatisfied(rule, 2);
+			fail("Expected the text component to fail the same way it does one master at a time");
+		} catch(RuntimeException ex) {
+			assertThat(ex.getClass(), is(sameInstance((Object) expected.getClass())));
+			assertThat(ex.getMessage(), is(expected.getMessage()));
+		}
+
+		//Master IDs that aren't in the components at all don't have any components for the rules to look at
+		assertThat(evaluator.isSatisfied(rule, 3), is(rule.isSatisfied(componentData, 3)));
+	}
+
+	@Test
+	public void shouldMatchRulesAfterUpdatingToChangedComponents()
+	{
+		Random random = new Random(7);
+		ComponentVisibilityFilterData componentData = buildComponents(random, NotVisibleBehavior.REMOVE);
+		List<Rule> rules = new ArrayList<Rule>();
+		int ruleId = 1;
+		for(String operand : operands)
+		{
+			for(int componentId : componentIds)
+			{
+				rules.add(new RuleBuilder(ruleId++, 1, "Equal", RuleType.LOADSHEET).addCriteria(1, componentId, ComponentRuleOperator.EQUAL, operand).build());
+				rules.add(new RuleBuilder(ruleId++, 1, "Two Components", RuleType.LOADSHEET).addCriteria(1, componentId, ComponentRuleOperator.EXISTS_ON_PO, null)
+					.addCriteria(1, TEXT_ID, ComponentRuleOperator.EQUAL, operand).build());
+			}
+		}
+
+		ColumnarRuleEvaluator evaluator = new ColumnarRuleEvaluator(componentData);
+		assertSameResults(evaluator, componentData, rules);
+
+		//Flip the visibility of some of the text components, the way applying rule outcomes would. The other columns and their rules should carry over untouched.
+		for(int iteration = 0; iteration < 3; iteration++)
+		{
+			List<ComponentModel> textComponents = new ArrayList<ComponentModel>(componentData.getComponentsForComponentId(TEXT_ID));
+			for(int i = 0; i < textComponents.size(); i++)
+			{
+				ComponentModel component = textComponents.get(i);
+				if(random.nextInt(3) == 0)
+					textComponents.set(i, new ComponentModel(component.getComponentMaster(), component.getComponentValue(), component.isVisible() ? Visibility.NOT_VISIBLE : Visibility.VISIBLE));
+			}
+			Map<Integer, List<ComponentModel>> changes = new HashMap<Integer, List<ComponentModel>>();
+			changes.put(TEXT_ID, textComponents);
+			componentData = ComponentVisibilityFilterData.withComponents(componentData, changes);
+
+			evaluator.update(componentData);
+			assertSameResults(evaluator, componentData, rules);
+		}
+	}
+
+	//***** HELPER METHODS *****//
+	private void assertSameResults(ComponentVisibilityFilterData componentData, List<Rule> rules)
+	{
+		assertSameResults(new ColumnarRuleEvaluator(componentData), componentData, rules);
+	}
+
+	private void assertSameResults(ColumnarRuleEvaluator evaluator, ComponentVisibilityFilterData componentData, List<Rule> rules)
+	{
+		for(Rule rule : rules)
+		{
+			for(int i = 1; i <= MASTER_COUNT; i++)
+			{
+				int masterId = i;
+				String description = rule.getCriteriaGroups() + " master " + masterId + ": ";
+				assertThat(description, outcome(() -> evaluator.isSatisfied(rule, masterId)), is(outcome(() -> rule.isSatisfied(componentData, masterId))));
+			}
+		}
+	}
+
+	/**
+	 * Builds components for {@link #MASTER_COUNT} master IDs, with random values. Some master IDs are missing some components, and some components are not visible.
+	 * 	The type of a component ID is usually the same for every master ID, but not always.
+	 */
+	private ComponentVisibilityFilterData buildComponents(Random random, NotVisibleBehavior notVisibleBehavior)
+	{
+		List<ComponentModel> components = new ArrayList<ComponentModel>();
+		for(int masterId = 1; masterId <= MASTER_COUNT; masterId++)
+		{
+			for(int i = 0; i < types.size(); i++)
+			{
+				if(random.nextInt(10) == 0)
+					continue;
+
+				int componentId = componentIds.get(i);
+				ComponentType type = random.nextInt(20) == 0 ? types.get(random.nextInt(types.size())) : types.get(i);
+				ComponentMaster master = new TestComponentMaster(componentId, masterId, "G", "SG", "COMP " + componentId, type, Visibility.VISIBLE, false);
+				Visibility visibility = random.nextInt(8) == 0 ? Visibility.NOT_VISIBLE : Visibility.VISIBLE;
+				components.add(new ComponentModel(master, new ComponentValue(master, randomValue(random, type)), visibility));
+			}
+		}
+		return ComponentVisibilityFilterData.newInstanceForTesting(null, components, null, notVisibleBehavior);
+	}
+
+	private String randomValue(Random random, ComponentType type)
+	{
+		switch(type)
+		{
+		case NUMERIC:
+		case YEAR:
+			return numericValues.get(random.nextInt(numericValues.size()));
+		case DATE:
+			return dateValues.get(random.nextInt(dateValues.size()));
+		default:
+			return textValues.get(random.nextInt(textValues.size()));
+		}
+	}
+
+	private String outcome(Evaluation evaluation)
+	{
+		try {
+			return String.valueOf(evaluation.isSatisfied());
+		} catch(RuntimeException ex) {
+			return ex.getClass().getSimpleName() + ": " + ex.getMessage();
+		}
+	}
+
+	//***** HELPER CLASSES *****//
+	private interface Evaluation
+	{
+		public boolean isSatisfied();
+	}
+}
@@ -0,0 +1,146 @@
+/**
+ * @author john.shiffler (600139252)
+ */
+package com.penske.apps.smccore.component.engine;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.penske.apps.smccore.component.TestComponentMaster;
+import com.penske.apps.smccore.component.domain.ComponentMaster;
+import com.penske.apps.smccore.component.domain.ComponentValue;
+import com.penske.apps.smccore.component.domain.enums.ComponentType;
+import com.penske.apps.smccore.component.domain.enums.NotVisibleBehavior;
+import com.penske.apps.smccore.component.domain.enums.Visibility;
+
+/**
+ * Class under test: {@link ComponentVisibilityFilterData}
+ */
+public class ComponentVisibilityFilterDataTest
+{
+	private final List<ComponentModel> components = new ArrayList<ComponentModel>();
+	private final List<ComponentModel> componentsWithoutUserChanges = new ArrayList<ComponentModel>();
+
+	@Test
+	public void shouldLookUpComponentsByMasterAndComponentId()
+	{
+		ComponentModel master1Comp10 = addComponent(components, 1, 10, Visibility.VISIBLE);
+		ComponentModel master1Comp20 = addComponent(components, 1, 20, Visibility.REQUIRED);
+		ComponentModel master2Comp10 = addComponent(components, 2, 10, Visibility.NOT_VISIBLE);
+
+		ComponentVisibilityFilterData componentData = ComponentVisibilityFilterData.newInstanceForTesting(null, components, componentsWithoutUserChanges, NotVisibleBehavior.REMOVE);
+
+		assertThat(componentData.getSingleComponent(10, 1), is(sameInstance(master1Comp10)));
+		assertThat(componentData.getSingleComponent(20, 1), is(sameInstance(master1Comp20)));
+		assertThat(componentData.getSingleComponent(10, 2), is(sameInstance(master2Comp10)));
+		assertThat(componentData.getSingleComponent(20, 2), is(nullValue()));
+		assertThat(componentData.getSingleComponent(30, 1), is(nullValue()));
+		assertThat(componentData.getSingleComponent(10, 3), is(nullValue()));
+
+		assertThat(componentData.getAllMasterIds(), containsInAnyOrder(1, 2));
+
+		Map<Integer, ComponentModel> componentsForMaster1 = componentData.getComponentsForMasterId(1);
+		assertThat(componentsForMaster1.size(), is(2));
+		assertThat(componentsForMaster1.get(10), is(sameInstance(master1Comp10)));
+		assertThat(componentsForMaster1.get(20), is(sameInstance(master1Comp20)));
+		assertThat(componentData.getComponentsForMasterId(3).isEmpty(), is(true));
+
+		//Rules treat a not visible component as having no value when not visible components will be removed
+		assertThat(componentData.getSingleComponentForRules(10, 1).getComponentId(), is(10));
+		assertThat(componentData.getSingleComponentForRules(10, 2), is(nullValue()));
+	}
+
+	@Test
+	public void shouldDetectVisibilityChangedByUser()
+	{
+		addComponent(components, 1, 10, Visibility.NOT_VISIBLE);
+		addComponent(components, 1, 20, Visibility.VISIBLE);
+		addComponent(components, 1, 30, Visibility.NOT_VISIBLE_2);
+		addComponent(componentsWithoutUserChanges, 1, 10, Visibility.VISIBLE);
+		addComponent(componentsWithoutUserChanges, 1, 20, Visibility.VISIBLE);
+		addComponent(componentsWithoutUserChanges, 1, 30, Visibility.NOT_VISIBLE);
+
+		ComponentVisibilityFilterData componentData = ComponentVisibilityFilterData.newInstanceForTesting(null, components, componentsWithoutUserChanges, NotVisibleBehavior.REMOVE_IF_USER_INFLUENCED);
+
+		assertThat(componentData.isComponentVisibilityChanged(1, 10), is(true));
+		assertThat(componentData.isComponentVisibilityChanged(1, 20), is(false));
+		assertThat(componentData.isComponentVisibilityChanged(1, 30), is(false));
+		assertThat(componentData.isComponentVisibilityChanged(2, 10), is(false));
+
+		//Components whose visibility was changed by the user are hidden from the rules, but other not visible components are not
+		assertThat(componentData.getSingleComponentForRules(10, 1), is(nullValue()));
+		assertThat(componentData.getSingleComponentForRules(30, 1).getComponentId(), is(30));
+	}
+
+	@Test
+	public void shouldLayerChangedComponentsOverSharedOnes()
+	{
+		for(int componentId = 1; componentId <= 40; componentId++)
+		{
+			addComponent(components, 1, componentId, Visibility.VISIBLE);
+			addComponent(components, 2, componentId, Visibility.VISIBLE);
+		}
+		ComponentVisibilityFilterData original = ComponentVisibilityFilterData.newInstanceForTesting(null, components, componentsWithoutUserChanges, NotVisibleBehavior.KEEP);
+		
+		//Change one component ID at a time, enough times that layers get merged, and eventually flattened
+		ComponentVisibilityFilterData componentData = original;
+		List<ComponentVisibilityFilterData> versions = new ArrayList<ComponentVisibilityFilterData>();
+		for(int componentId = 1; componentId <= 30; componentId++)
+		{
+			List<ComponentModel> oldComponents = componentData.getComponentsForComponentId(componentId);
+			List<ComponentModel> newComponents = new ArrayList<ComponentModel>();
+			for(ComponentModel component : oldComponents)
+				newComponents.add(new ComponentModel(component.getComponentMaster(), component.getComponentValue(), Visibility.NOT_VISIBLE));
+			componentData = ComponentVisibilityFilterData.withComponents(componentData, Collections.singletonMap(componentId, newComponents));
+			versions.add(componentData);
+		}
+		
+		//Each version sees exactly the changes made up to it, and none of the later ones
+		for(int version = 0; version < versions.size(); version++)
+		{
+			ComponentVisibilityFilterData data = versions.get(version);
+			assertThat(data.getAllComponentIds().size(), is(40));
+			assertThat(data.getAllMasterIds(), containsInAnyOrder(1, 2));
+			assertThat(data.getAllComponentsAsList().size(), is(80));
+			for(int componentId = 1; componentId <= 40; componentId++)
+			{
+				Visibility expected = componentId <= version + 1 ? Visibility.NOT_VISIBLE : Visibility.VISIBLE;
+				for(int masterId = 1; masterId <= 2; masterId++)
+				{
+					assertThat(data.getSingleComponent(componentId, masterId).getRuleVisibility(), is(expected));
+					assertThat(data.getComponentsForMasterId(masterId).get(componentId).getRuleVisibility(), is(expected));
+					assertThat(data.getAllComponents().get(masterId, componentId).getRuleVisibility(), is(expected));
+				}
+				assertThat(data.getComponentsForComponentId(componentId).get(0).getRuleVisibility(), is(expected));
+			}
+		}
+		assertThat(original.getSingleComponent(1, 1).getRuleVisibility(), is(Visibility.VISIBLE));
+		
+		//A list that doesn't cover the same masters as the one it replaces still gets looked up correctly
+		ComponentModel onlyMaster1 = componentData.getSingleComponent(35, 1);
+		ComponentVisibilityFilterData fewerMasters = ComponentVisibilityFilterData.withComponents(componentData, Collections.singletonMap(35, Collections.singletonList(onlyMaster1)));
+		assertThat(fewerMasters.getSingleComponent(35, 2), is(nullValue()));
+		assertThat(fewerMasters.getSingleComponent(35, 1), is(sameInstance(onlyMaster1)));
+		assertThat(fewerMasters.getSingleComponent(1, 1).getRuleVisibility(), is(Visibility.NOT_VISIBLE));
+		assertThat(componentData.getSingleComponent(35, 2).getRuleVisibility(), is(Visibility.VISIBLE));
+	}
+
+	//***** HELPER METHODS *****//
+	private ComponentModel addComponent(List<ComponentModel> target, int masterId, int componentId, Visibility visibility)
+	{
+		ComponentMaster master = new TestComponentMaster(componentId, masterId, "G", "SG", "Comp " + componentId, ComponentType.TEXT, Visibility.VISIBLE, false);
+		ComponentModel component = new ComponentModel(master, new ComponentValue(master, "FOO"), visibility);
+		target.add(component);
+		return component;
+	}
+}
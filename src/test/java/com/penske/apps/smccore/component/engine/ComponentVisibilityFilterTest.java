@@ -7,20 +7,40 @@ import static com.penske.apps.smccore.component.domain.enums.Visibility.EDITABLE
 import static com.penske.apps.smccore.component.domain.enums.Visibility.NOT_VISIBLE;
 import static com.penske.apps.smccore.component.domain.enums.Visibility.REQUIRED;
 import static com.penske.apps.smccore.component.domain.enums.Visibility.VISIBLE;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.hasItem;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
+import org.apache.commons.lang3.tuple.Pair;
 import org.junit.Test;
 
+import com.penske.apps.smccore.base.exception.ComponentRuleException;
+import com.penske.apps.smccore.base.plugins.CoreTimingType;
+import com.penske.apps.smccore.base.plugins.TimingBean;
+import com.penske.apps.smccore.base.plugins.TimingBeanImpl;
+import com.penske.apps.smccore.base.plugins.TimingType;
 import com.penske.apps.smccore.component.TestComponentData;
 import com.penske.apps.smccore.component.domain.enums.ConflictStatus;
 import com.penske.apps.smccore.component.domain.enums.NotVisibleBehavior;
+import com.penske.apps.smccore.component.domain.enums.RuleEvaluationMode;
 
 /**
  * Class under test: {@link ComponentVisibilityFilter}
@@ -262,6 +282,153 @@ public class ComponentVisibilityFilterTest
 		assertThat(componentData.isComponentVisibilityChanged(masterId, bodyMakeId),		is(true));
 	}
 
+	@Test
+	public void shouldRunRulesIncrementallyWithSameResults()
+	{
+		//										Rule IDs	Target Comp IDs		Criteria Comp IDs
+		data.ruleSingleCriteria(				1010, 		10, 				110				)
+			.ruleSingleGroupMultipleCriteria(	1020, 		20,					120, 121		)
+			.ruleMultipleGroupsMultipleCriteria(1030, 		30,					130, 131, 132	)
+			.ruleCriteriaComponentNotVisible(	1040, 		40,					140				)
+			.ruleCascadingOutcomes(				1050, 1051, 50, 51, 52							)
+			.ruleMultipleOutcomePriorities(		1060, 1061, 60,					160, 161		);
+		
+		assertSameResultsInAllModes(NotVisibleBehavior.REMOVE);
+		assertSameResultsInAllModes(NotVisibleBehavior.KEEP);
+		
+		data.setUserValue(masterId, 50, "BAZ")
+			.setUserValue(masterId, 110, "10")
+			.setUserValue(masterId, 160, "FOO");
+		assertSameResultsInAllModes(NotVisibleBehavior.REMOVE);
+		
+		data.setUserValue(masterId, 50, "FOO")
+			.setUserValue(masterId, 51, "BAZ");
+		assertSameResultsInAllModes(NotVisibleBehavior.REMOVE);
+	}
+	
+	@Test
+	public void shouldRunRulesIncrementallyWithUserChanges()
+	{
+		data.ruleOnGroundBody(1010, 1011, 110, 10, 11);
+		assertSameResultsInAllModes(NotVisibleBehavior.REMOVE_IF_USER_INFLUENCED);
+		
+		data.setComponentValue(masterId, 110, "Y")
+			.setUserValue(masterId, 110, "N");
+		assertSameResultsInAllModes(NotVisibleBehavior.REMOVE_IF_USER_INFLUENCED);
+	}
+
+	@Test
+	public void shouldRerunOnlyRulesAffectedByUserChanges()
+	{
+		int onGroundId = 110;
+		int bodyInstalledId = 10;
+		int bodyMakeId = 11;
+		data.ruleOnGroundBody(1010, 1011, onGroundId, bodyInstalledId, bodyMakeId)
+			.setComponentValue(masterId, onGroundId, "Y");
+		ComponentVisibilityFilter incrementalFilter = filter.withEvaluationMode(RuleEvaluationMode.INCREMENTAL);
+		
+		//Body make isn't read by any rule, so the rules settle right where they did without the user's changes
+		data.setUserValue(masterId, bodyMakeId, "XYZ");
+		ComponentVisibilityFilterData expected = runRules(filter, NotVisibleBehavior.REMOVE_IF_USER_INFLUENCED);
+		ComponentVisibilityFilterData actual = runRules(incrementalFilter, NotVisibleBehavior.REMOVE_IF_USER_INFLUENCED);
+		
+		assertThat(expected.getRuleIterations(), is(3));
+		assertThat(actual.getRuleIterations(), is(1));
+		assertThat(actual.getSingleComponent(bodyMakeId, masterId).getComponentValueAsString(), is("XYZ"));
+		for(ComponentModel expectedComponent : expected.getAllComponentsAsList())
+		{
+			ComponentModel actualComponent = actual.getSingleComponent(expectedComponent.getComponentId(), expectedComponent.getMasterId());
+			assertThat("Visibility " + expectedComponent + ": ", actualComponent.getRuleVisibility(), is(expectedComponent.getRuleVisibility()));
+			assertThat("Changed " + expectedComponent + ": ", actual.isComponentVisibilityChanged(masterId, expectedComponent.getComponentId()), is(false));
+		}
+		
+		//Changing on ground re-runs the rules downstream of it
+		data.setUserValue(masterId, onGroundId, "N");
+		actual = runRules(incrementalFilter, NotVisibleBehavior.REMOVE_IF_USER_INFLUENCED);
+		assertThat(actual.getSingleComponent(bodyInstalledId, masterId).getFinalVisibility(), is(NOT_VISIBLE));
+		assertThat(actual.getSingleComponent(bodyMakeId, masterId).getFinalVisibility(), is(NOT_VISIBLE));
+		assertThat(actual.isComponentVisibilityChanged(masterId, bodyInstalledId), is(true));
+		assertThat(actual.isComponentVisibilityChanged(masterId, bodyMakeId), is(true));
+		assertThat(actual.isComponentVisibilityChanged(masterId, onGroundId), is(false));
+	}
+	
+	@Test
+	public void shouldRerunFromScratchWhenUserChangesReachCycle()
+	{
+		int triggerId = 110;
+		int component1Id = 10;
+		int component2Id = 11;
+		data.ruleLatchingCycle(1110, 1010, 1011, triggerId, component1Id, component2Id);
+		
+		//Without the user's change, the trigger shows both components, and they keep each other visible. Starting from there, they would still keep each other visible after the user's change.
+		data.setUserValue(masterId, triggerId, "N");
+		ComponentVisibilityFilterData expected = runRules(filter, NotVisibleBehavior.REMOVE_IF_USER_INFLUENCED);
+		ComponentVisibilityFilterData actual = runRules(filter.withEvaluationMode(RuleEvaluationMode.INCREMENTAL), NotVisibleBehavior.REMOVE_IF_USER_INFLUENCED);
+		
+		assertThat(expected.getSingleComponent(component1Id, masterId).getRuleVisibility(), is(NOT_VISIBLE));
+		assertThat(expected.getSingleComponent(component2Id, masterId).getRuleVisibility(), is(NOT_VISIBLE));
+		assertThat(actual.getRuleIterations(), is(expected.getRuleIterations()));
+		for(ComponentModel expectedComponent : expected.getAllComponentsAsList())
+		{
+			ComponentModel actualComponent = actual.getSingleComponent(expectedComponent.getComponentId(), expectedComponent.getMasterId());
+			assertThat("Visibility " + expectedComponent + ": ", actualComponent.getRuleVisibility(), is(expectedComponent.getRuleVisibility()));
+			assertThat("Changed " + expectedComponent + ": ", actual.isComponentVisibilityChanged(masterId, expectedComponent.getComponentId()),
+				is(expected.isComponentVisibilityChanged(masterId, expectedComponent.getComponentId())));
+		}
+	}
+	
+	@Test
+	public void shouldRunRulesInDependencyOrder()
+	{
+		//										Rule IDs	Target Comp IDs		Criteria Comp IDs
+		data.ruleCascadingOutcomes(				1050, 1051, 50, 51, 52							);
+		
+		ComponentVisibilityFilterData componentData = runRules(filter.withEvaluationMode(RuleEvaluationMode.TOPOLOGICAL), NotVisibleBehavior.REMOVE);
+		Map<Integer, ComponentModel> components = componentData.getComponentsForMasterId(masterId);
+		Map<Integer, RuleResult> ruleResults = componentData.getEvaluationResult().getRuleResults().get(masterId);
+		
+		assertRuleResult(ruleResults.get(1050), true, true, null);
+		assertRuleResult(ruleResults.get(1051), true, true, null);
+		assertThat(components.get(51).getRuleVisibility(), is(REQUIRED));
+		assertThat(components.get(52).getRuleVisibility(), is(REQUIRED));
+		assertThat(componentData.getRuleIterations(), is(1));
+	}
+	
+	@Test
+	public void shouldReportCircularRulesWithoutRunningAllRules()
+	{
+		//										Rule IDs	Target Comp IDs		Criteria Comp IDs
+		data.ruleSingleCriteria(				1010, 		10, 				110				)
+			.ruleCircularReference(				1070, 1071, 70, 71								);
+		
+		Set<Integer> expectedRuleIds = new TreeSet<Integer>(Arrays.asList(1070, 1071));
+		List<Set<Integer>> circularRules = filter.findCircularRules(data.getRules(), data.getOutcomes());
+		assertThat(circularRules.size(), is(1));
+		assertThat(circularRules.get(0), is(expectedRuleIds));
+		
+		for(RuleEvaluationMode mode : RuleEvaluationMode.values())
+		{
+			try {
+				runRules(filter.withEvaluationMode(mode), NotVisibleBehavior.REMOVE);
+				fail(mode + " should not have been able to resolve the rules");
+			} catch(ComponentRuleException ex) {
+				if(mode == RuleEvaluationMode.TOPOLOGICAL)
+					assertThat(ex.getMessage(), containsString(expectedRuleIds.toString()));
+			}
+		}
+	}
+	
+	@Test
+	public void shouldNotFindCircularRulesWithoutCycles()
+	{
+		//										Rule IDs	Target Comp IDs		Criteria Comp IDs
+		data.ruleSingleCriteria(				1010, 		10, 				110				)
+			.ruleCascadingOutcomes(				1050, 1051, 50, 51, 52							)
+			.ruleMultipleOutcomePriorities(		1060, 1061, 60,					160, 161		);
+		
+		assertThat(filter.findCircularRules(data.getRules(), data.getOutcomes()).isEmpty(), is(true));
+	}
+	
 	@Test
 	public void shouldResolveConflicts()
 	{
@@ -329,6 +496,197 @@ public class ComponentVisibilityFilterTest
 		//conflict, global resolution (with one non-required, one ignored)
 	}
 	
+	@Test
+	public void shouldRunRulesWithoutExplanations()
+	{
+		//										Rule IDs	Target Comp IDs		Criteria Comp IDs
+		data.ruleSingleCriteria(				1010, 		10, 				110				)
+			.ruleCriteriaComponentNotVisible(	1040, 		40,					140				)
+			.ruleMultipleOutcomePriorities(		1060, 1061, 60,					160, 161		)
+			.ruleCascadingOutcomes(				1050, 1051, 50, 51, 52							);
+		data.setUserValue(masterId, 160, "FOO");
+		
+		ComponentVisibilityFilterData expected = runRules(filter, NotVisibleBehavior.REMOVE);
+		
+		for(RuleEvaluationMode mode : RuleEvaluationMode.values())
+		{
+			ComponentVisibilityFilterData actual = runRules(filter.withEvaluationMode(mode).withExplanations(false), NotVisibleBehavior.REMOVE);
+			
+			if(mode == RuleEvaluationMode.TOPOLOGICAL)
+				assertThat(mode + " iterations: ", actual.getRuleIterations(), is(1));
+			else
+				assertThat(mode + " iterations: ", actual.getRuleIterations(), is(expected.getRuleIterations()));
+			for(ComponentModel expectedComponent : expected.getAllComponentsAsList())
+			{
+				ComponentModel actualComponent = actual.getSingleComponent(expectedComponent.getComponentId(), expectedComponent.getMasterId());
+				assertThat(mode + " visibility " + expectedComponent + ": ", actualComponent.getRuleVisibility(), is(expectedComponent.getRuleVisibility()));
+			}
+			assertThat(mode + " outcomes: ", actual.getEvaluationResult().getApplicableOutcomes().keySet(), is(expected.getEvaluationResult().getApplicableOutcomes().keySet()));
+			
+			//Evaluated rules only say whether they were satisfied, and skipped rules are left out entirely
+			Map<Integer, RuleResult> ruleResults = actual.getEvaluationResult().getRuleResults().get(masterId);
+			assertRuleResult(ruleResults.get(1010), true, true, null);
+			assertRuleResult(ruleResults.get(1040), true, false, null);
+			assertRuleResult(ruleResults.get(1060), true, true, null);
+			assertThat(ruleResults.get(1010).getGroupResults().isEmpty(), is(true));
+			assertThat(ruleResults.containsKey(1061), is(false));
+			
+			//Evaluating each rule for all master IDs at once gives exactly the same results
+			ComponentVisibilityFilterData columnar = runRules(filter.withEvaluationMode(mode).withExplanations(false).withColumnarEvaluation(true), NotVisibleBehavior.REMOVE);
+			assertThat(mode + " columnar iterations: ", columnar.getRuleIterations(), is(actual.getRuleIterations()));
+			for(ComponentModel expectedComponent : expected.getAllComponentsAsList())
+			{
+				ComponentModel columnarComponent = columnar.getSingleComponent(expectedComponent.getComponentId(), expectedComponent.getMasterId());
+				assertThat(mode + " columnar visibility " + expectedComponent + ": ", columnarComponent.getRuleVisibility(), is(expectedComponent.getRuleVisibility()));
+			}
+			assertThat(mode + " columnar results: ", columnar.getEvaluationResult().getRuleResults().get(masterId).keySet(), is(ruleResults.keySet()));
+			
+			//So does evaluating each rule with generated code
+			ComponentVisibilityFilterData generated = runRules(filter.withEvaluationMode(mode).withExplanations(false).withGeneratedCode(true), NotVisibleBehavior.REMOVE);
+			assertThat(mode + " generated iterations: ", generated.getRuleIterations(), is(actual.getRuleIterations()));
+			for(ComponentModel expectedComponent : expected.getAllComponentsAsList())
+			{
+				ComponentModel generatedComponent = generated.getSingleComponent(expectedComponent.getComponentId(), expectedComponent.getMasterId());
+				assertThat(mode + " generated visibility " + expectedComponent + ": ", generatedComponent.getRuleVisibility(), is(expectedComponent.getRuleVisibility()));
+			}
+			assertThat(mode + " generated results: ", generated.getEvaluationResult().getRuleResults().get(masterId).keySet(), is(ruleResults.keySet()));
+		}
+		
+		//Debugging needs the explanations, so it keeps them even if they were turned off
+		ComponentVisibilityFilter debugFilter = new ComponentVisibilityFilter(null, null, "\n").withExplanations(false);
+		Map<Integer, RuleResult> debugResults = runRules(debugFilter, NotVisibleBehavior.REMOVE).getEvaluationResult().getRuleResults().get(masterId);
+		assertRuleResult(debugResults.get(1061), false, false, RuleResult.SKIPPED);
+		assertThat(debugResults.get(1010).getGroupResults().size(), is(1));
+	}
+	
+	@Test
+	public void shouldReuseComponentsThatDidNotChange()
+	{
+		//										Rule IDs	Target Comp IDs		Criteria Comp IDs
+		data.ruleSingleCriteria(				1010, 		10, 				110				)
+			.componentMasterOnly(1);
+		
+		ComponentVisibilityFilterData mergedComponents = filter.mergeComponentValues(1, data.getMasters(), data.getComponentValues(), data.getDefaultComponentValues(), data.getUserValues(), NotVisibleBehavior.REMOVE);
+		ComponentVisibilityFilterData ruleResults = filter.runRules(mergedComponents, data.getRules(), data.getOutcomes());
+		
+		//Components not touched by any outcome are the same objects all the way through
+		assertThat(ruleResults.getSingleComponent(1, masterId), is(sameInstance(mergedComponents.getSingleComponent(1, masterId))));
+		assertThat(ruleResults.getSingleComponent(110, masterId), is(sameInstance(mergedComponents.getSingleComponent(110, masterId))));
+		assertThat(ruleResults.getSingleComponent(10, masterId), is(not(sameInstance(mergedComponents.getSingleComponent(10, masterId)))));
+		assertThat(ruleResults.getSingleComponent(10, masterId).getRuleVisibility(), is(not(mergedComponents.getSingleComponent(10, masterId).getRuleVisibility())));
+		
+		//With no conflicts to resolve, nothing gets copied
+		ComponentVisibilityFilterData resolvedComponents = filter.resolveConflicts(ruleResults, data.getConflictResolver());
+		assertThat(resolvedComponents, is(sameInstance(ruleResults)));
+	}
+	
+	@Test
+	public void shouldReuseComponentsWhenConflictsAreAlreadyResolved()
+	{
+		data.conflictOnlyOneComponent(10, 110)
+			.conflictNoResolution(40, 110, 111, 120, 130);
+		
+		ComponentVisibilityFilterData resolvedComponents = resolveConflicts();
+		assertThat(getComponentsByMasterId(resolvedComponents, 40).get(110).getConflictStatus(), is(ConflictStatus.CONFLICT));
+		
+		ComponentVisibilityFilterData resolvedAgain = filter.resolveConflicts(resolvedComponents, data.getConflictResolver());
+		assertThat(resolvedAgain, is(sameInstance(resolvedComponents)));
+	}
+	
+	@Test
+	public void shouldRecordMetrics()
+	{
+		//										Rule IDs	Target Comp IDs		Criteria Comp IDs
+		data.ruleSingleCriteria(				1010, 		10, 				110				)
+			.ruleMultipleOutcomePriorities(		1060, 1061, 60,					160, 161		)
+			.ruleCascadingOutcomes(				1050, 1051, 50, 51, 52							);
+		data.setUserValue(masterId, 160, "FOO");
+		
+		TimingBean fullTimings = new TimingBeanImpl();
+		ComponentVisibilityFilterData full = runRules(filter.withMetrics(fullTimings), NotVisibleBehavior.REMOVE);
+		TimingBean incrementalTimings = new TimingBeanImpl();
+		runRules(filter.withEvaluationMode(RuleEvaluationMode.INCREMENTAL).withMetrics(incrementalTimings), NotVisibleBehavior.REMOVE);
+		
+		//Every phase gets logged once per call, and the counters match what the rules actually did
+		Map<TimingType, Pair<Long, Long>> timings = fullTimings.getAllTimings();
+		for(CoreTimingType timingType : Arrays.asList(CoreTimingType.RULES_MERGE, CoreTimingType.RULES_RUN, CoreTimingType.RULES_EVALUATE, CoreTimingType.RULES_APPLY,
+			CoreTimingType.RULES_ITERATIONS, CoreTimingType.RULES_EVALUATED, CoreTimingType.RULES_SKIPPED))
+		{
+			assertThat(timingType + " invocations: ", timings.get(timingType).getRight(), is(1L));
+		}
+		assertThat(fullTimings.getTotalElapsedTime(CoreTimingType.RULES_ITERATIONS), is((long) full.getRuleIterations()));
+		//The lower-priority rule 1061 is never needed, since 1060 is satisfied on every iteration
+		assertThat(fullTimings.getTotalElapsedTime(CoreTimingType.RULES_SKIPPED), is(greaterThanOrEqualTo((long) full.getRuleIterations())));
+		
+		//Incremental mode gets to the same place, but evaluates fewer rules by reusing the ones that didn't change
+		assertThat(incrementalTimings.getTotalElapsedTime(CoreTimingType.RULES_ITERATIONS), is((long) full.getRuleIterations()));
+		assertThat(incrementalTimings.getTotalElapsedTime(CoreTimingType.RULES_EVALUATED), is(lessThan(fullTimings.getTotalElapsedTime(CoreTimingType.RULES_EVALUATED))));
+		long fullChecked = fullTimings.getTotalElapsedTime(CoreTimingType.RULES_EVALUATED) + fullTimings.getTotalElapsedTime(CoreTimingType.RULES_SKIPPED);
+		long incrementalChecked = incrementalTimings.getTotalElapsedTime(CoreTimingType.RULES_EVALUATED) + incrementalTimings.getTotalElapsedTime(CoreTimingType.RULES_SKIPPED);
+		assertThat(incrementalChecked, is(fullChecked));
+		
+		//Conflicts are counted when they are resolved
+		data.conflictOnlyOneComponent(		10, 		110)
+			.conflictNoResolution(			40,			110, 111, 				120, 					130)
+			.conflictGlobalResolution(		50,			110, 111, 				120, 					130);
+		TimingBean conflictTimings = new TimingBeanImpl();
+		ComponentVisibilityFilter metricsFilter = filter.withMetrics(conflictTimings);
+		metricsFilter.resolveConflicts(runRules(metricsFilter, NotVisibleBehavior.REMOVE), data.getConflictResolver());
+		assertThat(conflictTimings.getAllTimings().get(CoreTimingType.RULES_RESOLVE_CONFLICTS).getRight(), is(1L));
+		assertThat(conflictTimings.getTotalElapsedTime(CoreTimingType.RULES_CONFLICTS), is(2L));
+		assertThat(conflictTimings.getTotalElapsedTime(CoreTimingType.RULES_CONFLICTS_RESOLVED), is(1L));
+		
+		//Nothing is recorded once metrics are turned off again
+		ComponentVisibilityFilter withoutMetrics = metricsFilter.withMetrics(null);
+		withoutMetrics.resolveConflicts(runRules(withoutMetrics, NotVisibleBehavior.REMOVE), data.getConflictResolver());
+		assertThat(conflictTimings.getAllTimings().get(CoreTimingType.RULES_RUN).getRight(), is(1L));
+		assertThat(conflictTimings.getAllTimings().get(CoreTimingType.RULES_RESOLVE_CONFLICTS).getRight(), is(1L));
+	}
+	
+	@Test
+	public void shouldTraceRulesAsTheyRun()
+	{
+		//										Rule IDs	Target Comp IDs		Criteria Comp IDs
+		data.ruleSingleCriteria(				1010, 		10, 				110				)
+			.ruleMultipleOutcomePriorities(		1060, 1061, 60,					160, 161		)
+			.ruleCascadingOutcomes(				1050, 1051, 50, 51, 52							);
+		data.setUserValue(masterId, 160, "FOO");
+		data.conflictOnlyOneComponent(		10, 		110)
+			.conflictNoResolution(			40,			110, 111, 				120, 					130)
+			.conflictGlobalResolution(		50,			110, 111, 				120, 					130);
+		
+		RingBufferTraceSink buffer = new RingBufferTraceSink(1000);
+		TimingBean timings = new TimingBeanImpl();
+		ComponentVisibilityFilter tracingFilter = filter.withExplanations(false).withMetrics(timings).withTraceSink(buffer);
+		ComponentVisibilityFilterData ruleResults = runRules(tracingFilter, NotVisibleBehavior.REMOVE);
+		tracingFilter.resolveConflicts(ruleResults, data.getConflictResolver());
+		
+		//Every iteration and every rule evaluation gets an event, and nothing was dropped
+		Map<RuleTraceEvent.Type, Integer> counts = new HashMap<RuleTraceEvent.Type, Integer>();
+		for(RuleTraceEvent event : buffer.getEvents())
+			counts.merge(event.getType(), 1, Integer::sum);
+		assertThat(buffer.getDroppedCount(), is(0L));
+		assertThat(counts.get(RuleTraceEvent.Type.ITERATION_STARTED), is(ruleResults.getRuleIterations()));
+		assertThat((long) counts.get(RuleTraceEvent.Type.RULE_EVALUATED), is(timings.getTotalElapsedTime(CoreTimingType.RULES_EVALUATED)));
+		assertThat(counts.get(RuleTraceEvent.Type.CONFLICT_RESOLVED), is(2));
+		
+		List<String> lines = new ArrayList<String>();
+		for(RuleTraceEvent event : buffer.getEvents())
+			lines.add(event.toLine());
+		assertThat(lines.get(0), is("ITER 1"));
+		assertThat(lines, hasItem("RULE m=" + masterId + " r=1010 T"));
+		assertThat(lines, hasItem("OUTCOME m=" + masterId + " c=10 r=1010 " + ruleResults.getSingleComponent(10, masterId).getComponentMaster().getVisibility() + ">" + ruleResults.getSingleComponent(10, masterId).getRuleVisibility()));
+		assertThat(lines, hasItem("CONFLICT c=40 n=2 CONFLICT m=-"));
+		
+		//Writing lines gives exactly the same events, one per line
+		StringWriter writer = new StringWriter();
+		LineWriterTraceSink lineSink = new LineWriterTraceSink(writer, "\n");
+		ComponentVisibilityFilter writingFilter = filter.withExplanations(false).withTraceSink(lineSink);
+		writingFilter.resolveConflicts(runRules(writingFilter, NotVisibleBehavior.REMOVE), data.getConflictResolver());
+		assertThat(Arrays.asList(writer.toString().split("\n")), is(lines));
+		assertThat(lineSink.getFailure(), is(nullValue()));
+	}
+	
 	//***** HELPER METHODS *****//
 	private ComponentVisibilityFilterData runRules(NotVisibleBehavior notVisibleBehavior)
 	{
@@ -337,6 +695,55 @@ public class ComponentVisibilityFilterTest
 		return resultContainer;
 	}
 	
+	/**
+	 * Runs the rules on the current test data once in each evaluation mode, and checks that each mode gives identical components, rule results, iteration counts, and debug output.
+	 * 	Topological mode settles each component in a single pass, so it only has to take no more iterations than the others, and its debug output is for that one pass.
+	 * 	Incremental mode re-runs the rules with user changes starting from where they settled without them when not visible components are removed if influenced by the user,
+	 * 	so its iterations and debug output only cover what the user's changes affected.
+	 */
+	private void assertSameResultsInAllModes(NotVisibleBehavior notVisibleBehavior)
+	{
+		ComponentVisibilityFilter debugFilter = new ComponentVisibilityFilter(null, null, "\n");
+		ComponentVisibilityFilterData expected = runRules(debugFilter, notVisibleBehavior);
+		
+		for(RuleEvaluationMode mode : RuleEvaluationMode.values())
+		{
+			ComponentVisibilityFilterData actual = runRules(debugFilter.withEvaluationMode(mode), notVisibleBehavior);
+			
+			if(mode == RuleEvaluationMode.TOPOLOGICAL)
+				assertThat(mode + " iterations: ", actual.getRuleIterations(), is(lessThanOrEqualTo(expected.getRuleIterations())));
+			else if(mode != RuleEvaluationMode.INCREMENTAL || notVisibleBehavior != NotVisibleBehavior.REMOVE_IF_USER_INFLUENCED)
+			{
+				assertThat(mode + " iterations: ", actual.getRuleIterations(), is(expected.getRuleIterations()));
+				assertThat(mode + " debug info: ", actual.getDebugInfo(), is(expected.getDebugInfo()));
+			}
+			for(ComponentModel expectedComponent : expected.getAllComponentsAsList())
+			{
+				ComponentModel actualComponent = actual.getSingleComponent(expectedComponent.getComponentId(), expectedComponent.getMasterId());
+				assertThat(mode + " visibility " + expectedComponent + ": ", actualComponent.getRuleVisibility(), is(expectedComponent.getRuleVisibility()));
+			}
+			
+			Map<Integer, Map<Integer, RuleResult>> expectedResults = expected.getEvaluationResult().getRuleResults();
+			Map<Integer, Map<Integer, RuleResult>> actualResults = actual.getEvaluationResult().getRuleResults();
+			assertThat(mode + " masters: ", actualResults.keySet(), is(expectedResults.keySet()));
+			for(Integer resultMasterId : expectedResults.keySet())
+			{
+				for(RuleResult expectedResult : expectedResults.get(resultMasterId).values())
+				{
+					RuleResult actualResult = actualResults.get(resultMasterId).get(expectedResult.getRule().getRuleId());
+					assertRuleResult(actualResult, expectedResult.isEvaluated(), expectedResult.isSatisfied(), expectedResult.getNotSatisfiedReason());
+				}
+			}
+			assertThat(mode + " outcomes: ", actual.getEvaluationResult().getApplicableOutcomes().keySet(), is(expected.getEvaluationResult().getApplicableOutcomes().keySet()));
+		}
+	}
+	
+	private ComponentVisibilityFilterData runRules(ComponentVisibilityFilter filter, NotVisibleBehavior notVisibleBehavior)
+	{
+		ComponentVisibilityFilterData mergedComponents = filter.mergeComponentValues(1, data.getMasters(), data.getComponentValues(), data.getDefaultComponentValues(), data.getUserValues(), notVisibleBehavior);
+		return filter.runRules(mergedComponents, data.getRules(), data.getOutcomes());
+	}
+	
 	private ComponentVisibilityFilterData resolveConflicts()
 	{
 		ComponentVisibilityFilterData mergedComponents = filter.mergeComponentValues(1, data.getMasters(), data.getComponentValues(), data.getDefaultComponentValues(), data.getUserValues(), NotVisibleBehavior.REMOVE);
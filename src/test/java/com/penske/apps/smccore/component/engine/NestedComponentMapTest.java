@@ -0,0 +1,145 @@
+/**
+ * @author john.shiffler (600139252)
+ */
+package com.penske.apps.smccore.component.engine;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+/**
+ * Class under test: {@link NestedComponentMap}
+ */
+public class NestedComponentMapTest
+{
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	@Test
+	public void shouldPutGetAndRemove()
+	{
+		NestedComponentMap<String> map = NestedComponentMap.newInstance();
+		map.put(1, 10, "A");
+		map.put(1, 20, "B");
+		map.put(2, 10, "C");
+		map.put(-5, Integer.MIN_VALUE, "D");
+		map.put(1, 10, "E");
+
+		assertThat(map.size(), is(4));
+		assertThat(map.get(1, 10), is("E"));
+		assertThat(map.get(1, 20), is("B"));
+		assertThat(map.get(2, 10), is("C"));
+		assertThat(map.get(-5, Integer.MIN_VALUE), is("D"));
+		assertThat(map.get(2, 20), is(nullValue()));
+		assertThat(map.containsKey(2, 10), is(true));
+		assertThat(map.containsKey(10, 2), is(false));
+
+		assertThat(map.remove(1, 10), is("E"));
+		assertThat(map.remove(1, 10), is(nullValue()));
+		assertThat(map.get(1, 10), is(nullValue()));
+		assertThat(map.size(), is(3));
+		assertThat(map.isEmpty(), is(false));
+	}
+
+	@Test
+	public void shouldProvideLiveViewsByMasterId()
+	{
+		NestedComponentMap<String> map = NestedComponentMap.newInstance();
+		map.put(1, 10, "A");
+		map.put(1, 20, "B");
+		map.put(2, 10, "C");
+
+		Set<Integer> masterIds = map.getAllMasterIds();
+		Map<Integer, String> master1 = map.getComponentsForMasterId(1);
+		assertThat(masterIds, containsInAnyOrder(1, 2));
+		assertThat(master1.keySet(), containsInAnyOrder(10, 20));
+		assertThat(master1.values(), containsInAnyOrder("A", "B"));
+		assertThat(map.getComponentsForMasterId(3).isEmpty(), is(true));
+
+		map.put(1, 30, "D");
+		map.put(3, 10, "E");
+		map.remove(2, 10);
+		assertThat(masterIds, containsInAnyOrder(1, 3));
+		assertThat(master1.keySet(), containsInAnyOrder(10, 20, 30));
+		assertThat(master1.get(30), is("D"));
+	}
+
+	@Test
+	public void shouldVisitEveryEntry()
+	{
+		NestedComponentMap<String> map = NestedComponentMap.newInstance();
+		map.put(1, 10, "A");
+		map.put(2, 20, "B");
+		map.put(2, 30, "C");
+
+		Map<String, String> visited = new HashMap<String, String>();
+		map.forEach((masterId, componentId, value) -> visited.put(masterId + "-" + componentId, value));
+		assertThat(visited.size(), is(3));
+		assertThat(visited.get("2-30"), is("C"));
+
+		Map<Integer, String> visitedInMaster = new HashMap<Integer, String>();
+		map.forEachInMaster(2, (componentId, value) -> visitedInMaster.put(componentId, value));
+		assertThat(visitedInMaster.keySet(), containsInAnyOrder(20, 30));
+
+		Map<Integer, Map<Integer, String>> copy = map.getAllComponents();
+		assertThat(copy.get(2).get(20), is("B"));
+		copy.get(2).remove(20);
+		assertThat(map.get(2, 20), is("B"));
+	}
+
+	@Test
+	public void shouldMatchNestedHashMapsUnderRandomChanges()
+	{
+		Random random = new Random(12345);
+		NestedComponentMap<Integer> map = NestedComponentMap.newInstance();
+		Map<Integer, Map<Integer, Integer>> expected = new HashMap<Integer, Map<Integer, Integer>>();
+
+		for(int i = 0; i < 20000; i++)
+		{
+			int masterId = random.nextInt(20);
+			int componentId = random.nextInt(300);
+			if(random.nextInt(3) == 0)
+			{
+				Map<Integer, Integer> expectedForMaster = expected.get(masterId);
+				Integer expectedRemoved = expectedForMaster == null ? null : expectedForMaster.remove(componentId);
+				if(expectedForMaster != null && expectedForMaster.isEmpty())
+					expected.remove(masterId);
+				assertThat(map.remove(masterId, componentId), is(expectedRemoved));
+			}
+			else
+			{
+				expected.computeIfAbsent(masterId, x -> new HashMap<Integer, Integer>()).put(componentId, i);
+				map.put(masterId, componentId, i);
+			}
+		}
+
+		assertThat(map.getAllComponents(), is(expected));
+		assertThat(map.getAllMasterIds(), is(expected.keySet()));
+		for(Entry<Integer, Map<Integer, Integer>> entry : expected.entrySet())
+			assertThat(map.getComponentsForMasterId(entry.getKey()), is(entry.getValue()));
+		assertThat(NestedComponentMap.of(map).getAllComponents(), is(expected));
+		assertThat(NestedComponentMap.of(expected).getAllComponents(), is(expected));
+	}
+
+	@Test
+	public void shouldNotModifyEmptyMap()
+	{
+		NestedComponentMap<String> map = NestedComponentMap.emptyMap();
+		assertThat(map.isEmpty(), is(true));
+		assertThat(map.remove(1, 10), is(nullValue()));
+
+		thrown.expect(UnsupportedOperationException.class);
+		map.put(1, 10, "A");
+	}
+}
@@ -0,0 +1,82 @@
+/**
+ * @author john.shiffler (600139252)
+ */
+package com.penske.apps.smccore.component.engine;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import com.penske.apps.smccore.CoreTestUtil;
+import com.penske.apps.smccore.component.domain.RuleOutcome;
+import com.penske.apps.smccore.component.domain.enums.Visibility;
+
+/**
+ * Class under test: {@link PrioritizedOutcomes}
+ */
+public class PrioritizedOutcomesTest
+{
+	@Test
+	public void shouldSortByPriority()
+	{
+		RuleOutcome low = CoreTestUtil.createRuleOutcome(1, 1, 1, 30, Visibility.VISIBLE);
+		RuleOutcome high = CoreTestUtil.createRuleOutcome(2, 1, 1, 10, Visibility.REQUIRED);
+		RuleOutcome middle = CoreTestUtil.createRuleOutcome(3, 1, 1, 20, Visibility.NOT_VISIBLE);
+
+		PrioritizedOutcomes outcomes = new PrioritizedOutcomes(Arrays.asList(low, high, middle));
+
+		assertThat(outcomes.size(), is(3));
+		assertThat(outcomes.get(0), is(sameInstance(high)));
+		assertThat(outcomes.get(1), is(sameInstance(middle)));
+		assertThat(outcomes.get(2), is(sameInstance(low)));
+		assertThat(outcomes.asList(), is(Arrays.asList(high, middle, low)));
+	}
+
+	@Test
+	public void shouldKeepLastOutcomeWithSamePriority()
+	{
+		RuleOutcome first = CoreTestUtil.createRuleOutcome(1, 1, 1, 10, Visibility.VISIBLE);
+		RuleOutcome other = CoreTestUtil.createRuleOutcome(2, 1, 1, 5, Visibility.VISIBLE);
+		RuleOutcome last = CoreTestUtil.createRuleOutcome(3, 1, 1, 10, Visibility.REQUIRED);
+
+		PrioritizedOutcomes outcomes = new PrioritizedOutcomes(Arrays.asList(first, other, last));
+
+		assertThat(outcomes.size(), is(2));
+		assertThat(outcomes.get(0), is(sameInstance(other)));
+		assertThat(outcomes.get(1), is(sameInstance(last)));
+	}
+
+	@Test
+	public void shouldMatchMapKeyedByPriority()
+	{
+		Random random = new Random(7);
+		for(int run = 0; run < 200; run++)
+		{
+			List<RuleOutcome> loaded = new ArrayList<RuleOutcome>();
+			Map<Integer, RuleOutcome> expected = new TreeMap<Integer, RuleOutcome>();
+			int count = random.nextInt(12);
+			for(int i = 0; i < count; i++)
+			{
+				RuleOutcome outcome = CoreTestUtil.createRuleOutcome(i, 1, 1, random.nextInt(8), Visibility.VISIBLE);
+				loaded.add(outcome);
+				expected.put(outcome.getPriority(), outcome);
+			}
+
+			PrioritizedOutcomes outcomes = new PrioritizedOutcomes(loaded);
+			assertThat(outcomes.asList(), is((List<RuleOutcome>) new ArrayList<RuleOutcome>(expected.values())));
+			assertThat(outcomes.toMap(), is(expected));
+		}
+
+		assertThat(new PrioritizedOutcomes(Collections.<RuleOutcome>emptyList()).size(), is(0));
+	}
+}
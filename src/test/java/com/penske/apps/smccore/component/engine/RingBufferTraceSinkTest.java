@@ -0,0 +1,57 @@
+/**
+ * @author john.shiffler (600139252)
+ */
+package com.penske.apps.smccore.component.engine;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Class under test: {@link RingBufferTraceSink}
+ */
+public class RingBufferTraceSinkTest
+{
+	@Test
+	public void shouldKeepOnlyMostRecentEvents()
+	{
+		RingBufferTraceSink buffer = new RingBufferTraceSink(3);
+		assertThat(buffer.getEvents().isEmpty(), is(true));
+
+		buffer.trace(RuleTraceEvent.iterationStarted(1));
+		buffer.trace(RuleTraceEvent.iterationStarted(2));
+		assertThat(iterations(buffer), is(Arrays.asList(1, 2)));
+		assertThat(buffer.getDroppedCount(), is(0L));
+
+		for(int i = 3; i <= 7; i++)
+			buffer.trace(RuleTraceEvent.iterationStarted(i));
+		assertThat(iterations(buffer), is(Arrays.asList(5, 6, 7)));
+		assertThat(buffer.getDroppedCount(), is(4L));
+
+		buffer.clear();
+		assertThat(buffer.getEvents().isEmpty(), is(true));
+		assertThat(buffer.getDroppedCount(), is(0L));
+		buffer.trace(RuleTraceEvent.iterationStarted(8));
+		assertThat(iterations(buffer), is(Arrays.asList(8)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void shouldRequireRoomForAnEvent()
+	{
+		new RingBufferTraceSink(0);
+	}
+
+	//***** HELPER METHODS *****//
+	private List<Integer> iterations(RingBufferTraceSink buffer)
+	{
+		List<Integer> result = new ArrayList<Integer>();
+		for(RuleTraceEvent event : buffer.getEvents())
+			result.add(event.getIteration());
+		return result;
+	}
+}
@@ -0,0 +1,184 @@
+/**
+ * @author john.shiffler (600139252)
+ */
+package com.penske.apps.smccore.component.engine;
+
+import static com.penske.apps.smccore.component.domain.enums.Visibility.REQUIRED;
+import static com.penske.apps.smccore.component.domain.enums.Visibility.VISIBLE;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.penske.apps.smccore.base.plugins.CoreTimingType;
+import com.penske.apps.smccore.base.plugins.TimingBeanImpl;
+import com.penske.apps.smccore.component.TestComponentData;
+import com.penske.apps.smccore.component.domain.enums.NotVisibleBehavior;
+
+/**
+ * Class under test: {@link RuleRunCache}
+ */
+public class RuleRunCacheTest
+{
+	private final int masterId1 = 9876;
+	private final int masterId2 = 5432;
+	private final TestComponentData data1 = new TestComponentData(masterId1);
+	private final TestComponentData data2 = new TestComponentData(masterId2);
+	private final TimingBeanImpl timingBean = new TimingBeanImpl();
+	private final RuleRunCache cache = new RuleRunCache(timingBean);
+	private final ComponentVisibilityFilter filter = new ComponentVisibilityFilter().withExplanations(false);
+
+	@Test
+	public void shouldReuseResultsForSameInputsOnDifferentMasterIds()
+	{
+		setUpRules(data1);
+		setUpRules(data2);
+
+		runRules(data1, masterId1, filter, cache);
+		ComponentVisibilityFilterData actual = runRules(data2, masterId2, filter, cache);
+		ComponentVisibilityFilterData expected = runRules(data2, masterId2, filter, null);
+
+		assertThat(cache.getMisses(), is(1L));
+		assertThat(cache.getHits(), is(1L));
+		assertSameResults(actual, expected);
+	}
+
+	@Test
+	public void shouldRunRulesWhenReferencedValuesDiffer()
+	{
+		setUpRules(data1);
+		setUpRules(data2);
+		data2.setUserValue(masterId2, 160, "FOO");
+
+		runRules(data1, masterId1, filter, cache);
+		ComponentVisibilityFilterData actual = runRules(data2, masterId2, filter, cache);
+
+		assertThat(cache.getMisses(), is(2L));
+		assertThat(cache.getHits(), is(0L));
+		assertThat(cache.size(), is(2));
+		assertSameResults(actual, runRules(data2, masterId2, filter, null));
+		assertThat(actual.getSingleComponent(60, masterId2).getRuleVisibility(), is(REQUIRED));
+		assertThat(runRules(data1, masterId1, filter, null).getSingleComponent(60, masterId1).getRuleVisibility(), is(VISIBLE));
+	}
+
+	@Test
+	public void shouldReuseResultsWhenOnlyUnreferencedValuesDiffer()
+	{
+		setUpRules(data1);
+		setUpRules(data2);
+		data1.componentMasterOnly(1).setUserValue(masterId1, 1, "100");
+		data2.componentMasterOnly(1).setUserValue(masterId2, 1, "200");
+
+		runRules(data1, masterId1, filter, cache);
+		ComponentVisibilityFilterData actual = runRules(data2, masterId2, filter, cache);
+
+		assertThat(cache.getHits(), is(1L));
+		assertThat(actual.getSingleComponent(1, masterId2).getComponentValueAsNumber().intValue(), is(200));
+		assertSameResults(actual, runRules(data2, masterId2, filter, null));
+	}
+
+	@Test
+	public void shouldRunRulesWhenContextDiffers()
+	{
+		setUpRules(data1);
+		setUpRules(data2);
+
+		runRules(data1, masterId1, filter, cache, "SIGNATURE A");
+		runRules(data2, masterId2, filter, cache, "SIGNATURE B");
+
+		assertThat(cache.getHits(), is(0L));
+		assertThat(cache.getMisses(), is(2L));
+	}
+
+	@Test
+	public void shouldNotCacheWhenExplaining()
+	{
+		setUpRules(data1);
+		setUpRules(data2);
+
+		ComponentVisibilityFilter explainingFilter = new ComponentVisibilityFilter();
+		runRules(data1, masterId1, explainingFilter, cache);
+		ComponentVisibilityFilterData actual = runRules(data2, masterId2, explainingFilter, cache);
+
+		assertThat(cache.getHits(), is(0L));
+		assertThat(cache.getMisses(), is(0L));
+		assertThat(cache.size(), is(0));
+		assertThat(actual.getEvaluationResult().getRuleResults().get(masterId2).get(1060).getGroupResults().isEmpty(), is(false));
+	}
+
+	@Test
+	public void shouldReportHitsAndMissesToTimingBean()
+	{
+		setUpRules(data1);
+		setUpRules(data2);
+
+		runRules(data1, masterId1, filter, cache);
+		runRules(data2, masterId2, filter, cache);
+		runRules(data2, masterId2, filter, cache);
+
+		assertThat(timingBean.getAllTimings().get(CoreTimingType.RULE_RUN_CACHE_HIT).getRight(), is(2L));
+		assertThat(timingBean.getAllTimings().get(CoreTimingType.RULE_RUN_CACHE_MISS).getRight(), is(1L));
+	}
+
+	//***** HELPER METHODS *****//
+	private void setUpRules(TestComponentData data)
+	{
+		//										Rule IDs	Target Comp IDs		Criteria Comp IDs
+		data.ruleSingleCriteria(				1010, 		10, 				110				)
+			.ruleMultipleGroupsMultipleCriteria(1030, 		30,					130, 131, 132	)
+			.ruleCascadingOutcomes(				1050, 1051, 50, 51, 52							)
+			.ruleMultipleOutcomePriorities(		1060, 1061, 60,					160, 161		);
+	}
+
+	private ComponentVisibilityFilterData runRules(TestComponentData data, int masterId, ComponentVisibilityFilter filter, RuleRunCache cache)
+	{
+		return runRules(data, masterId, filter, cache, "CONTEXT");
+	}
+
+	private ComponentVisibilityFilterData runRules(TestComponentData data, int masterId, ComponentVisibilityFilter filter, RuleRunCache cache, String context)
+	{
+		ComponentVisibilityFilterData mergedComponents = filter.mergeComponentValues(1, data.getMasters(), data.getComponentValues(), data.getDefaultComponentValues(), data.getUserValues(), NotVisibleBehavior.REMOVE);
+		return filter.runRulesAndResolveConflicts(mergedComponents, data.getRules(), data.getOutcomes(), data.getConflictResolver(), cache, context, Collections.singletonList(masterId));
+	}
+
+	private void assertSameResults(ComponentVisibilityFilterData actual, ComponentVisibilityFilterData expected)
+	{
+		assertThat("Iterations: ", actual.getRuleIterations(), is(expected.getRuleIterations()));
+		assertThat("Components: ", actual.getAllComponentsAsList().size(), is(expected.getAllComponentsAsList().size()));
+		for(ComponentModel expectedComponent : expected.getAllComponentsAsList())
+		{
+			ComponentModel actualComponent = actual.getSingleComponent(expectedComponent.getComponentId(), expectedComponent.getMasterId());
+			assertThat("Rule visibility " + expectedComponent + ": ", actualComponent.getRuleVisibility(), is(expectedComponent.getRuleVisibility()));
+			assertThat("Final visibility " + expectedComponent + ": ", actualComponent.getFinalVisibility(), is(expectedComponent.getFinalVisibility()));
+			assertThat("Conflict status " + expectedComponent + ": ", actualComponent.getConflictStatus(), is(expectedComponent.getConflictStatus()));
+			assertThat("Value " + expectedComponent + ": ", actualComponent.getComponentValueAsString(), is(expectedComponent.getComponentValueAsString()));
+		}
+
+		Map<Integer, Map<Integer, RuleResult>> expectedResults = expected.getEvaluationResult().getRuleResults();
+		Map<Integer, Map<Integer, RuleResult>> actualResults = actual.getEvaluationResult().getRuleResults();
+		assertThat("Masters: ", actualResults.keySet(), is(expectedResults.keySet()));
+		for(Integer masterId : expectedResults.keySet())
+		{
+			Set<Integer> satisfiedRuleIds = new HashSet<Integer>();
+			for(RuleResult result : actualResults.get(masterId).values())
+			{
+				if(result.isSatisfied())
+					satisfiedRuleIds.add(result.getRule().getRuleId());
+			}
+			Set<Integer> expectedSatisfiedRuleIds = new HashSet<Integer>();
+			for(RuleResult result : expectedResults.get(masterId).values())
+			{
+				if(result.isSatisfied())
+					expectedSatisfiedRuleIds.add(result.getRule().getRuleId());
+			}
+			assertThat("Satisfied rules: ", satisfiedRuleIds, is(expectedSatisfiedRuleIds));
+			assertThat("Evaluated rules: ", actualResults.get(masterId).keySet(), is(expectedResults.get(masterId).keySet()));
+		}
+		assertThat("Outcomes: ", actual.getEvaluationResult().getApplicableOutcomes().keySet(), is(expected.getEvaluationResult().getApplicableOutcomes().keySet()));
+	}
+}
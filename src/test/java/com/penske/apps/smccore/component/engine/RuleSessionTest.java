@@ -0,0 +1,232 @@
+/**
+ * @author john.shiffler (600139252)
+ */
+package com.penske.apps.smccore.component.engine;
+
+import static com.penske.apps.smccore.component.domain.enums.Visibility.EDITABLE;
+import static com.penske.apps.smccore.component.domain.enums.Visibility.REQUIRED;
+import static com.penske.apps.smccore.component.domain.enums.Visibility.VISIBLE;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import com.penske.apps.smccore.CoreTestUtil;
+import com.penske.apps.smccore.component.TestComponentData;
+import com.penske.apps.smccore.component.domain.enums.ConflictStatus;
+import com.penske.apps.smccore.component.domain.enums.NotVisibleBehavior;
+
+/**
+ * Class under test: {@link RuleSession}
+ */
+public class RuleSessionTest
+{
+	private final int masterId = 9876;
+	private final TestComponentData data = new TestComponentData(masterId);
+	private final ComponentVisibilityFilter filter = new ComponentVisibilityFilter();
+
+	@Test
+	public void shouldApplyEditsLikeRunningRulesFromScratch()
+	{
+		//										Rule IDs	Target Comp IDs		Criteria Comp IDs
+		data.ruleSingleCriteria(				1010, 		10, 				110				)
+			.ruleCascadingOutcomes(				1050, 1051, 50, 51, 52							)
+			.ruleMultipleOutcomePriorities(		1060, 1061, 60,					160, 161		)
+			.ruleOnGroundBody(					1080, 1081, 180, 80, 81							);
+
+		for(NotVisibleBehavior notVisibleBehavior : NotVisibleBehavior.values())
+		{
+			data.clearUserValues();
+			data.setUserValue(masterId, 110, "25")
+				.setUserValue(masterId, 50, "FOO")
+				.setUserValue(masterId, 51, "BAR")
+				.setUserValue(masterId, 160, "NOTFOO")
+				.setUserValue(masterId, 161, "BAR");
+
+			RuleSession session = filter.startSession(merge(notVisibleBehavior), data.getRules(), data.getOutcomes(), data.getConflictResolver());
+			ComponentVisibilityFilterData expected = runRulesAndResolveConflicts(notVisibleBehavior);
+			assertSameComponents(notVisibleBehavior + " start", session.getComponentData(), expected);
+
+			//Each edit is a (component ID, new value)
+			String[][] edits = {{"110", "10"}, {"50", "BAZ"}, {"160", "FOO"}, {"180", "Y"}, {"50", "FOO"}, {"110", "25"}, {"180", "N"}};
+			for(String[] edit : edits)
+			{
+				int componentId = Integer.parseInt(edit[0]);
+				String value = edit[1];
+				String description = notVisibleBehavior + " " + componentId + "=" + value;
+
+				List<ComponentModel> changedComponents = session.applyEdit(masterId, componentId, value);
+				data.setUserValue(masterId, componentId, value);
+				ComponentVisibilityFilterData previous = expected;
+				expected = runRulesAndResolveConflicts(notVisibleBehavior);
+
+				assertSameComponents(description, session.getComponentData(), expected);
+				assertThat(description + " changed", describe(changedComponents), is(describe(getChangedComponents(previous, expected))));
+			}
+		}
+	}
+
+	@Test
+	public void shouldApplyEditsReachingCycleLikeRunningRulesFromScratch()
+	{
+		int triggerId = 110;
+		data.ruleLatchingCycle(1110, 1010, 1011, triggerId, 10, 11);
+		
+		for(NotVisibleBehavior notVisibleBehavior : NotVisibleBehavior.values())
+		{
+			data.clearUserValues();
+			RuleSession session = filter.startSession(merge(notVisibleBehavior), data.getRules(), data.getOutcomes(), data.getConflictResolver());
+			ComponentVisibilityFilterData expected = runRulesAndResolveConflicts(notVisibleBehavior);
+			assertSameComponents(notVisibleBehavior + " start", session.getComponentData(), expected);
+			
+			//Once the trigger has shown them, the two components in the cycle keep each other visible, unless the rules start over from scratch
+			for(String value : new String[] {"N", "Y", "N"})
+			{
+				String description = notVisibleBehavior + " " + triggerId + "=" + value;
+				List<ComponentModel> changedComponents = session.applyEdit(masterId, triggerId, value);
+				data.setUserValue(masterId, triggerId, value);
+				ComponentVisibilityFilterData previous = expected;
+				expected = runRulesAndResolveConflicts(notVisibleBehavior);
+				
+				assertSameComponents(description, session.getComponentData(), expected);
+				assertThat(description + " changed", describe(changedComponents), is(describe(getChangedComponents(previous, expected))));
+			}
+		}
+		
+		//Rules that read the values of not visible components as missing are the ones where starting over matters
+		assertThat(runRulesAndResolveConflicts(NotVisibleBehavior.REMOVE).getSingleComponent(10, masterId).isVisible(), is(false));
+	}
+
+	@Test
+	public void shouldOnlyEvaluateRulesReadingEditedComponent()
+	{
+		int onGroundId = 110;
+		int bodyInstalledId = 10;
+		int bodyMakeId = 11;
+		data.ruleOnGroundBody(1010, 1011, onGroundId, bodyInstalledId, bodyMakeId)
+			.ruleSingleCriteria(1020, 20, 120);
+		RingBufferTraceSink traceSink = new RingBufferTraceSink(100);
+		RuleSession session = filter.withTraceSink(traceSink).startSession(merge(NotVisibleBehavior.REMOVE), data.getRules(), data.getOutcomes(), data.getConflictResolver());
+		assertThat(session.getComponentData().getSingleComponent(bodyMakeId, masterId).isVisible(), is(false));
+
+		//Body make isn't read by any rule, so nothing gets evaluated again
+		traceSink.clear();
+		assertThat(session.applyEdit(masterId, bodyMakeId, "XYZ").isEmpty(), is(true));
+		assertThat(getEvaluatedRuleIds(traceSink).isEmpty(), is(true));
+		assertThat(session.getComponentData().getSingleComponent(bodyMakeId, masterId).getComponentValueAsString(), is("XYZ"));
+
+		//Changing on ground only runs the rules downstream of it. Body installed becoming visible makes the rules see its value, which shows body make, too.
+		traceSink.clear();
+		List<ComponentModel> changedComponents = session.applyEdit(masterId, onGroundId, "Y");
+		assertThat(getEvaluatedRuleIds(traceSink), is(CoreTestUtil.setOf(1010, 1011)));
+		assertThat(describe(changedComponents), is(CoreTestUtil.setOf("9876/10 REQUIRED null", "9876/11 REQUIRED null")));
+
+		//Giving a component the value it already has does nothing
+		traceSink.clear();
+		assertThat(session.applyEdit(masterId, onGroundId, "Y").isEmpty(), is(true));
+		assertThat(traceSink.getEvents().isEmpty(), is(true));
+	}
+
+	@Test
+	public void shouldReportConflictsCausedByEdit()
+	{
+		int requiredMasterId = 110;
+		int ruleMasterId = 111;
+		data.ruleConflictingOutcome(1010, requiredMasterId, ruleMasterId, 20, 120);
+		RuleSession session = filter.startSession(merge(NotVisibleBehavior.KEEP), data.getRules(), data.getOutcomes(), data.getConflictResolver());
+		assertThat(session.getComponentData().getSingleComponent(20, ruleMasterId).getFinalVisibility(), is(EDITABLE));
+
+		List<ComponentModel> changedComponents = session.applyEdit(ruleMasterId, 120, "Y");
+		assertThat(describe(changedComponents), is(CoreTestUtil.setOf("110/20 REQUIRED CONFLICT", "111/20 REQUIRED CONFLICT")));
+		assertThat(session.getComponentData().getSingleComponent(20, ruleMasterId).getConflictStatus(), is(ConflictStatus.CONFLICT));
+
+		changedComponents = session.applyEdit(ruleMasterId, 120, "N");
+		assertThat(describe(changedComponents), is(CoreTestUtil.setOf("110/20 REQUIRED null", "111/20 EDITABLE null")));
+		assertThat(session.getComponentData().getSingleComponent(20, requiredMasterId).getConflictStatus(), is(nullValue()));
+		assertThat(session.getComponentData().getSingleComponent(20, requiredMasterId).getFinalVisibility(), is(REQUIRED));
+		assertThat(session.getComponentData().getSingleComponent(120, ruleMasterId).getFinalVisibility(), is(EDITABLE));
+	}
+
+	@Test
+	public void shouldNotEditMissingComponent()
+	{
+		data.ruleSingleCriteria(1010, 10, 110);
+		RuleSession session = filter.startSession(merge(NotVisibleBehavior.KEEP), data.getRules(), data.getOutcomes(), data.getConflictResolver());
+		assertThat(session.getComponentData().getSingleComponent(10, masterId).getFinalVisibility(), is(REQUIRED));
+
+		try {
+			session.applyEdit(masterId, 999, "FOO");
+			fail("Should not be able to edit a component that isn't in the session");
+		} catch(IllegalArgumentException ex) {
+			//Expected
+		}
+
+		assertThat(describe(session.applyEdit(masterId, 110, "10")), is(CoreTestUtil.setOf("9876/10 VISIBLE null")));
+		assertThat(session.getComponentData().getSingleComponent(10, masterId).getFinalVisibility(), is(VISIBLE));
+	}
+
+	//***** HELPER METHODS *****//
+	private ComponentVisibilityFilterData merge(NotVisibleBehavior notVisibleBehavior)
+	{
+		return filter.mergeComponentValues(1, data.getMasters(), data.getComponentValues(), data.getDefaultComponentValues(), data.getUserValues(), notVisibleBehavior);
+	}
+
+	private ComponentVisibilityFilterData runRulesAndResolveConflicts(NotVisibleBehavior notVisibleBehavior)
+	{
+		return filter.resolveConflicts(filter.runRules(merge(notVisibleBehavior), data.getRules(), data.getOutcomes()), data.getConflictResolver());
+	}
+
+	private void assertSameComponents(String description, ComponentVisibilityFilterData actual, ComponentVisibilityFilterData expected)
+	{
+		assertThat(description + " components", actual.getAllComponentsAsList().size(), is(expected.getAllComponentsAsList().size()));
+		for(ComponentModel expectedComponent : expected.getAllComponentsAsList())
+		{
+			ComponentModel actualComponent = actual.getSingleComponent(expectedComponent.getComponentId(), expectedComponent.getMasterId());
+			assertThat(description + " " + expectedComponent, describe(actualComponent) + " " + actualComponent.getComponentValueAsString(),
+				is(describe(expectedComponent) + " " + expectedComponent.getComponentValueAsString()));
+		}
+	}
+
+	private List<ComponentModel> getChangedComponents(ComponentVisibilityFilterData before, ComponentVisibilityFilterData after)
+	{
+		List<ComponentModel> result = new ArrayList<ComponentModel>();
+		for(ComponentModel component : after.getAllComponentsAsList())
+		{
+			ComponentModel oldComponent = before.getSingleComponent(component.getComponentId(), component.getMasterId());
+			if(oldComponent.getFinalVisibility() != component.getFinalVisibility() || oldComponent.getConflictStatus() != component.getConflictStatus())
+				result.add(component);
+		}
+		return result;
+	}
+
+	private Set<String> describe(List<ComponentModel> components)
+	{
+		Set<String> result = new TreeSet<String>();
+		for(ComponentModel component : components)
+			result.add(describe(component));
+		return result;
+	}
+
+	private String describe(ComponentModel component)
+	{
+		return component.getMasterId() + "/" + component.getComponentId() + " " + component.getFinalVisibility() + " " + component.getConflictStatus();
+	}
+
+	private Set<Integer> getEvaluatedRuleIds(RingBufferTraceSink traceSink)
+	{
+		Set<Integer> result = new TreeSet<Integer>();
+		for(RuleTraceEvent event : traceSink.getEvents())
+		{
+			if(event.getType() == RuleTraceEvent.Type.RULE_EVALUATED)
+				result.add(event.getRuleId());
+		}
+		return result;
+	}
+}
@@ -0,0 +1,154 @@
+/**
+ * @author john.shiffler (600139252)
+ */
+package com.penske.apps.smccore.component.engine;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.junit.Test;
+
+import com.penske.apps.smccore.component.TestComponentData;
+import com.penske.apps.smccore.component.domain.enums.NotVisibleBehavior;
+
+/**
+ * Class under test: {@link RuleStatistics}
+ */
+public class RuleStatisticsTest
+{
+	private final int masterId = 9876;
+	private final TestComponentData data = new TestComponentData(masterId);
+	private final ComponentVisibilityFilter filter = new ComponentVisibilityFilter();
+
+	@Test
+	public void shouldCountEachRule()
+	{
+		//										Rule IDs	Target Comp IDs		Criteria Comp IDs
+		data.ruleCascadingOutcomes(				1050, 1051, 50, 51, 52							)
+			.ruleSingleCriteria(				1010, 		10, 				110				);
+		data.setUserValue(masterId, 110, "10");
+
+		RuleStatistics statistics = new RuleStatistics(true);
+		ComponentVisibilityFilterData result = runRules(filter.withRuleStatistics(statistics));
+		int iterations = result.getRuleIterations();
+		assertThat(iterations, is(3));
+
+		assertThat(statistics.getRuleCount(), is(3));
+		List<RuleStatistics.RuleCost> costs = statistics.getCostliestRules(10);
+		assertThat(costs.size(), is(3));
+		for(int i = 1; i < costs.size(); i++)
+			assertThat(costs.get(i - 1).getTotalNanos() >= costs.get(i).getTotalNanos(), is(true));
+
+		//The primary rule is satisfied from the start. The secondary rule only becomes satisfied once the primary rule has shown the intermediate component.
+		RuleStatistics.RuleCost primary = getCost(costs, 1050);
+		assertThat(primary.getEvaluations(), is((long) iterations));
+		assertThat(primary.getSatisfiedCount(), is((long) iterations));
+		assertThat(primary.getStateChanges(), is(0L));
+		assertThat(primary.getTemplateId(), is(data.getRules().get(0).getTemplateId()));
+
+		RuleStatistics.RuleCost secondary = getCost(costs, 1051);
+		assertThat(secondary.getEvaluations(), is((long) iterations));
+		assertThat(secondary.getSatisfiedCount(), is((long) iterations - 1));
+		assertThat(secondary.getStateChanges(), is(1L));
+
+		RuleStatistics.RuleCost neverSatisfied = getCost(costs, 1010);
+		assertThat(neverSatisfied.getRuleName(), is("Single Criteria"));
+		assertThat(neverSatisfied.getSatisfiedCount(), is(0L));
+		assertThat(neverSatisfied.getStateChanges(), is(0L));
+
+		//Counters keep adding up across calls to the rules engine, but state changes are only counted within a single call
+		runRules(filter.withRuleStatistics(statistics));
+		assertThat(getCost(statistics.getCostliestRules(10), 1051).getEvaluations(), is(2L * iterations));
+		assertThat(getCost(statistics.getCostliestRules(10), 1051).getStateChanges(), is(2L));
+	}
+
+	@Test
+	public void shouldNotRecordWhileDisabled()
+	{
+		data.ruleCascadingOutcomes(1050, 1051, 50, 51, 52);
+		RuleStatistics statistics = new RuleStatistics(false);
+		ComponentVisibilityFilter recordingFilter = filter.withRuleStatistics(statistics);
+
+		runRules(recordingFilter);
+		assertThat(statistics.getRuleCount(), is(0));
+		assertThat(statistics.getCostliestRules(10).isEmpty(), is(true));
+
+		statistics.setEnabled(true);
+		runRules(recordingFilter);
+		assertThat(statistics.getRuleCount(), is(2));
+
+		statistics.setEnabled(false);
+		runRules(recordingFilter);
+		assertThat(getCost(statistics.getCostliestRules(10), 1050).getEvaluations(), is(3L));
+	}
+
+	@Test
+	public void shouldLimitReportAndReset()
+	{
+		data.ruleCascadingOutcomes(1050, 1051, 50, 51, 52);
+		RuleStatistics statistics = new RuleStatistics(true);
+		runRules(filter.withRuleStatistics(statistics));
+
+		List<RuleStatistics.RuleCost> allCosts = statistics.getCostliestRules(10);
+		List<RuleStatistics.RuleCost> topCost = statistics.getCostliestRules(1);
+		assertThat(topCost.size(), is(1));
+		assertThat(topCost.get(0).getRuleId(), is(allCosts.get(0).getRuleId()));
+		assertThat(statistics.getCostliestRules(0).isEmpty(), is(true));
+
+		statistics.reset();
+		assertThat(statistics.getRuleCount(), is(0));
+		assertThat(statistics.getCostliestRules(10).isEmpty(), is(true));
+		assertThat(statistics.isEnabled(), is(true));
+	}
+
+	@Test
+	public void shouldReportThroughMBeanServer() throws Exception
+	{
+		data.ruleCascadingOutcomes(1050, 1051, 50, 51, 52);
+		RuleStatistics statistics = new RuleStatistics(false);
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(RuleStatistics.OBJECT_NAME + ",name=" + getClass().getSimpleName());
+		server.registerMBean(statistics, name);
+		try {
+			server.setAttribute(name, new Attribute("Enabled", true));
+			runRules(filter.withRuleStatistics(statistics));
+
+			assertThat(server.getAttribute(name, "RuleCount"), is((Object) 2));
+			CompositeData[] costs = (CompositeData[]) server.invoke(name, "getCostliestRules", new Object[] {1}, new String[] {int.class.getName()});
+			assertThat(costs.length, is(1));
+			assertThat(costs[0].get("ruleId"), is((Object) statistics.getCostliestRules(1).get(0).getRuleId()));
+			assertThat(costs[0].get("evaluations"), is((Object) 3L));
+		} finally {
+			server.unregisterMBean(name);
+		}
+	}
+
+	//***** HELPER METHODS *****//
+	private ComponentVisibilityFilterData runRules(ComponentVisibilityFilter recordingFilter)
+	{
+		ComponentVisibilityFilterData componentData = recordingFilter.mergeComponentValues(1, data.getMasters(), data.getComponentValues(), data.getDefaultComponentValues(), data.getUserValues(), NotVisibleBehavior.KEEP);
+		return recordingFilter.runRules(componentData, data.getRules(), data.getOutcomes());
+	}
+
+	private RuleStatistics.RuleCost getCost(List<RuleStatistics.RuleCost> costs, int ruleId)
+	{
+		List<RuleStatistics.RuleCost> matches = new ArrayList<RuleStatistics.RuleCost>();
+		for(RuleStatistics.RuleCost cost : costs)
+		{
+			if(cost.getRuleId() == ruleId)
+				matches.add(cost);
+		}
+		assertThat("Costs for rule " + ruleId, matches.size(), is(1));
+		return matches.get(0);
+	}
+}
@@ -0,0 +1,69 @@
+/**
+ * @author john.shiffler (600139252)
+ */
+package com.penske.apps.smccore.component.service.unittemplate;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.penske.apps.smccore.CoreTestUtil;
+import com.penske.apps.smccore.component.dao.unittemplate.UnitComponentDAO;
+import com.penske.apps.smccore.component.domain.Rule;
+import com.penske.apps.smccore.component.domain.RuleBuilder;
+import com.penske.apps.smccore.component.domain.RuleOutcome;
+import com.penske.apps.smccore.component.domain.enums.ComponentRuleOperator;
+import com.penske.apps.smccore.component.domain.enums.RuleType;
+import com.penske.apps.smccore.component.domain.enums.Visibility;
+import com.penske.apps.smccore.component.domain.unittemplate.UnitMasterInfo;
+import com.penske.apps.smccore.component.engine.ComponentVisibilityFilter;
+
+/**
+ * Class under test: {@link DefaultUnitComponentService}
+ */
+public class DefaultUnitComponentServiceTest
+{
+	private final UnitComponentDAO unitComponentDAO = mock(UnitComponentDAO.class);
+	private final UnitComponentService unitComponentService = new DefaultUnitComponentService(unitComponentDAO);
+	
+	@Test
+	public void shouldCacheSharedRuleForEveryTemplateWithOutcomesForIt()
+	{
+		//Rule 1010 has outcomes on both templates, but comes back only once, for the first template
+		Rule sharedRule = new RuleBuilder(1010, 1, "Shared Rule", RuleType.UNIT_TEMPLATE).addCriteria(1, 110, ComponentRuleOperator.EQUAL, "FOO").build();
+		when(unitComponentDAO.getRules(any(), eq(RuleType.UNIT_TEMPLATE))).thenReturn(Arrays.asList(sharedRule));
+		when(unitComponentDAO.getOutcomes(any())).thenReturn(Arrays.asList(
+			CoreTestUtil.createRuleOutcome(1010, 10, 1, 1, Visibility.REQUIRED),
+			CoreTestUtil.createRuleOutcome(1010, 20, 2, 1, Visibility.REQUIRED)
+		));
+		
+		//Both templates are loaded together
+		unitComponentService.getRules(Arrays.asList(
+			CoreTestUtil.createUnitMasterInfo(1, "    111111", 101, 1001, 1, "signature"),
+			CoreTestUtil.createUnitMasterInfo(2, "    111111", 102, 1002, 2, "signature")
+		));
+		
+		//A unit on only the second template gets the shared rule from the cache, along with its outcome
+		List<UnitMasterInfo> secondTemplateOnly = Arrays.asList(CoreTestUtil.createUnitMasterInfo(3, "    222222", 102, 1002, 2, "signature"));
+		List<Rule> rules = unitComponentService.getRules(secondTemplateOnly);
+		Map<Integer, List<RuleOutcome>> outcomes = unitComponentService.getOutcomesByMasterId(secondTemplateOnly);
+		verify(unitComponentDAO, times(1)).getRules(any(), eq(RuleType.UNIT_TEMPLATE));
+		
+		assertThat(rules.stream().anyMatch(rule -> rule.getRuleId() == 1010), is(true));
+		assertThat(outcomes.get(3).stream().anyMatch(outcome -> outcome.getRuleId() == 1010 && outcome.getComponentId() == 20), is(true));
+		
+		//Every outcome has its rule, so the rules can be run
+		new ComponentVisibilityFilter().runRules(null, rules, outcomes);
+	}
+}
@@ -0,0 +1,99 @@
+/**
+ * @author john.shiffler (600139252)
+ */
+package com.penske.apps.smccore.component.service.unittemplate;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import com.penske.apps.smccore.component.domain.RuleOutcome;
+import com.penske.apps.smccore.component.domain.enums.ProgramComponent;
+import com.penske.apps.smccore.component.domain.enums.Visibility;
+
+/**
+ * Class under test: {@link TemplateRuleSetCache}
+ */
+public class TemplateRuleSetCacheTest
+{
+	private final TemplateRuleSetCache cache = new TemplateRuleSetCache(2);
+
+	@Test
+	public void shouldOnlyReturnRulesForSameTemplateHash()
+	{
+		TemplateRuleSet ruleSet = ruleSet(1, "HASH1");
+		cache.put(ruleSet);
+		
+		assertThat(cache.get(1, "HASH1"), is(sameInstance(ruleSet)));
+		assertThat(cache.get(1, "HASH2"), is(nullValue()));
+		assertThat(cache.get(1, null), is(nullValue()));
+		assertThat(cache.get(2, "HASH1"), is(nullValue()));
+		assertThat(cache.getHits(), is(1L));
+		assertThat(cache.getMisses(), is(3L));
+		
+		//A new version of the template replaces the old one
+		TemplateRuleSet newRuleSet = ruleSet(1, "HASH2");
+		cache.put(newRuleSet);
+		assertThat(cache.get(1, "HASH2"), is(sameInstance(newRuleSet)));
+		assertThat(cache.get(1, "HASH1"), is(nullValue()));
+		assertThat(cache.size(), is(1));
+	}
+	
+	@Test
+	public void shouldNotCacheRulesWithoutTemplateHash()
+	{
+		cache.put(ruleSet(1, null));
+		cache.put(ruleSet(2, " "));
+		
+		assertThat(cache.size(), is(0));
+	}
+	
+	@Test
+	public void shouldEvictLeastRecentlyUsedTemplate()
+	{
+		TemplateRuleSet ruleSet1 = ruleSet(1, "HASH1");
+		TemplateRuleSet ruleSet2 = ruleSet(2, "HASH2");
+		cache.put(ruleSet1);
+		cache.put(ruleSet2);
+		
+		//Using template 1 makes template 2 the least recently used
+		cache.get(1, "HASH1");
+		cache.put(ruleSet(3, "HASH3"));
+		
+		assertThat(cache.size(), is(2));
+		assertThat(cache.get(1, "HASH1"), is(sameInstance(ruleSet1)));
+		assertThat(cache.get(2, "HASH2"), is(nullValue()));
+		assertThat(cache.get(3, "HASH3").getTemplateId(), is(3));
+		
+		cache.clear();
+		assertThat(cache.size(), is(0));
+	}
+	
+	@Test
+	public void shouldOnlyCountRuleSetsStillCachedAfterPuttingAll()
+	{
+		TemplateRuleSet loaded = ruleSet(1, "HASH1");
+		cache.put(loaded);
+		
+		//Template 1 is already cached, and template 2 gets pushed out by 3 and 4, so only 3 and 4 are still there at the end
+		int added = cache.putAllIfAbsent(Arrays.asList(ruleSet(1, "HASH1-OLD"), ruleSet(2, "HASH2"), ruleSet(3, "HASH3"), ruleSet(4, "HASH4")));
+		
+		assertThat(added, is(2));
+		assertThat(cache.size(), is(2));
+		assertThat(cache.get(3, "HASH3").getTemplateId(), is(3));
+		assertThat(cache.get(4, "HASH4").getTemplateId(), is(4));
+	}
+	
+	//***** HELPER METHODS *****//
+	private TemplateRuleSet ruleSet(int templateId, String templateHash)
+	{
+		RuleOutcome outcome = new RuleOutcome(templateId, -1, ProgramComponent.COMMENTS, -1, Visibility.REQUIRED);
+		return new TemplateRuleSet(templateId, templateHash, Collections.emptyList(), Arrays.asList(outcome));
+	}
+}
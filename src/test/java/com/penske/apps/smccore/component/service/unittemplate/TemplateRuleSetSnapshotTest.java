@@ -0,0 +1,205 @@
+/**
+ * @author john.shiffler (600139252)
+ */
+package com.penske.apps.smccore.component.service.unittemplate;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+
+import com.penske.apps.smccore.CoreTestUtil;
+import com.penske.apps.smccore.component.domain.Rule;
+import com.penske.apps.smccore.component.domain.RuleBuilder;
+import com.penske.apps.smccore.component.domain.RuleCriteria;
+import com.penske.apps.smccore.component.domain.RuleCriteriaGroup;
+import com.penske.apps.smccore.component.domain.RuleOutcome;
+import com.penske.apps.smccore.component.domain.enums.ComponentRuleOperator;
+import com.penske.apps.smccore.component.domain.enums.ComponentType;
+import com.penske.apps.smccore.component.domain.enums.RuleType;
+import com.penske.apps.smccore.component.domain.enums.Visibility;
+
+/**
+ * Class under test: {@link TemplateRuleSetSnapshot}
+ */
+public class TemplateRuleSetSnapshotTest
+{
+	@Test
+	public void shouldReadBackWhatWasWritten() throws IOException
+	{
+		Rule rule = new RuleBuilder(1010, 1, "Rule", RuleType.UNIT_TEMPLATE)
+			.addCriteria(1, 110, ComponentRuleOperator.EQUAL, "FOO")
+			.addCriteria(1, 111, ComponentRuleOperator.EXISTS_ON_PO, null)
+			.addCriteria(2, 112, ComponentRuleOperator.GREATER_THAN, "25")
+			.build();
+		CoreTestUtil.set(rule.getCriteriaGroups().get(0).getCriteria().get(0), "ruleDefId", 77);
+		CoreTestUtil.set(rule.getCriteriaGroups().get(0).getCriteria().get(0), "componentType", ComponentType.TEXT);
+		RuleOutcome outcome = CoreTestUtil.createRuleOutcome(1010, 10, 1, 5, Visibility.REQUIRED);
+		CoreTestUtil.set(outcome, "cmpRulesId", 88);
+
+		TemplateRuleSet ruleSet = new TemplateRuleSet(1, "HASH1", Arrays.asList(rule), Arrays.asList(outcome));
+		TemplateRuleSet emptyRuleSet = new TemplateRuleSet(2, "HASH2", null, null);
+		List<TemplateRuleSet> readBack = writeAndRead(Arrays.asList(ruleSet, emptyRuleSet, new TemplateRuleSet(3, null, null, null)), 2);
+
+		//The rule set without a template hash is left out
+		assertThat(readBack.size(), is(2));
+		assertThat(readBack.get(0).getTemplateId(), is(1));
+		assertThat(readBack.get(0).getTemplateHash(), is("HASH1"));
+		assertThat(readBack.get(1).getTemplateHash(), is("HASH2"));
+		assertThat(readBack.get(1).getRules().isEmpty(), is(true));
+
+		Rule readRule = readBack.get(0).getRules().get(0);
+		assertThat(readRule.getRuleId(), is(1010));
+		assertThat(readRule.getTemplateId(), is(1));
+		assertThat(readRule.getName(), is("Rule"));
+		assertThat(readRule.getRuleType(), is(RuleType.UNIT_TEMPLATE));
+		assertThat(readRule.getCriteriaGroups().size(), is(rule.getCriteriaGroups().size()));
+		for(int i = 0; i < rule.getCriteriaGroups().size(); i++)
+		{
+			RuleCriteriaGroup group = rule.getCriteriaGroups().get(i);
+			RuleCriteriaGroup readGroup = readRule.getCriteriaGroups().get(i);
+			assertThat(readGroup.getCriteriaGroup(), is(group.getCriteriaGroup()));
+			assertThat(readGroup.getCriteria().size(), is(group.getCriteria().size()));
+			for(int j = 0; j < group.getCriteria().size(); j++)
+			{
+				RuleCriteria criteria = group.getCriteria().get(j);
+				RuleCriteria readCriteria = readGroup.getCriteria().get(j);
+				assertThat(readCriteria.getRuleDefId(), is(criteria.getRuleDefId()));
+				assertThat(readCriteria.getRuleId(), is(1010));
+				assertThat(readCriteria.getCriteriaGroup(), is(criteria.getCriteriaGroup()));
+				assertThat(readCriteria.getComponentId(), is(criteria.getComponentId()));
+				assertThat(readCriteria.getComponentType(), is(criteria.getComponentType()));
+				assertThat(readCriteria.getOperator(), is(criteria.getOperator()));
+				assertThat(readCriteria.getComponentValue(), is(criteria.getComponentValue()));
+			}
+		}
+		assertThat(readRule.getCriteriaGroups().get(0).getCriteria().get(0).getRuleDefId(), is(77));
+		assertThat(readRule.getCriteriaGroups().get(0).getCriteria().get(0).getComponentType(), is(ComponentType.TEXT));
+		assertThat(readRule.getCriteriaGroups().get(0).getCriteria().get(1).getComponentType(), is(nullValue()));
+
+		RuleOutcome readOutcome = readBack.get(0).getOutcomes().get(0);
+		assertThat(readOutcome.getCmpRulesId(), is(88));
+		assertThat(readOutcome.getTemplateId(), is(1));
+		assertThat(readOutcome.getRuleId(), is(1010));
+		assertThat(readOutcome.getComponentId(), is(10));
+		assertThat(readOutcome.getPriority(), is(5));
+		assertThat(readOutcome.getVisibility(), is(Visibility.REQUIRED));
+	}
+
+	@Test
+	public void shouldOnlyUseSnapshotForSameTemplateHash() throws IOException
+	{
+		List<TemplateRuleSet> readBack = writeAndRead(Arrays.asList(new TemplateRuleSet(1, "HASH1", null, null), new TemplateRuleSet(2, "HASH2", null, null)), 2);
+
+		//Template 2 was already loaded since the snapshot was written, so it is kept
+		TemplateRuleSetCache cache = new TemplateRuleSetCache(10);
+		TemplateRuleSet loaded = new TemplateRuleSet(2, "HASH2-NEW", null, null);
+		cache.put(loaded);
+		assertThat(cache.putAllIfAbsent(readBack), is(1));
+		assertThat(cache.get(2, "HASH2-NEW"), is(loaded));
+
+		//Template 1 has changed since the snapshot was written, so its old rules never get used
+		assertThat(cache.get(1, "HASH1").getTemplateId(), is(1));
+		assertThat(cache.get(1, "HASH1-CHANGED"), is(nullValue()));
+	}
+
+	@Test
+	public void shouldRejectDamagedSnapshot() throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		TemplateRuleSetSnapshot.write(Arrays.asList(new TemplateRuleSet(1, "HASH1", null, null)), out);
+		byte[] bytes = out.toByteArray();
+
+		assertRejected(Arrays.copyOf(bytes, bytes.length - 1), "Template rule snapshot ended early");
+		assertRejected(new byte[] {1, 2, 3, 4, 5, 6, 7, 8}, "Not a template rule snapshot");
+
+		byte[] otherVersion = bytes.clone();
+		otherVersion[7] = 99;
+		assertRejected(otherVersion, "Template rule snapshot has version 99, but only version 2 can be read");
+
+		//The rule set count comes right after the header. A damaged count is rejected before anything is allocated for it.
+		byte[] hugeCount = bytes.clone();
+		hugeCount[8] = 0x7F;
+		hugeCount[9] = (byte) 0xFF;
+		hugeCount[10] = (byte) 0xFF;
+		hugeCount[11] = (byte) 0xFF;
+		assertRejected(hugeCount, "Invalid item count in template rule snapshot: 2147483647");
+
+		assertThat(TemplateRuleSetSnapshot.read(new ByteArrayInputStream(bytes)).size(), is(1));
+		assertThat(writeAndRead(Collections.<TemplateRuleSet>emptyList(), 0).isEmpty(), is(true));
+	}
+
+	@Test
+	public void shouldRejectRulesThatCanNotBeReadBack() throws IOException
+	{
+		//The longest string writeUTF can write still makes it through
+		Rule longRule = rule();
+		CoreTestUtil.set(longRule, "description", StringUtils.repeat('x', 65535));
+		assertThat(writeAndRead(Arrays.asList(new TemplateRuleSet(1, "HASH1", Arrays.asList(longRule), null)), 1).get(0).getRules().get(0).getDescription().length(), is(65535));
+
+		Rule tooLong = rule();
+		CoreTestUtil.set(tooLong, "description", StringUtils.repeat('x', 65536));
+		assertNotWritten(tooLong, null, "Can not write rule 1010 to snapshot. Its description is 65536 bytes long, but at most 65535 bytes can be written.");
+
+		//Characters past 0x7F take more than one byte each
+		Rule tooLongValue = rule();
+		CoreTestUtil.set(tooLongValue.getCriteriaGroups().get(0).getCriteria().get(0), "componentValue", StringUtils.repeat('\u00E9', 40000));
+		assertNotWritten(tooLongValue, null, "Can not write rule 1010 to snapshot. Its criteria value is 80000 bytes long, but at most 65535 bytes can be written.");
+
+		Rule noRuleType = rule();
+		CoreTestUtil.set(noRuleType, "ruleType", null);
+		assertNotWritten(noRuleType, null, "Can not write rule 1010 to snapshot. It has no rule type.");
+
+		Rule noOperator = rule();
+		CoreTestUtil.set(noOperator.getCriteriaGroups().get(0).getCriteria().get(0), "operator", null);
+		assertNotWritten(noOperator, null, "Can not write rule 1010 to snapshot. Its criteria on component 110 has no operator.");
+
+		RuleOutcome noVisibility = CoreTestUtil.createRuleOutcome(1010, 10, 1, 5, Visibility.REQUIRED);
+		CoreTestUtil.set(noVisibility, "visibility", null);
+		assertNotWritten(rule(), noVisibility, "Can not write outcome for rule 1010 and component 10 to snapshot. It has no visibility.");
+	}
+
+	//***** HELPER METHODS *****//
+	private Rule rule()
+	{
+		return new RuleBuilder(1010, 1, "Rule", RuleType.UNIT_TEMPLATE).addCriteria(1, 110, ComponentRuleOperator.EQUAL, "FOO").build();
+	}
+
+	private void assertNotWritten(Rule rule, RuleOutcome outcome, String message)
+	{
+		TemplateRuleSet ruleSet = new TemplateRuleSet(1, "HASH1", Arrays.asList(rule), outcome == null ? null : Arrays.asList(outcome));
+		try {
+			TemplateRuleSetSnapshot.write(Arrays.asList(ruleSet), new ByteArrayOutputStream());
+			fail("Expected rule set not to be written: " + message);
+		} catch(IOException ex) {
+			assertThat(ex.getMessage(), is(message));
+		}
+	}
+
+	private List<TemplateRuleSet> writeAndRead(List<TemplateRuleSet> ruleSets, int expectedWritten) throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertThat(TemplateRuleSetSnapshot.write(ruleSets, out), is(expectedWritten));
+		return TemplateRuleSetSnapshot.read(new ByteArrayInputStream(out.toByteArray()));
+	}
+
+	private void assertRejected(byte[] snapshot, String message)
+	{
+		try {
+			TemplateRuleSetSnapshot.read(new ByteArrayInputStream(snapshot));
+			fail("Expected snapshot to be rejected: " + message);
+		} catch(IOException ex) {
+			assertThat(ex.getMessage(), is(message));
+		}
+	}
+}